@@ -1,16 +1,12 @@
 package org.broadinstitute.dsm;
 
 import com.auth0.jwt.interfaces.DecodedJWT;
-import com.google.api.gax.core.ExecutorProvider;
-import com.google.api.gax.core.InstantiatingExecutorProvider;
 import com.google.cloud.pubsub.v1.AckReplyConsumer;
 import com.google.cloud.pubsub.v1.MessageReceiver;
-import com.google.cloud.pubsub.v1.Subscriber;
 import com.google.common.net.MediaType;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
-import com.google.pubsub.v1.ProjectSubscriptionName;
 import com.google.pubsub.v1.PubsubMessage;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
@@ -27,7 +23,6 @@ import org.apache.http.HttpStatus;
 import org.broadinstitute.ddp.BasicServer;
 import org.broadinstitute.ddp.db.TransactionWrapper;
 import org.broadinstitute.ddp.security.Auth0Util;
-import org.broadinstitute.ddp.security.CookieUtil;
 import org.broadinstitute.ddp.util.BasicTriggerListener;
 import org.broadinstitute.ddp.util.JsonTransformer;
 import org.broadinstitute.ddp.util.Utility;
@@ -37,6 +32,7 @@ import org.broadinstitute.dsm.jobs.*;
 import org.broadinstitute.dsm.log.SlackAppender;
 import org.broadinstitute.dsm.pubsub.DSMtasksSubscription;
 import org.broadinstitute.dsm.pubsub.PubSubResultMessageSubscription;
+import org.broadinstitute.dsm.pubsub.PubSubSubscriber;
 import org.broadinstitute.dsm.route.*;
 import org.broadinstitute.dsm.route.familymember.AddFamilyMemberRoute;
 import org.broadinstitute.dsm.route.participant.GetParticipantDataRoute;
@@ -69,8 +65,6 @@ import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -107,6 +101,10 @@ public class DSMServer extends BasicServer {
     public static final String GCP_PATH_TO_DSS_TO_DSM_SUB = "pubsub.dss_to_dsm_subscription";
     public static final String GCP_PATH_TO_DSM_TO_DSS_TOPIC = "pubsub.dsm_to_dss_topic";
     public static final String GCP_PATH_TO_DSM_TASKS_SUB = "pubsub.dsm_tasks_subscription";
+    public static final String GCP_PATH_TO_DSM_EXPORT_SUB = "pubsub.dsm_export_subscription";
+    private static final String TEST_RESULTS_SETTINGS_NAME = "testResults";
+    private static final int DEFAULT_TEST_RESULTS_EXECUTOR_THREADS = 1;
+    private static final long DEFAULT_TEST_RESULTS_MAX_ACK_EXTENSION_SECONDS = 120;
 
     private static Map<String, JsonElement> ddpConfigurationLookup = new HashMap<>();
     private static final String VAULT_DOT_CONF = "vault.conf";
@@ -272,9 +270,8 @@ public class DSMServer extends BasicServer {
 
                     boolean isTokenValid = false;
                     if (StringUtils.isNotBlank(tokenFromHeader)) {
-                        isTokenValid = new CookieUtil().isCookieValid(req.cookie(cookieName), cookieSalt.getBytes(), tokenFromHeader, jwtSecret);
-                        isTokenValid = new JWTRouteFilter(jwtSecret, null).isAccessAllowed(req);
-
+                        //verified tokens are cached, so only the first request with a token needs to verify it
+                        isTokenValid = SecurityUtil.isTokenValid(req);
                     }
                     if (!isTokenValid) {
                         halt(401, SecurityUtil.ResultType.AUTHENTICATION_ERROR.toString());
@@ -311,6 +308,7 @@ public class DSMServer extends BasicServer {
 
         //no GET for USER_SETTINGS_REQUEST because UI gets them per AuthenticationRoute
         patch(UI_ROOT + RoutePath.USER_SETTINGS_REQUEST, new UserSettingRoute(), new JsonTransformer());
+        post(UI_ROOT + RoutePath.RELOAD_INSTANCES, new InstanceRegistryRoute(), new JsonTransformer());
 
         setupJobs(cfg, kitUtil, notificationUtil, eventUtil);
 
@@ -333,6 +331,7 @@ public class DSMServer extends BasicServer {
         String subscriptionId = cfg.getString(GCP_PATH_TO_PUBSUB_SUB);
         String dsmToDssSubscriptionId = cfg.getString(GCP_PATH_TO_DSS_TO_DSM_SUB);
         String DSMtasksSubscriptionId = cfg.getString(GCP_PATH_TO_DSM_TASKS_SUB);
+        String DSMexportSubscriptionId = cfg.hasPath(GCP_PATH_TO_DSM_EXPORT_SUB) ? cfg.getString(GCP_PATH_TO_DSM_EXPORT_SUB) : null;
 
         logger.info("Setting up pubsub for {}/{}", projectId, subscriptionId);
 
@@ -356,21 +355,8 @@ public class DSMServer extends BasicServer {
                         }
                     };
 
-            Subscriber subscriber = null;
-            ProjectSubscriptionName resultSubName = ProjectSubscriptionName.of(projectId, subscriptionId);
-            ExecutorProvider resultsSubExecProvider = InstantiatingExecutorProvider.newBuilder().setExecutorThreadCount(1).build();
-            subscriber = Subscriber.newBuilder(resultSubName, receiver)
-                    .setParallelPullCount(1)
-                    .setExecutorProvider(resultsSubExecProvider)
-                    .setMaxAckExtensionPeriod(org.threeten.bp.Duration.ofSeconds(120))
-                    .build();
-            try {
-                subscriber.startAsync().awaitRunning(1L, TimeUnit.MINUTES);
-                logger.info("Started pubsub subscription receiver for {}", subscriptionId);
-            }
-            catch (TimeoutException e) {
-                throw new RuntimeException("Timed out while starting pubsub subscription " + subscriptionId, e);
-            }
+            PubSubSubscriber.subscribe(projectId, subscriptionId, TEST_RESULTS_SETTINGS_NAME, DEFAULT_TEST_RESULTS_EXECUTOR_THREADS,
+                    DEFAULT_TEST_RESULTS_MAX_ACK_EXTENSION_SECONDS, receiver);
         }
         catch (Exception e) {
             throw new RuntimeException("Failed to get results from pubsub ", e);
@@ -385,7 +371,7 @@ public class DSMServer extends BasicServer {
         }
 
         try {
-            DSMtasksSubscription.subscribeDSMtasks(projectId, DSMtasksSubscriptionId);
+            DSMtasksSubscription.subscribeDSMtasks(projectId, DSMtasksSubscriptionId, DSMexportSubscriptionId);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -590,6 +576,18 @@ public class DSMServer extends BasicServer {
                         cfg.getInt(ApplicationConfigConstants.QUARTZ_LABEL_CREATION_JOB_INTERVAL_SEC),
                         new LabelCreationTriggerListener());
 
+                createScheduledJob(scheduler, cfg,
+                        DashboardRefreshJob.class, "DASHBOARD_REFRESH_JOB",
+                        cfg.hasPath(ApplicationConfigConstants.QUARTZ_DASHBOARD_REFRESH_JOB_INTERVAL_SEC) ?
+                                cfg.getInt(ApplicationConfigConstants.QUARTZ_DASHBOARD_REFRESH_JOB_INTERVAL_SEC) : 300,
+                        new DashboardRefreshTriggerListener());
+
+                createScheduledJob(scheduler, cfg,
+                        ATDefaultValuesJob.class, "AT_DEFAULT_VALUES_JOB",
+                        cfg.hasPath(ApplicationConfigConstants.QUARTZ_AT_DEFAULT_VALUES_JOB_INTERVAL_SEC) ?
+                                cfg.getInt(ApplicationConfigConstants.QUARTZ_AT_DEFAULT_VALUES_JOB_INTERVAL_SEC) : 900,
+                        new ATDefaultValuesTriggerListener());
+
                 createScheduleJob(scheduler, cfg, notificationUtil, kitUtil,
                         GPNotificationJob.class, "GP_SCHEDULE_JOB",
                         cfg.getString(ApplicationConfigConstants.EMAIL_CRON_EXPRESSION_FOR_GP_NOTIFICATION));
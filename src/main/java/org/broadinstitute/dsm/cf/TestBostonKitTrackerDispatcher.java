@@ -56,24 +56,15 @@ public class TestBostonKitTrackerDispatcher implements BackgroundFunction<Pubsub
         String dbUrl = cfg.getString(ApplicationConfigConstants.CF_DSM_DB_URL);
         PoolingDataSource<PoolableConnection> dataSource = CFUtil.createDataSource(2, dbUrl);
         String data = new String(Base64.getDecoder().decode(pubsubMessage.getData()));
+        //last activity is kept on ups_package by the tracking job, kits are paged by their id
         final String SQL_SELECT_KITS_WITH_LATEST_ACTIVITY = "SELECT  * " +
                 " FROM  " + STUDY_MANAGER_SCHEMA + "ddp_kit kit  " +
                 " LEFT JOIN     " + STUDY_MANAGER_SCHEMA + "ddp_kit_request req  ON (kit.dsm_kit_request_id = req.dsm_kit_request_id)   " +
                 " left join    " + STUDY_MANAGER_SCHEMA + "ups_shipment shipment on (shipment.dsm_kit_request_id = kit.dsm_kit_request_id) " +
                 " left join  " + STUDY_MANAGER_SCHEMA + "ups_package pack on ( pack.ups_shipment_id = shipment.ups_shipment_id) " +
-                " left join  " + STUDY_MANAGER_SCHEMA + "ups_activity activity on (pack.ups_package_id = activity.ups_package_id) " +
-                " WHERE req.ddp_instance_id = ? and ( kit_label not like \"%\\\\_1\") and kit.dsm_kit_request_id > ? " +
-                " and (shipment.ups_shipment_id is null or activity.ups_activity_id is null  or  activity.ups_activity_id in  " +
-                " ( SELECT ac.ups_activity_id  " +
-                " FROM ups_package pac INNER JOIN  " +
-                "    ( SELECT  ups_package_id, MAX(ups_activity_id) maxId  " +
-                "    FROM ups_activity  " +
-                "    GROUP BY ups_package_id  ) lastActivity ON pac.ups_package_id = lastActivity.ups_package_id INNER JOIN  " +
-                "    ups_activity ac ON   lastActivity.ups_package_id = ac.ups_package_id  " +
-                "    AND lastActivity.maxId = ac.ups_activity_id  " +
-                " ))";
+                " WHERE req.ddp_instance_id = ? and ( kit_label not like \"%\\\\_1\") and kit.dsm_kit_request_id > ? ";
         String SQL_AVOID_DELIVERED = " and (tracking_to_id is not null or tracking_return_id is not null ) and kit.test_result is null " +
-                " and ( ups_status_description is null or ups_status_description not like \"%Delivered%\") "+
+                " and ( pack.last_ups_status_description is null or pack.last_ups_status_description not like \"%Delivered%\") "+
                 " and from_unixtime(created_date/1000) > NOW() - INTERVAL 360 DAY"+
                 " and (kit.ups_tracking_status is null or kit.ups_tracking_status not like \"%Delivered%\" or kit.ups_return_status is null or kit.ups_return_status not like \"%Delivered%\") " +
                 " order by kit.dsm_kit_request_id ASC LIMIT ?";
@@ -107,17 +98,17 @@ public class TestBostonKitTrackerDispatcher implements BackgroundFunction<Pubsub
                                     String shipmentId = rs.getString(DBConstants.UPS_SHIPMENT_ID);
                                     UPSPackage upsPackage;
                                     if (StringUtils.isNotBlank(shipmentId)) {
-                                        UPSStatus latestStatus = new UPSStatus(rs.getString(DBConstants.UPS_ACTIVITY_TABLE_ABBR + DBConstants.UPS_STATUS_TYPE),
-                                                rs.getString(DBConstants.UPS_ACTIVITY_TABLE_ABBR + DBConstants.UPS_STATUS_DESCRIPTION),
-                                                rs.getString(DBConstants.UPS_ACTIVITY_TABLE_ABBR + DBConstants.UPS_STATUS_CODE));
+                                        UPSStatus latestStatus = new UPSStatus(rs.getString(DBConstants.UPS_PACKAGE_TABLE_ABBR + DBConstants.UPS_LAST_STATUS_TYPE),
+                                                rs.getString(DBConstants.UPS_PACKAGE_TABLE_ABBR + DBConstants.UPS_LAST_STATUS_DESCRIPTION),
+                                                rs.getString(DBConstants.UPS_PACKAGE_TABLE_ABBR + DBConstants.UPS_LAST_STATUS_CODE));
                                         UPSActivity packageLastActivity = new UPSActivity(
-                                                rs.getString(DBConstants.UPS_ACTIVITY_TABLE_ABBR + DBConstants.UPS_LOCATION),
+                                                (String) null,
                                                 latestStatus,
                                                 "",
                                                 "",
-                                                rs.getString(DBConstants.UPS_ACTIVITY_TABLE_ABBR + DBConstants.UPS_ACTIVITY_ID),
-                                                rs.getString(DBConstants.UPS_ACTIVITY_TABLE_ABBR + DBConstants.UPS_PACKAGE_ID),
-                                                rs.getString(DBConstants.UPS_ACTIVITY_TABLE_ABBR + DBConstants.UPS_ACTIVITY_DATE_TIME)
+                                                rs.getString(DBConstants.UPS_PACKAGE_TABLE_ABBR + DBConstants.UPS_LAST_ACTIVITY_ID),
+                                                rs.getString(DBConstants.UPS_PACKAGE_TABLE_ABBR + DBConstants.UPS_PACKAGE_ID),
+                                                rs.getString(DBConstants.UPS_PACKAGE_TABLE_ABBR + DBConstants.UPS_LAST_ACTIVITY_DATE_TIME)
                                         );
                                         upsPackage = new UPSPackage(
                                                 rs.getString(DBConstants.UPS_PACKAGE_TABLE_ABBR + DBConstants.UPS_TRACKING_NUMBER),
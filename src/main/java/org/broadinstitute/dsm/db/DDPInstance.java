@@ -1,11 +1,9 @@
 package org.broadinstitute.dsm.db;
 
-import com.google.gson.Gson;
 import lombok.Data;
 import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
 import org.broadinstitute.ddp.db.SimpleResult;
-import org.broadinstitute.dsm.model.Value;
 import org.broadinstitute.dsm.statics.DBConstants;
 import org.broadinstitute.dsm.statics.QueryExtension;
 import org.slf4j.Logger;
@@ -15,7 +13,6 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -31,10 +28,6 @@ public class DDPInstance {
             "FROM ddp_instance realm, ddp_instance_role inRol, instance_role role WHERE realm.ddp_instance_id = inRol.ddp_instance_id AND inRol.instance_role_id = role.instance_role_id AND role.name = ? " +
             "AND realm.ddp_instance_id = main.ddp_instance_id) AS 'has_role', mr_attention_flag_d, tissue_attention_flag_d, auth0_token, notification_recipients FROM ddp_instance main " +
             "WHERE is_active = 1";
-    private static final String SQL_SELECT_INSTANCE_WITH_KIT_BEHAVIOR = "SELECT main.ddp_instance_id, instance_name, base_url, collaborator_id_prefix, migrated_ddp, billing_reference, " +
-            "es_participant_index, es_activity_definition_index, es_users_index, mr_attention_flag_d, tissue_attention_flag_d, auth0_token, notification_recipients, kit_behavior_change  " +
-            "FROM ddp_instance main, instance_settings setting WHERE main.ddp_instance_id = setting.ddp_instance_id " +
-            "AND main.is_active = 1 AND setting.kit_behavior_change IS NOT NULL";
     public static final String SQL_SELECT_ALL_ACTIVE_REALMS = "SELECT ddp_instance_id, instance_name, base_url, collaborator_id_prefix, es_participant_index, es_activity_definition_index, es_users_index, " +
             "mr_attention_flag_d, tissue_attention_flag_d, auth0_token, notification_recipients, migrated_ddp, billing_reference  FROM ddp_instance WHERE is_active = 1";
     private static final String SQL_SELECT_ACTIVE_REALMS_WITH_ROLE_INFORMATION_BY_PARTICIPANT_ID = "SELECT main.ddp_instance_id, main.instance_name, main.base_url, " +
@@ -47,7 +40,6 @@ public class DDPInstance {
             "(SELECT count(role.name) FROM ddp_instance realm, ddp_instance_role inRol, instance_role role WHERE realm.ddp_instance_id = inRol.ddp_instance_id AND inRol.instance_role_id = role.instance_role_id "+
             "AND role.name = ? AND realm.ddp_instance_id = main.ddp_instance_id) as 'has_role', mr_attention_flag_d, tissue_attention_flag_d, auth0_token, notification_recipients "+
             "FROM ddp_instance main, ddp_participant part WHERE main.ddp_instance_id = part.ddp_instance_id AND main.is_active = 1 AND part.ddp_participant_id = ? AND main.instance_name = ?";
-    public static final String SQL_SELECT_GROUP = "SELECT ddp_group_id from ddp_instance_group g LEFT JOIN ddp_instance realm ON (g.ddp_instance_id = realm.ddp_instance_id) WHERE instance_name =?";
     public static final String BY_BASE_URL = " and base_url like \"%dsm/studies/%1\"";
     private static final String SQL_SELECT_STUDY_GUID_BY_INSTANCE_NAME =
             "SELECT " +
@@ -98,82 +90,21 @@ public class DDPInstance {
         return Integer.parseInt(ddpInstanceId);
     }
 
-    public static DDPInstance getDDPInstance(@NonNull String realm) {
-        SimpleResult results = inTransaction((conn) -> {
-            SimpleResult dbVals = new SimpleResult();
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_ALL_ACTIVE_REALMS + QueryExtension.BY_INSTANCE_NAME)) {
-                stmt.setString(1, realm);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        dbVals.resultValue = getDDPInstanceFormResultSet(rs);
-                    }
-                }
-                catch (SQLException e) {
-                    throw new RuntimeException("Error getting information for " + realm, e);
-                }
-            }
-            catch (SQLException ex) {
-                dbVals.resultException = ex;
-            }
-            return dbVals;
-        });
+    DDPInstance copy(boolean hasRole) {
+        return new DDPInstance(ddpInstanceId, name, baseUrl, collaboratorIdPrefix, hasRole, daysMrAttentionNeeded, daysTissueAttentionNeeded,
+                hasAuth0Token, notificationRecipient, migratedDDP, billingReference, participantIndexES, activityDefinitionIndexES, usersIndexES);
+    }
 
-        if (results.resultException != null) {
-            throw new RuntimeException("Couldn't get realm information for " + realm, results.resultException);
-        }
-        return (DDPInstance) results.resultValue;
+    public static DDPInstance getDDPInstance(@NonNull String realm) {
+        return DDPInstanceRegistry.getDDPInstance(realm);
     }
 
     public static DDPInstance getDDPInstanceByGuid(@NonNull String studyGuid) {
-        SimpleResult results = inTransaction((conn) -> {
-            SimpleResult dbVals = new SimpleResult();
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_ALL_ACTIVE_REALMS + QueryExtension.BY_STUDY_GUID)) {
-                stmt.setString(1, studyGuid);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        dbVals.resultValue = getDDPInstanceFormResultSet(rs);
-                    }
-                }
-                catch (SQLException e) {
-                    throw new RuntimeException("Error getting information for realm with study guid " + studyGuid, e);
-                }
-            }
-            catch (SQLException ex) {
-                dbVals.resultException = ex;
-            }
-            return dbVals;
-        });
-
-        if (results.resultException != null) {
-            throw new RuntimeException("Couldn't get realm information for realm with study guid " + studyGuid, results.resultException);
-        }
-        return (DDPInstance) results.resultValue;
+        return DDPInstanceRegistry.getDDPInstanceByGuid(studyGuid);
     }
 
     public static DDPInstance getDDPInstanceById(@NonNull Integer ddpInstanceId) {
-        SimpleResult results = inTransaction((conn) -> {
-            SimpleResult dbVals = new SimpleResult();
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_ALL_ACTIVE_REALMS + QueryExtension.BY_INSTANCE_ID)) {
-                stmt.setInt(1, ddpInstanceId);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        dbVals.resultValue = getDDPInstanceFormResultSet(rs);
-                    }
-                }
-                catch (SQLException e) {
-                    throw new RuntimeException("Error getting information for realm with instance id" + ddpInstanceId, e);
-                }
-            }
-            catch (SQLException ex) {
-                dbVals.resultException = ex;
-            }
-            return dbVals;
-        });
-
-        if (results.resultException != null) {
-            throw new RuntimeException("Couldn't get realm information for realm with instance id " + ddpInstanceId, results.resultException);
-        }
-        return (DDPInstance) results.resultValue;
+        return DDPInstanceRegistry.getDDPInstanceById(ddpInstanceId);
     }
 
     public static String getStudyGuidByInstanceName(@NonNull String instanceName) {
@@ -205,30 +136,7 @@ public class DDPInstance {
 
 
     public static DDPInstance getDDPInstanceWithRole(@NonNull String realm, @NonNull String role) {
-        SimpleResult results = inTransaction((conn) -> {
-            SimpleResult dbVals = new SimpleResult();
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_INSTANCE_WITH_ROLE + QueryExtension.BY_INSTANCE_NAME)) {
-                stmt.setString(1, role);
-                stmt.setString(2, realm);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        dbVals.resultValue = getDDPInstanceWithRoleFormResultSet(rs);
-                    }
-                }
-                catch (SQLException e) {
-                    throw new RuntimeException("Error getting list of ddps ", e);
-                }
-            }
-            catch (SQLException ex) {
-                dbVals.resultException = ex;
-            }
-            return dbVals;
-        });
-
-        if (results.resultException != null) {
-            throw new RuntimeException("Couldn't get list of ddps ", results.resultException);
-        }
-        return (DDPInstance) results.resultValue;
+        return DDPInstanceRegistry.getDDPInstanceWithRole(realm, role);
     }
 
     public static DDPInstance getDDPInstanceWithRole(@NonNull String realm, @NonNull String role, Connection conn) {
@@ -255,54 +163,11 @@ public class DDPInstance {
     }
 
     public static String getDDPGroupId(@NonNull String realm) {
-        SimpleResult resultsGroup = inTransaction((conn) -> {
-            SimpleResult dbVals = new SimpleResult();
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_GROUP)) {
-                stmt.setString(1, realm);
-                try {
-                    ResultSet rs = stmt.executeQuery();
-                    if (rs.next()) {
-                        dbVals.resultValue = rs.getString(DBConstants.DDP_GROUP_ID);
-                    }
-                }
-                catch (Exception e) {
-                    dbVals.resultException = e;
-                }
-            }
-            catch (SQLException ex) {
-                dbVals.resultException = ex;
-            }
-            return dbVals;
-        });
-        if (resultsGroup.resultException != null) {
-            throw new RuntimeException(resultsGroup.resultException);
-        }
-        return (String) resultsGroup.resultValue;
+        return DDPInstanceRegistry.getDDPGroupId(realm);
     }
 
     public static List<DDPInstance> getDDPInstanceListWithRole(@NonNull String role) {
-        List<DDPInstance> ddpInstances = new ArrayList<>();
-        SimpleResult results = inTransaction((conn) -> {
-            SimpleResult dbVals = new SimpleResult();
-            try (PreparedStatement bspStatement = conn.prepareStatement(SQL_SELECT_INSTANCE_WITH_ROLE)) {
-                bspStatement.setString(1, role);
-                try (ResultSet rs = bspStatement.executeQuery()) {
-                    while (rs.next()) {
-                        DDPInstance ddpInstance = getDDPInstanceWithRoleFormResultSet(rs);
-                        ddpInstances.add(ddpInstance);
-                    }
-                }
-            }
-            catch (SQLException ex) {
-                dbVals.resultException = ex;
-            }
-            return dbVals;
-        });
-
-        if (results.resultException != null) {
-            throw new RuntimeException("Error looking ddpInstances ", results.resultException);
-        }
-        return ddpInstances;
+        return DDPInstanceRegistry.getDDPInstanceListWithRole(role);
     }
 
     public static DDPInstance getDDPInstanceWithRoleByDDPParticipantAndRealm(@NonNull String realm, @NonNull String ddpParticipantId, @NonNull String role) {
@@ -361,30 +226,7 @@ public class DDPInstance {
     }
 
     public static boolean getRole(@NonNull String realm, @NonNull String role) {
-        SimpleResult results = inTransaction((conn) -> {
-            SimpleResult dbVals = new SimpleResult();
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_INSTANCE_WITH_ROLE + QueryExtension.BY_INSTANCE_NAME)) {
-                stmt.setString(1, role);
-                stmt.setString(2, realm);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        dbVals.resultValue = rs.getBoolean(DBConstants.HAS_ROLE);
-                    }
-                }
-                catch (SQLException e) {
-                    throw new RuntimeException("Error getting role of realm " + realm, e);
-                }
-            }
-            catch (SQLException ex) {
-                dbVals.resultException = ex;
-            }
-            return dbVals;
-        });
-
-        if (results.resultException != null) {
-            throw new RuntimeException("Couldn't get role of realm " + realm, results.resultException);
-        }
-        return (boolean) results.resultValue;
+        return DDPInstanceRegistry.hasRole(realm, role);
     }
 
     public static DDPInstance getDDPInstanceWithRoleFormResultSet(@NonNull ResultSet rs) throws SQLException {
@@ -407,7 +249,7 @@ public class DDPInstance {
                 rs.getString(DBConstants.ES_USERS_INDEX));
     }
 
-    private static DDPInstance getDDPInstanceFormResultSet(@NonNull ResultSet rs) throws SQLException {
+    static DDPInstance getDDPInstanceFormResultSet(@NonNull ResultSet rs) throws SQLException {
         String notificationRecipient = rs.getString(DBConstants.NOTIFICATION_RECIPIENT);
         List<String> recipients = null;
         if (StringUtils.isNotBlank(notificationRecipient)) {
@@ -454,29 +296,6 @@ public class DDPInstance {
     }
 
     public static List<DDPInstance> getDDPInstanceListWithKitBehavior() {
-        List<DDPInstance> ddpInstances = new ArrayList<>();
-        SimpleResult results = inTransaction((conn) -> {
-            SimpleResult dbVals = new SimpleResult();
-            try (PreparedStatement bspStatement = conn.prepareStatement(SQL_SELECT_INSTANCE_WITH_KIT_BEHAVIOR)) {
-                try (ResultSet rs = bspStatement.executeQuery()) {
-                    while (rs.next()) {
-                        DDPInstance ddpInstance = getDDPInstanceFormResultSet(rs);
-                        List<Value> kitBehavior = Arrays.asList(new Gson().fromJson(rs.getString(DBConstants.KIT_BEHAVIOR_CHANGE), Value[].class));
-                        InstanceSettings instanceSettings = new InstanceSettings(null, kitBehavior, null, null, null, null, false, false);
-                        ddpInstance.setInstanceSettings(instanceSettings);
-                        ddpInstances.add(ddpInstance);
-                    }
-                }
-            }
-            catch (SQLException ex) {
-                dbVals.resultException = ex;
-            }
-            return dbVals;
-        });
-
-        if (results.resultException != null) {
-            throw new RuntimeException("Error getting ddpInstances ", results.resultException);
-        }
-        return ddpInstances;
+        return DDPInstanceRegistry.getDDPInstanceListWithKitBehavior();
     }
 }
@@ -0,0 +1,305 @@
+package org.broadinstitute.dsm.db;
+
+import lombok.NonNull;
+import org.broadinstitute.ddp.db.SimpleResult;
+import org.broadinstitute.dsm.db.dao.settings.InstanceSettingsDao;
+import org.broadinstitute.dsm.db.dto.settings.InstanceSettingsDto;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
+import org.broadinstitute.dsm.statics.DBConstants;
+import org.broadinstitute.dsm.util.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.broadinstitute.ddp.db.TransactionWrapper.inTransaction;
+
+/**
+ * Active ddp instances with their roles, groups and instance settings, loaded once and answered from memory.
+ * Lookups read the currently loaded snapshot without locking. The snapshot is loaded again after
+ * portal.instanceRegistry.refreshSeconds or when {@link #reload()} or {@link #invalidate()} is called.
+ * Callers always get copies, so changing a returned DDPInstance doesn't change the registry.
+ */
+public class DDPInstanceRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(DDPInstanceRegistry.class);
+
+    private static final String SQL_SELECT_ACTIVE_INSTANCES = "SELECT ddp_instance_id, instance_name, study_guid, base_url, collaborator_id_prefix, " +
+            "es_participant_index, es_activity_definition_index, es_users_index, mr_attention_flag_d, tissue_attention_flag_d, auth0_token, " +
+            "notification_recipients, migrated_ddp, billing_reference FROM ddp_instance WHERE is_active = 1 ORDER BY ddp_instance_id";
+    private static final String SQL_SELECT_INSTANCE_ROLES = "SELECT inRol.ddp_instance_id, role.name FROM ddp_instance_role inRol, instance_role role " +
+            "WHERE inRol.instance_role_id = role.instance_role_id";
+    private static final String SQL_SELECT_INSTANCE_GROUPS = "SELECT realm.instance_name, g.ddp_group_id FROM ddp_instance_group g, ddp_instance realm " +
+            "WHERE g.ddp_instance_id = realm.ddp_instance_id";
+
+    private static final long DEFAULT_REFRESH_SECONDS = 5 * 60;
+
+    private static volatile Instances instances;
+    private static final AtomicBoolean reloading = new AtomicBoolean(false);
+
+    public static DDPInstance getDDPInstance(@NonNull String realm) {
+        return getInstances().getDDPInstance(realm, null);
+    }
+
+    public static DDPInstance getDDPInstanceWithRole(@NonNull String realm, @NonNull String role) {
+        return getInstances().getDDPInstance(realm, role);
+    }
+
+    public static DDPInstance getDDPInstanceById(int ddpInstanceId) {
+        return getInstances().getDDPInstanceById(ddpInstanceId);
+    }
+
+    public static DDPInstance getDDPInstanceByGuid(@NonNull String studyGuid) {
+        return getInstances().getDDPInstanceByGuid(studyGuid);
+    }
+
+    public static List<DDPInstance> getDDPInstanceListWithRole(@NonNull String role) {
+        return getInstances().getDDPInstanceListWithRole(role);
+    }
+
+    public static List<DDPInstance> getDDPInstanceListWithKitBehavior() {
+        return getInstances().getDDPInstanceListWithKitBehavior();
+    }
+
+    public static boolean hasRole(@NonNull String realm, @NonNull String role) {
+        return getInstances().hasRole(realm, role);
+    }
+
+    public static String getDDPGroupId(@NonNull String realm) {
+        return getInstances().getDDPGroupId(realm);
+    }
+
+    public static InstanceSettings getInstanceSettings(int ddpInstanceId) {
+        return getInstances().getInstanceSettings(ddpInstanceId);
+    }
+
+    /**
+     * @return settings of the realm, empty settings if it has none or null if the realm isn't an active instance
+     */
+    public static InstanceSettingsDto getInstanceSettingsDto(@NonNull String realm) {
+        return getInstances().getInstanceSettingsDto(realm);
+    }
+
+    /**
+     * Loads the instances now, e.g. after a change to ddp_instance, its roles or settings
+     */
+    public static void reload() {
+        Instances loaded = load();
+        instances = loaded;
+        logger.info("Reloaded " + loaded.byName.size() + " ddp instances");
+    }
+
+    /**
+     * Drops the loaded instances, the next lookup loads them again
+     */
+    public static void invalidate() {
+        instances = null;
+    }
+
+    private static Instances getInstances() {
+        Instances current = instances;
+        if (current == null) {
+            synchronized (DDPInstanceRegistry.class) {
+                if (instances == null) {
+                    instances = load();
+                }
+                return instances;
+            }
+        }
+        if (current.isOlderThan(TimeUnit.SECONDS.toMillis(ConfigUtil.getLong(ApplicationConfigConstants.INSTANCE_REGISTRY_REFRESH_SECONDS, DEFAULT_REFRESH_SECONDS))) && reloading.compareAndSet(false, true)) {
+            //only one caller reloads, everybody else keeps reading the loaded instances in the meantime
+            try {
+                instances = load();
+            }
+            catch (Exception e) {
+                logger.error("Couldn't reload ddp instances, keeping the loaded ones", e);
+                current.loadedAt = System.currentTimeMillis();
+            }
+            finally {
+                reloading.set(false);
+            }
+        }
+        return instances != null ? instances : current;
+    }
+
+    private static Instances load() {
+        SimpleResult results = inTransaction((conn) -> {
+            SimpleResult dbVals = new SimpleResult();
+            try {
+                dbVals.resultValue = load(conn);
+            }
+            catch (SQLException ex) {
+                dbVals.resultException = ex;
+            }
+            return dbVals;
+        });
+
+        if (results.resultException != null) {
+            throw new RuntimeException("Couldn't load ddp instances ", results.resultException);
+        }
+        return (Instances) results.resultValue;
+    }
+
+    private static Instances load(@NonNull Connection conn) throws SQLException {
+        List<DDPInstance> ddpInstances = new ArrayList<>();
+        Map<String, String> studyGuids = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_ACTIVE_INSTANCES);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                DDPInstance ddpInstance = DDPInstance.getDDPInstanceFormResultSet(rs);
+                ddpInstances.add(ddpInstance);
+                if (rs.getString(DBConstants.STUDY_GUID) != null) {
+                    studyGuids.put(key(rs.getString(DBConstants.STUDY_GUID)), ddpInstance.getDdpInstanceId());
+                }
+            }
+        }
+        Map<String, Set<String>> roles = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_INSTANCE_ROLES);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                roles.computeIfAbsent(rs.getString(DBConstants.DDP_INSTANCE_ID), id -> new HashSet<>()).add(key(rs.getString(DBConstants.NAME)));
+            }
+        }
+        Map<String, String> groups = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_INSTANCE_GROUPS);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                groups.putIfAbsent(key(rs.getString(DBConstants.INSTANCE_NAME)), rs.getString(DBConstants.DDP_GROUP_ID));
+            }
+        }
+        Map<String, InstanceSettings> settings = new HashMap<>();
+        Map<String, InstanceSettingsDto> settingsDtos = new HashMap<>();
+        InstanceSettingsDao instanceSettingsDao = new InstanceSettingsDao();
+        try (PreparedStatement stmt = conn.prepareStatement(InstanceSettings.SQL_SELECT_ALL_INSTANCE_SETTINGS);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                String ddpInstanceId = rs.getString(DBConstants.DDP_INSTANCE_ID);
+                settings.putIfAbsent(ddpInstanceId, InstanceSettings.getInstanceSettingsFormResultSet(rs));
+                settingsDtos.putIfAbsent(ddpInstanceId, instanceSettingsDao.getInstanceSettingsDtoFromResultSet(rs));
+            }
+        }
+        return new Instances(ddpInstances, studyGuids, roles, groups, settings, settingsDtos, System.currentTimeMillis());
+    }
+
+    //names in the db are compared case insensitive
+    private static String key(String name) {
+        return name != null ? name.toLowerCase() : null;
+    }
+
+    /**
+     * One loaded snapshot, never changed after it was built (besides the time it was loaded)
+     */
+    static class Instances {
+        private final List<DDPInstance> ddpInstances;
+        private final Map<String, DDPInstance> byName = new HashMap<>();
+        private final Map<String, DDPInstance> byId = new HashMap<>();
+        private final Map<String, String> studyGuids;
+        private final Map<String, Set<String>> roles;
+        private final Map<String, String> groups;
+        private final Map<String, InstanceSettings> settings;
+        private final Map<String, InstanceSettingsDto> settingsDtos;
+        private volatile long loadedAt;
+
+        Instances(@NonNull List<DDPInstance> ddpInstances, @NonNull Map<String, String> studyGuids, @NonNull Map<String, Set<String>> roles,
+                  @NonNull Map<String, String> groups, @NonNull Map<String, InstanceSettings> settings,
+                  @NonNull Map<String, InstanceSettingsDto> settingsDtos, long loadedAt) {
+            this.ddpInstances = Collections.unmodifiableList(new ArrayList<>(ddpInstances));
+            for (DDPInstance ddpInstance : ddpInstances) {
+                byName.put(key(ddpInstance.getName()), ddpInstance);
+                byId.put(ddpInstance.getDdpInstanceId(), ddpInstance);
+            }
+            this.studyGuids = studyGuids;
+            this.roles = roles;
+            this.groups = groups;
+            this.settings = settings;
+            this.settingsDtos = settingsDtos;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean isOlderThan(long millis) {
+            return System.currentTimeMillis() - loadedAt > millis;
+        }
+
+        DDPInstance getDDPInstance(@NonNull String realm, String role) {
+            return copy(byName.get(key(realm)), role);
+        }
+
+        DDPInstance getDDPInstanceById(int ddpInstanceId) {
+            return copy(byId.get(String.valueOf(ddpInstanceId)), null);
+        }
+
+        DDPInstance getDDPInstanceByGuid(@NonNull String studyGuid) {
+            String ddpInstanceId = studyGuids.get(key(studyGuid));
+            return ddpInstanceId != null ? copy(byId.get(ddpInstanceId), null) : null;
+        }
+
+        List<DDPInstance> getDDPInstanceListWithRole(@NonNull String role) {
+            List<DDPInstance> result = new ArrayList<>();
+            for (DDPInstance ddpInstance : ddpInstances) {
+                result.add(copy(ddpInstance, role));
+            }
+            return result;
+        }
+
+        List<DDPInstance> getDDPInstanceListWithKitBehavior() {
+            List<DDPInstance> result = new ArrayList<>();
+            for (DDPInstance ddpInstance : ddpInstances) {
+                InstanceSettings instanceSettings = settings.get(ddpInstance.getDdpInstanceId());
+                if (instanceSettings != null && instanceSettings.getKitBehaviorChange() != null) {
+                    DDPInstance copy = copy(ddpInstance, null);
+                    copy.setInstanceSettings(new InstanceSettings(null, instanceSettings.getKitBehaviorChange(), null, null, null, null, false, false));
+                    result.add(copy);
+                }
+            }
+            return result;
+        }
+
+        boolean hasRole(@NonNull String realm, @NonNull String role) {
+            DDPInstance ddpInstance = byName.get(key(realm));
+            return ddpInstance != null && hasRole(ddpInstance, role);
+        }
+
+        String getDDPGroupId(@NonNull String realm) {
+            return groups.get(key(realm));
+        }
+
+        InstanceSettings getInstanceSettings(int ddpInstanceId) {
+            InstanceSettings instanceSettings = settings.get(String.valueOf(ddpInstanceId));
+            return instanceSettings != null ? instanceSettings.copy() : null;
+        }
+
+        //the dto has no setters, so it doesn't need to be copied
+        InstanceSettingsDto getInstanceSettingsDto(@NonNull String realm) {
+            DDPInstance ddpInstance = byName.get(key(realm));
+            if (ddpInstance == null) {
+                return null;
+            }
+            InstanceSettingsDto instanceSettingsDto = settingsDtos.get(ddpInstance.getDdpInstanceId());
+            return instanceSettingsDto != null ? instanceSettingsDto : new InstanceSettingsDto.Builder().build();
+        }
+
+        private boolean hasRole(@NonNull DDPInstance ddpInstance, @NonNull String role) {
+            Set<String> instanceRoles = roles.get(ddpInstance.getDdpInstanceId());
+            return instanceRoles != null && instanceRoles.contains(key(role));
+        }
+
+        private DDPInstance copy(DDPInstance ddpInstance, String role) {
+            if (ddpInstance == null) {
+                return null;
+            }
+            return ddpInstance.copy(role != null && hasRole(ddpInstance, role));
+        }
+    }
+}
@@ -4,7 +4,6 @@ import com.google.gson.Gson;
 import lombok.Data;
 import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
-import org.broadinstitute.ddp.db.SimpleResult;
 import org.broadinstitute.dsm.db.dao.settings.InstanceSettingsDao;
 import org.broadinstitute.dsm.db.dto.settings.InstanceSettingsDto;
 import org.broadinstitute.dsm.model.Filter;
@@ -32,8 +31,6 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
-import static org.broadinstitute.ddp.db.TransactionWrapper.inTransaction;
-
 @Data
 public class InstanceSettings {
 
@@ -48,6 +45,9 @@ public class InstanceSettings {
             "SELECT mr_cover_pdf, kit_behavior_change, special_format, hide_ES_fields, study_specific_statuses, default_columns, has_invitations, GBF_SHIPPED_DSS_DELIVERED, has_address_tab, has_computed_object " +
             "FROM instance_settings settings " +
             "WHERE settings.ddp_instance_id = ?";
+    static final String SQL_SELECT_ALL_INSTANCE_SETTINGS =
+            "SELECT instance_settings_id, ddp_instance_id, mr_cover_pdf, kit_behavior_change, special_format, hide_ES_fields, hide_samples_tab, " +
+                    "study_specific_statuses, default_columns, has_invitations, GBF_SHIPPED_DSS_DELIVERED, has_address_tab, has_computed_object FROM instance_settings";
 
     public static final String INSTANCE_SETTING_UPLOAD = "upload";
     public static final String INSTANCE_SETTING_UPLOADED = "uploaded"; //"Kits without Labels" page
@@ -89,7 +89,12 @@ public class InstanceSettings {
     }
 
     public InstanceSettingsDto getInstanceSettings(String realm) {
-        return instanceSettingsDao.getByInstanceName(Objects.requireNonNull(realm))
+        InstanceSettingsDto instanceSettingsDto = DDPInstanceRegistry.getInstanceSettingsDto(Objects.requireNonNull(realm));
+        if (instanceSettingsDto != null) {
+            return instanceSettingsDto;
+        }
+        //only active instances are in the registry
+        return instanceSettingsDao.getByInstanceName(realm)
                 .orElse(new InstanceSettingsDto.Builder().build());
     }
 
@@ -100,33 +105,7 @@ public class InstanceSettings {
     }
 
     public static InstanceSettings getInstanceSettings(@NonNull int realmId) {
-        SimpleResult results = inTransaction((conn) -> {
-            SimpleResult dbVals = new SimpleResult();
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_INSTANCE_SETTINGS_BY_ID)) {
-                stmt.setInt(1, realmId);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        List<Value> mrCoverPdfSettings = getListValue(rs.getString(DBConstants.MR_COVER_PDF));
-                        List<Value> kitBehaviorChange = getListValue(rs.getString(DBConstants.KIT_BEHAVIOR_CHANGE));
-                        List<Value> specialFormat = getListValue(rs.getString(DBConstants.SPECIAL_FORMAT));
-                        List<Value> hideESFields = getListValue(rs.getString(DBConstants.HIDE_ES_FIELDS));
-                        List<Value> studySpecificStatuses = getListValue(rs.getString(DBConstants.STUDY_SPECIFIC_STATUSES));
-                        List<Value> defaultColumns = getListValue(rs.getString(DBConstants.DEFAULT_COLUMNS));
-                        dbVals.resultValue = new InstanceSettings(mrCoverPdfSettings, kitBehaviorChange, specialFormat, hideESFields, studySpecificStatuses,
-                                defaultColumns, rs.getBoolean(DBConstants.HAS_INVITATIONS), rs.getBoolean(DBConstants.GBF_SHIPPED_DSS_DELIVERED));
-                    }
-                }
-            }
-            catch (SQLException ex) {
-                dbVals.resultException = ex;
-            }
-            return dbVals;
-        });
-
-        if (results.resultException != null) {
-            throw new RuntimeException("Error getting list of realms ", results.resultException);
-        }
-        return (InstanceSettings) results.resultValue;
+        return DDPInstanceRegistry.getInstanceSettings(realmId);
     }
 
     public static InstanceSettings getInstanceSettings(@NonNull int realmId,@NonNull Connection conn) {
@@ -135,14 +114,7 @@ public class InstanceSettings {
             stmt.setInt(1, realmId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    List<Value> mrCoverPdfSettings = getListValue(rs.getString(DBConstants.MR_COVER_PDF));
-                    List<Value> kitBehaviorChange = getListValue(rs.getString(DBConstants.KIT_BEHAVIOR_CHANGE));
-                    List<Value> specialFormat = getListValue(rs.getString(DBConstants.SPECIAL_FORMAT));
-                    List<Value> hideESFields = getListValue(rs.getString(DBConstants.HIDE_ES_FIELDS));
-                    List<Value> studySpecificStatuses = getListValue(rs.getString(DBConstants.STUDY_SPECIFIC_STATUSES));
-                    List<Value> defaultColumns = getListValue(rs.getString(DBConstants.DEFAULT_COLUMNS));
-                    result = new InstanceSettings(mrCoverPdfSettings, kitBehaviorChange, specialFormat, hideESFields, studySpecificStatuses,
-                            defaultColumns, rs.getBoolean(DBConstants.HAS_INVITATIONS), rs.getBoolean(DBConstants.GBF_SHIPPED_DSS_DELIVERED));
+                    result = getInstanceSettingsFormResultSet(rs);
                 }
             }
         }
@@ -152,6 +124,22 @@ public class InstanceSettings {
         return result;
     }
 
+    static InstanceSettings getInstanceSettingsFormResultSet(@NonNull ResultSet rs) throws SQLException {
+        List<Value> mrCoverPdfSettings = getListValue(rs.getString(DBConstants.MR_COVER_PDF));
+        List<Value> kitBehaviorChange = getListValue(rs.getString(DBConstants.KIT_BEHAVIOR_CHANGE));
+        List<Value> specialFormat = getListValue(rs.getString(DBConstants.SPECIAL_FORMAT));
+        List<Value> hideESFields = getListValue(rs.getString(DBConstants.HIDE_ES_FIELDS));
+        List<Value> studySpecificStatuses = getListValue(rs.getString(DBConstants.STUDY_SPECIFIC_STATUSES));
+        List<Value> defaultColumns = getListValue(rs.getString(DBConstants.DEFAULT_COLUMNS));
+        return new InstanceSettings(mrCoverPdfSettings, kitBehaviorChange, specialFormat, hideESFields, studySpecificStatuses,
+                defaultColumns, rs.getBoolean(DBConstants.HAS_INVITATIONS), rs.getBoolean(DBConstants.GBF_SHIPPED_DSS_DELIVERED));
+    }
+
+    InstanceSettings copy() {
+        return new InstanceSettings(mrCoverPdf, kitBehaviorChange, specialFormat, hideESFields, studySpecificStatuses,
+                defaultColumns, hasInvitations, gbfShippedTriggerDSSDelivered);
+    }
+
     public static boolean shouldKitBehaveDifferently(@NonNull Map<String, Object> participant, @NonNull Value behavior) {
         boolean specialKit = false;
         //condition type -> alert/notification is currently ignored for upload -> will alert per frontend
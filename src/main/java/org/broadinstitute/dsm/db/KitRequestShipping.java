@@ -632,6 +632,38 @@ public class KitRequestShipping extends KitRequest {
         return kitRequests;
     }
 
+    /**
+     * Same kits as {@link #getAllKitRequestsByRealm(String, String, String, boolean)} with getAll, but only of the given participants
+     */
+    public static Map<String, List<KitRequestShipping>> getAllKitRequestsByRealmAndParticipantIds(@NonNull String realm, @NonNull List<String> participantIds) {
+        Map<String, List<KitRequestShipping>> kitRequests = new HashMap<>();
+        if (participantIds.isEmpty()) {
+            return kitRequests;
+        }
+        SimpleResult results = inTransaction((conn) -> {
+            SimpleResult dbVals = new SimpleResult();
+            String query = SQL_SELECT_KIT_REQUEST.concat(QueryExtension.BY_REALM)
+                    .concat(" and request.ddp_participant_id IN (" + DBUtil.participantIdsInClause(participantIds) + ")");
+            try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setString(1, realm);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        addKitRequest(rs, kitRequests);
+                    }
+                }
+            }
+            catch (SQLException ex) {
+                dbVals.resultException = ex;
+            }
+            return dbVals;
+        });
+
+        if (results.resultException != null) {
+            throw new RuntimeException("Error getting list of kitRequests of participants for " + realm, results.resultException);
+        }
+        return kitRequests;
+    }
+
     private static PreparedStatement getPreparedStatement(@NonNull Connection conn, String target, @NonNull String realm, String type, boolean getAll) throws SQLException {
         PreparedStatement stmt = null;
         if (getAll) {
@@ -774,48 +806,53 @@ public class KitRequestShipping extends KitRequest {
                                       @NonNull int kitTypeId, @NonNull KitRequestSettings kitRequestSettings, String collaboratorParticipantId, boolean needsApproval, String externalOrderNumber,
                                       String uploadReason) {
         inTransaction((conn) -> {
-            String errorMessage = "";
-            String collaboratorSampleId = null;
-            String bspCollaboratorSampleType = kitType;
-            if (kitRequestSettings.getCollaboratorSampleTypeOverwrite() != null) {
-                bspCollaboratorSampleType = kitRequestSettings.getCollaboratorSampleTypeOverwrite();
-            }
-            if (StringUtils.isNotBlank(collaboratorParticipantId)) {
-                collaboratorSampleId = KitRequestShipping.generateBspSampleID(conn, collaboratorParticipantId, bspCollaboratorSampleType, kitTypeId);
-                if (collaboratorParticipantId == null) {
-                    errorMessage += "collaboratorParticipantId was too long ";
-                }
-                if (collaboratorSampleId == null) {
-                    errorMessage += "bspCollaboratorSampleId was too long ";
-                }
-            }
-            writeRequest(instanceId, kitRequestId, kitTypeId, participantId, collaboratorParticipantId, collaboratorSampleId,
-                    "SYSTEM", null, errorMessage, externalOrderNumber, needsApproval, uploadReason);
+            NewKitRequest newKitRequest = createNewKitRequest(conn, new HashMap<>(), instanceId, kitType, participantId, kitRequestId, kitTypeId,
+                    kitRequestSettings, collaboratorParticipantId, needsApproval, externalOrderNumber, uploadReason);
+            writeRequest(instanceId, kitRequestId, kitTypeId, participantId, collaboratorParticipantId, newKitRequest.getCollaboratorSampleId(),
+                    newKitRequest.getCreatedBy(), null, newKitRequest.getErrorMessage(), externalOrderNumber, needsApproval, uploadReason);
             return null;
         });
     }
 
+    /**
+     * Kit request of the hourly job, to write it with {@link #writeRequests(Connection, List)}
+     *
+     * @param notWrittenKitCounter see {@link #generateBspSampleID(Connection, String, String, int, Map)}
+     */
+    public static NewKitRequest createNewKitRequest(@NonNull Connection conn, @NonNull Map<String, Integer> notWrittenKitCounter,
+                                                    @NonNull String instanceId, @NonNull String kitType, @NonNull String participantId,
+                                                    @NonNull String kitRequestId, int kitTypeId, @NonNull KitRequestSettings kitRequestSettings,
+                                                    String collaboratorParticipantId, boolean needsApproval, String externalOrderNumber,
+                                                    String uploadReason) {
+        String errorMessage = "";
+        String collaboratorSampleId = null;
+        String bspCollaboratorSampleType = kitType;
+        if (kitRequestSettings.getCollaboratorSampleTypeOverwrite() != null) {
+            bspCollaboratorSampleType = kitRequestSettings.getCollaboratorSampleTypeOverwrite();
+        }
+        if (StringUtils.isNotBlank(collaboratorParticipantId)) {
+            collaboratorSampleId = generateBspSampleID(conn, collaboratorParticipantId, bspCollaboratorSampleType, kitTypeId, notWrittenKitCounter);
+            if (collaboratorParticipantId == null) {
+                errorMessage += "collaboratorParticipantId was too long ";
+            }
+            if (collaboratorSampleId == null) {
+                errorMessage += "bspCollaboratorSampleId was too long ";
+            }
+        }
+        return new NewKitRequest(instanceId, kitRequestId, kitTypeId, participantId, collaboratorParticipantId, collaboratorSampleId,
+                "SYSTEM", null, errorMessage, externalOrderNumber, needsApproval, uploadReason);
+    }
 
-    // called by
-    // 1. hourly job to add kit requests into db
-    // 2. kit upload
+
+    // called by hourly job to add kit requests into db
     public static String writeRequest(@NonNull String instanceId, @NonNull String ddpKitRequestId, @NonNull int kitTypeId,
                                       @NonNull String ddpParticipantId, String collaboratorPatientId, String collaboratorSampleId,
                                       @NonNull String createdBy, String addressIdTo, String errorMessage, String externalOrderNumber, boolean needsApproval, String uploadReason) {
         SimpleResult results = inTransaction((conn) -> {
             SimpleResult dbVals = new SimpleResult(0);
             try (PreparedStatement insertKitRequest = conn.prepareStatement(TransactionWrapper.getSqlFromConfig(ApplicationConfigConstants.INSERT_KIT_REQUEST), Statement.RETURN_GENERATED_KEYS)) {
-                insertKitRequest.setString(1, instanceId);
-                insertKitRequest.setString(2, ddpKitRequestId);
-                insertKitRequest.setInt(3, kitTypeId);
-                insertKitRequest.setString(4, ddpParticipantId);
-                insertKitRequest.setObject(5, collaboratorPatientId);
-                insertKitRequest.setObject(6, collaboratorSampleId);
-                insertKitRequest.setObject(7, StringUtils.isNotBlank(externalOrderNumber) ? null : generateDdpLabelID()); //ddp_label or shipping_id
-                insertKitRequest.setString(8, createdBy);
-                insertKitRequest.setLong(9, System.currentTimeMillis());
-                insertKitRequest.setObject(10, StringUtils.isNotBlank(externalOrderNumber) ? externalOrderNumber : null); //external_order_number
-                insertKitRequest.setString(11, uploadReason); //upload reason
+                setKitRequestParameters(insertKitRequest, instanceId, ddpKitRequestId, kitTypeId, ddpParticipantId, collaboratorPatientId,
+                        collaboratorSampleId, createdBy, externalOrderNumber, uploadReason);
                 insertKitRequest.executeUpdate();
                 try (ResultSet rs = insertKitRequest.getGeneratedKeys()) {
                     if (rs.next()) {
@@ -846,21 +883,7 @@ public class KitRequestShipping extends KitRequest {
     private static SimpleResult writeNewKit(Connection conn, String kitRequestId, String addressIdTo, String errorMessage, boolean needsApproval) {
         SimpleResult dbVals = new SimpleResult();
         try (PreparedStatement insertKit = conn.prepareStatement(INSERT_KIT)) {
-            insertKit.setString(1, kitRequestId);
-            if (StringUtils.isNotBlank(addressIdTo)) {
-                insertKit.setString(2, addressIdTo);
-            }
-            else {
-                insertKit.setString(2, null);
-            }
-            if (StringUtils.isNotBlank(errorMessage) && !KitUtil.IGNORE_AUTO_DEACTIVATION.equals(errorMessage)) {
-                insertKit.setInt(3, 1);
-            }
-            else {
-                insertKit.setInt(3, 0);
-            }
-            insertKit.setObject(4, errorMessage);
-            insertKit.setBoolean(5, needsApproval);
+            setNewKitParameters(insertKit, kitRequestId, addressIdTo, errorMessage, needsApproval);
             insertKit.executeUpdate();
         }
         catch (SQLException e) {
@@ -869,6 +892,103 @@ public class KitRequestShipping extends KitRequest {
         return dbVals;
     }
 
+    // called by kit upload and the DDP kit request job, writes the kit requests and their kits in batches with the connection of the caller
+    public static List<String> writeRequests(@NonNull Connection conn, @NonNull List<NewKitRequest> newKitRequests) {
+        if (newKitRequests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> dsmKitRequestIds = new ArrayList<>();
+        try (PreparedStatement insertKitRequest = conn.prepareStatement(TransactionWrapper.getSqlFromConfig(ApplicationConfigConstants.INSERT_KIT_REQUEST), Statement.RETURN_GENERATED_KEYS)) {
+            for (NewKitRequest newKitRequest : newKitRequests) {
+                setKitRequestParameters(insertKitRequest, newKitRequest.getInstanceId(), newKitRequest.getDdpKitRequestId(), newKitRequest.getKitTypeId(),
+                        newKitRequest.getDdpParticipantId(), newKitRequest.getCollaboratorPatientId(), newKitRequest.getCollaboratorSampleId(),
+                        newKitRequest.getCreatedBy(), newKitRequest.getExternalOrderNumber(), newKitRequest.getUploadReason());
+                insertKitRequest.addBatch();
+            }
+            insertKitRequest.executeBatch();
+            try (ResultSet rs = insertKitRequest.getGeneratedKeys()) {
+                while (rs.next()) {
+                    dsmKitRequestIds.add(rs.getString(1));
+                }
+            }
+        }
+        catch (SQLException e) {
+            throw new RuntimeException("Error adding " + newKitRequests.size() + " kit requests", e);
+        }
+        if (dsmKitRequestIds.size() != newKitRequests.size()) {
+            throw new RuntimeException("Error getting ids of new kit requests (Got " + dsmKitRequestIds.size() + " ids for " + newKitRequests.size() + " kit requests)");
+        }
+
+        try (PreparedStatement insertKit = conn.prepareStatement(INSERT_KIT)) {
+            for (int i = 0; i < newKitRequests.size(); i++) {
+                NewKitRequest newKitRequest = newKitRequests.get(i);
+                setNewKitParameters(insertKit, dsmKitRequestIds.get(i), newKitRequest.getAddressIdTo(), newKitRequest.getErrorMessage(),
+                        newKitRequest.isNeedsApproval());
+                insertKit.addBatch();
+            }
+            insertKit.executeBatch();
+        }
+        catch (SQLException e) {
+            throw new RuntimeException("Error adding kits of " + newKitRequests.size() + " new kit requests", e);
+        }
+        logger.info("Added " + newKitRequests.size() + " kitRequests");
+        return dsmKitRequestIds;
+    }
+
+    private static void setKitRequestParameters(PreparedStatement insertKitRequest, String instanceId, String ddpKitRequestId, int kitTypeId,
+                                                String ddpParticipantId, String collaboratorPatientId, String collaboratorSampleId,
+                                                String createdBy, String externalOrderNumber, String uploadReason) throws SQLException {
+        insertKitRequest.setString(1, instanceId);
+        insertKitRequest.setString(2, ddpKitRequestId);
+        insertKitRequest.setInt(3, kitTypeId);
+        insertKitRequest.setString(4, ddpParticipantId);
+        insertKitRequest.setObject(5, collaboratorPatientId);
+        insertKitRequest.setObject(6, collaboratorSampleId);
+        insertKitRequest.setObject(7, StringUtils.isNotBlank(externalOrderNumber) ? null : generateDdpLabelID()); //ddp_label or shipping_id
+        insertKitRequest.setString(8, createdBy);
+        insertKitRequest.setLong(9, System.currentTimeMillis());
+        insertKitRequest.setObject(10, StringUtils.isNotBlank(externalOrderNumber) ? externalOrderNumber : null); //external_order_number
+        insertKitRequest.setString(11, uploadReason); //upload reason
+    }
+
+    private static void setNewKitParameters(PreparedStatement insertKit, String kitRequestId, String addressIdTo, String errorMessage,
+                                            boolean needsApproval) throws SQLException {
+        insertKit.setString(1, kitRequestId);
+        if (StringUtils.isNotBlank(addressIdTo)) {
+            insertKit.setString(2, addressIdTo);
+        }
+        else {
+            insertKit.setString(2, null);
+        }
+        if (StringUtils.isNotBlank(errorMessage) && !KitUtil.IGNORE_AUTO_DEACTIVATION.equals(errorMessage)) {
+            insertKit.setInt(3, 1);
+        }
+        else {
+            insertKit.setInt(3, 0);
+        }
+        insertKit.setObject(4, errorMessage);
+        insertKit.setBoolean(5, needsApproval);
+    }
+
+    /**
+     * Kit request and its kit, which get written with {@link #writeRequests(Connection, List)}
+     */
+    @Data
+    public static class NewKitRequest {
+        private final String instanceId;
+        private final String ddpKitRequestId;
+        private final int kitTypeId;
+        private final String ddpParticipantId;
+        private final String collaboratorPatientId;
+        private final String collaboratorSampleId;
+        private final String createdBy;
+        private final String addressIdTo;
+        private final String errorMessage;
+        private final String externalOrderNumber;
+        private final boolean needsApproval;
+        private final String uploadReason;
+    }
+
     // called by reactivation of a deactivated kit
     public static void writeNewKit(String kitRequestId, String addressIdTo, String errorMessage, boolean needsApproval) {
         SimpleResult results = inTransaction((conn) -> {
@@ -914,64 +1034,13 @@ public class KitRequestShipping extends KitRequest {
         }
     }
 
-    // update kit with label information
-    public static void updateKit(String kitRequestId, Shipment participantShipment, Shipment returnShipment,
-                                 String errorMessage, Address toAddress, boolean isExpress) {
+    // update kit with label information, returns false if it couldn't be updated
+    public static boolean updateKit(String kitRequestId, Shipment participantShipment, Shipment returnShipment,
+                                    String errorMessage, Address toAddress, boolean isExpress) {
         SimpleResult results = inTransaction((conn) -> {
             SimpleResult dbVals = new SimpleResult();
             try (PreparedStatement stmt = conn.prepareStatement(UPDATE_KIT)) {
-                if (participantShipment != null) {
-                    PostageLabel participantLabel = participantShipment.getPostageLabel();
-                    Tracker participantTracker = participantShipment.getTracker();
-                    stmt.setString(1, participantLabel.getLabelUrl());
-                    stmt.setString(3, participantShipment.getId());
-                    stmt.setString(5, participantShipment.getTrackingCode());
-                    stmt.setString(7, participantTracker.getPublicUrl());
-                }
-                else {
-                    stmt.setString(1, null);
-                    stmt.setString(3, null);
-                    stmt.setString(5, null);
-                    stmt.setString(7, null);
-                }
-                if (returnShipment != null) {
-                    PostageLabel returnLabel = returnShipment.getPostageLabel();
-                    Tracker returnTracker = returnShipment.getTracker();
-                    stmt.setString(2, returnLabel.getLabelUrl());
-                    stmt.setString(4, returnShipment.getId());
-                    stmt.setString(6, returnShipment.getTrackingCode());
-                    stmt.setString(8, returnTracker.getPublicUrl());
-                }
-                else {
-                    stmt.setString(2, null);
-                    stmt.setString(4, null);
-                    stmt.setString(6, null);
-                    stmt.setString(8, null);
-                }
-
-                if (StringUtils.isNotBlank(errorMessage)) {
-                    stmt.setInt(9, 1);
-                    stmt.setString(10, errorMessage);
-                    logger.info("Added kit request with error message " + errorMessage);
-                }
-                else {
-                    stmt.setInt(9, 0);
-                    stmt.setString(10, null);
-                }
-
-                if (toAddress != null) {
-                    stmt.setString(11, toAddress.getId());
-                }
-                else {
-                    stmt.setString(11, null);
-                }
-                if (isExpress) {
-                    stmt.setInt(12, 1);
-                }
-                else {
-                    stmt.setInt(12, 0);
-                }
-                stmt.setString(13, kitRequestId);
+                setKitLabelParameters(stmt, kitRequestId, participantShipment, returnShipment, errorMessage, toAddress, isExpress);
                 int result = stmt.executeUpdate();
                 if (result != 1) {
                     throw new RuntimeException("Error updating kit " + kitRequestId + " it was updating " + result + " rows");
@@ -985,9 +1054,144 @@ public class KitRequestShipping extends KitRequest {
 
         if (results.resultException != null) {
             logger.error("Error updating kit w/ dsm_kit_id " + kitRequestId, results.resultException);
+            return false;
         }
         else {
             logger.info("Updated kit w/ dsm_kit_id " + kitRequestId, results.resultException);
+            return true;
+        }
+    }
+
+    /**
+     * Updates kits with label information, all in one batch.
+     * If the batch fails the kits are updated one by one, so one bad kit doesn't lose the labels of the others
+     *
+     * @return labels which couldn't be saved
+     */
+    public static List<ShipmentLabel> updateKits(@NonNull List<ShipmentLabel> shipmentLabels) {
+        if (shipmentLabels.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ShipmentLabel> notSavedLabels = new ArrayList<>();
+        SimpleResult results = inTransaction((conn) -> {
+            SimpleResult dbVals = new SimpleResult();
+            try (PreparedStatement stmt = conn.prepareStatement(UPDATE_KIT)) {
+                for (ShipmentLabel shipmentLabel : shipmentLabels) {
+                    setKitLabelParameters(stmt, shipmentLabel.getDsmKitId(), shipmentLabel.getParticipantShipment(), shipmentLabel.getReturnShipment(),
+                            shipmentLabel.getErrorMessage(), shipmentLabel.getToAddress(), shipmentLabel.isExpress());
+                    stmt.addBatch();
+                }
+                int[] result = stmt.executeBatch();
+                for (int i = 0; i < result.length; i++) {
+                    if (result[i] != 1 && result[i] != Statement.SUCCESS_NO_INFO) {
+                        logger.error("Error updating kit " + shipmentLabels.get(i).getDsmKitId() + " it was updating " + result[i] + " rows");
+                        notSavedLabels.add(shipmentLabels.get(i));
+                    }
+                }
+            }
+            catch (Exception e) {
+                dbVals.resultException = e;
+            }
+            return dbVals;
+        });
+
+        if (results.resultException != null) {
+            logger.error("Error updating " + shipmentLabels.size() + " kits with label information in one batch, updating them one by one",
+                    results.resultException);
+            notSavedLabels.clear();
+            for (ShipmentLabel shipmentLabel : shipmentLabels) {
+                if (!updateKit(shipmentLabel.getDsmKitId(), shipmentLabel.getParticipantShipment(), shipmentLabel.getReturnShipment(),
+                        shipmentLabel.getErrorMessage(), shipmentLabel.getToAddress(), shipmentLabel.isExpress())) {
+                    notSavedLabels.add(shipmentLabel);
+                }
+            }
+        }
+        logger.info("Updated " + (shipmentLabels.size() - notSavedLabels.size()) + " of " + shipmentLabels.size() + " kits with label information");
+        return notSavedLabels;
+    }
+
+    private static void setKitLabelParameters(PreparedStatement stmt, String kitRequestId, Shipment participantShipment, Shipment returnShipment,
+                                              String errorMessage, Address toAddress, boolean isExpress) throws SQLException {
+        if (participantShipment != null) {
+            PostageLabel participantLabel = participantShipment.getPostageLabel();
+            Tracker participantTracker = participantShipment.getTracker();
+            stmt.setString(1, participantLabel.getLabelUrl());
+            stmt.setString(3, participantShipment.getId());
+            stmt.setString(5, participantShipment.getTrackingCode());
+            stmt.setString(7, participantTracker.getPublicUrl());
+        }
+        else {
+            stmt.setString(1, null);
+            stmt.setString(3, null);
+            stmt.setString(5, null);
+            stmt.setString(7, null);
+        }
+        if (returnShipment != null) {
+            PostageLabel returnLabel = returnShipment.getPostageLabel();
+            Tracker returnTracker = returnShipment.getTracker();
+            stmt.setString(2, returnLabel.getLabelUrl());
+            stmt.setString(4, returnShipment.getId());
+            stmt.setString(6, returnShipment.getTrackingCode());
+            stmt.setString(8, returnTracker.getPublicUrl());
+        }
+        else {
+            stmt.setString(2, null);
+            stmt.setString(4, null);
+            stmt.setString(6, null);
+            stmt.setString(8, null);
+        }
+
+        if (StringUtils.isNotBlank(errorMessage)) {
+            stmt.setInt(9, 1);
+            stmt.setString(10, errorMessage);
+            logger.info("Added kit request with error message " + errorMessage);
+        }
+        else {
+            stmt.setInt(9, 0);
+            stmt.setString(10, null);
+        }
+
+        if (toAddress != null) {
+            stmt.setString(11, toAddress.getId());
+        }
+        else {
+            stmt.setString(11, null);
+        }
+        if (isExpress) {
+            stmt.setInt(12, 1);
+        }
+        else {
+            stmt.setInt(12, 0);
+        }
+        stmt.setString(13, kitRequestId);
+    }
+
+    /**
+     * Label information of one kit, which gets written with {@link #updateKits(List)}
+     */
+    @Data
+    public static class ShipmentLabel {
+        private final String dsmKitId;
+        private final Shipment participantShipment;
+        private final Shipment returnShipment;
+        private final String errorMessage;
+        private final Address toAddress;
+        private final boolean express;
+
+        /**
+         * Ids, tracking codes and label urls of the shipments, everything needed to save the label by hand
+         */
+        public String getLabelInformation() {
+            return "participant shipment " + getShipmentInformation(participantShipment) + ", return shipment " + getShipmentInformation(returnShipment);
+        }
+
+        private static String getShipmentInformation(Shipment shipment) {
+            if (shipment == null) {
+                return "none";
+            }
+            return shipment.getId() + " (tracking code " + shipment.getTrackingCode()
+                    + ", label " + (shipment.getPostageLabel() != null ? shipment.getPostageLabel().getLabelUrl() : null)
+                    + ", tracker " + (shipment.getTracker() != null ? shipment.getTracker().getPublicUrl() : null) + ")";
         }
     }
 
@@ -1052,12 +1256,25 @@ public class KitRequestShipping extends KitRequest {
     }
 
     public static String generateBspSampleID(@NonNull Connection conn, String collaboratorParticipantId, String type, int kitTypeId) {
+        return generateBspSampleID(conn, collaboratorParticipantId, type, kitTypeId, new HashMap<>());
+    }
+
+    /**
+     * Generates the bsp_collaborator_sample_id for a kit request which doesn't get written right away (e.g. batch of the kit upload)
+     *
+     * @param notWrittenKitCounter number of ids generated per collaborator sample id and kit type which are not in the db yet.
+     *                             Gets counted up, so ids of the same batch don't collide
+     */
+    public static String generateBspSampleID(@NonNull Connection conn, String collaboratorParticipantId, String type, int kitTypeId,
+                                             @NonNull Map<String, Integer> notWrittenKitCounter) {
         if (collaboratorParticipantId != null && collaboratorParticipantId.length() < COLLABORATOR_MAX_LENGTH) {
             String collaboratorSampleId = collaboratorParticipantId;
             if (StringUtils.isNotBlank(type)) {
                 collaboratorSampleId += "_" + type;
             }
-            int counter = getKitCounter(conn, collaboratorSampleId, kitTypeId);
+            String counterKey = collaboratorSampleId + "_" + kitTypeId;
+            int counter = getKitCounter(conn, collaboratorSampleId, kitTypeId) + notWrittenKitCounter.getOrDefault(counterKey, 0);
+            notWrittenKitCounter.merge(counterKey, 1, Integer::sum);
             if (counter == 0) {
                 if (collaboratorSampleId.length() < COLLABORATOR_MAX_LENGTH) {
                     return collaboratorSampleId;
@@ -22,11 +22,13 @@ public class KitType {
 
     private static final Logger logger = LoggerFactory.getLogger(KitType.class);
 
-    private static final String SQL_SELECT_KIT_TYPES = "SELECT DISTINCT rel.external_shipper, type.kit_type_id, rel.kit_type_display_name, type.kit_type_name, type.manual_sent_track, rel.upload_reasons FROM ddp_kit_request_settings rel, kit_type type," +
+    //kit types of realms and the roles the users have for them
+    static final String SQL_FROM_KIT_TYPES = " FROM ddp_kit_request_settings rel, kit_type type," +
             " ddp_instance realm, access_user user, access_role role, access_user_role_group user_role, ddp_instance_group realmGroup WHERE rel.kit_type_id = type.kit_type_id" +
             " AND rel.ddp_instance_id = realm.ddp_instance_id AND user_role.user_id = user.user_id AND user_role.role_id = role.role_id AND realm.ddp_instance_id = realmGroup.ddp_instance_id" +
-            " AND realmGroup.ddp_group_id = user_role.group_id AND ((type.required_role IS NOT NULL AND user_role.role_id = type.required_role) OR (type.required_role IS NULL AND role.name regexp '^kit_shipping'))" +
-            " AND realm.instance_name = ?";
+            " AND realmGroup.ddp_group_id = user_role.group_id AND ((type.required_role IS NOT NULL AND user_role.role_id = type.required_role) OR (type.required_role IS NULL AND role.name regexp '^kit_shipping'))";
+    private static final String SQL_SELECT_KIT_TYPES = "SELECT DISTINCT rel.external_shipper, type.kit_type_id, rel.kit_type_display_name, type.kit_type_name, type.manual_sent_track, rel.upload_reasons" +
+            SQL_FROM_KIT_TYPES + " AND realm.instance_name = ?";
 
     private static final String SQL_SELECT_UPLOAD_REASONS = "SELECT upload_reasons FROM ddp_kit_request_settings kits" +
             " LEFT JOIN ddp_instance realm ON (realm.ddp_instance_id = kits.ddp_instance_id) " +
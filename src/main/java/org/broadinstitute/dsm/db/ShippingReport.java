@@ -0,0 +1,270 @@
+package org.broadinstitute.dsm.db;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Data;
+import lombok.NonNull;
+import org.broadinstitute.ddp.db.SimpleResult;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
+import org.broadinstitute.dsm.statics.DBConstants;
+import org.broadinstitute.dsm.statics.QueryExtension;
+import org.broadinstitute.dsm.util.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.broadinstitute.ddp.db.TransactionWrapper.inTransaction;
+
+/**
+ * Kit numbers of all realms of a user per kit type, counted by a few grouped queries over all realms
+ * instead of queries per realm and kit type.
+ * Reports are kept for a short time per user and period, so reloading the page doesn't count everything again
+ */
+public class ShippingReport {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShippingReport.class);
+
+    private static final String SQL_SELECT_KIT_TYPES = "SELECT DISTINCT realm.instance_name, type.kit_type_id, type.kit_type_name" +
+            KitType.SQL_FROM_KIT_TYPES + " AND realm.instance_name IN (%s)" + QueryExtension.BY_USER_ID + " ORDER BY type.kit_type_id";
+    private static final String SQL_SELECT_SUB_KIT_TYPES = "SELECT realm.instance_name, kitParent.kit_type_name AS parent_kit_type_name, kit.kit_type_id FROM ddp_kit_request_settings dkc " +
+            "LEFT JOIN sub_kits_settings subK ON (subK.ddp_kit_request_settings_id = dkc.ddp_kit_request_settings_id) LEFT JOIN ddp_instance realm ON (realm.ddp_instance_id = dkc.ddp_instance_id) " +
+            "LEFT JOIN kit_type kit ON (subK.kit_type_id = kit.kit_type_id) LEFT JOIN kit_type kitParent ON (dkc.kit_type_id = kitParent.kit_type_id) " +
+            "WHERE realm.instance_name IN (%s)";
+    private static final String SQL_FROM_KIT_REQUESTS = " FROM ddp_kit_request request LEFT JOIN ddp_kit kit ON (request.dsm_kit_request_id = kit.dsm_kit_request_id) " +
+            "LEFT JOIN ddp_instance realm ON (request.ddp_instance_id = realm.ddp_instance_id) " +
+            "LEFT JOIN ddp_participant_exit ex ON (request.ddp_participant_id = ex.ddp_participant_id AND request.ddp_instance_id = ex.ddp_instance_id) " +
+            "WHERE realm.instance_name IN (%s) AND kit.deactivated_date IS NULL AND ex.ddp_participant_exit_id IS NULL";
+    //count(column) only counts rows where the column is not null, so every case counts the request only if the condition is true
+    private static final String SQL_SELECT_KIT_REQUESTS = "SELECT realm.instance_name, request.kit_type_id, " +
+            "count(request.ddp_kit_request_id) AS kitNew, " +
+            "count(CASE WHEN request.created_date >= ? AND request.created_date <= ? THEN request.ddp_kit_request_id END) AS kitNewPeriod, " +
+            "count(CASE WHEN kit.kit_complete = 1 THEN request.ddp_kit_request_id END) AS kitSent, " +
+            "count(CASE WHEN kit.kit_complete = 1 AND kit.scan_date >= ? AND kit.scan_date <= ? THEN request.ddp_kit_request_id END) AS kitSentPeriod, " +
+            "count(CASE WHEN kit.receive_date IS NOT NULL THEN request.ddp_kit_request_id END) AS kitReceived, " +
+            "count(CASE WHEN kit.receive_date >= ? AND kit.receive_date <= ? THEN request.ddp_kit_request_id END) AS kitReceivedPeriod" +
+            SQL_FROM_KIT_REQUESTS + " GROUP BY realm.instance_name, request.kit_type_id";
+    private static final String SQL_SELECT_KIT_REQUESTS_PER_MONTH = "SELECT realm.instance_name, request.kit_type_id, FROM_UNIXTIME(kit.scan_date/1000, '%%m/01/%%Y') AS month, " +
+            "count(*) AS kitSent, 0 AS kitReceived" + SQL_FROM_KIT_REQUESTS + " AND kit.kit_complete = 1 " +
+            "GROUP BY realm.instance_name, request.kit_type_id, FROM_UNIXTIME(kit.scan_date/1000, '%%m/01/%%Y') " +
+            "UNION ALL SELECT realm.instance_name, request.kit_type_id, FROM_UNIXTIME(kit.receive_date/1000, '%%m/01/%%Y') AS month, " +
+            "0 AS kitSent, count(request.ddp_kit_request_id) AS kitReceived" + SQL_FROM_KIT_REQUESTS + " AND kit.receive_date IS NOT NULL " +
+            "GROUP BY realm.instance_name, request.kit_type_id, FROM_UNIXTIME(kit.receive_date/1000, '%%m/01/%%Y')";
+    private static final String PARENT_KIT_TYPE_NAME = "parent_kit_type_name";
+
+    private static final long DEFAULT_CACHE_TTL_SECONDS = 60L;
+    private static final long DEFAULT_CACHE_MAX_ENTRIES = 1000L;
+
+    private static Cache<String, List<KitReport>> reports;
+
+    /**
+     * Numbers of all kits and of the kits of the period per realm and kit type
+     */
+    public static List<KitReport> getShippingReport(@NonNull String userId, @NonNull Collection<String> realms, long start, long end) {
+        return getCached(userId + "/" + start + "/" + end + "/" + realms, () -> {
+            logger.info("Shipping report");
+            List<String> realmList = new ArrayList<>(realms);
+            Map<String, List<KitTypeOfRealm>> kitTypes = getKitTypes(userId, realmList);
+            Map<String, Map<String, Integer>> subKitTypeIds = getFirstSubKitTypeIds(realmList);
+            Map<String, SummaryKitType> counts = getKitRequestCounts(realmList, start, end);
+
+            List<KitReport> kitReports = new ArrayList<>();
+            for (String realm : realmList) {
+                List<SummaryKitType> summaryKitTypes = new ArrayList<>();
+                for (KitTypeOfRealm kitType : kitTypes.getOrDefault(realm, Collections.emptyList())) {
+                    //kit has sub kits (assumption: all subkits stay together and will therefore be counted as just "one" kit)
+                    int kitTypeId = subKitTypeIds.getOrDefault(realm, Collections.emptyMap()).getOrDefault(kitType.getKitTypeName(), kitType.getKitTypeId());
+                    SummaryKitType count = counts.get(realm + "_" + kitTypeId);
+                    summaryKitTypes.add(count != null ? new SummaryKitType(kitType.getKitTypeName(), count.newK, count.sent, count.received,
+                            count.newPeriod, count.sentPeriod, count.receivedPeriod) : new SummaryKitType(kitType.getKitTypeName(), 0, 0, 0, 0, 0, 0));
+                }
+                kitReports.add(new KitReport(realm, summaryKitTypes));
+            }
+            return kitReports;
+        });
+    }
+
+    /**
+     * Numbers of sent and received kits per realm, kit type and month
+     */
+    public static List<KitReport> getShippingReportDownload(@NonNull String userId, @NonNull Collection<String> realms) {
+        return getCached(userId + "/download/" + realms, () -> {
+            logger.info("Shipping report for download");
+            List<String> realmList = new ArrayList<>(realms);
+            Map<String, List<KitTypeOfRealm>> kitTypes = getKitTypes(userId, realmList);
+            Map<String, Map<String, SummaryKitType>> months = getKitRequestCountsPerMonth(realmList);
+
+            List<KitReport> kitReports = new ArrayList<>();
+            for (String realm : realmList) {
+                List<SummaryKitType> summaryKitTypes = new ArrayList<>();
+                for (KitTypeOfRealm kitType : kitTypes.getOrDefault(realm, Collections.emptyList())) {
+                    for (SummaryKitType month : months.getOrDefault(realm + "_" + kitType.getKitTypeId(), Collections.emptyMap()).values()) {
+                        summaryKitTypes.add(new SummaryKitType(kitType.getKitTypeName(), month.sent, month.received, month.month));
+                    }
+                }
+                kitReports.add(new KitReport(realm, summaryKitTypes));
+            }
+            return kitReports;
+        });
+    }
+
+    private static List<KitReport> getCached(String key, Callable<List<KitReport>> loader) {
+        try {
+            return getReports().get(key, loader);
+        }
+        catch (ExecutionException e) {
+            throw new RuntimeException("Couldn't get shipping report", e.getCause());
+        }
+    }
+
+    private static synchronized Cache<String, List<KitReport>> getReports() {
+        if (reports == null) {
+            reports = CacheBuilder.newBuilder()
+                    .maximumSize(ConfigUtil.getLong(ApplicationConfigConstants.SHIPPING_REPORT_CACHE_MAX_ENTRIES, DEFAULT_CACHE_MAX_ENTRIES))
+                    .expireAfterWrite(ConfigUtil.getLong(ApplicationConfigConstants.SHIPPING_REPORT_CACHE_TTL_SECONDS, DEFAULT_CACHE_TTL_SECONDS), TimeUnit.SECONDS)
+                    .build();
+        }
+        return reports;
+    }
+
+    private static Map<String, List<KitTypeOfRealm>> getKitTypes(@NonNull String userId, @NonNull List<String> realms) {
+        Map<String, List<KitTypeOfRealm>> kitTypes = new HashMap<>();
+        if (realms.isEmpty()) {
+            return kitTypes;
+        }
+        runQuery(String.format(SQL_SELECT_KIT_TYPES, getPlaceholders(realms)), realms, stmt -> stmt.setString(realms.size() + 1, userId), rs -> {
+            kitTypes.computeIfAbsent(rs.getString(DBConstants.INSTANCE_NAME), realm -> new ArrayList<>())
+                    .add(new KitTypeOfRealm(rs.getInt(DBConstants.KIT_TYPE_ID), rs.getString(DBConstants.KIT_TYPE_NAME)));
+        });
+        return kitTypes;
+    }
+
+    /**
+     * @return kit type id of the first sub kit per realm and kit type name, only of kit types with more than one sub kit
+     */
+    private static Map<String, Map<String, Integer>> getFirstSubKitTypeIds(@NonNull List<String> realms) {
+        Map<String, Map<String, List<Integer>>> subKitTypeIds = new HashMap<>();
+        if (realms.isEmpty()) {
+            return new HashMap<>();
+        }
+        runQuery(String.format(SQL_SELECT_SUB_KIT_TYPES, getPlaceholders(realms)), realms, null, rs -> {
+            subKitTypeIds.computeIfAbsent(rs.getString(DBConstants.INSTANCE_NAME), realm -> new HashMap<>())
+                    .computeIfAbsent(rs.getString(PARENT_KIT_TYPE_NAME), kitType -> new ArrayList<>())
+                    .add(rs.getInt(DBConstants.KIT_TYPE_ID));
+        });
+        Map<String, Map<String, Integer>> firstSubKitTypeIds = new HashMap<>();
+        subKitTypeIds.forEach((realm, kitTypes) -> kitTypes.forEach((kitType, ids) -> {
+            if (ids.size() > 1) { //otherwise it found the normal kit
+                firstSubKitTypeIds.computeIfAbsent(realm, r -> new HashMap<>()).put(kitType, ids.get(0));
+            }
+        }));
+        return firstSubKitTypeIds;
+    }
+
+    /**
+     * @return counts keyed by realm + "_" + kit type id
+     */
+    private static Map<String, SummaryKitType> getKitRequestCounts(@NonNull List<String> realms, long start, long end) {
+        Map<String, SummaryKitType> counts = new HashMap<>();
+        if (realms.isEmpty()) {
+            return counts;
+        }
+        runQuery(String.format(SQL_SELECT_KIT_REQUESTS, getPlaceholders(realms)), realms, stmt -> {
+            stmt.setLong(1, start);
+            stmt.setLong(2, end);
+            stmt.setLong(3, start);
+            stmt.setLong(4, end);
+            stmt.setLong(5, start);
+            stmt.setLong(6, end);
+        }, rs -> counts.put(rs.getString(DBConstants.INSTANCE_NAME) + "_" + rs.getInt(DBConstants.KIT_TYPE_ID),
+                new SummaryKitType(null, rs.getInt(DBConstants.KIT_NEW), rs.getInt(DBConstants.KIT_SENT), rs.getInt(DBConstants.KIT_RECEIVED),
+                        rs.getInt(DBConstants.KIT_NEW_PERIOD), rs.getInt(DBConstants.KIT_SENT_PERIOD), rs.getInt(DBConstants.KIT_RECEIVED_PERIOD))), 6);
+        return counts;
+    }
+
+    /**
+     * @return sent and received per month, keyed by realm + "_" + kit type id and month
+     */
+    private static Map<String, Map<String, SummaryKitType>> getKitRequestCountsPerMonth(@NonNull List<String> realms) {
+        Map<String, Map<String, SummaryKitType>> months = new HashMap<>();
+        if (realms.isEmpty()) {
+            return months;
+        }
+        String placeholders = getPlaceholders(realms);
+        List<String> parameters = new ArrayList<>(realms);
+        parameters.addAll(realms);
+        runQuery(String.format(SQL_SELECT_KIT_REQUESTS_PER_MONTH, placeholders, placeholders), parameters, null, rs -> {
+            String month = rs.getString(DBConstants.MONTH);
+            SummaryKitType summaryKitType = months.computeIfAbsent(rs.getString(DBConstants.INSTANCE_NAME) + "_" + rs.getInt(DBConstants.KIT_TYPE_ID),
+                    kitType -> new LinkedHashMap<>()).computeIfAbsent(month, m -> new SummaryKitType(null, 0, 0, month));
+            summaryKitType.sent += rs.getInt(DBConstants.KIT_SENT);
+            summaryKitType.received += rs.getInt(DBConstants.KIT_RECEIVED);
+        });
+        return months;
+    }
+
+    private static void runQuery(String query, List<String> realms, ParameterSetter parameterSetter, RowReader rowReader) {
+        runQuery(query, realms, parameterSetter, rowReader, 0);
+    }
+
+    /**
+     * @param realmOffset number of parameters before the realms
+     */
+    private static void runQuery(String query, List<String> realms, ParameterSetter parameterSetter, RowReader rowReader, int realmOffset) {
+        SimpleResult results = inTransaction((conn) -> {
+            SimpleResult dbVals = new SimpleResult();
+            try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                for (int i = 0; i < realms.size(); i++) {
+                    stmt.setString(realmOffset + i + 1, realms.get(i));
+                }
+                if (parameterSetter != null) {
+                    parameterSetter.setParameters(stmt);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rowReader.readRow(rs);
+                    }
+                }
+            }
+            catch (SQLException ex) {
+                dbVals.resultException = ex;
+            }
+            return dbVals;
+        });
+
+        if (results.resultException != null) {
+            throw new RuntimeException("Error getting kit request information ", results.resultException);
+        }
+    }
+
+    private static String getPlaceholders(List<String> realms) {
+        return realms.stream().map(realm -> "?").collect(Collectors.joining(","));
+    }
+
+    private interface ParameterSetter {
+        void setParameters(PreparedStatement stmt) throws SQLException;
+    }
+
+    private interface RowReader {
+        void readRow(ResultSet rs) throws SQLException;
+    }
+
+    @Data
+    private static class KitTypeOfRealm {
+        private final int kitTypeId;
+        private final String kitTypeName;
+    }
+}
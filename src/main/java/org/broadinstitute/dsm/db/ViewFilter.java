@@ -14,6 +14,7 @@ import org.broadinstitute.dsm.model.Filter;
 import org.broadinstitute.dsm.model.NameValue;
 import org.broadinstitute.dsm.model.ParticipantColumn;
 import org.broadinstitute.dsm.model.TissueList;
+import org.broadinstitute.dsm.model.filter.FilterPlanCache;
 import org.broadinstitute.dsm.statics.DBConstants;
 import org.broadinstitute.dsm.util.PatchUtil;
 import org.broadinstitute.dsm.util.SystemUtil;
@@ -469,6 +470,13 @@ public class ViewFilter {
      * @return ViewFilter which the input string is parsed and is in as a Filter[]
      */
     public static ViewFilter parseFilteringQuery(String str, ViewFilter viewFilter) {
+        FilterPlanCache.FilterPlan plan = FilterPlanCache.getFilterPlan(viewFilter.parent, str, () -> compileFilteringQuery(str, viewFilter.parent));
+        return new ViewFilter(viewFilter.filterName, viewFilter.columns, viewFilter.id, viewFilter.fDeleted, viewFilter.shared,
+                viewFilter.userId, plan.copyFilters(), viewFilter.parent,
+                viewFilter.icon, viewFilter.quickFilterName, plan.getFrontEndQuery(), null, viewFilter.realmId);
+    }
+
+    private static FilterPlanCache.FilterPlan compileFilteringQuery(String str, String parent) {
         String[] conditions = str.split("(and\\s)|(AND\\s)");
         Map<String, Filter> filters = new HashMap<>(conditions.length);
         for (String condition : conditions) {
@@ -942,7 +950,7 @@ public class ViewFilter {
                 filter.setExactMatch(exact);
                 filter.setRange(range);
                 filter.setNotEmpty(notEmpty);
-                filter.setParentName(viewFilter.getParent());
+                filter.setParentName(parent);
                 filter.setEmpty(empty);
                 filter.setParticipantColumn(new ParticipantColumn(columnName, tableName));
                 if (StringUtils.isNotBlank(type) && type.equals(Filter.JSON_ARRAY) && StringUtils.isNotBlank(path)) {
@@ -1006,10 +1014,7 @@ public class ViewFilter {
         }
         String newQuery = parseToFrontEndQuery(str);
         Filter[] a = new Filter[filters.size()];
-        ViewFilter result = new ViewFilter(viewFilter.filterName, viewFilter.columns, viewFilter.id, viewFilter.fDeleted, viewFilter.shared,
-                viewFilter.userId, filters.values().toArray(a), viewFilter.parent,
-                viewFilter.icon, viewFilter.quickFilterName, newQuery, null, viewFilter.realmId);
-        return result;
+        return new FilterPlanCache.FilterPlan(filters.values().toArray(a), newQuery);
     }
 
     private static boolean arrayContains(String[] arr, String str) {
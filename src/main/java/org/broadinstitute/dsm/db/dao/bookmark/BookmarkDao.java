@@ -20,6 +20,8 @@ public class BookmarkDao implements Dao<BookmarkDto> {
             "instance " +
             "FROM bookmark WHERE instance = ?";
 
+    private static final String SQL_GET_BOOKMARK_BY_INSTANCE_NAME_FOR_UPDATE = SQL_GET_BOOKMARK_BY_INSTANCE_NAME + " FOR UPDATE";
+
     private static final String SQL_UPDATE_BOOKMARK = "UPDATE " +
             "bookmark SET value = ?, instance = ? WHERE bookmark_id = ?";
 
@@ -109,6 +111,42 @@ public class BookmarkDao implements Dao<BookmarkDto> {
         return Optional.ofNullable((BookmarkDto) results.resultValue);
     }
 
+    /**
+     * Takes the value of the bookmark and increments it in one transaction, the row stays locked in between,
+     * so concurrent callers never get the same value
+     *
+     * @return value before the increment or empty if there is no bookmark with the instance name
+     */
+    public Optional<Long> getAndIncrementBookmarkValue(String instanceName) {
+        SimpleResult results = inTransaction((conn) -> {
+            SimpleResult dbVals = new SimpleResult();
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_GET_BOOKMARK_BY_INSTANCE_NAME_FOR_UPDATE)) {
+                stmt.setString(1, instanceName);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        int bookmarkId = rs.getInt(1);
+                        long value = rs.getLong(2);
+                        try (PreparedStatement update = conn.prepareStatement(SQL_UPDATE_BOOKMARK_VALUE_BY_BOOKMARK_ID)) {
+                            update.setLong(1, value + 1);
+                            update.setInt(2, bookmarkId);
+                            update.executeUpdate();
+                        }
+                        dbVals.resultValue = value;
+                    }
+                }
+            }
+            catch (SQLException ex) {
+                dbVals.resultException = ex;
+            }
+            return dbVals;
+        });
+
+        if (results.resultException != null) {
+            throw new RuntimeException("Couldn't increment bookmark with instance name: " + instanceName, results.resultException);
+        }
+        return Optional.ofNullable((Long) results.resultValue);
+    }
+
     public int updateBookmark(BookmarkDto bookmarkDto) {
         SimpleResult result = inTransaction((conn) -> {
             SimpleResult execResult = new SimpleResult();
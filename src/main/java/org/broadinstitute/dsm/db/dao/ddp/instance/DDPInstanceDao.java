@@ -2,10 +2,10 @@ package org.broadinstitute.dsm.db.dao.ddp.instance;
 
 import lombok.NonNull;
 import org.broadinstitute.ddp.db.SimpleResult;
+import org.broadinstitute.dsm.db.DDPInstanceRegistry;
 import org.broadinstitute.dsm.db.dao.Dao;
 import org.broadinstitute.dsm.db.dto.ddp.instance.DDPInstanceDto;
 import org.broadinstitute.dsm.statics.DBConstants;
-import org.broadinstitute.dsm.statics.QueryExtension;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -40,11 +40,6 @@ public class DDPInstanceDao implements Dao<DDPInstanceDto> {
 
     private static final String SQL_DELETE_DDP_INSTANCE = "DELETE FROM ddp_instance WHERE ddp_instance_id = ?";
 
-    private static final String SQL_SELECT_INSTANCE_WITH_ROLE = "SELECT ddp_instance_id, instance_name, base_url, collaborator_id_prefix, migrated_ddp, billing_reference, " +
-            "es_participant_index, es_activity_definition_index, es_users_index, (SELECT count(role.name) " +
-            "FROM ddp_instance realm, ddp_instance_role inRol, instance_role role WHERE realm.ddp_instance_id = inRol.ddp_instance_id AND inRol.instance_role_id = role.instance_role_id AND role.name = ? " +
-            "AND realm.ddp_instance_id = main.ddp_instance_id) AS 'has_role', mr_attention_flag_d, tissue_attention_flag_d, auth0_token, notification_recipients FROM ddp_instance main " +
-            "WHERE is_active = 1";
 
     private static final String SQL_GET_INSTANCE_ID_BY_GUID = "SELECT ddp_instance_id " +
             "FROM ddp_instance " +
@@ -117,31 +112,7 @@ public class DDPInstanceDao implements Dao<DDPInstanceDto> {
     public static final String ES_USERS_INDEX = "es_users_index";
 
     public static boolean getRole(@NonNull String realm, @NonNull String role) {
-        SimpleResult results = inTransaction((conn) -> {
-            SimpleResult dbVals = new SimpleResult();
-            dbVals.resultValue = Boolean.FALSE;
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_INSTANCE_WITH_ROLE + QueryExtension.BY_INSTANCE_NAME)) {
-                stmt.setString(1, role);
-                stmt.setString(2, realm);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        dbVals.resultValue = rs.getBoolean(DBConstants.HAS_ROLE);
-                    }
-                }
-                catch (SQLException e) {
-                    throw new RuntimeException("Error getting role of realm " + realm, e);
-                }
-            }
-            catch (SQLException ex) {
-                dbVals.resultException = ex;
-            }
-            return dbVals;
-        });
-
-        if (results.resultException != null) {
-            throw new RuntimeException("Couldn't get role of realm " + realm, results.resultException);
-        }
-        return (boolean) results.resultValue;
+        return DDPInstanceRegistry.hasRole(realm, role);
     }
 
     @Override
@@ -182,6 +153,7 @@ public class DDPInstanceDao implements Dao<DDPInstanceDto> {
         if (simpleResult.resultException != null) {
             throw new RuntimeException("Error inserting ddp instance ", simpleResult.resultException);
         }
+        DDPInstanceRegistry.invalidate();
         return (int) simpleResult.resultValue;
     }
 
@@ -201,6 +173,7 @@ public class DDPInstanceDao implements Dao<DDPInstanceDto> {
         if (simpleResult.resultException != null) {
             throw new RuntimeException("Error deleting ddp instance ", simpleResult.resultException);
         }
+        DDPInstanceRegistry.invalidate();
         return (int) simpleResult.resultValue;
     }
 
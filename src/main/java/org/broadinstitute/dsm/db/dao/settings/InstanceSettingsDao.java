@@ -123,21 +123,7 @@ public class InstanceSettingsDao implements Dao<InstanceSettingsDto> {
             stmt.setString(1, instanceName);
             try(ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    execResult.resultValue = new InstanceSettingsDto.Builder()
-                        .withInstanceSettingsId(rs.getInt(INSTANCE_SETTINGS_ID))
-                        .withDdpInstanceId(Integer.parseInt(rs.getString(DDP_INSTANCE_ID)))
-                        .withMrCoverPdf(getValuesFromJson(rs.getString(MR_COVER_PDF)))
-                        .withKitBehaviorChange(getValuesFromJson(rs.getString(KIT_BEHAVIOR_CHANGE)))
-                        .withSpecialFormat(getValuesFromJson(rs.getString(SPECIAL_FORMAT)))
-                        .withHideEsFields(getValuesFromJson(rs.getString(HIDE_ES_FIELDS)))
-                        .withHideSamplesTab(rs.getBoolean(HIDE_SAMPLES_TAB))
-                        .withStudySpecificStatuses(getValuesFromJson(rs.getString(STUDY_SPECIFIC_STATUSES)))
-                        .withDefaultColumns(getValuesFromJson(rs.getString(DEFAULT_COLUMNS)))
-                        .withHasInvitations(rs.getBoolean(HAS_INVITATIONS))
-                        .withGbfShippedTriggerDssDelivered(rs.getBoolean(GBF_SHIPPED_DSS_DELIVERED))
-                        .withHasAddressTab(rs.getBoolean(HAS_ADDRESS_TAB))
-                        .withHasComputedObject(rs.getBoolean(HAS_COMPUTED_OBJECT))
-                        .build();
+                    execResult.resultValue = getInstanceSettingsDtoFromResultSet(rs);
                 }
             }
         }
@@ -147,6 +133,25 @@ public class InstanceSettingsDao implements Dao<InstanceSettingsDto> {
         return execResult;
     }
 
+    //also used by the DDPInstanceRegistry, the result set needs all columns of SQL_GET_BY_INSTANCE_NAME
+    public InstanceSettingsDto getInstanceSettingsDtoFromResultSet(ResultSet rs) throws SQLException {
+        return new InstanceSettingsDto.Builder()
+                .withInstanceSettingsId(rs.getInt(INSTANCE_SETTINGS_ID))
+                .withDdpInstanceId(Integer.parseInt(rs.getString(DDP_INSTANCE_ID)))
+                .withMrCoverPdf(getValuesFromJson(rs.getString(MR_COVER_PDF)))
+                .withKitBehaviorChange(getValuesFromJson(rs.getString(KIT_BEHAVIOR_CHANGE)))
+                .withSpecialFormat(getValuesFromJson(rs.getString(SPECIAL_FORMAT)))
+                .withHideEsFields(getValuesFromJson(rs.getString(HIDE_ES_FIELDS)))
+                .withHideSamplesTab(rs.getBoolean(HIDE_SAMPLES_TAB))
+                .withStudySpecificStatuses(getValuesFromJson(rs.getString(STUDY_SPECIFIC_STATUSES)))
+                .withDefaultColumns(getValuesFromJson(rs.getString(DEFAULT_COLUMNS)))
+                .withHasInvitations(rs.getBoolean(HAS_INVITATIONS))
+                .withGbfShippedTriggerDssDelivered(rs.getBoolean(GBF_SHIPPED_DSS_DELIVERED))
+                .withHasAddressTab(rs.getBoolean(HAS_ADDRESS_TAB))
+                .withHasComputedObject(rs.getBoolean(HAS_COMPUTED_OBJECT))
+                .build();
+    }
+
     private List<Value> getValuesFromJson(String json) {
         if (Objects.isNull(json)) return Collections.emptyList();
         Gson gson = new Gson();
@@ -4,6 +4,7 @@ import lombok.NonNull;
 import org.broadinstitute.ddp.db.SimpleResult;
 import org.broadinstitute.dsm.db.dao.Dao;
 import org.broadinstitute.dsm.db.dto.user.UserDto;
+import org.broadinstitute.dsm.util.UserUtil;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -99,6 +100,7 @@ public class UserDao implements Dao<UserDto> {
             throw new RuntimeException("Error inserting user with "
                     + userDto.getEmail(), results.resultException);
         }
+        UserUtil.invalidateAccessCache();
         return (int) results.resultValue;
     }
 
@@ -119,6 +121,7 @@ public class UserDao implements Dao<UserDto> {
             throw new RuntimeException("Error deleting user with "
                     + id, results.resultException);
         }
+        UserUtil.invalidateAccessCache();
         return (int) results.resultValue;
     }
 }
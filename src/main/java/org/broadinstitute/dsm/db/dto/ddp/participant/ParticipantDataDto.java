@@ -1,6 +1,7 @@
 package org.broadinstitute.dsm.db.dto.ddp.participant;
 
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -24,7 +25,8 @@ public class ParticipantDataDto {
     private String changedBy;
 
     // We cache the json data map to avoid deserializing it multiple times.
-    private Map<String, String> cachedDataMap;
+    // It is shared by everyone who reads the data (comparators, filters, exporters) and therefore read only
+    private volatile Map<String, String> cachedDataMap;
 
     public int getParticipantDataId() {
         return participantDataId;
@@ -51,16 +53,26 @@ public class ParticipantDataDto {
         this.cachedDataMap = null;
     }
 
+    /**
+     * @return the parsed json data as read only map, or null if there is no data.
+     * The data is parsed only once, a copy of the map is needed to change values
+     */
     public Map<String, String> getDataMap() {
-        if (cachedDataMap != null) {
-            return cachedDataMap;
+        Map<String, String> dataMap = cachedDataMap;
+        if (dataMap != null) {
+            return dataMap;
         }
         if (StringUtils.isBlank(data)) {
             return null;
         }
         Type type = new TypeToken<HashMap<String, String>>() {}.getType();
-        cachedDataMap = gson.fromJson(data, type);
-        return cachedDataMap;
+        Map<String, String> parsed = gson.fromJson(data, type);
+        if (parsed == null) {
+            return null;
+        }
+        dataMap = Collections.unmodifiableMap(parsed);
+        cachedDataMap = dataMap;
+        return dataMap;
     }
 
     public long getLastChanged() {
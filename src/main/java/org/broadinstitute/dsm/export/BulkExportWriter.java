@@ -0,0 +1,250 @@
+package org.broadinstitute.dsm.export;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.NonNull;
+import org.broadinstitute.dsm.model.elasticsearch.ESProfile;
+import org.broadinstitute.dsm.model.elasticsearch.ElasticSearch;
+import org.broadinstitute.dsm.model.elasticsearch.ElasticSearchParticipantDto;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
+import org.broadinstitute.dsm.statics.ESObjectConstants;
+import org.broadinstitute.dsm.util.ConfigUtil;
+import org.broadinstitute.dsm.util.ElasticSearchUtil;
+import org.broadinstitute.dsm.util.ParticipantUtil;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects everything an export writes to ES per participant in memory and sends it as one partial document update
+ * per participant through a {@link BulkProcessor}, instead of a get and an update request for every single record.
+ * Rejected bulk requests (429) are retried with exponential backoff by the bulk processor.
+ */
+public class BulkExportWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkExportWriter.class);
+
+    private static final int DEFAULT_BULK_ACTIONS = 500;
+    private static final int DEFAULT_BULK_SIZE_MB = 5;
+    private static final int DEFAULT_CONCURRENT_REQUESTS = 2;
+    private static final int DEFAULT_MAX_RETRIES = 5;
+    private static final long CLOSE_TIMEOUT_MINUTES = 30L;
+
+    private final RestHighLevelClient client;
+    private final String index;
+    private final Map<String, Map<String, Object>> documents = new HashMap<>();
+
+    private final AtomicLong sentDocuments = new AtomicLong();
+    private final AtomicLong failedDocuments = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong bulkRequests = new AtomicLong();
+
+    public BulkExportWriter(@NonNull String index) {
+        this(ElasticSearchUtil.getClientInstance(), index);
+    }
+
+    public BulkExportWriter(@NonNull RestHighLevelClient client, @NonNull String index) {
+        this.client = client;
+        this.index = index;
+    }
+
+    /**
+     * Adds a record to the list dsm.[objectType] of the participant
+     */
+    public void addDsmRecord(@NonNull String ddpParticipantId, @NonNull Object id, @NonNull String objectType, @NonNull String idName,
+                             @NonNull Map<String, Object> nameValues) {
+        Map<String, Object> dsm = getDsmMap(ddpParticipantId);
+        List<Map<String, Object>> objectList = (List<Map<String, Object>>) dsm.computeIfAbsent(objectType, k -> new ArrayList<>());
+        ElasticSearchUtil.createAndAddNewObjectMap(id, objectList, idName, nameValues);
+    }
+
+    public void setFamilyId(@NonNull String ddpParticipantId, @NonNull String familyId) {
+        getDsmMap(ddpParticipantId).put(ESObjectConstants.FAMILY_ID, familyId);
+    }
+
+    /**
+     * Adds a record to the top level list [objectType] of the participant, e.g. samples
+     */
+    public void addRecord(@NonNull String ddpParticipantId, @NonNull Object id, @NonNull String objectType, @NonNull String idName,
+                          @NonNull Map<String, Object> nameValues) {
+        List<Map<String, Object>> objectList = (List<Map<String, Object>>) getDocument(ddpParticipantId)
+                .computeIfAbsent(objectType, k -> new ArrayList<>());
+        ElasticSearchUtil.createAndAddNewObjectMap(id, objectList, idName, nameValues);
+    }
+
+    /**
+     * Sets top level fields of the participant's document, e.g. the workflows
+     */
+    public void putAll(@NonNull String ddpParticipantId, @NonNull Map<String, Object> fields) {
+        getDocument(ddpParticipantId).putAll(fields);
+    }
+
+    private Map<String, Object> getDocument(String ddpParticipantId) {
+        return documents.computeIfAbsent(ddpParticipantId, k -> new HashMap<>());
+    }
+
+    private Map<String, Object> getDsmMap(String ddpParticipantId) {
+        return (Map<String, Object>) getDocument(ddpParticipantId).computeIfAbsent(ESObjectConstants.DSM, k -> new HashMap<>());
+    }
+
+    /**
+     * Resolves legacy altpids to guids, merges the documents of the same participant and sends all of them to ES.
+     * Blocks until every bulk request is done and logs a summary of the export
+     */
+    public void flush() {
+        if (documents.isEmpty()) {
+            return;
+        }
+        Instant start = Instant.now();
+        Map<String, Map<String, Object>> documentsByGuid = mergeByGuid(resolveGuids());
+        documents.clear();
+
+        BulkProcessor bulkProcessor = createBulkProcessor();
+        documentsByGuid.forEach((guid, document) -> bulkProcessor.add(new UpdateRequest()
+                .index(index)
+                .type("_doc")
+                .id(guid)
+                .doc(document)
+                .docAsUpsert(true)
+                .retryOnConflict(5)));
+        try {
+            if (!bulkProcessor.awaitClose(CLOSE_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                logger.error("Bulk export to ES index " + index + " didn't finish within " + CLOSE_TIMEOUT_MINUTES + " minutes");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for bulk export to ES index " + index, e);
+        }
+        logSummary(documentsByGuid.size(), Duration.between(start, Instant.now()));
+    }
+
+    private Map<String, String> resolveGuids() {
+        Map<String, String> guids = new HashMap<>();
+        List<String> altPids = new ArrayList<>();
+        for (String ddpParticipantId : documents.keySet()) {
+            if (ParticipantUtil.isGuid(ddpParticipantId)) {
+                guids.put(ddpParticipantId, ddpParticipantId);
+            }
+            else {
+                altPids.add(ddpParticipantId);
+            }
+        }
+        if (!altPids.isEmpty()) {
+            try {
+                Map<String, Map<String, Object>> sources = ElasticSearchUtil.getParticipantSourcesByIds(client, index, altPids,
+                        new String[] {ElasticSearchUtil.PROFILE_GUID, ElasticSearchUtil.PROFILE_LEGACYALTPID});
+                for (String altPid : altPids) {
+                    String guid = ElasticSearch.parseSourceMap(sources.get(altPid))
+                            .flatMap(ElasticSearchParticipantDto::getProfile)
+                            .map(ESProfile::getParticipantGuid)
+                            .orElse(altPid);
+                    guids.put(altPid, guid);
+                }
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Couldn't resolve guids of " + altPids.size() + " participants from " + index, e);
+            }
+        }
+        return guids;
+    }
+
+    private Map<String, Map<String, Object>> mergeByGuid(Map<String, String> guids) {
+        Map<String, Map<String, Object>> documentsByGuid = new HashMap<>();
+        documents.forEach((ddpParticipantId, document) -> {
+            Map<String, Object> merged = documentsByGuid.get(guids.get(ddpParticipantId));
+            if (merged == null) {
+                documentsByGuid.put(guids.get(ddpParticipantId), document);
+            }
+            else {
+                mergeDocuments(merged, document);
+            }
+        });
+        return documentsByGuid;
+    }
+
+    static void mergeDocuments(Map<String, Object> target, Map<String, Object> source) {
+        source.forEach((key, value) -> {
+            Object existing = target.get(key);
+            if (existing instanceof Map && value instanceof Map) {
+                mergeDocuments((Map<String, Object>) existing, (Map<String, Object>) value);
+            }
+            else if (existing instanceof List && value instanceof List) {
+                ((List<Object>) existing).addAll((List<Object>) value);
+            }
+            else {
+                target.put(key, value);
+            }
+        });
+    }
+
+    private BulkProcessor createBulkProcessor() {
+        BulkProcessor.Listener listener = new BulkProcessor.Listener() {
+            @Override
+            public void beforeBulk(long executionId, BulkRequest request) {
+                bulkRequests.incrementAndGet();
+                sentBytes.addAndGet(request.estimatedSizeInBytes());
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                int failed = 0;
+                if (response.hasFailures()) {
+                    for (BulkItemResponse item : response.getItems()) {
+                        if (item.isFailed()) {
+                            failed++;
+                            logger.error("Couldn't export participant " + item.getId() + " to ES index " + index + ": " + item.getFailureMessage());
+                        }
+                    }
+                }
+                failedDocuments.addAndGet(failed);
+                sentDocuments.addAndGet(request.numberOfActions() - failed);
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+                failedDocuments.addAndGet(request.numberOfActions());
+                logger.error("Bulk request with " + request.numberOfActions() + " participants to ES index " + index + " failed", failure);
+            }
+        };
+        return BulkProcessor.builder((request, bulkListener) -> client.bulkAsync(request, RequestOptions.DEFAULT, bulkListener), listener)
+                .setBulkActions(ConfigUtil.getInt(ApplicationConfigConstants.ES_BULK_ACTIONS, DEFAULT_BULK_ACTIONS))
+                .setBulkSize(new ByteSizeValue(ConfigUtil.getInt(ApplicationConfigConstants.ES_BULK_SIZE_MB, DEFAULT_BULK_SIZE_MB), ByteSizeUnit.MB))
+                .setConcurrentRequests(ConfigUtil.getInt(ApplicationConfigConstants.ES_BULK_CONCURRENT_REQUESTS, DEFAULT_CONCURRENT_REQUESTS))
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(100L),
+                        ConfigUtil.getInt(ApplicationConfigConstants.ES_BULK_MAX_RETRIES, DEFAULT_MAX_RETRIES)))
+                .build();
+    }
+
+    private void logSummary(int participants, Duration elapsed) {
+        double seconds = Math.max(elapsed.toMillis(), 1L) / 1000.0;
+        logger.info(String.format("Bulk export to ES index %s: %d participants in %d bulk requests (%.1f MB), %d exported, %d failed, "
+                        + "took %.1f secs (%.1f participants/sec)", index, participants, bulkRequests.get(), sentBytes.get() / (1024.0 * 1024.0),
+                sentDocuments.get(), failedDocuments.get(), seconds, sentDocuments.get() / seconds));
+    }
+
+    public long getSentDocuments() {
+        return sentDocuments.get();
+    }
+
+    public long getFailedDocuments() {
+        return failedDocuments.get();
+    }
+}
@@ -4,6 +4,7 @@ import java.time.Duration;
 import java.time.Instant;
 
 import com.google.gson.Gson;
+import org.apache.commons.lang3.StringUtils;
 import org.broadinstitute.dsm.db.DDPInstance;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,11 +33,19 @@ public class ExportToES {
             return;
         }
 
+        if (StringUtils.isBlank(instance.getParticipantIndexES())) {
+            logger.warn("DDP instance {} does not have participant index set, skipping export", instance.getName());
+            return;
+        }
+
         Instant start = Instant.now();
-        workflowAndFamilyIdExporter.export(instance, clearBeforeUpdate);
-        medicalRecordExporter.export(instance);
-        tissueRecordExporter.export(instance);
-        sampleExporter.export(instance);
+        // all exporters collect their records per participant, which are then written with one update per participant
+        BulkExportWriter bulkExportWriter = new BulkExportWriter(instance.getParticipantIndexES());
+        workflowAndFamilyIdExporter.export(instance, bulkExportWriter, clearBeforeUpdate);
+        medicalRecordExporter.export(instance, bulkExportWriter);
+        tissueRecordExporter.export(instance, bulkExportWriter);
+        sampleExporter.export(instance, bulkExportWriter);
+        bulkExportWriter.flush();
         Duration elapsed = Duration.between(start, Instant.now());
 
         logger.info("Export took {} secs ({})", elapsed.getSeconds(), elapsed.toString());
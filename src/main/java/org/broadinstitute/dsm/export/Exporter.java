@@ -3,5 +3,5 @@ package org.broadinstitute.dsm.export;
 import org.broadinstitute.dsm.db.DDPInstance;
 
 public interface Exporter {
-    void export(DDPInstance instance);
+    void export(DDPInstance instance, BulkExportWriter bulkExportWriter);
 }
@@ -5,7 +5,6 @@ import org.broadinstitute.dsm.db.DDPInstance;
 import org.broadinstitute.dsm.db.dao.ddp.medical.records.ESMedicalRecordsDao;
 import org.broadinstitute.dsm.db.dto.medical.records.ESMedicalRecordsDto;
 import org.broadinstitute.dsm.statics.ESObjectConstants;
-import org.broadinstitute.dsm.util.ElasticSearchUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,7 +18,7 @@ public class MedicalRecordExporter implements Exporter {
     private static final ObjectMapper oMapper = new ObjectMapper();
 
     @Override
-    public void export(DDPInstance instance) {
+    public void export(DDPInstance instance, BulkExportWriter bulkExportWriter) {
         int instanceId = instance.getDdpInstanceIdAsInt();
         logger.info("Started exporting medical records for instance with id " + instanceId);
         ArrayDeque<ESMedicalRecordsDto> esMedicalRecords = new ArrayDeque<>(esMedicalRecordsDao.getESMedicalRecordsByInstanceId(instanceId));
@@ -27,7 +26,7 @@ public class MedicalRecordExporter implements Exporter {
             ESMedicalRecordsDto medicalRecord = esMedicalRecords.pop();
             Map<String, Object> map = oMapper.convertValue(medicalRecord, Map.class);
             if (medicalRecord.getMedicalRecordId() != null && medicalRecord.getDdpParticipantId() != null) {
-                ElasticSearchUtil.writeDsmRecord(instance, medicalRecord.getMedicalRecordId(), medicalRecord.getDdpParticipantId(),
+                bulkExportWriter.addDsmRecord(medicalRecord.getDdpParticipantId(), medicalRecord.getMedicalRecordId(),
                         ESObjectConstants.MEDICAL_RECORDS, ESObjectConstants.MEDICAL_RECORDS_ID, map);
             }
         }
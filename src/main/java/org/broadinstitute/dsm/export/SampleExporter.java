@@ -5,7 +5,6 @@ import org.broadinstitute.dsm.db.DDPInstance;
 import org.broadinstitute.dsm.db.dao.ddp.kitrequest.KitRequestDao;
 import org.broadinstitute.dsm.db.dto.ddp.kitrequest.ESSamplesDto;
 import org.broadinstitute.dsm.statics.ESObjectConstants;
-import org.broadinstitute.dsm.util.ElasticSearchUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,7 +18,7 @@ public class SampleExporter implements Exporter {
     private static final KitRequestDao kitRequestDao = new KitRequestDao();
 
     @Override
-    public void export(DDPInstance instance) {
+    public void export(DDPInstance instance, BulkExportWriter bulkExportWriter) {
         int instanceId = instance.getDdpInstanceIdAsInt();
         logger.info("Started exporting samples for instance with id " + instanceId);
         ArrayDeque<ESSamplesDto> esSamples = new ArrayDeque<>(kitRequestDao.getESSamplesByInstanceId(instanceId));
@@ -27,7 +26,7 @@ public class SampleExporter implements Exporter {
             ESSamplesDto sample = esSamples.pop();
             Map<String, Object> map = oMapper.convertValue(sample, Map.class);
             if (sample.getKitRequestId() != null && sample.getDdpParticipantId() != null) {
-                ElasticSearchUtil.writeSample(instance, sample.getKitRequestId(), sample.getDdpParticipantId(),
+                bulkExportWriter.addRecord(sample.getDdpParticipantId(), sample.getKitRequestId(),
                         ESObjectConstants.SAMPLES, ESObjectConstants.KIT_REQUEST_ID, map);
             }
         }
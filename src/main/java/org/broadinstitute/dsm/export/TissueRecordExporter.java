@@ -5,7 +5,6 @@ import org.broadinstitute.dsm.db.DDPInstance;
 import org.broadinstitute.dsm.db.dao.ddp.tissue.ESTissueRecordsDao;
 import org.broadinstitute.dsm.db.dto.ddp.tissue.ESTissueRecordsDto;
 import org.broadinstitute.dsm.statics.ESObjectConstants;
-import org.broadinstitute.dsm.util.ElasticSearchUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,7 +18,7 @@ public class TissueRecordExporter implements Exporter {
     private static final ObjectMapper oMapper = new ObjectMapper();
 
     @Override
-    public void export(DDPInstance instance) {
+    public void export(DDPInstance instance, BulkExportWriter bulkExportWriter) {
         int instanceId = instance.getDdpInstanceIdAsInt();
         logger.info("Started exporting tissue records for instance with id " + instanceId);
         ArrayDeque<ESTissueRecordsDto> esTissueRecords = new ArrayDeque<>(TissueRecordExporter.esTissueRecordsDao.getESTissueRecordsByInstanceId(instanceId));
@@ -27,7 +26,7 @@ public class TissueRecordExporter implements Exporter {
             ESTissueRecordsDto tissueRecord = esTissueRecords.pop();
             Map<String, Object> map = oMapper.convertValue(tissueRecord, Map.class);
             if (tissueRecord.getTissueRecordId() != null && tissueRecord.getDdpParticipantId() != null) {
-                ElasticSearchUtil.writeDsmRecord(instance, tissueRecord.getTissueRecordId(), tissueRecord.getDdpParticipantId(),
+                bulkExportWriter.addDsmRecord(tissueRecord.getDdpParticipantId(), tissueRecord.getTissueRecordId(),
                         ESObjectConstants.TISSUE_RECORDS, ESObjectConstants.TISSUE_RECORDS_ID, map);
             }
         }
@@ -9,6 +9,8 @@ import org.broadinstitute.dsm.db.dto.ddp.participant.ParticipantDataDto;
 import org.broadinstitute.dsm.db.dto.settings.FieldSettingsDto;
 import org.broadinstitute.dsm.model.Value;
 import org.broadinstitute.dsm.model.elasticsearch.ESProfile;
+import org.broadinstitute.dsm.model.elasticsearch.ElasticSearch;
+import org.broadinstitute.dsm.model.elasticsearch.ElasticSearchParticipantDto;
 import org.broadinstitute.dsm.model.participant.data.FamilyMemberConstants;
 import org.broadinstitute.dsm.statics.ESObjectConstants;
 import org.broadinstitute.dsm.util.ElasticSearchUtil;
@@ -16,6 +18,7 @@ import org.broadinstitute.dsm.util.ParticipantUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
@@ -31,11 +34,11 @@ public class WorkflowAndFamilyIdExporter implements Exporter {
     public static final String RGP_PARTICIPANTS = "RGP_PARTICIPANTS";
 
     @Override
-    public void export(DDPInstance instance) {
-
+    public void export(DDPInstance instance, BulkExportWriter bulkExportWriter) {
+        export(instance, bulkExportWriter, false);
     }
 
-    public void export(DDPInstance instance, boolean clearBeforeUpdate) {
+    public void export(DDPInstance instance, BulkExportWriter bulkExportWriter, boolean clearBeforeUpdate) {
         int instanceId = instance.getDdpInstanceIdAsInt();
         if (StringUtils.isBlank(instance.getParticipantIndexES())) {
             logger.error("DDP instance does not have participant index set, skipping export");
@@ -52,7 +55,7 @@ public class WorkflowAndFamilyIdExporter implements Exporter {
                     .collect(Collectors.groupingBy(dto -> dto.getDdpParticipantId().orElse("")))
                     .values());
 
-            checkWorkflowNamesAndExport(instance, workflowColumnNames, queue, clearBeforeUpdate);
+            checkWorkflowNamesAndExport(instance, workflowColumnNames, queue, bulkExportWriter, clearBeforeUpdate);
             logger.info("Finished exporting workflows and family ID-s for instance with id " + instanceId);
         }
         catch (Exception e) {
@@ -80,8 +83,19 @@ public class WorkflowAndFamilyIdExporter implements Exporter {
     }
 
     private void checkWorkflowNamesAndExport(DDPInstance instance, List<String> workflowColumnNames,
-                                             Deque<List<ParticipantDataDto>> queue, boolean clearBeforeUpdate) {
+                                             Deque<List<ParticipantDataDto>> queue, BulkExportWriter bulkExportWriter,
+                                             boolean clearBeforeUpdate) throws IOException {
         String index = instance.getParticipantIndexES();
+
+        // Profiles and workflows of all families are fetched with a few multi-id searches instead of two requests per family.
+        List<String> guidOrAltPids = queue.stream()
+                .filter(familyGroup -> familyGroup != null && !familyGroup.isEmpty())
+                .map(familyGroup -> familyGroup.get(0).getDdpParticipantId().orElse(""))
+                .filter(StringUtils::isNotBlank)
+                .collect(Collectors.toList());
+        Map<String, Map<String, Object>> sources = ElasticSearchUtil.getParticipantSourcesByIds(ElasticSearchUtil.getClientInstance(), index,
+                guidOrAltPids, new String[] {ElasticSearchUtil.PROFILE, ESObjectConstants.WORKFLOWS});
+
         while (!queue.isEmpty()) {
             List<ParticipantDataDto> familyGroup = queue.pop();
             if (familyGroup == null || familyGroup.isEmpty()) {
@@ -94,22 +108,19 @@ public class WorkflowAndFamilyIdExporter implements Exporter {
                 continue;
             }
 
-            ESProfile profile = ElasticSearchUtil.getParticipantProfileByGuidOrAltPid(index, guidOrAltPid).orElse(null);
+            Map<String, Object> source = sources.get(guidOrAltPid);
+            ESProfile profile = source != null
+                    ? ElasticSearch.parseSourceMap(source).flatMap(ElasticSearchParticipantDto::getProfile).orElse(null)
+                    : null;
             if (profile == null) {
                 logger.error("Unable to find ES profile for participant with guid/altpid: {}, continuing with export", guidOrAltPid);
                 continue;
             }
 
             WorkflowsEditor editor = new WorkflowsEditor(new ArrayList<>());
-            try {
-                Map<String, Object> source = ElasticSearchUtil.getObjectsMap(index, profile.getParticipantGuid(), ESObjectConstants.WORKFLOWS);
-                if (source != null && source.containsKey(ESObjectConstants.WORKFLOWS)) {
-                    List<Map<String, Object>> workflowListES = (List<Map<String, Object>>) source.get(ESObjectConstants.WORKFLOWS);
-                    editor = new WorkflowsEditor(workflowListES);
-                }
-            } catch (Exception e) {
-                logger.error("Unable to fetch ES workflows for participant with guid/altpid: {}, continuing with export", guidOrAltPid, e);
-                continue;
+            if (source.containsKey(ESObjectConstants.WORKFLOWS)) {
+                List<Map<String, Object>> workflowListES = (List<Map<String, Object>>) source.get(ESObjectConstants.WORKFLOWS);
+                editor = new WorkflowsEditor(workflowListES);
             }
 
             if (clearBeforeUpdate) {
@@ -134,14 +145,10 @@ public class WorkflowAndFamilyIdExporter implements Exporter {
                 }
             }
 
-            try {
-                // Even if workflow list didn't change, let's export so we start with empty list in the ES document.
-                ElasticSearchUtil.updateRequest(profile.getParticipantGuid(), index, editor.getMapForES());
-                if (StringUtils.isNotBlank(familyId)) {
-                    ElasticSearchUtil.writeDsmRecord(instance, null, profile.getParticipantGuid(), ESObjectConstants.FAMILY_ID, familyId, null);
-                }
-            } catch (Exception e) {
-                logger.error("Error while export ES workflows for participant with guid/altpid: {}, continuing with export", guidOrAltPid, e);
+            // Even if workflow list didn't change, let's export so we start with empty list in the ES document.
+            bulkExportWriter.putAll(profile.getParticipantGuid(), editor.getMapForES());
+            if (StringUtils.isNotBlank(familyId)) {
+                bulkExportWriter.setFamilyId(profile.getParticipantGuid(), familyId);
             }
         }
     }
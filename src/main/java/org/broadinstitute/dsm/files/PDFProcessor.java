@@ -8,7 +8,6 @@ import org.apache.pdfbox.pdmodel.interactive.form.PDCheckBox;
 import org.apache.pdfbox.pdmodel.interactive.form.PDField;
 import org.broadinstitute.ddp.db.TransactionWrapper;
 import org.broadinstitute.ddp.exception.FileProcessingException;
-import org.broadinstitute.ddp.util.GoogleBucket;
 import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -100,18 +99,19 @@ public abstract class PDFProcessor implements BasicProcessor {
         return input;
     }
 
+    /**
+     * Templates come from {@link PDFTemplateCache}, so they are only downloaded again if they changed in the bucket
+     */
     public static byte[] getTemplateFromGoogleBucket(@NonNull String fileName) {
         String gcpName = TransactionWrapper.getSqlFromConfig(ApplicationConfigConstants.GOOGLE_PROJECT_NAME);
         if (StringUtils.isNotBlank(gcpName)) {
             String bucketName = TransactionWrapper.getSqlFromConfig(ApplicationConfigConstants.GOOGLE_CONFIG_BUCKET);
             try {
-                if (GoogleBucket.bucketExists(null, gcpName, bucketName)) {
-                    logger.info("Downloading template " + fileName + " from bucket " + bucketName);
-                    return GoogleBucket.downloadFile(null, gcpName, bucketName, fileName);
-                }
-                else {
-                    logger.error("Google bucket " + bucketName + " does not exist");
+                byte[] template = PDFTemplateCache.getInstance(gcpName).getTemplate(bucketName, fileName);
+                if (template == null) {
+                    logger.error("Template " + fileName + " does not exist in google bucket " + bucketName);
                 }
+                return template;
             }
             catch (Exception e) {
                 throw new RuntimeException("Couldn't get template from google bucket ", e);
@@ -0,0 +1,176 @@
+package org.broadinstitute.dsm.files;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+import lombok.Data;
+import lombok.NonNull;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
+import org.broadinstitute.dsm.util.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the pdf templates of the config bucket in memory, so generating a pdf doesn't download its template every time.
+ * After the ttl a template is revalidated against the generation of the object in the bucket and only downloaded again if it changed.
+ * If the cache holds more than the configured number of bytes, the least recently used templates are evicted.
+ * The returned bytes are shared, callers must not change them.
+ */
+public class PDFTemplateCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PDFTemplateCache.class);
+
+    private static final long DEFAULT_TTL_SECONDS = 300;
+    private static final long DEFAULT_MAX_BYTES = 50L * 1024 * 1024;
+
+    private static volatile PDFTemplateCache instance;
+
+    private final TemplateStore templateStore;
+    private final long ttlMillis;
+    private final long maxBytes;
+    private final LongSupplier clock;
+    private final Map<String, CachedTemplate> templates = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes = 0;
+
+    PDFTemplateCache(@NonNull TemplateStore templateStore, long ttlMillis, long maxBytes, @NonNull LongSupplier clock) {
+        this.templateStore = templateStore;
+        this.ttlMillis = ttlMillis;
+        this.maxBytes = maxBytes;
+        this.clock = clock;
+    }
+
+    public static PDFTemplateCache getInstance(@NonNull String googleProjectName) {
+        if (instance == null) {
+            synchronized (PDFTemplateCache.class) {
+                if (instance == null) {
+                    instance = new PDFTemplateCache(new GoogleBucketTemplateStore(googleProjectName),
+                            ConfigUtil.getLong(ApplicationConfigConstants.PDF_TEMPLATE_CACHE_TTL_SECONDS, DEFAULT_TTL_SECONDS) * 1000,
+                            ConfigUtil.getLong(ApplicationConfigConstants.PDF_TEMPLATE_CACHE_MAX_BYTES, DEFAULT_MAX_BYTES), System::currentTimeMillis);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @return bytes of the template, null if it doesn't exist in the bucket
+     */
+    public byte[] getTemplate(@NonNull String bucketName, @NonNull String fileName) {
+        String key = bucketName + "/" + fileName;
+        CachedTemplate cachedTemplate;
+        synchronized (templates) {
+            cachedTemplate = templates.get(key);
+        }
+        long now = clock.getAsLong();
+        if (cachedTemplate != null) {
+            if (now - cachedTemplate.getValidatedAt() < ttlMillis) {
+                return cachedTemplate.getBytes();
+            }
+            Long generation = templateStore.getGeneration(bucketName, fileName);
+            if (generation != null && generation == cachedTemplate.getGeneration()) {
+                cachedTemplate.setValidatedAt(now);
+                return cachedTemplate.getBytes();
+            }
+        }
+
+        logger.info("Downloading template " + fileName + " from bucket " + bucketName);
+        StoredTemplate storedTemplate = templateStore.download(bucketName, fileName);
+        synchronized (templates) {
+            remove(key);
+            if (storedTemplate == null) {
+                return null;
+            }
+            if (storedTemplate.getBytes().length <= maxBytes) {
+                templates.put(key, new CachedTemplate(storedTemplate.getBytes(), storedTemplate.getGeneration(), now));
+                cachedBytes += storedTemplate.getBytes().length;
+                evict();
+            }
+        }
+        return storedTemplate.getBytes();
+    }
+
+    public void clear() {
+        synchronized (templates) {
+            templates.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    private void remove(String key) {
+        CachedTemplate removed = templates.remove(key);
+        if (removed != null) {
+            cachedBytes -= removed.getBytes().length;
+        }
+    }
+
+    private void evict() {
+        Iterator<CachedTemplate> leastRecentlyUsed = templates.values().iterator();
+        while (cachedBytes > maxBytes && leastRecentlyUsed.hasNext()) {
+            cachedBytes -= leastRecentlyUsed.next().getBytes().length;
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    interface TemplateStore {
+
+        /**
+         * @return generation of the object, null if it doesn't exist
+         */
+        Long getGeneration(String bucketName, String fileName);
+
+        /**
+         * @return content and generation of the object, null if it doesn't exist
+         */
+        StoredTemplate download(String bucketName, String fileName);
+    }
+
+    @Data
+    static class StoredTemplate {
+        private final byte[] bytes;
+        private final long generation;
+    }
+
+    @Data
+    private static class CachedTemplate {
+        private final byte[] bytes;
+        private final long generation;
+        private volatile long validatedAt;
+
+        CachedTemplate(byte[] bytes, long generation, long validatedAt) {
+            this.bytes = bytes;
+            this.generation = generation;
+            this.validatedAt = validatedAt;
+        }
+    }
+
+    private static class GoogleBucketTemplateStore implements TemplateStore {
+
+        private final Storage storage;
+
+        GoogleBucketTemplateStore(String googleProjectName) {
+            this.storage = StorageOptions.newBuilder().setProjectId(googleProjectName).build().getService();
+        }
+
+        @Override
+        public Long getGeneration(String bucketName, String fileName) {
+            Blob blob = storage.get(BlobId.of(bucketName, fileName), Storage.BlobGetOption.fields(Storage.BlobField.GENERATION));
+            return blob != null ? blob.getGeneration() : null;
+        }
+
+        @Override
+        public StoredTemplate download(String bucketName, String fileName) {
+            Blob blob = storage.get(BlobId.of(bucketName, fileName));
+            if (blob == null) {
+                return null;
+            }
+            //content is read with the generation of the metadata, so both belong together
+            return new StoredTemplate(blob.getContent(), blob.getGeneration());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.broadinstitute.dsm.jobs;
+
+import org.broadinstitute.dsm.model.at.DefaultValues;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ATDefaultValuesJob implements Job {
+
+    private static final Logger logger = LoggerFactory.getLogger(ATDefaultValuesJob.class);
+
+    public void execute(JobExecutionContext context) throws JobExecutionException {
+        try {
+            DefaultValues.backfill();
+        }
+        catch (Exception ex) {
+            logger.error("Failed to execute properly.", ex);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.broadinstitute.dsm.jobs;
+
+import org.broadinstitute.dsm.model.dashboard.MedicalRecordDashboard;
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class DashboardRefreshJob implements Job {
+
+    private static final Logger logger = LoggerFactory.getLogger(DashboardRefreshJob.class);
+
+    public void execute(JobExecutionContext context) throws JobExecutionException {
+        try {
+            MedicalRecordDashboard.refreshAll();
+        }
+        catch (Exception ex) {
+            logger.error("Failed to execute properly.", ex);
+        }
+    }
+}
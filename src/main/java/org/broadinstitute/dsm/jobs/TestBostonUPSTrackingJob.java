@@ -32,15 +32,24 @@ import java.sql.*;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 public class TestBostonUPSTrackingJob implements BackgroundFunction<PubsubMessage> {
 
     public static final String SKIP_CE_ORDERS_FOR_SCHEDULED_KITS_AFTER = "testboston.skipCEOrdersForScheduledKitsAfter";
+    public static final String UPS_LOOKUP_THREADS = "ups.lookupThreads";
+    public static final String UPS_CHUNK_TIMEOUT_SECONDS = "ups.chunkTimeoutSeconds";
 
     private String STUDY_MANAGER_SCHEMA = System.getenv("STUDY_MANAGER_SCHEMA") + ".";
 
@@ -58,7 +67,10 @@ public class TestBostonUPSTrackingJob implements BackgroundFunction<PubsubMessag
     String accessKey;
     Date ignoreScheduledOrdersAfter;
     Connection conn = null;
-    private final int MAX_CONNECTION = 1;
+    private final int DEFAULT_LOOKUP_THREADS = 8;
+    //below the cloud function timeout, so the function can still log what wasn't done
+    private final long DEFAULT_CHUNK_TIMEOUT_SECONDS = 480;
+    long deadline;
     private final String SKIP_CE_ORDER_DATE_FORMAT = "YYYY-MM-dd";
     UPSTracker upsTracker = null;
     private static Auth0Util auth0Util;
@@ -86,6 +98,9 @@ public class TestBostonUPSTrackingJob implements BackgroundFunction<PubsubMessag
         } else {
             logger.info("No cutoff date for CE orders of longitudinal kits.  Will continue to place CE orders");
         }
+        int lookupThreads = cfg.hasPath(UPS_LOOKUP_THREADS) ? cfg.getInt(UPS_LOOKUP_THREADS) : DEFAULT_LOOKUP_THREADS;
+        long chunkTimeoutSeconds = cfg.hasPath(UPS_CHUNK_TIMEOUT_SECONDS) ? cfg.getLong(UPS_CHUNK_TIMEOUT_SECONDS) : DEFAULT_CHUNK_TIMEOUT_SECONDS;
+        deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(chunkTimeoutSeconds);
         upsTracker = new UPSTracker(endpoint, username, password, accessKey);
         logger.info("Starting the UPS lookup job");
         auth0Util = new Auth0Util(cfg.getString(ApplicationConfigConstants.AUTH0_ACCOUNT),
@@ -99,9 +114,13 @@ public class TestBostonUPSTrackingJob implements BackgroundFunction<PubsubMessag
                 false, cfg.getString(ApplicationConfigConstants.AUTH0_AUDIENCE));
         String data = new String(Base64.getDecoder().decode(message.data));
         UPSKit[] kitsToLookFor = new Gson().fromJson(data, UPSKit[].class);
-        PoolingDataSource<PoolableConnection> dataSource = CFUtil.createDataSource(MAX_CONNECTION, cfg.getString(ApplicationConfigConstants.CF_DSM_DB_URL));
-        Arrays.stream(kitsToLookFor).forEach(
-                kit -> {
+        //every lookup thread can hold one connection
+        PoolingDataSource<PoolableConnection> dataSource = CFUtil.createDataSource(lookupThreads, cfg.getString(ApplicationConfigConstants.CF_DSM_DB_URL));
+        ExecutorService executor = Executors.newFixedThreadPool(lookupThreads);
+        try {
+            List<Future<?>> lookups = new ArrayList<>(kitsToLookFor.length);
+            for (UPSKit kit : kitsToLookFor) {
+                lookups.add(executor.submit(() -> {
                     logger.info("Checking possible actions for kit " + kit.getDsmKitRequestId());
                     if (StringUtils.isNotBlank(kit.getUpsPackage().getUpsShipmentId())) {
                         getUPSUpdate(dataSource, kit, cfg);
@@ -109,11 +128,41 @@ public class TestBostonUPSTrackingJob implements BackgroundFunction<PubsubMessag
                     else {
                         insertShipmentAndPackageForNewKit(dataSource, kit, cfg);// for a new kit we first need to insert the UPSShipment
                     }
-                }
-
-        );
-
+                }));
+            }
+            waitForLookups(kitsToLookFor, lookups);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
 
+    /**
+     * Waits until all lookups are done or the deadline is reached.
+     * Lookups which didn't start before the deadline are cancelled, running ones are not interrupted
+     * because they might be in the middle of triggering DSS or placing a CE order
+     */
+    private void waitForLookups(UPSKit[] kits, List<Future<?>> lookups) {
+        int notFinished = 0;
+        for (int i = 0; i < lookups.size(); i++) {
+            Future<?> lookup = lookups.get(i);
+            try {
+                lookup.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException e) {
+                lookup.cancel(false);
+                notFinished++;
+                logger.error("Couldn't finish checking kit " + kits[i].getDsmKitRequestId() + " before the deadline");
+            }
+            catch (ExecutionException e) {
+                logger.error("Problem checking kit " + kits[i].getDsmKitRequestId(), e.getCause());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while checking UPS kits", e);
+            }
+        }
+        logger.info("Checked " + (lookups.size() - notFinished) + " of " + lookups.size() + " kits");
     }
 
     private void insertShipmentAndPackageForNewKit(PoolingDataSource<PoolableConnection> dataSource, UPSKit kit, Config cfg) {
@@ -242,7 +291,7 @@ public class TestBostonUPSTrackingJob implements BackgroundFunction<PubsubMessag
 
     public UPSTrackingResponse lookupTrackingInfo(String trackingId) throws Exception {
         if (upsTracker != null) {
-            return upsTracker.lookupTrackingInfo(trackingId);
+            return upsTracker.lookupTrackingInfo(trackingId, deadline);
         }
         else {
             throw new RuntimeException("UPSTracker should not be null!");
@@ -408,6 +457,16 @@ public class TestBostonUPSTrackingJob implements BackgroundFunction<PubsubMessag
                 "  ups_activity_date_time) " +
                 "VALUES " +
                 "( ?, ?, ?, ?, ?, ?)";
+        //keeps the last activity on the package, so the dispatcher doesn't have to look for it in all activities
+        final String SQL_UPDATE_PACKAGE_LAST_ACTIVITY = "UPDATE " + STUDY_MANAGER_SCHEMA + "ups_package pack " +
+                "INNER JOIN " + STUDY_MANAGER_SCHEMA + "ups_activity activity ON activity.ups_activity_id = " +
+                "(SELECT MAX(ups_activity_id) FROM " + STUDY_MANAGER_SCHEMA + "ups_activity WHERE ups_package_id = ?) " +
+                "SET pack.last_ups_activity_id = activity.ups_activity_id, " +
+                "pack.last_ups_status_type = activity.ups_status_type, " +
+                "pack.last_ups_status_description = activity.ups_status_description, " +
+                "pack.last_ups_status_code = activity.ups_status_code, " +
+                "pack.last_ups_activity_date_time = activity.ups_activity_date_time " +
+                "WHERE pack.ups_package_id = ?";
         final String SQL_SELECT_KIT_FOR_NOTIFICATION_EXTERNAL_SHIPPER = "select  eve.*,   request.ddp_participant_id,   request.ddp_label,   request.dsm_kit_request_id, request.ddp_kit_request_id, request.upload_reason, " +
                 "        realm.ddp_instance_id, realm.instance_name, realm.base_url, realm.auth0_token, realm.notification_recipients, realm.migrated_ddp, kit.receive_date, kit.scan_date" +
                 "        FROM " + STUDY_MANAGER_SCHEMA + "ddp_kit_request request, " + STUDY_MANAGER_SCHEMA + "ddp_kit kit, " + STUDY_MANAGER_SCHEMA + "event_type eve, " + STUDY_MANAGER_SCHEMA + "ddp_instance realm where request.dsm_kit_request_id = kit.dsm_kit_request_id and request.ddp_instance_id = realm.ddp_instance_id" +
@@ -427,37 +486,42 @@ public class TestBostonUPSTrackingJob implements BackgroundFunction<PubsubMessag
         Connection conn = null;
         try {
             conn = dataSource.getConnection();
-            for (int i = activities.length - 1; i >= 0; i--) {
-                UPSActivity currentInsertingActivity = activities[i];
-                if (lastActivity != null) {
-                    if (lastActivity.getInstant() != null && (currentInsertingActivity.getInstant().equals(lastActivity.getInstant())
-                            || currentInsertingActivity.getInstant().isBefore(lastActivity.getInstant()))) {
-                        continue;
+            //all new activities of the package are inserted with one batch
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_NEW_ACTIVITIES)) {
+                int newActivities = 0;
+                for (int i = activities.length - 1; i >= 0; i--) {
+                    UPSActivity currentInsertingActivity = activities[i];
+                    if (lastActivity != null) {
+                        if (lastActivity.getInstant() != null && (currentInsertingActivity.getInstant().equals(lastActivity.getInstant())
+                                || currentInsertingActivity.getInstant().isBefore(lastActivity.getInstant()))) {
+                            continue;
+                        }
                     }
-                }
-                String activityDateTime = currentInsertingActivity.getSQLDateTimeString();
-
-
-
-                try (PreparedStatement stmt = conn.prepareStatement(INSERT_NEW_ACTIVITIES)) {
+                    String activityDateTime = currentInsertingActivity.getSQLDateTimeString();
                     stmt.setString(1, kit.getUpsPackage().getUpsPackageId());
                     stmt.setString(2, currentInsertingActivity.getLocation().getString());
                     stmt.setString(3, currentInsertingActivity.getStatus().getType());
                     stmt.setString(4, currentInsertingActivity.getStatus().getDescription());
                     stmt.setString(5, currentInsertingActivity.getStatus().getCode());
                     stmt.setString(6, activityDateTime);
-                    int r = stmt.executeUpdate();
-
-                    logger.info("Updated " + r + " rows for a new activity");
-                    logger.info("Inserted new activity " + currentInsertingActivity.getStatus().getDescription() + " for package id " + kit.getUpsPackage().getUpsPackageId());
-                    if (r != 1) {
-                        logger.error(r + " is too big for 1 new activity");
-                    }
+                    stmt.addBatch();
+                    newActivities++;
+                    logger.info("Inserting new activity " + currentInsertingActivity.getStatus().getDescription() + " for package id " + kit.getUpsPackage().getUpsPackageId());
                 }
-                catch (Exception ex) {
-                    throw new RuntimeException("Error preparing statement for inserting a new activity  for package id " + kit.getUpsPackage().getUpsPackageId(), ex);
+                if (newActivities > 0) {
+                    int[] results = stmt.executeBatch();
+                    logger.info("Inserted " + results.length + " new activities for package id " + kit.getUpsPackage().getUpsPackageId());
+                    for (int r : results) {
+                        if (r != 1 && r != Statement.SUCCESS_NO_INFO) {
+                            logger.error(r + " is too big for 1 new activity");
+                        }
+                    }
+                    updatePackageLastActivity(conn, SQL_UPDATE_PACKAGE_LAST_ACTIVITY, kit.getUpsPackage().getUpsPackageId());
                 }
             }
+            catch (Exception ex) {
+                throw new RuntimeException("Error preparing statement for inserting a new activity  for package id " + kit.getUpsPackage().getUpsPackageId(), ex);
+            }
             String oldType = null;
             if (lastActivity != null && lastActivity.getStatus() != null) {
                 oldType = lastActivity.getStatus().getType();
@@ -490,13 +554,9 @@ public class TestBostonUPSTrackingJob implements BackgroundFunction<PubsubMessag
                         }
 
                         if (shouldPlaceCEOrder) {
-                            if (orderRegistrar == null || careEvolveAuth == null) {
-                                Pair<Covid19OrderRegistrar, Authentication> careEvolveOrderingTools = createCEOrderRegistrar(cfg);
-                                orderRegistrar = careEvolveOrderingTools.getLeft();
-                                careEvolveAuth = careEvolveOrderingTools.getRight();
-
-                            }
-                            orderRegistrar.orderTest(careEvolveAuth, kit.getHruid(), kit.getMainKitLabel(), kit.getExternalOrderNumber(), earliestInTransitTime, conn, cfg);
+                            Pair<Covid19OrderRegistrar, Authentication> careEvolveOrderingTools = getCEOrderRegistrar(cfg);
+                            careEvolveOrderingTools.getLeft().orderTest(careEvolveOrderingTools.getRight(), kit.getHruid(), kit.getMainKitLabel(),
+                                    kit.getExternalOrderNumber(), earliestInTransitTime, conn, cfg);
                             logger.info("Placed CE order for kit with external order number " + kit.getExternalOrderNumber());
                             logger.info("Placed CE order for kit with label " + kit.getMainKitLabel() + " for time " + earliestInTransitTime);
                             kit.changeCEOrdered(conn, true);
@@ -543,6 +603,17 @@ public class TestBostonUPSTrackingJob implements BackgroundFunction<PubsubMessag
 
     }
 
+    private void updatePackageLastActivity(Connection conn, String query, String upsPackageId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setString(1, upsPackageId);
+            stmt.setString(2, upsPackageId);
+            int r = stmt.executeUpdate();
+            if (r > 1) {
+                logger.error(r + " rows updated in ups_package while updating last activity of package id " + upsPackageId);
+            }
+        }
+    }
+
     /**
      * Queries the database to see whether there is an upload reason
      * for the given kit label
@@ -602,6 +673,16 @@ public class TestBostonUPSTrackingJob implements BackgroundFunction<PubsubMessag
     }
 
 
+    //kits are checked concurrently, so the registrar is only created once
+    private synchronized Pair<Covid19OrderRegistrar, Authentication> getCEOrderRegistrar(Config cfg) {
+        if (orderRegistrar == null || careEvolveAuth == null) {
+            Pair<Covid19OrderRegistrar, Authentication> careEvolveOrderingTools = createCEOrderRegistrar(cfg);
+            orderRegistrar = careEvolveOrderingTools.getLeft();
+            careEvolveAuth = careEvolveOrderingTools.getRight();
+        }
+        return Pair.of(orderRegistrar, careEvolveAuth);
+    }
+
     private Pair<Covid19OrderRegistrar, Authentication> createCEOrderRegistrar(Config cfg) {
         Covid19OrderRegistrar orderRegistrar;
         String careEvolveSubscriberKey = cfg.getString(ApplicationConfigConstants.CARE_EVOLVE_SUBSCRIBER_KEY);
@@ -97,6 +97,16 @@ public class Filter {
         this.setParticipantColumn(participantColumn);
     }
 
+    /**
+     * Copy which can be changed without changing this filter (e.g. the date values when building the query string)
+     */
+    public Filter copy() {
+        return new Filter(range, exactMatch, empty, notEmpty, type, parentName,
+                filter1 != null ? new NameValue(filter1.getName(), filter1.getValue()) : null,
+                filter2 != null ? new NameValue(filter2.getName(), filter2.getValue()) : null,
+                selectedOptions != null ? selectedOptions.clone() : null, participantColumn);
+    }
+
     public static String getQueryStringForFiltering(@NonNull Filter filter, DBElement dbElement) {
         String finalQuery = "";
         String query = "";
@@ -1,9 +1,15 @@
 package org.broadinstitute.dsm.model.PDF;
 
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.StorageOptions;
 import com.google.gson.Gson;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
@@ -21,6 +27,7 @@ import org.broadinstitute.dsm.model.ddp.PDF;
 import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
 import org.broadinstitute.dsm.statics.RequestParameter;
 import org.broadinstitute.dsm.statics.RoutePath;
+import org.broadinstitute.dsm.util.ConfigUtil;
 import org.broadinstitute.dsm.util.DDPRequestUtil;
 import org.broadinstitute.dsm.util.ElasticSearchUtil;
 import org.broadinstitute.dsm.util.SystemUtil;
@@ -30,7 +37,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.Channels;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Getter
 public class DownloadPDF {
@@ -40,12 +52,15 @@ public class DownloadPDF {
     private static final String IRB = "irb";
     private static final String JSON_START_DATE = "startDate";
     private static final String JSON_END_DATE = "endDate";
+    private static final int DEFAULT_BUNDLE_THREADS = 4;
 
     private String ddpParticipantId;
     private String configName;
     private String medicalRecordId;
     private List<PDF> pdfs;
     List<String> oncHistoryIDs;
+    @Getter(AccessLevel.NONE)
+    private Map<String, Map<String, Object>> participantESData;
 
     Logger logger = LoggerFactory.getLogger(DownloadPDF.class);
 
@@ -74,29 +89,28 @@ public class DownloadPDF {
     }
 
 
-    public Optional<byte[]> getPDFs(long userIdRequest, String realm, String requestBody) {
+    /**
+     * Generates the requested pdf or pdf bundle and streams it into the given stream and at the same time into the bucket of the realm
+     */
+    public void writePDFs(long userIdRequest, String realm, String requestBody, @NonNull OutputStream outputStream) {
         UserDto user = new UserDao().get(userIdRequest ).orElseThrow();
-        Optional<byte[]> pdfBytes = Optional.empty();
         if (StringUtils.isNotBlank(this.ddpParticipantId)) {
             DDPInstance ddpInstance = DDPInstance.getDDPInstance(realm);
             if (ddpInstance != null && StringUtils.isNotBlank(ddpParticipantId)) {
                 String fileName = "";
                 if (configName == null) {
-                    pdfBytes = getPDFBundle(ddpInstance, requestBody, user);
+                    writeAndSavePDF(ddpInstance, fileName, user.getId(), outputStream,
+                            output -> writePDFBundle(ddpInstance, requestBody, user, output));
                 }
                 else {
-                    pdfBytes = generateSinglePDF(requestBody, configName, user, ddpInstance);
+                    byte[] pdfBytes = generateSinglePDF(requestBody, configName, user, ddpInstance).orElseThrow();
+                    writeAndSavePDF(ddpInstance, fileName, user.getId(), outputStream, output -> output.write(pdfBytes));
                 }
-                pdfBytes.ifPresent(bytes -> {
-                    savePDFinBucket(ddpInstance.getName(), ddpParticipantId, new ByteArrayInputStream(bytes), fileName, user.getId());
-                });
-                pdfBytes.orElseThrow();
             }
             else {
                 throw new RuntimeException("DDPInstance of participant " + ddpParticipantId + " not found");
             }
         }
-        return pdfBytes;
     }
 
     private Optional<byte[]> generateSinglePDF(@NonNull String requestBody, String configName, UserDto user, DDPInstance ddpInstance) {
@@ -118,36 +132,86 @@ public class DownloadPDF {
         return Optional.ofNullable(pdfByte);
     }
 
-    private Optional<byte[]> getPDFBundle(DDPInstance ddpInstance, String requestBody, UserDto user) {
-        if (ddpInstance != null && StringUtils.isNotBlank(ddpParticipantId)) {
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            try {
-                PDFMergerUtility pdfMerger = new PDFMergerUtility();
-                pdfMerger.setDestinationStream(output);
-                pdfs.sort(Comparator.comparing(org.broadinstitute.dsm.model.ddp.PDF::getOrder));
-
-                //make cover pdf first
-                if (pdfs != null && pdfs.size() > 0) {
-                    pdfs.forEach(pdf -> {
-                                Optional<byte[]> pdfByte;
-                                if (pdf.getOrder() > 0) {
-                                    pdfByte = generateSinglePDF(requestBody, pdf.getConfigName(), user, ddpInstance);
-                                    pdfByte.ifPresent(bytes -> {
-                                        pdfMerger.addSource(new ByteArrayInputStream(bytes));
-                                    });
-                                }
-                            }
-                    );
+    /**
+     * Generates the pdfs of the bundle concurrently into temp files and merges them into the given stream.
+     * Merging uses temp files as well, so the bundle is never held in memory as a whole
+     */
+    private void writePDFBundle(DDPInstance ddpInstance, String requestBody, UserDto user, OutputStream outputStream) throws IOException {
+        List<PDF> bundlePDFs = new ArrayList<>();
+        if (pdfs != null) {
+            //make cover pdf first
+            pdfs.stream().filter(pdf -> pdf.getOrder() > 0).sorted(Comparator.comparing(PDF::getOrder)).forEach(bundlePDFs::add);
+        }
+        if (bundlePDFs.isEmpty()) {
+            logger.warn("No pdfs selected for the bundle of participant " + ddpParticipantId);
+            return;
+        }
+        List<File> pdfFiles = new ArrayList<>();
+        TempFiles tempFiles = new TempFiles();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(getBundleThreads(), bundlePDFs.size()));
+        try {
+            List<Future<File>> futures = new ArrayList<>();
+            for (PDF pdf : bundlePDFs) {
+                futures.add(executor.submit(() -> writeTempFile(generateSinglePDF(requestBody, pdf.getConfigName(), user, ddpInstance), tempFiles)));
+            }
+            RuntimeException failure = null;
+            for (Future<File> future : futures) {
+                //wait for all of them, so every temp file gets deleted again
+                try {
+                    File pdfFile = future.get();
+                    if (pdfFile != null) {
+                        pdfFiles.add(pdfFile);
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while generating pdf bundle of participant " + ddpParticipantId, e);
+                }
+                catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new RuntimeException("Couldn't generate pdf bundle of participant " + ddpParticipantId, e.getCause());
+                    }
                 }
-                pdfMerger.mergeDocuments(MemoryUsageSetting.setupTempFileOnly());
-                //todo get page count and add them to the cover/request pdf
             }
-            catch (IOException e) {
-                throw new FileProcessingException("Unable to merge documents ", e);
+            if (failure != null) {
+                throw failure;
             }
-            return Optional.ofNullable(output.toByteArray());
+
+            PDFMergerUtility pdfMerger = new PDFMergerUtility();
+            pdfMerger.setDestinationStream(outputStream);
+            for (File pdfFile : pdfFiles) {
+                pdfMerger.addSource(pdfFile);
+            }
+            pdfMerger.mergeDocuments(MemoryUsageSetting.setupTempFileOnly());
+            //todo get page count and add them to the cover/request pdf
+        }
+        catch (IOException e) {
+            throw new FileProcessingException("Unable to merge documents ", e);
+        }
+        finally {
+            //pdfs still generating after an interrupt or error are stopped and delete their file themselves
+            executor.shutdownNow();
+            tempFiles.deleteAll();
+        }
+    }
+
+    private File writeTempFile(Optional<byte[]> pdfBytes, TempFiles tempFiles) throws IOException {
+        if (pdfBytes.isEmpty()) {
+            return null;
+        }
+        File pdfFile = File.createTempFile("pdf_bundle_", ".pdf");
+        if (!tempFiles.add(pdfFile)) {
+            pdfFile.delete();
+            return null;
         }
-        return Optional.empty();
+        try (OutputStream fileStream = new FileOutputStream(pdfFile)) {
+            fileStream.write(pdfBytes.get());
+        }
+        return pdfFile;
+    }
+
+    private static int getBundleThreads() {
+        return Math.max(1, ConfigUtil.getInt(ApplicationConfigConstants.PDF_BUNDLE_THREADS, DEFAULT_BUNDLE_THREADS));
     }
 
     protected byte[] generatePDFFromValues(Map<String, Object> valueMap, DDPInstance ddpInstance, PDFProcessor processor) {
@@ -165,7 +229,8 @@ public class DownloadPDF {
         MedicalInfo medicalInfo = null;
         String dob = null;
         if (StringUtils.isNotBlank(ddpInstance.getParticipantIndexES())) {
-            Map<String, Map<String, Object>> participantsESData = ElasticSearchUtil.getDDPParticipantsFromES(ddpInstance.getName(), ddpInstance.getParticipantIndexES());
+            Map<String, Map<String, Object>> participantsESData = ddpParticipantId.equals(this.ddpParticipantId)
+                    ? loadParticipantESData(ddpInstance) : fetchParticipantESData(ddpInstance, ddpParticipantId);
             ddpParticipant = ElasticSearchUtil.getParticipantAsDDPParticipant(participantsESData, ddpParticipantId);
             medicalInfo = ElasticSearchUtil.getParticipantAsMedicalInfo(participantsESData, ddpParticipantId);
             dob = SystemUtil.changeDateFormat(SystemUtil.DATE_FORMAT, SystemUtil.US_DATE_FORMAT, medicalInfo.getDob());
@@ -186,7 +251,47 @@ public class DownloadPDF {
         }
     }
 
-    private void savePDFinBucket(@NonNull String realm, @NonNull String ddpParticipantId, @NonNull InputStream stream, @NonNull String fileType, @NonNull Integer userId) {
+    /**
+     * ES data of the participant of the request, fetched only once for all pdfs of a bundle
+     */
+    private synchronized Map<String, Map<String, Object>> loadParticipantESData(DDPInstance ddpInstance) {
+        if (participantESData == null) {
+            participantESData = fetchParticipantESData(ddpInstance, ddpParticipantId);
+        }
+        return participantESData;
+    }
+
+    private static Map<String, Map<String, Object>> fetchParticipantESData(DDPInstance ddpInstance, String ddpParticipantId) {
+        try {
+            return ElasticSearchUtil.getParticipantSourcesByIds(ElasticSearchUtil.getClientInstance(), ddpInstance.getParticipantIndexES(),
+                    Collections.singleton(ddpParticipantId), null);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Couldn't get ES data of participant " + ddpParticipantId + " of ddpInstance " + ddpInstance.getName(), e);
+        }
+    }
+
+    /**
+     * Writes the pdf once into the given stream and an upload into the bucket of the realm.
+     * The upload is only finished if the pdf was written completely, a failing upload doesn't stop the download
+     */
+    private void writeAndSavePDF(@NonNull DDPInstance ddpInstance, @NonNull String fileType, @NonNull Integer userId,
+                                 @NonNull OutputStream outputStream, @NonNull PDFWriter pdfWriter) {
+        BucketUploadStream bucketStream = openBucketUpload(ddpInstance.getName(), ddpParticipantId, fileType, userId);
+        OutputStream output = bucketStream != null ? new TeeOutputStream(outputStream, bucketStream) : outputStream;
+        try {
+            pdfWriter.write(output);
+            output.flush();
+            if (bucketStream != null) {
+                bucketStream.close();
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Couldn't write pdf for participant " + ddpParticipantId + " of ddpInstance " + ddpInstance.getName(), e);
+        }
+    }
+
+    private BucketUploadStream openBucketUpload(@NonNull String realm, @NonNull String ddpParticipantId, @NonNull String fileType, @NonNull Integer userId) {
         String gcpName = TransactionWrapper.getSqlFromConfig(ApplicationConfigConstants.GOOGLE_PROJECT_NAME);
         if (StringUtils.isNotBlank(gcpName)) {
             String bucketName = gcpName + "_dsm_" + realm.toLowerCase();
@@ -200,14 +305,23 @@ public class DownloadPDF {
                 }
                 if (GoogleBucket.bucketExists(credentials, gcpName, bucketName)) {
                     long time = System.currentTimeMillis();
-                    GoogleBucket.uploadFile(credentials, gcpName, bucketName,
-                            ddpParticipantId + "/readonly/" + ddpParticipantId + "_" + fileType + "_" + userId + "_download_" + time + ".pdf", stream);
+                    String fileName = ddpParticipantId + "/readonly/" + ddpParticipantId + "_" + fileType + "_" + userId + "_download_" + time + ".pdf";
+                    StorageOptions.Builder storageOptions = StorageOptions.newBuilder().setProjectId(gcpName);
+                    if (credentials != null) {
+                        try (InputStream credentialsStream = new FileInputStream(credentials)) {
+                            storageOptions.setCredentials(GoogleCredentials.fromStream(credentialsStream));
+                        }
+                    }
+                    WriteChannel writeChannel = storageOptions.build().getService()
+                            .writer(BlobInfo.newBuilder(bucketName, fileName).setContentType("application/pdf").build());
+                    return new BucketUploadStream(Channels.newOutputStream(writeChannel), bucketName + "/" + fileName);
                 }
             }
             catch (Exception e) {
                 logger.error("Failed to check for GCP bucket " + bucketName, e);
             }
         }
+        return null;
     }
 
     private byte[] requestPDF(@NonNull DDPInstance ddpInstance, @NonNull String ddpParticipantId, @NonNull String pdfType) {
@@ -221,4 +335,91 @@ public class DownloadPDF {
         }
     }
 
+    private interface PDFWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * Temp files of a pdf bundle. Files added after the bundle is done are not kept
+     */
+    private class TempFiles {
+
+        private final List<File> files = new ArrayList<>();
+        private boolean deleted = false;
+
+        synchronized boolean add(File file) {
+            if (deleted) {
+                return false;
+            }
+            files.add(file);
+            return true;
+        }
+
+        synchronized void deleteAll() {
+            deleted = true;
+            for (File file : files) {
+                if (!file.delete()) {
+                    logger.warn("Couldn't delete temp file " + file.getAbsolutePath());
+                }
+            }
+            files.clear();
+        }
+    }
+
+    /**
+     * Stream into the bucket which stops uploading after an error instead of failing the download.
+     * Only closing it finishes the upload
+     */
+    private class BucketUploadStream extends OutputStream {
+
+        private final OutputStream uploadStream;
+        private final String path;
+        private boolean failed = false;
+
+        BucketUploadStream(OutputStream uploadStream, String path) {
+            this.uploadStream = uploadStream;
+            this.path = path;
+        }
+
+        @Override
+        public void write(int b) {
+            if (!failed) {
+                try {
+                    uploadStream.write(b);
+                }
+                catch (IOException | RuntimeException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (!failed) {
+                try {
+                    uploadStream.write(b, off, len);
+                }
+                catch (IOException | RuntimeException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!failed) {
+                try {
+                    uploadStream.close();
+                }
+                catch (IOException | RuntimeException e) {
+                    fail(e);
+                }
+            }
+        }
+
+        private void fail(Exception e) {
+            failed = true;
+            logger.error("Failed to upload pdf to " + path, e);
+        }
+    }
 }
@@ -5,11 +5,12 @@ import lombok.NonNull;
 import org.broadinstitute.ddp.handlers.util.ParticipantSurveyInfo;
 import org.broadinstitute.dsm.db.DDPInstance;
 import org.broadinstitute.dsm.exception.FileColumnMissing;
-import org.broadinstitute.dsm.exception.UploadLineException;
-import org.broadinstitute.dsm.util.SystemUtil;
+import org.broadinstitute.dsm.util.DelimitedFileReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.*;
 
 @Data
@@ -32,53 +33,52 @@ public class ParticipantSurveyStatusResponse {
         this.surveyInfo = surveyInfo;
     }
 
-    public static List<ParticipantSurveyUploadObject> isFileValid(@NonNull DDPInstance instance, @NonNull String fileContent){
-        if (fileContent != null) {
-            String linebreak = SystemUtil.lineBreak(fileContent);
-            String[] rows = fileContent.split(linebreak);
-            if (rows.length > 1) {
-                String firstRow = rows[0];
-                List<String> fieldNames = new ArrayList<>(Arrays.asList(firstRow.trim().split(SystemUtil.SEPARATOR)));
-                String missingFieldName = fieldNameMissing(instance, fieldNames);
-                if (missingFieldName == null) {
-                    List<ParticipantSurveyUploadObject> uploadObjects = new ArrayList<>();
-                    for (int rowIndex = 1; rowIndex < rows.length; rowIndex++) {
-                        Map<String, String> obj = new LinkedHashMap<>();
-                        String[] row = rows[rowIndex].trim().split(SystemUtil.SEPARATOR);
-                        if (row.length == fieldNames.size()) {
-                            for (int columnIndex = 0; columnIndex < fieldNames.size(); columnIndex++) {
-                                obj.put(fieldNames.get(columnIndex), row[columnIndex]);
-                            }
-                            try {
-                                ParticipantSurveyUploadObject object;
-                                if (instance.isHasRole()) {
-                                    object = new ParticipantSurveyUploadObject(obj.get(SHORT_ID),
-                                            obj.get(FIRST_NAME), obj.get(LAST_NAME), obj.get(EMAIL));
-                                }
-                                else {
-                                    object = new ParticipantSurveyUploadObject(obj.get(DDP_PARTICIPANT_ID));
-                                }
-                                if (object != null) {
-                                    uploadObjects.add(object);
-                                }
-                            }
-                            catch (Exception e) {
-                                throw new RuntimeException("Text file is not valid. Couldn't be parsed to upload object ", e);
-                            }
-                        }
-                        else {
-                            throw new UploadLineException("Error in line " + (rowIndex + 1));
-                        }
-                    }
-                    logger.info(uploadObjects.size() + " participants were uploaded for followup surveys ");
-                    return uploadObjects;
+    public static List<ParticipantSurveyUploadObject> isFileValid(@NonNull DDPInstance instance, @NonNull String fileContent) {
+        try {
+            return isFileValid(instance, new DelimitedFileReader(new StringReader(fileContent)));
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Couldn't read uploaded file", e);
+        }
+    }
+
+    /**
+     * Reads and validates the uploaded file row by row
+     *
+     * @return the upload objects, or null if the file doesn't contain any row
+     */
+    public static List<ParticipantSurveyUploadObject> isFileValid(@NonNull DDPInstance instance, @NonNull DelimitedFileReader fileReader) throws IOException {
+        List<String> fieldNames = fileReader.readHeader();
+        if (fieldNames == null) {
+            return null;
+        }
+        String missingFieldName = fieldNameMissing(instance, fieldNames);
+        if (missingFieldName != null) {
+            throw new FileColumnMissing("File is missing column " + missingFieldName);
+        }
+        List<ParticipantSurveyUploadObject> uploadObjects = new ArrayList<>();
+        Map<String, String> obj;
+        while ((obj = fileReader.readRow(fieldNames)) != null) {
+            try {
+                ParticipantSurveyUploadObject object;
+                if (instance.isHasRole()) {
+                    object = new ParticipantSurveyUploadObject(obj.get(SHORT_ID),
+                            obj.get(FIRST_NAME), obj.get(LAST_NAME), obj.get(EMAIL));
                 }
                 else {
-                    throw new FileColumnMissing("File is missing column " + missingFieldName);
+                    object = new ParticipantSurveyUploadObject(obj.get(DDP_PARTICIPANT_ID));
                 }
+                uploadObjects.add(object);
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Text file is not valid. Couldn't be parsed to upload object ", e);
             }
         }
-        return null;
+        if (uploadObjects.isEmpty()) {
+            return null;
+        }
+        logger.info(uploadObjects.size() + " participants were uploaded for followup surveys ");
+        return uploadObjects;
     }
 
     private static String fieldNameMissing(@NonNull DDPInstance instance, @NonNull List<String> fieldName) {
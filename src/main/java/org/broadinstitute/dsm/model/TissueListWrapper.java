@@ -4,12 +4,18 @@ import lombok.Data;
 import org.apache.commons.lang3.StringUtils;
 import org.broadinstitute.dsm.db.DDPInstance;
 import org.broadinstitute.dsm.util.ElasticSearchUtil;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Data
 public class TissueListWrapper {
@@ -17,37 +23,90 @@ public class TissueListWrapper {
     private TissueList tissueList;
     private static final Logger logger = LoggerFactory.getLogger(TissueListWrapper.class);
 
+    private static final String DDP = "ddp";
+    private static final String[] PARTICIPANT_ID_FIELDS = new String[] {ElasticSearchUtil.PROFILE_GUID, ElasticSearchUtil.PROFILE_LEGACYALTPID};
+
     public TissueListWrapper(Map<String, Object> data, TissueList tissueList) {
         this.data = data;
         this.tissueList = tissueList;
     }
 
     public static List<TissueListWrapper> getTissueListData(DDPInstance instance, Map<String, String> filters, List<TissueList> tissueLists) {
-        Map<String, Map<String, Object>> participantESData = null;
-        boolean hasESData = instance.getParticipantIndexES() != null;
-        if (filters != null && filters.containsKey("ES") && hasESData) {
-            participantESData = ElasticSearchUtil.getFilteredDDPParticipantsFromES(instance, filters.get("ES"));
-        }
-        else if ((filters == null || !filters.containsKey("ES")) || (filters.containsKey("ES") && participantESData == null) || !hasESData) {
-            participantESData = ElasticSearchUtil.getESData(instance);
-        }
+        return getTissueListData(instance, filters, tissueLists, 0, 0);
+    }
+
+    /**
+     * Combines the tissues with the ES data of their participants.
+     * Only the participants of the given tissues are requested from ES, not the whole study. An ES filter is added to that query
+     *
+     * @param from index of the first result to return
+     * @param to   index after the last result to return, if not bigger than from all results are returned
+     */
+    public static List<TissueListWrapper> getTissueListData(DDPInstance instance, Map<String, String> filters, List<TissueList> tissueLists,
+                                                            int from, int to) {
         List<TissueListWrapper> results = new ArrayList<>();
+        if (StringUtils.isBlank(instance.getParticipantIndexES())) {
+            return results;
+        }
         long timeBegin = System.currentTimeMillis();
-        for (int i = 0; i < tissueLists.size(); i++) {
-            TissueList tissueList = tissueLists.get(i);
-            String ddpParticipantId = tissueList.getDdpParticipantId();
-            if (StringUtils.isNotBlank(ddpParticipantId) && participantESData != null) {
-                Map<String, Object> esData = participantESData.get(ddpParticipantId);
-                if (esData != null) {
-                    results.add(new TissueListWrapper(esData, tissueList));
-                }
-                //                else {
-                //                    throw new RuntimeException("ES DATA not found for DDPParticipantId " + ddpParticipantId);
-                //                }
+        QueryBuilder esFilter = null;
+        if (filters != null && filters.containsKey("ES")) {
+            esFilter = ElasticSearchUtil.createESQuery(filters.get("ES"), instance.getParticipantIndexES());
+            if (esFilter == null) {
+                logger.error("Couldn't create query from filter " + filters.get("ES") + " for instance " + instance.getName());
+                return results;
+            }
+        }
+        List<TissueList> tissuesWithParticipantId = tissueLists.stream()
+                .filter(tissueList -> StringUtils.isNotBlank(tissueList.getDdpParticipantId()))
+                .collect(Collectors.toList());
+        List<TissueList> page = getPage(tissuesWithParticipantId, from, to);
+        long totalCount = -1;
+        if (esFilter != null || page.size() < tissuesWithParticipantId.size()) {
+            //only tissues of participants in ES (matching the filter) are listed, so that needs to be known to count them and cut the page
+            Set<String> participantsInES = getParticipantsESData(instance, tissuesWithParticipantId, esFilter, PARTICIPANT_ID_FIELDS).keySet();
+            List<TissueList> tissuesInES = tissuesWithParticipantId.stream()
+                    .filter(tissueList -> participantsInES.contains(tissueList.getDdpParticipantId()))
+                    .collect(Collectors.toList());
+            totalCount = tissuesInES.size();
+            page = getPage(tissuesInES, from, to);
+        }
+        Map<String, Map<String, Object>> participantESData = getParticipantsESData(instance, page, null, null);
+        for (TissueList tissueList : page) {
+            Map<String, Object> esData = participantESData.get(tissueList.getDdpParticipantId());
+            if (esData != null) {
+                esData.put(DDP, instance.getName());
+                results.add(new TissueListWrapper(esData, tissueList));
             }
         }
+        if (totalCount < 0) {
+            totalCount = results.size();
+        }
         long timeEnd = System.currentTimeMillis();
-        logger.info("Time it took for " + results.size() + " results to match: " + (timeEnd - timeBegin));
+        logger.info("Time it took for " + results.size() + " of " + totalCount + " results to match: " + (timeEnd - timeBegin));
         return results;
     }
+
+    private static Map<String, Map<String, Object>> getParticipantsESData(DDPInstance instance, Collection<TissueList> tissueLists,
+                                                                          QueryBuilder esFilter, String[] includes) {
+        if (tissueLists.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Set<String> ddpParticipantIds = tissueLists.stream().map(TissueList::getDdpParticipantId).collect(Collectors.toSet());
+        try {
+            return ElasticSearchUtil.getParticipantSourcesByIds(ElasticSearchUtil.getClientInstance(), instance.getParticipantIndexES(),
+                    ddpParticipantIds, esFilter, includes);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Couldn't get participants of tissues from ES for instance " + instance.getName(), e);
+        }
+    }
+
+    static <T> List<T> getPage(List<T> list, int from, int to) {
+        if (to <= from || (from <= 0 && to >= list.size())) {
+            return list;
+        }
+        int start = Math.min(Math.max(from, 0), list.size());
+        return new ArrayList<>(list.subList(start, Math.min(to, list.size())));
+    }
 }
@@ -1,37 +1,39 @@
 package org.broadinstitute.dsm.model.at;
 
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
 import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
 import org.broadinstitute.dsm.db.DDPInstance;
-import org.broadinstitute.dsm.db.dao.Dao;
 import org.broadinstitute.dsm.db.dao.bookmark.BookmarkDao;
 import org.broadinstitute.dsm.db.dao.ddp.participant.ParticipantDataDao;
 import org.broadinstitute.dsm.db.dao.settings.FieldSettingsDao;
-import org.broadinstitute.dsm.db.dto.bookmark.BookmarkDto;
 import org.broadinstitute.dsm.db.dto.ddp.participant.ParticipantDataDto;
 import org.broadinstitute.dsm.db.dto.settings.FieldSettingsDto;
+import org.broadinstitute.dsm.model.defaultvalues.Defaultable;
 import org.broadinstitute.dsm.model.elasticsearch.ESProfile;
 import org.broadinstitute.dsm.model.elasticsearch.ElasticSearchParticipantDto;
-import org.broadinstitute.dsm.model.settings.field.FieldSettings;
 import org.broadinstitute.dsm.model.participant.data.ParticipantData;
-import org.broadinstitute.dsm.statics.ESObjectConstants;
+import org.broadinstitute.dsm.model.settings.field.FieldSettings;
 import org.broadinstitute.dsm.util.ElasticSearchUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-public class DefaultValues {
+/**
+ * Default values of AT participants (genomic id and exit status).
+ * Values are only added if the participant doesn't have them yet, checked against the participant's current data right before adding them.
+ * New participants get them when they register, {@link #backfill()} adds them to everybody who is still missing some
+ */
+public class DefaultValues implements Defaultable {
 
     private static final Logger logger = LoggerFactory.getLogger(DefaultValues.class);
 
+    public static final String AT_REALM = "atcp";
     private static final String FIELD_TYPE_ID = "AT_GROUP_GENOME_STUDY";
     private static final String GENOME_STUDY_CPT_ID = "GENOME_STUDY_CPT_ID";
     private static final String PREFIX = "DDP_ATCP_";
@@ -40,136 +42,156 @@ public class DefaultValues {
     public static final String REGISTRATION_TYPE_DEPENDENT = "dependent";
     public static final String EXITSTATUS = "EXITSTATUS";
 
-    private static final Gson GSON = new Gson();
     public static final String AT_PARTICIPANT_EXIT = "AT_PARTICIPANT_EXIT";
     public static final String AT_GENOMIC_ID = "at_genomic_id";
-    private Dao dataAccess;
+    private static final String SYSTEM = "SYSTEM";
 
-    private Map<String, List<ParticipantDataDto>> participantData;
-    private List<ElasticSearchParticipantDto> participantESData;
+    private final ParticipantDataDao participantDataDao = new ParticipantDataDao();
+    private final BookmarkDao bookmarkDao = new BookmarkDao();
     private DDPInstance instance;
-    private String queryAddition;
-    private ParticipantDataDao participantDataDao;
+    private String defaultExitStatus;
 
-    public DefaultValues(Map<String, List<ParticipantDataDto>> participantData,
-                         List<ElasticSearchParticipantDto> participantESData, @NonNull DDPInstance instance, String queryAddition) {
-        this.participantData = participantData;
-        this.participantESData = participantESData;
+    public DefaultValues() {
+    }
+
+    private DefaultValues(@NonNull DDPInstance instance) {
         this.instance = instance;
-        this.queryAddition = queryAddition;
-        this.participantDataDao = new ParticipantDataDao();
     }
 
-    public Map<String, List<ParticipantDataDto>> addDefaultValues() {
-        if (participantESData == null) {
-            logger.warn("Could not update default values, participant ES data is null");
-            return participantData;
+    /**
+     * Adds the missing default values of all participants of the AT study.
+     * Participants which look incomplete in the data loaded at the start are read again before adding values,
+     * they might have gotten them by their registration in the meantime
+     *
+     * @return number of participants default values were added to
+     */
+    public static int backfill() {
+        DDPInstance instance = DDPInstance.getDDPInstance(AT_REALM);
+        if (instance == null || StringUtils.isBlank(instance.getParticipantIndexES())) {
+            return 0;
         }
-        boolean addedNewParticipantData = false;
-        Map<String, ElasticSearchParticipantDto> participantEsDataByParticipantId =
-                participantESData.stream().collect(Collectors.toMap(ElasticSearchParticipantDto::getParticipantId, Function.identity()));
-        for (Map.Entry<String, ElasticSearchParticipantDto> entry: participantEsDataByParticipantId.entrySet()) {
+        DefaultValues defaultValues = new DefaultValues(instance);
+        Map<String, List<ParticipantDataDto>> participantData = defaultValues.participantDataDao
+                .getParticipantDataByInstanceId(Integer.parseInt(instance.getDdpInstanceId())).stream()
+                .filter(pData -> pData.getDdpParticipantId().isPresent())
+                .collect(Collectors.groupingBy(pData -> pData.getDdpParticipantId().get()));
+        int updatedParticipants = 0;
+        for (Map.Entry<String, List<ParticipantDataDto>> entry : participantData.entrySet()) {
             String ddpParticipantId = entry.getKey();
-            List<ParticipantDataDto> participantDataList = participantData.get(ddpParticipantId);
-            if (participantDataList == null) continue;
-
-            if (!hasParticipantDataGenomicId(participantDataList) && isSelfOrDependentParticipant(participantDataList)) {
-                ElasticSearchParticipantDto esParticipantData = entry.getValue();
-                String hruid = esParticipantData.getProfile().map(ESProfile::getHruid).orElse("");;
-                addedNewParticipantData = getParticipantGenomicFieldData(participantDataList)
-                        .map(pData -> insertGenomicIdIfNotExistsInData(ddpParticipantId, hruid, pData))
-                        .orElseGet(() -> insertGenomicIdForParticipant(ddpParticipantId, hruid));
+            if (!needsDefaultValues(entry.getValue())) {
+                continue;
             }
-
-            if (!hasExitedStatusDefaultValue(participantDataList) && isSelfOrDependentParticipant(participantDataList)) {
-                addedNewParticipantData = getParticipantExitFieldData(participantDataList)
-                        .map(pData -> insertExitStatusIfNotExistsInData(ddpParticipantId, pData))
-                        .orElseGet(() -> insertExitStatusForParticipant(ddpParticipantId));
+            try {
+                List<ParticipantDataDto> currentParticipantData = defaultValues.getParticipantData(ddpParticipantId);
+                if (defaultValues.addDefaultValues(ddpParticipantId, currentParticipantData, () -> defaultValues.getHruid(ddpParticipantId))) {
+                    updatedParticipants++;
+                }
             }
-
-        }
-        if (addedNewParticipantData) {
-            //participant data was added, getting new list of data
-            if (StringUtils.isNotBlank(queryAddition)) {
-                List<ParticipantDataDto> participantDataByInstanceIdAndQueryAddition =
-                        participantDataDao.getParticipantDataByInstanceIdAndQueryAddition(Integer.parseInt(instance.getDdpInstanceId()),
-                                queryAddition);
-                participantData = getParticipantDataWithParticipantId(participantDataByInstanceIdAndQueryAddition);
+            catch (Exception e) {
+                logger.error("Couldn't add default values for participant " + ddpParticipantId, e);
             }
-            else {
-                List<ParticipantDataDto> participantDataByInstanceId =
-                        participantDataDao.getParticipantDataByInstanceId(Integer.parseInt(instance.getDdpInstanceId()));
-                participantData = getParticipantDataWithParticipantId(participantDataByInstanceId);
+        }
+        logger.info("Added default values to " + updatedParticipants + " of " + participantData.size() + " participants of " + AT_REALM);
+        return updatedParticipants;
+    }
+
+    @Override
+    public boolean generateDefaults(String studyGuid, String participantId) {
+        try {
+            instance = DDPInstance.getDDPInstanceByGuid(studyGuid);
+            if (instance == null) {
+                logger.warn("No ddp instance with study guid " + studyGuid + ", default values of " + participantId + " will be added by the backfill");
+                return true;
             }
+            addDefaultValues(participantId, getParticipantData(participantId), () -> getHruid(participantId));
+            return true;
+        }
+        catch (Exception e) {
+            logger.error("Couldn't add default values for participant " + participantId, e);
+            return false;
         }
-        return participantData;
     }
 
-    private Map<String, List<ParticipantDataDto>> getParticipantDataWithParticipantId(List<ParticipantDataDto> participantDataByInstanceId) {
-        return participantDataByInstanceId.stream()
-                .collect(Collectors.toMap(
-                        pDataDto -> pDataDto.getDdpParticipantId().orElse(""),
-                        pDataDto -> new ArrayList<>(List.of(pDataDto)),
-                        (prev, curr) -> {
-                            prev.addAll(curr);
-                            return prev;
-                        }
-                ));
+    private List<ParticipantDataDto> getParticipantData(String ddpParticipantId) {
+        int ddpInstanceId = Integer.parseInt(instance.getDdpInstanceId());
+        return participantDataDao.getParticipantDataByParticipantId(ddpParticipantId).stream()
+                .filter(pData -> pData.getDdpInstanceId() == ddpInstanceId)
+                .collect(Collectors.toList());
     }
 
-    private boolean hasParticipantDataGenomicId(List<ParticipantDataDto> participantDataList) {
-        if (participantDataList.isEmpty()) return false;
+    static boolean needsDefaultValues(List<ParticipantDataDto> participantDataList) {
+        return isSelfOrDependentParticipant(participantDataList)
+                && (!hasParticipantDataGenomicId(participantDataList) || !hasExitedStatusDefaultValue(participantDataList));
+    }
+
+    /**
+     * @param hruid only asked for if the participant needs a genomic id
+     * @return true if a value was added
+     */
+    boolean addDefaultValues(@NonNull String ddpParticipantId, @NonNull List<ParticipantDataDto> participantDataList, @NonNull Supplier<String> hruid) {
+        if (!isSelfOrDependentParticipant(participantDataList)) {
+            return false;
+        }
+        boolean added = false;
+        if (!hasParticipantDataGenomicId(participantDataList)) {
+            Optional<ParticipantDataDto> genomicFieldData = getParticipantFieldData(participantDataList, FIELD_TYPE_ID);
+            added = genomicFieldData.isPresent()
+                    ? insertGenomicIdIfNotExistsInData(ddpParticipantId, hruid.get(), genomicFieldData.get())
+                    : insertGenomicIdForParticipant(ddpParticipantId, hruid.get());
+        }
+        if (!hasExitedStatusDefaultValue(participantDataList)) {
+            Optional<ParticipantDataDto> exitFieldData = getParticipantFieldData(participantDataList, AT_PARTICIPANT_EXIT);
+            added |= exitFieldData.isPresent()
+                    ? insertExitStatusIfNotExistsInData(ddpParticipantId, exitFieldData.get())
+                    : insertExitStatusForParticipant(ddpParticipantId);
+        }
+        return added;
+    }
+
+    static boolean isSelfOrDependentParticipant(List<ParticipantDataDto> participantDataList) {
         return participantDataList.stream()
-                .anyMatch(participantData -> {
-                    Map<String, String> data = GSON.fromJson(participantData.getData().orElse(""), new TypeToken<Map<String, String>>() {}.getType());
-                    return data.containsKey(GENOME_STUDY_CPT_ID) && StringUtils.isNotBlank(data.get(GENOME_STUDY_CPT_ID));
-                });
+                .map(ParticipantDataDto::getDataMap)
+                .anyMatch(data -> data != null && (REGISTRATION_TYPE_SELF.equalsIgnoreCase(data.get(REGISTRATION_TYPE))
+                        || REGISTRATION_TYPE_DEPENDENT.equalsIgnoreCase(data.get(REGISTRATION_TYPE))));
     }
 
-    private boolean isSelfOrDependentParticipant(List<ParticipantDataDto> participantDataList) {
-        if (participantDataList.isEmpty()) return false;
+    static boolean hasParticipantDataGenomicId(List<ParticipantDataDto> participantDataList) {
         return participantDataList.stream()
-                .anyMatch(pData -> {
-                    Map<String, String> data = GSON.fromJson(pData.getData().orElse(""), new TypeToken<Map<String, String>>() {}.getType());
-                    return data.containsKey(REGISTRATION_TYPE) &&
-                            (REGISTRATION_TYPE_SELF.equalsIgnoreCase(data.get(REGISTRATION_TYPE))
-                                    || REGISTRATION_TYPE_DEPENDENT.equalsIgnoreCase(data.get(REGISTRATION_TYPE)));
-                });
+                .map(ParticipantDataDto::getDataMap)
+                .anyMatch(data -> data != null && StringUtils.isNotBlank(data.get(GENOME_STUDY_CPT_ID)));
     }
 
-    private boolean hasExitedStatusDefaultValue(List<ParticipantDataDto> participantDataList) {
-        if (participantDataList.isEmpty()) return false;
+    static boolean hasExitedStatusDefaultValue(List<ParticipantDataDto> participantDataList) {
         return participantDataList.stream()
-                .anyMatch(participantData -> {
-                    Map<String, String> data = GSON.fromJson(participantData.getData().orElse(""), new TypeToken<Map<String, String>>() {}.getType());
-                    return AT_PARTICIPANT_EXIT.equals(participantData.getFieldTypeId().orElse("")) && (data.containsKey(EXITSTATUS) && StringUtils.isNotBlank(data.get(EXITSTATUS)));
-                });
+                .filter(participantData -> AT_PARTICIPANT_EXIT.equals(participantData.getFieldTypeId().orElse("")))
+                .map(ParticipantDataDto::getDataMap)
+                .anyMatch(data -> data != null && StringUtils.isNotBlank(data.get(EXITSTATUS)));
     }
 
-    private Optional<ParticipantDataDto> getParticipantGenomicFieldData(List<ParticipantDataDto> participantDataList) {
-        if (participantDataList.isEmpty()) return Optional.empty();
+    private static Optional<ParticipantDataDto> getParticipantFieldData(List<ParticipantDataDto> participantDataList, String fieldTypeId) {
         return participantDataList.stream()
-                .filter(participantData -> FIELD_TYPE_ID.equals(participantData.getFieldTypeId().orElse("")))
+                .filter(participantData -> fieldTypeId.equals(participantData.getFieldTypeId().orElse("")))
                 .findFirst();
     }
 
-    private boolean insertGenomicIdIfNotExistsInData(String ddpParticipantId, String hruid,
-                                                     ParticipantDataDto pData) {
-        Map<String, String> dataMap = GSON.fromJson(pData.getData().orElse(""), new TypeToken<Map<String, String>>() {}.getType());
+    private String getHruid(String ddpParticipantId) {
+        return ElasticSearchUtil.getParticipantESDataByParticipantId(instance.getParticipantIndexES(), ddpParticipantId)
+                .flatMap(ElasticSearchParticipantDto::getProfile)
+                .map(ESProfile::getHruid)
+                .orElse("");
+    }
+
+    private boolean insertGenomicIdIfNotExistsInData(String ddpParticipantId, String hruid, ParticipantDataDto pData) {
+        Map<String, String> dataMap = getDataMapCopy(pData);
         if (dataMap.containsKey(GENOME_STUDY_CPT_ID)) return false;
         dataMap.put(GENOME_STUDY_CPT_ID, PREFIX.concat(getGenomicIdValue(hruid)));
         return updateParticipantData(ddpParticipantId, pData, dataMap);
     }
 
+    //registration and backfill can ask at the same time, the bookmark is taken and incremented in one locking transaction
     private String getGenomicIdValue(String hruid) {
-        this.setDataAccess(new BookmarkDao());
-        BookmarkDao dataAccess = (BookmarkDao) this.dataAccess;
-        Optional<BookmarkDto> maybeGenomicId = dataAccess.getBookmarkByInstance(AT_GENOMIC_ID);
-        return maybeGenomicId
-                .map(bookmarkDto -> {
-                    dataAccess.updateBookmarkValueByBookmarkId(bookmarkDto.getBookmarkId(), bookmarkDto.getValue() + 1);
-                    return String.valueOf(bookmarkDto.getValue());
-                })
+        return bookmarkDao.getAndIncrementBookmarkValue(AT_GENOMIC_ID)
+                .map(String::valueOf)
                 .orElse(hruid);
     }
 
@@ -178,59 +200,51 @@ public class DefaultValues {
         return insertParticipantData(Map.of(GENOME_STUDY_CPT_ID, PREFIX.concat(getGenomicIdValue(hruid))), ddpParticipantId, FIELD_TYPE_ID);
     }
 
-    private Optional<ParticipantDataDto> getParticipantExitFieldData(List<ParticipantDataDto> participantDataList) {
-        if (participantDataList.isEmpty()) return Optional.empty();
-        return participantDataList.stream()
-                .filter(participantData -> AT_PARTICIPANT_EXIT.equals(participantData.getFieldTypeId().orElse("")))
-                .findFirst();
-    }
-
     private boolean insertExitStatusIfNotExistsInData(String ddpParticipantId, ParticipantDataDto pData) {
-        Map<String, String> dataMap = GSON.fromJson(pData.getData().orElse(""), new TypeToken<Map<String, String>>() {}.getType());
+        Map<String, String> dataMap = getDataMapCopy(pData);
         if (dataMap.containsKey(EXITSTATUS)) return false;
         dataMap.put(EXITSTATUS, getDefaultExitStatus());
         return updateParticipantData(ddpParticipantId, pData, dataMap);
     }
 
     private boolean insertExitStatusForParticipant(String ddpParticipantId) {
-        String datstatExitReasonDefaultOption = getDefaultExitStatus();
-        return insertParticipantData(Map.of(EXITSTATUS, datstatExitReasonDefaultOption), ddpParticipantId, AT_PARTICIPANT_EXIT);
+        return insertParticipantData(Map.of(EXITSTATUS, getDefaultExitStatus()), ddpParticipantId, AT_PARTICIPANT_EXIT);
+    }
+
+    private static Map<String, String> getDataMapCopy(ParticipantDataDto pData) {
+        Map<String, String> dataMap = pData.getDataMap();
+        return dataMap != null ? new HashMap<>(dataMap) : new HashMap<>();
     }
 
     private boolean updateParticipantData(String ddpParticipantId, ParticipantDataDto pData, Map<String, String> dataMap) {
-        this.setDataAccess(new ParticipantDataDao());
-        ParticipantData participantData = new ParticipantData(dataAccess);
+        ParticipantData participantData = new ParticipantData(participantDataDao);
         participantData.setData(ddpParticipantId, Integer.parseInt(instance.getDdpInstanceId()), pData.getFieldTypeId().orElse(""), dataMap);
-        return participantData.updateParticipantData(pData.getParticipantDataId(), "SYSTEM");
+        return participantData.updateParticipantData(pData.getParticipantDataId(), SYSTEM);
     }
 
     private boolean insertParticipantData(Map<String, String> data, String ddpParticipantId, String fieldTypeId) {
-        this.setDataAccess(new ParticipantDataDao());
-        ParticipantData participantData = new ParticipantData(dataAccess);
+        ParticipantData participantData = new ParticipantData(participantDataDao);
         participantData.setData(ddpParticipantId, Integer.parseInt(instance.getDdpInstanceId()),
                 fieldTypeId, data);
         try {
-            participantData.insertParticipantData("SYSTEM");
-            logger.info("values: " + data.keySet().stream().collect(Collectors.joining(", ", "[", "]")) + " were created for participant with id: " + ddpParticipantId + " at " + FIELD_TYPE_ID);
+            participantData.insertParticipantData(SYSTEM);
+            logger.info("values: " + data.keySet().stream().collect(Collectors.joining(", ", "[", "]")) + " were created for participant with id: " + ddpParticipantId + " at " + fieldTypeId);
             return true;
         } catch (RuntimeException re) {
+            logger.warn("Couldn't insert " + fieldTypeId + " for participant with id: " + ddpParticipantId, re);
             return false;
         }
     }
 
+    //same for all participants of the instance, so it is only looked up once
     private String getDefaultExitStatus() {
-        this.setDataAccess(FieldSettingsDao.of());
-        Optional<FieldSettingsDto> fieldSettingByColumnNameAndInstanceId = ((FieldSettingsDao) dataAccess)
-                .getFieldSettingByColumnNameAndInstanceId(Integer.parseInt(instance.getDdpInstanceId()), EXITSTATUS);
-        return fieldSettingByColumnNameAndInstanceId.
-                map(fieldSettingsDto -> {
-                    FieldSettings fieldSettings = new FieldSettings();
-                    return fieldSettings.getDefaultValue(fieldSettingsDto.getPossibleValues());
-                })
-                .orElse("");
-    }
-
-    private void setDataAccess(Dao dao) {
-        this.dataAccess = dao;
+        if (defaultExitStatus == null) {
+            Optional<FieldSettingsDto> fieldSettingByColumnNameAndInstanceId = FieldSettingsDao.of()
+                    .getFieldSettingByColumnNameAndInstanceId(Integer.parseInt(instance.getDdpInstanceId()), EXITSTATUS);
+            defaultExitStatus = fieldSettingByColumnNameAndInstanceId
+                    .map(fieldSettingsDto -> new FieldSettings().getDefaultValue(fieldSettingsDto.getPossibleValues()))
+                    .orElse("");
+        }
+        return defaultExitStatus;
     }
 }
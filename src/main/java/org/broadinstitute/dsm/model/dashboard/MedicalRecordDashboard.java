@@ -0,0 +1,563 @@
+package org.broadinstitute.dsm.model.dashboard;
+
+import lombok.NonNull;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.search.join.ScoreMode;
+import org.broadinstitute.ddp.db.SimpleResult;
+import org.broadinstitute.dsm.db.AbstractionActivity;
+import org.broadinstitute.dsm.db.DDPInstance;
+import org.broadinstitute.dsm.db.KitRequestShipping;
+import org.broadinstitute.dsm.db.MedicalRecord;
+import org.broadinstitute.dsm.db.OncHistoryDetail;
+import org.broadinstitute.dsm.db.Participant;
+import org.broadinstitute.dsm.model.DashboardInformation;
+import org.broadinstitute.dsm.model.FollowUp;
+import org.broadinstitute.dsm.model.elasticsearch.ElasticSearch;
+import org.broadinstitute.dsm.model.elasticsearch.ElasticSearchParticipantDto;
+import org.broadinstitute.dsm.model.participant.ParticipantWrapperDto;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
+import org.broadinstitute.dsm.statics.DBConstants;
+import org.broadinstitute.dsm.util.AbstractionUtil;
+import org.broadinstitute.dsm.util.ConfigUtil;
+import org.broadinstitute.dsm.util.DBUtil;
+import org.broadinstitute.dsm.util.ElasticSearchUtil;
+import org.broadinstitute.dsm.util.SystemUtil;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.broadinstitute.ddp.db.TransactionWrapper.inTransaction;
+
+/**
+ * Medical record dashboard of every realm it was asked for, kept in memory per realm.
+ * The first request of a realm builds its dashboard from all participants, afterwards only participants which changed
+ * since the last refresh get counted again (see {@link #refreshAll()}), so a request only sums up the period numbers.
+ * Changes without a timestamp (e.g. easypost status of a kit or a participant removed from ES) are picked up by the
+ * regular full rebuild, which can also be asked for to verify the incremental numbers
+ */
+public class MedicalRecordDashboard {
+
+    private static final Logger logger = LoggerFactory.getLogger(MedicalRecordDashboard.class);
+
+    private static final String SQL_SELECT_CHANGED_PARTICIPANTS = "SELECT p.ddp_participant_id FROM ddp_participant p " +
+            "LEFT JOIN ddp_instance realm ON (realm.ddp_instance_id = p.ddp_instance_id) LEFT JOIN ddp_participant_record r ON (r.participant_id = p.participant_id) " +
+            "WHERE realm.instance_name = ? AND (p.last_changed >= ? OR r.last_changed >= ?) " +
+            "UNION SELECT p.ddp_participant_id FROM ddp_institution inst LEFT JOIN ddp_participant p ON (p.participant_id = inst.participant_id) " +
+            "LEFT JOIN ddp_instance realm ON (realm.ddp_instance_id = p.ddp_instance_id) LEFT JOIN ddp_medical_record m ON (m.institution_id = inst.institution_id) " +
+            "LEFT JOIN ddp_onc_history_detail oD ON (oD.medical_record_id = m.medical_record_id) " +
+            "WHERE realm.instance_name = ? AND (inst.last_changed >= ? OR m.last_changed >= ? OR oD.last_changed >= ?) " +
+            "UNION SELECT p.ddp_participant_id FROM ddp_medical_record_abstraction_activities a LEFT JOIN ddp_participant p ON (p.participant_id = a.participant_id) " +
+            "LEFT JOIN ddp_instance realm ON (realm.ddp_instance_id = p.ddp_instance_id) WHERE realm.instance_name = ? AND a.last_changed >= ? " +
+            "UNION SELECT req.ddp_participant_id FROM ddp_kit_request req LEFT JOIN ddp_instance realm ON (realm.ddp_instance_id = req.ddp_instance_id) " +
+            "LEFT JOIN ddp_kit kit ON (kit.dsm_kit_request_id = req.dsm_kit_request_id) " +
+            "WHERE realm.instance_name = ? AND (req.created_date >= ? OR kit.scan_date >= ? OR kit.receive_date >= ? OR kit.deactivated_date >= ?) " +
+            "UNION SELECT ex.ddp_participant_id FROM ddp_participant_exit ex LEFT JOIN ddp_instance realm ON (realm.ddp_instance_id = ex.ddp_instance_id) " +
+            "WHERE realm.instance_name = ? AND ex.exit_date >= ?";
+
+    //changes written by transactions which were still open while the last refresh read the data
+    private static final long REFRESH_OVERLAP_MILLIS = 60 * 1000L;
+    private static final int PARTICIPANT_CHUNK_SIZE = 1000;
+    private static final long DEFAULT_REBUILD_INTERVAL_HOURS = 24L;
+
+    private static final Map<String, RealmDashboard> dashboards = new ConcurrentHashMap<>();
+
+    /**
+     * @param rebuild count all participants of the realm again instead of using the kept numbers,
+     *                differences to the kept numbers are logged
+     */
+    public static DashboardInformation getDashboardInformation(@NonNull String realm, long start, long end, boolean rebuild) {
+        RealmDashboard dashboard = dashboards.get(realm);
+        if (dashboard == null || rebuild) {
+            dashboard = rebuild(realm);
+        }
+        return dashboard.getDashboardInformation(start, end);
+    }
+
+    /**
+     * Counts all participants of the realm again and replaces the kept dashboard of the realm
+     */
+    public static synchronized RealmDashboard rebuild(@NonNull String realm) {
+        long start = System.currentTimeMillis();
+        DDPInstance ddpInstance = DDPInstance.getDDPInstanceWithRole(realm, DBConstants.MEDICAL_RECORD_ACTIVATED);
+
+        Map<String, Participant> participants = Participant.getParticipants(realm);
+        Map<String, List<MedicalRecord>> medicalRecords = MedicalRecord.getMedicalRecords(realm);
+        Map<String, List<OncHistoryDetail>> oncHistoryDetails = OncHistoryDetail.getOncHistoryDetails(realm);
+        Map<String, List<KitRequestShipping>> kitRequests = KitRequestShipping.getAllKitRequestsByRealm(realm, null, null, true);
+        Map<String, List<AbstractionActivity>> abstractionActivities = AbstractionActivity.getAllAbstractionActivityByRealm(realm);
+
+        RealmDashboard dashboard = new RealmDashboard(start);
+        //ES data is streamed page by page, so only one page of participants is in memory at a time
+        ElasticSearchUtil.forEachParticipantsPage(ddpInstance.getName(), ddpInstance.getParticipantIndexES(), QueryBuilders.matchAllQuery(), participantESData -> {
+            getParticipantWrappers(participantESData, participants, medicalRecords, oncHistoryDetails, kitRequests, abstractionActivities)
+                    .forEach((ddpParticipantId, wrapper) -> dashboard.putParticipant(ddpParticipantId, countParticipant(wrapper)));
+        });
+
+        RealmDashboard keptDashboard = dashboards.put(realm, dashboard);
+        if (keptDashboard != null) {
+            List<String> differences = keptDashboard.getDifferences(dashboard);
+            if (!differences.isEmpty()) {
+                logger.warn("Kept dashboard of " + realm + " was different to the rebuilt one: " + String.join(", ", differences));
+            }
+        }
+        logger.info("Rebuilt dashboard of " + realm + " with " + dashboard.getParticipantCount() + " participants in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return dashboard;
+    }
+
+    /**
+     * Brings the kept dashboards up to date, only realms which were asked for are kept
+     */
+    public static void refreshAll() {
+        long rebuildIntervalMillis = ConfigUtil.getLong(ApplicationConfigConstants.DASHBOARD_REBUILD_INTERVAL_HOURS, DEFAULT_REBUILD_INTERVAL_HOURS)
+                * SystemUtil.MILLIS_PER_HOUR;
+        for (String realm : new ArrayList<>(dashboards.keySet())) {
+            try {
+                RealmDashboard dashboard = dashboards.get(realm);
+                if (dashboard.getBuiltAt() < System.currentTimeMillis() - rebuildIntervalMillis) {
+                    rebuild(realm);
+                }
+                else {
+                    refresh(realm, dashboard);
+                }
+            }
+            catch (Exception e) {
+                logger.error("Couldn't refresh dashboard of " + realm, e);
+            }
+        }
+    }
+
+    /**
+     * Counts the participants again which changed in DSM or ES since the last refresh of the dashboard
+     */
+    public static synchronized void refresh(@NonNull String realm, @NonNull RealmDashboard dashboard) {
+        long start = System.currentTimeMillis();
+        long since = dashboard.getRefreshedAt() - REFRESH_OVERLAP_MILLIS;
+        DDPInstance ddpInstance = DDPInstance.getDDPInstanceWithRole(realm, DBConstants.MEDICAL_RECORD_ACTIVATED);
+
+        Map<String, Map<String, Object>> participantESData = new HashMap<>();
+        //activities, status and profile of participants are only changed in ES
+        BoolQueryBuilder changedInES = QueryBuilders.boolQuery()
+                .should(QueryBuilders.rangeQuery(ElasticSearchUtil.PROFILE_CREATED_AT).gte(since))
+                .should(QueryBuilders.rangeQuery("statusTimestamp").gte(since))
+                .should(QueryBuilders.nestedQuery(ElasticSearchUtil.ACTIVITIES,
+                        QueryBuilders.rangeQuery(ElasticSearchUtil.ACTIVITIES + "." + ElasticSearchUtil.LAST_UPDATED).gte(since), ScoreMode.None));
+        ElasticSearchUtil.forEachParticipantsPage(ddpInstance.getName(), ddpInstance.getParticipantIndexES(), changedInES, participantESData::putAll);
+
+        Set<String> changedInDSM = getParticipantsChangedSince(realm, since);
+        changedInDSM.removeAll(participantESData.keySet());
+        List<String> participantIds = new ArrayList<>(changedInDSM);
+        for (int i = 0; i < participantIds.size(); i += PARTICIPANT_CHUNK_SIZE) {
+            List<String> chunk = participantIds.subList(i, Math.min(i + PARTICIPANT_CHUNK_SIZE, participantIds.size()));
+            QueryBuilder byIds = QueryBuilders.boolQuery()
+                    .should(QueryBuilders.termsQuery(ElasticSearchUtil.PROFILE_GUID, chunk))
+                    .should(QueryBuilders.termsQuery(ElasticSearchUtil.PROFILE_LEGACYALTPID, chunk));
+            ElasticSearchUtil.forEachParticipantsPage(ddpInstance.getName(), ddpInstance.getParticipantIndexES(), byIds, participantESData::putAll);
+        }
+
+        List<String> changedParticipants = new ArrayList<>(participantESData.keySet());
+        for (int i = 0; i < changedParticipants.size(); i += PARTICIPANT_CHUNK_SIZE) {
+            List<String> chunk = changedParticipants.subList(i, Math.min(i + PARTICIPANT_CHUNK_SIZE, changedParticipants.size()));
+            Map<String, Map<String, Object>> chunkESData = new HashMap<>();
+            chunk.forEach(ddpParticipantId -> chunkESData.put(ddpParticipantId, participantESData.get(ddpParticipantId)));
+            String queryAddition = " AND p.ddp_participant_id IN (?)".replace("?", DBUtil.participantIdsInClause(chunk));
+            getParticipantWrappers(chunkESData, Participant.getParticipants(realm, queryAddition),
+                    MedicalRecord.getMedicalRecordsByParticipantIds(realm, chunk), OncHistoryDetail.getOncHistoryDetailsByParticipantIds(realm, chunk),
+                    KitRequestShipping.getAllKitRequestsByRealmAndParticipantIds(realm, chunk),
+                    AbstractionActivity.getAllAbstractionActivityByParticipantIds(realm, chunk))
+                    .forEach((ddpParticipantId, wrapper) -> dashboard.putParticipant(ddpParticipantId, countParticipant(wrapper)));
+        }
+        //changed in DSM but not in ES (anymore), therefore not part of the dashboard
+        for (String ddpParticipantId : changedInDSM) {
+            if (!participantESData.containsKey(ddpParticipantId) && dashboard.hasParticipant(ddpParticipantId)) {
+                dashboard.removeParticipant(ddpParticipantId);
+            }
+        }
+        dashboard.setRefreshedAt(start);
+        if (!participantESData.isEmpty()) {
+            logger.info("Refreshed " + participantESData.size() + " participants of dashboard of " + realm + " in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    private static Set<String> getParticipantsChangedSince(@NonNull String realm, long since) {
+        Set<String> participantIds = new HashSet<>();
+        SimpleResult results = inTransaction((conn) -> {
+            SimpleResult dbVals = new SimpleResult();
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_CHANGED_PARTICIPANTS)) {
+                //participant and participant record
+                stmt.setString(1, realm);
+                stmt.setLong(2, since);
+                stmt.setLong(3, since);
+                //institution, medical record and onc history
+                stmt.setString(4, realm);
+                stmt.setLong(5, since);
+                stmt.setLong(6, since);
+                stmt.setLong(7, since);
+                //abstraction
+                stmt.setString(8, realm);
+                stmt.setLong(9, since);
+                //kit request and kit
+                stmt.setString(10, realm);
+                stmt.setLong(11, since);
+                stmt.setLong(12, since);
+                stmt.setLong(13, since);
+                stmt.setLong(14, since);
+                //exit
+                stmt.setString(15, realm);
+                stmt.setLong(16, since);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String ddpParticipantId = rs.getString(DBConstants.DDP_PARTICIPANT_ID);
+                        if (StringUtils.isNotBlank(ddpParticipantId)) {
+                            participantIds.add(ddpParticipantId);
+                        }
+                    }
+                }
+            }
+            catch (SQLException ex) {
+                dbVals.resultException = ex;
+            }
+            return dbVals;
+        });
+
+        if (results.resultException != null) {
+            throw new RuntimeException("Couldn't get changed participants of " + realm, results.resultException);
+        }
+        return participantIds;
+    }
+
+    /**
+     * @return data of the participants keyed by the ES id of the participant (legacy altpid if there is one, otherwise guid)
+     */
+    private static Map<String, ParticipantWrapperDto> getParticipantWrappers(Map<String, Map<String, Object>> esDataMap, Map<String, Participant> participantMap,
+                                                                             Map<String, List<MedicalRecord>> medicalRecordMap,
+                                                                             Map<String, List<OncHistoryDetail>> oncHistoryMap,
+                                                                             Map<String, List<KitRequestShipping>> kitRequestMap,
+                                                                             Map<String, List<AbstractionActivity>> abstractionActivityMap) {
+        Map<String, ParticipantWrapperDto> participantWrappers = new HashMap<>();
+        for (Map.Entry<String, Map<String, Object>> participantESData : esDataMap.entrySet()) {
+            String ddpParticipantId = participantESData.getKey();
+            ElasticSearchParticipantDto elasticSearchParticipantDto = ElasticSearch.parseSourceMap(participantESData.getValue()).get();
+            participantWrappers.put(ddpParticipantId, new ParticipantWrapperDto(elasticSearchParticipantDto, participantMap.get(ddpParticipantId),
+                    medicalRecordMap.get(ddpParticipantId), oncHistoryMap.get(ddpParticipantId), kitRequestMap.get(ddpParticipantId),
+                    abstractionActivityMap.get(ddpParticipantId), null, null, null));
+        }
+        return participantWrappers;
+    }
+
+    /**
+     * Everything the participant adds to the dashboard
+     */
+    public static ParticipantCounts countParticipant(@NonNull ParticipantWrapperDto wrapper) {
+        ParticipantCounts counts = new ParticipantCounts();
+        //es data information
+        Map<String, Object> esData = wrapper.getEsDataAsMap();
+        //count pt enrollment status
+        String enrollmentStatus = (String) esData.get("status");
+        countParameter(counts, "status." + enrollmentStatus, esData, "status", false);
+
+        if (esData.get("profile") != null) {
+            Map<String, Object> profileData = (Map<String, Object>) esData.get("profile");
+            //count pt creation in period
+            countParameterPeriod(counts, RealmDashboard.ALL, profileData, "createdAt");
+        }
+        if (esData.get("dsm") != null) {
+            Map<String, Object> dsmSpecificInformation = (Map<String, Object>) esData.get("dsm");
+            // count pt count consented to tissue
+            countBooleanParameter(counts, "tissueConsent", dsmSpecificInformation, "hasConsentedToTissueSample");
+            countBooleanParameter(counts, "bloodConsent", dsmSpecificInformation, "hasConsentedToBloodDraw");
+        }
+        if (esData.get("activities") != null) {
+            List<Object> surveyList = (ArrayList<Object>) esData.get("activities");
+            for (Object survey : surveyList) {
+                Map<String, Object> surveyMap = (Map<String, Object>) survey;
+                String version = (String) surveyMap.get("activityVersion");
+                String code = (String) surveyMap.get("activityCode");
+
+                if (surveyMap.get("lastUpdatedAt") != null) {
+                    //get number of pt for survey x (which started to fill out survey)
+                    countParameter(counts, "activity." + code + "." + version, surveyMap, "activityCode", false);
+                    countParameter(counts, "activity." + code, surveyMap, "activityCode", false);
+                }
+
+                //get number of pt who completed survey x with version z
+                countParameter(counts, "activity." + code + "." + version + ".completed", surveyMap, "completedAt", true);
+                countParameterPeriod(counts, "activity." + code + "." + version + ".completed", surveyMap, "completedAt");
+
+                //get number of pt who completed survey x ignoring version
+                countParameter(counts, "activity." + code + ".completed", surveyMap, "completedAt", true);
+                countParameterPeriod(counts, "activity." + code + ".completed", surveyMap, "completedAt");
+            }
+        }
+
+        if (wrapper.getParticipant() != null) {
+            if (wrapper.getParticipant().isMinimalMR()) {
+                counts.count("minimalMR");
+            }
+        }
+
+        if (wrapper.getMedicalRecords() != null && !wrapper.getMedicalRecords().isEmpty()) {
+            countMedicalRecordData(wrapper.getMedicalRecords(), counts, wrapper.getKits());
+        }
+        if (wrapper.getOncHistoryDetails() != null && !wrapper.getOncHistoryDetails().isEmpty()) {
+            countOncHistoryData(wrapper.getOncHistoryDetails(), counts);
+        }
+        if (wrapper.getKits() != null && !wrapper.getKits().isEmpty()) {
+            countKits(wrapper.getKits(), counts);
+        }
+
+        if (wrapper.getAbstractionActivities() != null && !wrapper.getAbstractionActivities().isEmpty()) {
+            for (AbstractionActivity activity : wrapper.getAbstractionActivities()) {
+                if (AbstractionUtil.ACTIVITY_FINAL.equals(activity.getActivity()) && AbstractionUtil.STATUS_DONE.equals(activity.getAStatus())) {
+                    counts.count("abstraction.done");
+                    if (activity.getLastChanged() != null) {
+                        counts.countPeriod("abstraction.done", activity.getLastChanged());
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static void countMedicalRecordData(@NonNull List<MedicalRecord> medicalRecordList, @NonNull ParticipantCounts counts,
+                                               List<KitRequestShipping> kits) {
+        for (MedicalRecord medicalRecord : medicalRecordList) {
+            if (medicalRecord.isDuplicate()) {
+                counts.countDetailed("duplicateMedicalRecord");
+            }
+            if (medicalRecord.isInternational()) {
+                counts.countDetailed("internationalMedicalRecord");
+            }
+            if (medicalRecord.isMrProblem()) {
+                counts.countDetailed("medicalRecordWithProblem");
+            }
+            if (medicalRecord.isUnableObtain()) {
+                counts.countDetailed("unableToObtainMedicalRecord");
+            }
+            if (medicalRecord.isFollowUpRequired()) {
+                counts.countDetailed("followupRequiredMedicalRecord");
+                if (medicalRecord.getFollowUps() == null || medicalRecord.getFollowUps().length == 0) {
+                    counts.countDetailed("followupNotRequested");
+                }
+            }
+            if (medicalRecord.isCrRequired()) {
+                counts.countDetailed("paperCRRequired");
+            }
+            if (medicalRecord.isReviewMedicalRecord()) {
+                counts.countDetailed("reviewMedicalRecord");
+            }
+
+            countRequestsReceive(counts, medicalRecord.getFaxSent3(), medicalRecord.getFaxSent2(), medicalRecord.getFaxSent(),
+                    medicalRecord.getMrReceived(), "notRequested", "faxSent", "mrReceived", medicalRecord.isDuplicate());
+
+            // MR ready to request (at least saliva or blood received and mr not flagged as "duplicate" or "problem" or "unable to obtain" and fax sent date is not entered)
+            if (!medicalRecord.isDuplicate() && !medicalRecord.isMrProblem() && !medicalRecord.isUnableObtain() && StringUtils.isBlank(medicalRecord.getFaxSent())) {
+                if (kits != null) {
+                    for (KitRequestShipping kit : kits) {
+                        if (kit.getReceiveDate() != 0) {
+                            // one kit was received
+                            counts.countDetailed("readyToRequest");
+                            break;
+                        }
+                    }
+                }
+            }
+
+            if (medicalRecord.getFollowUps() != null) {
+                int index = 1;
+                for (FollowUp followUp : medicalRecord.getFollowUps()) {
+                    countRequestsReceive(counts, followUp.getFRequest3(), followUp.getFRequest2(), followUp.getFRequest1(), followUp.getFReceived(),
+                            null, "followUpSent." + index + ".", "followUpReceived" + index, false);
+                    index++;
+                }
+            }
+        }
+    }
+
+    private static void countOncHistoryData(@NonNull List<OncHistoryDetail> oncHistoryDetailList, @NonNull ParticipantCounts counts) {
+        for (OncHistoryDetail oncHistoryDetail : oncHistoryDetailList) {
+            if (oncHistoryDetail.isUnableToObtain()) {
+                counts.countDetailed("unableToObtainTissue");
+            }
+            if (StringUtils.isNotBlank(oncHistoryDetail.getRequest())) {
+                if (OncHistoryDetail.STATUS_REVIEW.equals(oncHistoryDetail.getRequest())) {
+                    counts.countDetailed("request.review");
+                }
+                else if (OncHistoryDetail.STATUS_SENT.equals(oncHistoryDetail.getRequest())) {
+                    counts.countDetailed("request.sent");
+                }
+                else if (OncHistoryDetail.STATUS_RECEIVED.equals(oncHistoryDetail.getRequest())) {
+                    counts.countDetailed("request.received");
+                }
+                else if (OncHistoryDetail.STATUS_HOLD.equals(oncHistoryDetail.getRequest())) {
+                    counts.countDetailed("request.hold");
+                }
+                else if (OncHistoryDetail.STATUS_DO_NOT_REQUEST.equals(oncHistoryDetail.getRequest())) {
+                    counts.countDetailed("request.no");
+                }
+                else if (OncHistoryDetail.STATUS_RETURNED.equals(oncHistoryDetail.getRequest())) {
+                    counts.countDetailed("request.returned");
+                }
+                else if (OncHistoryDetail.STATUS_REQUEST.equals(oncHistoryDetail.getRequest())) {
+                    counts.countDetailed("request.request");
+                    //count where tissue request is set to request but fax is not sent out yet
+                    if (StringUtils.isBlank(oncHistoryDetail.getTFaxSent())) {
+                        counts.countDetailed("tFaxNotSent");
+                    }
+                }
+                else if (OncHistoryDetail.STATUS_UNABLE_TO_OBTAIN.equals(oncHistoryDetail.getRequest())) {
+                    counts.countDetailed("request.unable");
+                }
+            }
+            if (StringUtils.isNotBlank(oncHistoryDetail.getTissueProblemOption())) {
+                counts.countDetailed("tissueProblemOption");
+                if (OncHistoryDetail.PROBLEM_INSUFFICIENT_PATH.equals(oncHistoryDetail.getTissueProblemOption())) {
+                    counts.countDetailed("tissueProblemOption.insufficientPath");
+                }
+                else if (OncHistoryDetail.PROBLEM_INSUFFICIENT_SHL.equals(oncHistoryDetail.getTissueProblemOption())) {
+                    counts.countDetailed("tissueProblemOption.insufficientSHL");
+                }
+                else if (OncHistoryDetail.PROBLEM_NO_E_SIGN.equals(oncHistoryDetail.getTissueProblemOption())) {
+                    counts.countDetailed("tissueProblemOption.noESign");
+                }
+                else if (OncHistoryDetail.PROBLEM_PATH_POLICY.equals(oncHistoryDetail.getTissueProblemOption())) {
+                    counts.countDetailed("tissueProblemOption.pathPolicy");
+                }
+                else if (OncHistoryDetail.PROBLEM_PATH_NO_LOCATE.equals(oncHistoryDetail.getTissueProblemOption())) {
+                    counts.countDetailed("tissueProblemOption.pathNoLocate");
+                }
+                else if (OncHistoryDetail.PROBLEM_DESTROYED.equals(oncHistoryDetail.getTissueProblemOption())) {
+                    counts.countDetailed("tissueProblemOption.destroyed");
+                }
+                else if (OncHistoryDetail.PROBLEM_OTHER.equals(oncHistoryDetail.getTissueProblemOption())
+                        || OncHistoryDetail.PROBLEM_OTHER_OLD.equals(oncHistoryDetail.getTissueProblemOption())) {
+                    counts.countDetailed("tissueProblemOption.other");
+                }
+            }
+            countRequestsReceive(counts, oncHistoryDetail.getTFaxSent3(), oncHistoryDetail.getTFaxSent2(), oncHistoryDetail.getTFaxSent(),
+                    oncHistoryDetail.getTissueReceived(), null, "tFaxSent", "tissueReceived", false);
+        }
+    }
+
+    private static void countKits(@NonNull List<KitRequestShipping> kits, @NonNull ParticipantCounts counts) {
+        for (KitRequestShipping kit : kits) {
+            if (kit.getScanDate() != 0) {
+                counts.countDetailed("kit." + kit.getKitType() + ".sent");
+                counts.countDetailedPeriod("kit." + kit.getKitType() + ".sent", kit.getScanDate());
+            }
+            else if (kit.getDeactivatedDate() == 0) {
+                counts.countDetailed("kit." + kit.getKitType() + ".waiting");
+            }
+            if (kit.getReceiveDate() != 0) {
+                counts.countDetailed("kit." + kit.getKitType() + ".received");
+                counts.countDetailedPeriod("kit." + kit.getKitType() + ".received", kit.getReceiveDate());
+            }
+            if (kit.getDeactivatedDate() != 0) {
+                counts.countDetailed("kit." + kit.getKitType() + ".deactivated");
+                counts.countDetailedPeriod("kit." + kit.getKitType() + ".deactivated", kit.getDeactivatedDate());
+            }
+            if (StringUtils.isNotBlank(kit.getEasypostShipmentStatus())) {
+                counts.countDetailed("kit." + kit.getKitType() + "." + kit.getEasypostShipmentStatus());
+            }
+        }
+    }
+
+    private static void countRequestsReceive(@NonNull ParticipantCounts counts, String faxSent3, String faxSent2, String faxSent, String received,
+                                             String dashboardValueNameWaiting, @NonNull String dashboardValueNameSent,
+                                             @NonNull String dashboardValueNameReceived, boolean isDuplicate) {
+        //count fax sent
+        if (StringUtils.isNotBlank(faxSent3)) {
+            //was requested 3 times
+            counts.countDetailed(dashboardValueNameSent + "3");
+            counts.countDetailed(dashboardValueNameSent + "2");
+            counts.countDetailed(dashboardValueNameSent);
+
+            counts.countDetailedPeriod(dashboardValueNameSent + "3", SystemUtil.getLongFromDateString(faxSent3));
+            counts.countDetailedPeriod(dashboardValueNameSent + "2", SystemUtil.getLongFromDateString(faxSent2));
+            counts.countDetailedPeriod(dashboardValueNameSent, SystemUtil.getLongFromDateString(faxSent));
+        }
+        else if (StringUtils.isNotBlank(faxSent2)) {
+            //was requested 2 times
+            counts.countDetailed(dashboardValueNameSent + "2");
+            counts.countDetailed(dashboardValueNameSent);
+
+            counts.countDetailedPeriod(dashboardValueNameSent + "2", SystemUtil.getLongFromDateString(faxSent2));
+            counts.countDetailedPeriod(dashboardValueNameSent, SystemUtil.getLongFromDateString(faxSent));
+        }
+        else if (StringUtils.isNotBlank(faxSent)) {
+            //was requested 1 time
+            counts.countDetailed(dashboardValueNameSent);
+
+            counts.countDetailedPeriod(dashboardValueNameSent, SystemUtil.getLongFromDateString(faxSent));
+        }
+        else {
+            //Total requestable MR - only if they are not flagged as duplicate
+            if (!isDuplicate) {
+                if (dashboardValueNameWaiting != null) {
+                    counts.countDetailed(dashboardValueNameWaiting);
+                }
+            }
+        }
+        if (StringUtils.isNotBlank(received)) {
+            //was received
+            counts.countDetailed(dashboardValueNameReceived);
+            counts.countDetailedPeriod(dashboardValueNameReceived, SystemUtil.getLongFromDateString(received));
+        }
+    }
+
+    private static void countParameter(@NonNull ParticipantCounts counts, @NonNull String dashboardValueName,
+                                       @NonNull Map<String, Object> map, @NonNull String key, boolean date) {
+        if (map.get(key) != null) {
+            if (date) {
+                long epochMillis = getEpochMillis(map, key);
+                if (epochMillis == 0) {
+                    return;
+                }
+            }
+            counts.count(dashboardValueName);
+        }
+    }
+
+    private static long getEpochMillis(Map<String, Object> map, String key) {
+        Object val = map.get(key);
+        long epochMillis = 0;
+        if (val instanceof Integer) {
+            epochMillis = (int) val;
+        }
+        else if (val instanceof Long) {
+            epochMillis = (long) val;
+        }
+        return epochMillis;
+    }
+
+    private static void countBooleanParameter(@NonNull ParticipantCounts counts, @NonNull String dashboardValueName,
+                                              @NonNull Map<String, Object> map, @NonNull String key) {
+        if (map.get(key) != null) {
+            Boolean value = (Boolean) map.get(key);
+            if (value) {
+                counts.count(dashboardValueName);
+            }
+        }
+    }
+
+    private static void countParameterPeriod(@NonNull ParticipantCounts counts, @NonNull String dashboardValueName,
+                                             @NonNull Map<String, Object> map, @NonNull String key) {
+        if (map.get(key) != null) {
+            counts.countPeriod(dashboardValueName, getEpochMillis(map, key));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.broadinstitute.dsm.model.dashboard;
+
+import lombok.Data;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything one participant adds to the medical record dashboard, independent of the period asked for.
+ * Values with a date are kept with their date, so the period numbers can be summed up for any start and end
+ */
+public class ParticipantCounts {
+
+    //counted once per pt
+    private final Map<String, Integer> values = new HashMap<>();
+    //counted per medical record, onc history or kit, every name also counts the pt once
+    private final Map<String, Integer> valuesDetailed = new HashMap<>();
+    private final List<DatedValue> periodValues = new ArrayList<>();
+    private final List<DatedValue> periodValuesDetailed = new ArrayList<>();
+
+    public void count(@NonNull String name) {
+        values.merge(name, 1, Integer::sum);
+    }
+
+    public void countDetailed(@NonNull String name) {
+        valuesDetailed.merge(name, 1, Integer::sum);
+    }
+
+    public void countPeriod(@NonNull String name, long date) {
+        if (date != 0) {
+            periodValues.add(new DatedValue(name, date));
+        }
+    }
+
+    public void countDetailedPeriod(@NonNull String name, long date) {
+        if (date != 0) {
+            periodValuesDetailed.add(new DatedValue(name, date));
+        }
+    }
+
+    public Map<String, Integer> getValues() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    public Map<String, Integer> getValuesDetailed() {
+        return Collections.unmodifiableMap(valuesDetailed);
+    }
+
+    public List<DatedValue> getPeriodValues() {
+        return Collections.unmodifiableList(periodValues);
+    }
+
+    public List<DatedValue> getPeriodValuesDetailed() {
+        return Collections.unmodifiableList(periodValuesDetailed);
+    }
+
+    @Data
+    public static class DatedValue {
+        private final String name;
+        private final long date;
+
+        public boolean isInPeriod(long start, long end) {
+            return date >= start && date <= end;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.broadinstitute.dsm.model.dashboard;
+
+import lombok.NonNull;
+import org.broadinstitute.dsm.model.DashboardInformation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Medical record dashboard of one realm, kept in memory.
+ * The overall numbers are summed up while participants are added, replaced or removed,
+ * the period numbers are summed up from the dated values of the participants per request
+ */
+public class RealmDashboard {
+
+    public static final String ALL = "all";
+
+    private final Map<String, ParticipantCounts> participants = new HashMap<>();
+    private final Map<String, Integer> values = new HashMap<>();
+    private final Map<String, Integer> valuesDetailed = new HashMap<>();
+
+    private final long builtAt;
+    private long refreshedAt;
+
+    /**
+     * @param builtAt time the data of the full rebuild was read, changes since then get picked up by the next refresh
+     */
+    public RealmDashboard(long builtAt) {
+        this.builtAt = builtAt;
+        this.refreshedAt = builtAt;
+    }
+
+    public synchronized void putParticipant(@NonNull String ddpParticipantId, @NonNull ParticipantCounts counts) {
+        removeParticipant(ddpParticipantId);
+        participants.put(ddpParticipantId, counts);
+        add(counts, 1);
+    }
+
+    public synchronized void removeParticipant(@NonNull String ddpParticipantId) {
+        ParticipantCounts counts = participants.remove(ddpParticipantId);
+        if (counts != null) {
+            add(counts, -1);
+        }
+    }
+
+    public synchronized boolean hasParticipant(@NonNull String ddpParticipantId) {
+        return participants.containsKey(ddpParticipantId);
+    }
+
+    public synchronized int getParticipantCount() {
+        return participants.size();
+    }
+
+    public synchronized DashboardInformation getDashboardInformation(long start, long end) {
+        Map<String, Integer> dashboardValues = new HashMap<>(values); //counts only pt
+        dashboardValues.put(ALL, participants.size());
+        Map<String, Integer> dashboardValuesDetailed = new HashMap<>(valuesDetailed); //counts number of institutions in total
+        Map<String, Integer> dashboardValuesPeriod = new HashMap<>(); //counts only pt per period
+        Map<String, Integer> dashboardValuesPeriodDetailed = new HashMap<>(); //counts number of institutions in total per period
+
+        Set<String> foundAtPtPeriod = new HashSet<>();
+        for (ParticipantCounts counts : participants.values()) {
+            for (ParticipantCounts.DatedValue value : counts.getPeriodValues()) {
+                if (value.isInPeriod(start, end)) {
+                    dashboardValuesPeriod.merge(value.getName(), 1, Integer::sum);
+                }
+            }
+            foundAtPtPeriod.clear();
+            for (ParticipantCounts.DatedValue value : counts.getPeriodValuesDetailed()) {
+                if (value.isInPeriod(start, end)) {
+                    dashboardValuesPeriodDetailed.merge(value.getName(), 1, Integer::sum);
+                    foundAtPtPeriod.add(value.getName());
+                }
+            }
+            for (String found : foundAtPtPeriod) {
+                dashboardValuesPeriod.merge(found, 1, Integer::sum);
+            }
+        }
+        return new DashboardInformation(dashboardValues, dashboardValuesDetailed, dashboardValuesPeriod, dashboardValuesPeriodDetailed);
+    }
+
+    /**
+     * @return names of the overall values which are not the same in the other dashboard
+     */
+    public synchronized List<String> getDifferences(@NonNull RealmDashboard other) {
+        DashboardInformation own = getDashboardInformation(0, 0);
+        DashboardInformation others = other.getDashboardInformation(0, 0);
+        List<String> differences = new ArrayList<>();
+        addDifferences(own.getDashboardValues(), others.getDashboardValues(), differences);
+        addDifferences(own.getDashboardValuesDetailed(), others.getDashboardValuesDetailed(), differences);
+        return differences;
+    }
+
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    public synchronized long getRefreshedAt() {
+        return refreshedAt;
+    }
+
+    public synchronized void setRefreshedAt(long refreshedAt) {
+        this.refreshedAt = refreshedAt;
+    }
+
+    private void add(ParticipantCounts counts, int sign) {
+        for (Map.Entry<String, Integer> value : counts.getValues().entrySet()) {
+            merge(values, value.getKey(), sign * value.getValue());
+        }
+        for (Map.Entry<String, Integer> value : counts.getValuesDetailed().entrySet()) {
+            merge(valuesDetailed, value.getKey(), sign * value.getValue());
+            //pt has at least one medical record, onc history or kit with that value
+            merge(values, value.getKey(), sign);
+        }
+    }
+
+    private static void merge(Map<String, Integer> map, String name, int count) {
+        Integer newCount = map.merge(name, count, Integer::sum);
+        if (newCount == 0) {
+            map.remove(name);
+        }
+    }
+
+    private static void addDifferences(Map<String, Integer> own, Map<String, Integer> others, List<String> differences) {
+        Set<String> names = new TreeSet<>(own.keySet());
+        names.addAll(others.keySet());
+        for (String name : names) {
+            int ownCount = own.getOrDefault(name, 0);
+            int otherCount = others.getOrDefault(name, 0);
+            if (ownCount != otherCount) {
+                differences.add(name + " " + ownCount + " != " + otherCount);
+            }
+        }
+    }
+}
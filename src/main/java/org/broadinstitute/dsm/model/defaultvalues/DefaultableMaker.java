@@ -1,6 +1,7 @@
 package org.broadinstitute.dsm.model.defaultvalues;
 
 import org.broadinstitute.dsm.model.Study;
+import org.broadinstitute.dsm.model.at.DefaultValues;
 import org.broadinstitute.dsm.model.rgp.AutomaticProbandDataCreator;
 
 public class DefaultableMaker {
@@ -9,6 +10,7 @@ public class DefaultableMaker {
         Defaultable defaultable = (studyGuid, participantId) -> true;
         switch (study) {
             case ATCP:
+                defaultable = new DefaultValues();
                 break;
             case RGP:
                 defaultable = new AutomaticProbandDataCreator();
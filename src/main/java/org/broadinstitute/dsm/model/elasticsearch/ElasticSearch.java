@@ -1,6 +1,9 @@
 package org.broadinstitute.dsm.model.elasticsearch;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -36,6 +39,13 @@ public class ElasticSearch implements ElasticSearchable {
     private static final Logger logger = LoggerFactory.getLogger(ElasticSearch.class);
     private static final Gson GSON = new Gson();
 
+    /**
+     * Top level fields of {@link ElasticSearchParticipantDto}. Everything else in the participant documents isn't bound
+     * by the dto, so there is no need to fetch and parse it
+     */
+    static final String[] SOURCE_INCLUDES = {"address", "medicalProviders", "invitations", "activities", "computed", "statusTimestamp",
+            "profile", "files", "proxies", "workflows", "status", "dsm"};
+
     List<ElasticSearchParticipantDto> esParticipants;
     long totalCount;
 
@@ -59,16 +69,29 @@ public class ElasticSearch implements ElasticSearchable {
 
     public static Optional<ElasticSearchParticipantDto> parseSourceMap(Map<String, Object> sourceMap) {
         if (sourceMap == null) return Optional.of(new ElasticSearchParticipantDto.Builder().build());
-        ElasticSearchParticipantDto elasticSearchParticipantDto = GSON.fromJson(GSON.toJson(sourceMap), ElasticSearchParticipantDto.class);
+        ElasticSearchParticipantDto elasticSearchParticipantDto = GSON.fromJson(GSON.toJsonTree(sourceMap), ElasticSearchParticipantDto.class);
         return Optional.of(elasticSearchParticipantDto);
     }
 
+    /**
+     * Binds the source bytes of the hit straight into the dto with gson's streaming reader,
+     * without building the source map and a json string of it first
+     */
+    public static Optional<ElasticSearchParticipantDto> parseSearchHit(SearchHit searchHit) {
+        if (searchHit == null || !searchHit.hasSource()) return Optional.of(new ElasticSearchParticipantDto.Builder().build());
+        try (Reader reader = new InputStreamReader(searchHit.getSourceRef().streamInput(), StandardCharsets.UTF_8)) {
+            return Optional.of(GSON.fromJson(reader, ElasticSearchParticipantDto.class));
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't parse ES source of participant " + searchHit.getId(), e);
+        }
+    }
+
     public List<ElasticSearchParticipantDto> parseSourceMaps(SearchHit[] searchHits) {
         if (Objects.isNull(searchHits)) return Collections.emptyList();
         List<ElasticSearchParticipantDto> result = new ArrayList<>();
         String ddp = getDdpFromSearchHit(Arrays.stream(searchHits).findFirst().orElse(null));
         for (SearchHit searchHit: searchHits) {
-            Optional<ElasticSearchParticipantDto> maybeElasticSearchResult = parseSourceMap(searchHit.getSourceAsMap());
+            Optional<ElasticSearchParticipantDto> maybeElasticSearchResult = parseSearchHit(searchHit);
             maybeElasticSearchResult.ifPresent(elasticSearchParticipantDto -> {
                 elasticSearchParticipantDto.setDdp(ddp);
                 result.add(elasticSearchParticipantDto);
@@ -99,6 +122,7 @@ public class ElasticSearch implements ElasticSearchable {
             SearchRequest searchRequest = new SearchRequest(esParticipantsIndex);
             SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
             searchSourceBuilder.query(QueryBuilders.matchAllQuery()).sort(ElasticSearchUtil.PROFILE_CREATED_AT, SortOrder.ASC);
+            searchSourceBuilder.fetchSource(SOURCE_INCLUDES, null);
             searchSourceBuilder.size(scrollSize);
             searchSourceBuilder.from(from);
             searchRequest.source(searchSourceBuilder);
@@ -118,6 +142,7 @@ public class ElasticSearch implements ElasticSearchable {
         SearchRequest searchRequest = new SearchRequest(Objects.requireNonNull(esIndex));
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         searchSourceBuilder.query(getBoolQueryOfParticipantsId(participantIds)).sort(ElasticSearchUtil.PROFILE_CREATED_AT, SortOrder.ASC);
+        searchSourceBuilder.fetchSource(SOURCE_INCLUDES, null);
         searchSourceBuilder.size(participantIds.size());
         searchSourceBuilder.from(0);
         searchRequest.source(searchSourceBuilder);
@@ -157,8 +182,9 @@ public class ElasticSearch implements ElasticSearchable {
             int scrollSize = to - from;
             SearchRequest searchRequest = new SearchRequest(Objects.requireNonNull(esParticipantsIndex));
             SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-            AbstractQueryBuilder<? extends AbstractQueryBuilder<?>> esQuery = ElasticSearchUtil.createESQuery(filter);
+            AbstractQueryBuilder<? extends AbstractQueryBuilder<?>> esQuery = ElasticSearchUtil.createESQuery(filter, esParticipantsIndex);
             searchSourceBuilder.query(esQuery).sort(ElasticSearchUtil.PROFILE_CREATED_AT, SortOrder.ASC);
+            searchSourceBuilder.fetchSource(SOURCE_INCLUDES, null);
             searchSourceBuilder.size(scrollSize);
             searchSourceBuilder.from(from);
             searchRequest.source(searchSourceBuilder);
@@ -177,6 +203,7 @@ public class ElasticSearch implements ElasticSearchable {
         SearchRequest searchRequest = new SearchRequest(Objects.requireNonNull(participantIndexES));
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         searchSourceBuilder.query(getBoolQueryOfParticipantsId(participantIds)).sort(ElasticSearchUtil.PROFILE_CREATED_AT, SortOrder.ASC);
+        searchSourceBuilder.fetchSource(SOURCE_INCLUDES, null);
         searchSourceBuilder.size(to - from);
         searchSourceBuilder.from(from);
         searchRequest.source(searchSourceBuilder);
@@ -207,15 +234,15 @@ public class ElasticSearch implements ElasticSearchable {
         searchSourceBuilder.query(shortIdQuery);
         searchRequest.source(searchSourceBuilder);
         SearchResponse searchResponse;
-        Map<String, Object> sourceAsMap;
+        SearchHit searchHit;
         logger.info("Collecting ES data");
         try {
             searchResponse = ElasticSearchUtil.getClientInstance().search(searchRequest, RequestOptions.DEFAULT);
-            sourceAsMap = searchResponse.getHits().getHits()[0].getSourceAsMap();
+            searchHit = searchResponse.getHits().getHits()[0];
         } catch (Exception e) {
             throw new RuntimeException("Couldn't get participant from ES for instance " + esParticipantsIndex + " by short id: " + shortId, e);
         }
-        return parseSourceMap(sourceAsMap).orElseThrow();
+        return parseSearchHit(searchHit).orElseThrow();
     }
 
     @Override
@@ -224,6 +251,7 @@ public class ElasticSearch implements ElasticSearchable {
         SearchRequest searchRequest = new SearchRequest(esParticipantsIndex);
         SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
         searchSourceBuilder.query(QueryBuilders.matchAllQuery()).sort(ElasticSearchUtil.PROFILE_CREATED_AT, SortOrder.ASC);
+        searchSourceBuilder.fetchSource(SOURCE_INCLUDES, null);
         searchSourceBuilder.from(0);
         searchSourceBuilder.size((int) participantsSize);
         searchRequest.source(searchSourceBuilder);
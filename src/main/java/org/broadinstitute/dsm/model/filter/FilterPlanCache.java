@@ -0,0 +1,158 @@
+package org.broadinstitute.dsm.model.filter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.MonitorConfig;
+import com.netflix.servo.monitor.NumberGauge;
+import lombok.Data;
+import lombok.NonNull;
+import org.broadinstitute.dsm.model.Filter;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
+import org.broadinstitute.dsm.util.ConfigUtil;
+import org.broadinstitute.dsm.util.ESFieldTypes;
+import org.broadinstitute.dsm.util.ElasticSearchUtil;
+import org.elasticsearch.index.query.AbstractQueryBuilder;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Compiled filters by their query string, so applying a saved or quick filter again doesn't parse its query again.
+ * The query string has all values in it, therefore a changed filter is a new entry and an entry never has to be invalidated.
+ * Only TODAY is turned into the date while compiling, so plans of queries with TODAY are kept per day.
+ * ES queries are kept per index and are built again after the field types of the index got refreshed.
+ * Lookups of single participants by their id are never kept, every id would be an entry pushing the real filters out.
+ */
+public class FilterPlanCache {
+
+    private static final long DEFAULT_MAX_ENTRIES = 1000;
+
+    private static final AtomicLong compiledFilters = new AtomicLong();
+    private static final AtomicLong compileTimeMillis = new AtomicLong();
+    private static final AtomicLong cacheHits = new AtomicLong();
+    private static final NumberGauge compiledFiltersGauge = new NumberGauge(MonitorConfig.builder("filter_compiled_gauge").build(), compiledFilters);
+    private static final NumberGauge compileTimeGauge = new NumberGauge(MonitorConfig.builder("filter_compile_time_ms_gauge").build(), compileTimeMillis);
+    private static final NumberGauge cacheHitsGauge = new NumberGauge(MonitorConfig.builder("filter_plan_cache_hits_gauge").build(), cacheHits);
+
+    //explicitly wire up the metrics using a static initializer
+    static {
+        DefaultMonitorRegistry.getInstance().register(compiledFiltersGauge);
+        DefaultMonitorRegistry.getInstance().register(compileTimeGauge);
+        DefaultMonitorRegistry.getInstance().register(cacheHitsGauge);
+    }
+
+    private static Cache<String, FilterPlan> filterPlans;
+    private static Cache<String, ESQueryPlan> esQueries;
+
+    /**
+     * @param parent   list the filter is for, part of the parsed filters
+     * @param compiler parses the query string, only called if the query string wasn't compiled before
+     */
+    public static FilterPlan getFilterPlan(String parent, @NonNull String filterQuery, @NonNull Supplier<FilterPlan> compiler) {
+        Cache<String, FilterPlan> plans = getFilterPlans();
+        String key = getFilterPlanKey(parent, filterQuery, LocalDate.now());
+        FilterPlan plan = plans.getIfPresent(key);
+        if (plan != null) {
+            cacheHits.incrementAndGet();
+            return plan;
+        }
+        plan = compile(compiler);
+        plans.put(key, plan);
+        return plan;
+    }
+
+    static String getFilterPlanKey(String parent, @NonNull String filterQuery, @NonNull LocalDate date) {
+        String key = parent + "#" + filterQuery;
+        if (filterQuery.contains(Filter.TODAY)) {
+            key += "#" + date;
+        }
+        return key;
+    }
+
+    /**
+     * Callers are not allowed to change the returned query, it is shared by all requests with the same filter
+     *
+     * @param fieldTypes field types the query gets built with, the query is built again if they changed
+     * @param builder    builds the query, only called if it wasn't built with these field types before or if the filter is a participant lookup
+     * @return query or null if the builder didn't return one
+     */
+    public static AbstractQueryBuilder<? extends AbstractQueryBuilder<?>> getESQuery(String index, @NonNull String filter, ESFieldTypes fieldTypes,
+                                                                                      @NonNull Supplier<AbstractQueryBuilder<? extends AbstractQueryBuilder<?>>> builder) {
+        if (isParticipantLookup(filter)) {
+            return builder.get();
+        }
+        Cache<String, ESQueryPlan> queries = getESQueries();
+        String key = index + "#" + filter;
+        ESQueryPlan plan = queries.getIfPresent(key);
+        if (plan != null && plan.getFieldTypes() == fieldTypes) {
+            cacheHits.incrementAndGet();
+            return plan.getQuery();
+        }
+        AbstractQueryBuilder<? extends AbstractQueryBuilder<?>> query = compile(builder);
+        if (query != null) {
+            queries.put(key, new ESQueryPlan(fieldTypes, query));
+        }
+        return query;
+    }
+
+    /**
+     * @return true if the filter selects participants by their ids, like ElasticSearchUtil.BY_GUID + guid
+     */
+    static boolean isParticipantLookup(@NonNull String filter) {
+        return filter.contains(ElasticSearchUtil.BY_PROFILE_GUID) || filter.contains(ElasticSearchUtil.BY_PROFILE_LEGACY_ALTPID)
+                || filter.contains(ElasticSearchUtil.BY_HRUID) || filter.contains(ElasticSearchUtil.BY_LEGACY_SHORTID);
+    }
+
+    private static <T> T compile(Supplier<T> compiler) {
+        long start = System.currentTimeMillis();
+        try {
+            return compiler.get();
+        }
+        finally {
+            compiledFilters.incrementAndGet();
+            compileTimeMillis.addAndGet(System.currentTimeMillis() - start);
+        }
+    }
+
+    private static synchronized Cache<String, FilterPlan> getFilterPlans() {
+        if (filterPlans == null) {
+            filterPlans = CacheBuilder.newBuilder().maximumSize(ConfigUtil.getLong(ApplicationConfigConstants.FILTER_PLAN_CACHE_MAX_ENTRIES, DEFAULT_MAX_ENTRIES)).build();
+        }
+        return filterPlans;
+    }
+
+    private static synchronized Cache<String, ESQueryPlan> getESQueries() {
+        if (esQueries == null) {
+            esQueries = CacheBuilder.newBuilder().maximumSize(ConfigUtil.getLong(ApplicationConfigConstants.FILTER_PLAN_CACHE_MAX_ENTRIES, DEFAULT_MAX_ENTRIES)).build();
+        }
+        return esQueries;
+    }
+
+    /**
+     * Filters of a parsed query string and the query string for the frontend
+     */
+    @Data
+    public static class FilterPlan {
+        private final Filter[] filters;
+        private final String frontEndQuery;
+
+        /**
+         * @return copies of the filters, so changing them doesn't change the plan
+         */
+        public Filter[] copyFilters() {
+            Filter[] copies = new Filter[filters.length];
+            for (int i = 0; i < filters.length; i++) {
+                copies[i] = filters[i].copy();
+            }
+            return copies;
+        }
+    }
+
+    @Data
+    private static class ESQueryPlan {
+        private final ESFieldTypes fieldTypes;
+        private final AbstractQueryBuilder<? extends AbstractQueryBuilder<?>> query;
+    }
+}
@@ -157,13 +157,12 @@ public abstract class BaseFilterParticipantList extends BaseFilter implements Fi
         Map<String, String> participantIdsForQuery = new HashMap();
         Map<String, String> participantsNotToAdd = new HashMap();
         for (ParticipantDataDto participantData : allParticipantData) {
-            String data = participantData.getData().orElse(null);
+            Map<String, String> dataMap = participantData.getDataMap();
             String fieldTypeId = participantData.getFieldTypeId().orElse(null);
-            if (data == null || fieldTypeId == null) {
+            if (dataMap == null || fieldTypeId == null) {
                 continue;
             }
             String ddpParticipantId = participantData.getDdpParticipantId().orElse(null);
-            Map<String, String> dataMap = GSON.fromJson(data, Map.class);
             boolean questionWithOptions = (OPTIONS.equals(filter.getType()) || RADIO.equals(filter.getType())) && filter.getSelectedOptions() != null;
             boolean notEmptyCheck = filter.isNotEmpty() && dataMap.get(fieldName) != null && !dataMap.get(fieldName).isEmpty();
             boolean emptyCheck = filter.isEmpty() && (dataMap.get(fieldName) == null || dataMap.get(fieldName).isEmpty());
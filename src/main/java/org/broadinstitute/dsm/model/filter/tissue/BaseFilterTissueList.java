@@ -90,7 +90,7 @@ public abstract class BaseFilterTissueList extends BaseFilter implements Filtera
             if (StringUtils.isNotBlank(filterName)) {
                 if (filterName.equals(ViewFilter.DESTROYING_FILTERS)) {
                     List<TissueList> tissueLists = ViewFilter.getDestroyingSamples(instance.getName());
-                    wrapperList = TissueListWrapper.getTissueListData(instance, filters, tissueLists);
+                    wrapperList = TissueListWrapper.getTissueListData(instance, filters, tissueLists, from, to);
                     return wrapperList;
                 }
                 subQueryForFiltering = ViewFilter.getFilterQuery(filterName, parent);
@@ -112,7 +112,7 @@ public abstract class BaseFilterTissueList extends BaseFilter implements Filtera
             }
             //TODO (2021-07-29) -> if queryString is made by ElasticSearch fields `TissueList.getAllTissueListsForRealm` throws exception
             List<TissueList> tissueLists = TissueList.getAllTissueListsForRealm(realm, TissueList.SQL_SELECT_ALL_ONC_HISTORY_TISSUE_FOR_REALM + (queryString != null ? queryString : "") + query);
-            wrapperList = TissueListWrapper.getTissueListData(instance, filters, tissueLists);
+            wrapperList = TissueListWrapper.getTissueListData(instance, filters, tissueLists, from, to);
             return wrapperList;
         }
         return wrapperList;
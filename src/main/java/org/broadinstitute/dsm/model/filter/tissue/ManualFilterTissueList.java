@@ -38,7 +38,7 @@ public class ManualFilterTissueList extends BaseFilterTissueList {
         List<TissueList> tissueListList;
         if ("0".equals(defaultFilter)) {
             tissueListList = TissueList.getAllTissueListsForRealmNoFilter(realm);
-            wrapperList = TissueListWrapper.getTissueListData(ddpInstance, null, tissueListList);
+            wrapperList = TissueListWrapper.getTissueListData(ddpInstance, null, tissueListList, from, to);
         } else if ("1".equals(defaultFilter)) {
             String userEmail = queryParamsMap.value(RequestParameter.USER_MAIL);
             String defaultFilterName = ViewFilter.getDefaultFilterForUser(userEmail, TISSUE_LIST_PARENT);
@@ -46,7 +46,7 @@ public class ManualFilterTissueList extends BaseFilterTissueList {
                 wrapperList = getListBasedOnFilterName(defaultFilterName, realm, TISSUE_LIST_PARENT, null, null);
             } else {
                 tissueListList = TissueList.getAllTissueListsForRealmNoFilter(realm);
-                wrapperList = TissueListWrapper.getTissueListData(ddpInstance, null, tissueListList);
+                wrapperList = TissueListWrapper.getTissueListData(ddpInstance, null, tissueListList, from, to);
             }
         } else {
             wrapperList = filterTissueList(filters, PatchUtil.getColumnNameMap(), quickFilterName, ddpInstance, filterQuery);
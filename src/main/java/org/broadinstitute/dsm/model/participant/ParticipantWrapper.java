@@ -1,7 +1,5 @@
 package org.broadinstitute.dsm.model.participant;
 
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
 import lombok.Data;
 import org.apache.commons.lang3.StringUtils;
 import org.broadinstitute.dsm.db.*;
@@ -14,12 +12,14 @@ import org.broadinstitute.dsm.model.elasticsearch.ElasticSearch;
 import org.broadinstitute.dsm.model.elasticsearch.ElasticSearchParticipantDto;
 import org.broadinstitute.dsm.model.elasticsearch.ElasticSearchable;
 import org.broadinstitute.dsm.model.participant.data.FamilyMemberConstants;
-import org.broadinstitute.dsm.model.at.DefaultValues;
 import org.broadinstitute.dsm.statics.DBConstants;
+import org.broadinstitute.dsm.util.ConcurrentFetcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Data
@@ -68,11 +68,6 @@ public class ParticipantWrapper {
                 })
                 .orElseGet(() -> {
                     fetchAndPrepareData(ddpInstance);
-                    //if study is AT
-                    if ("atcp".equals(ddpInstance.getName())) {
-                        DefaultValues defaultValues = new DefaultValues(participantData, esData.getEsParticipants(), ddpInstance, null);
-                        participantData = defaultValues.addDefaultValues();
-                    }
                     sortBySelfElseById(participantData.values());
                     return new ParticipantWrapperResult(esData.getTotalCount(), collectData());
                 });
@@ -104,13 +99,6 @@ public class ParticipantWrapper {
                 else if (DBConstants.DDP_PARTICIPANT_DATA_ALIAS.equals(source)) {
                     participantData = new ParticipantDataDao().getParticipantDataByInstanceIdAndFilterQuery(Integer.parseInt(ddpInstance.getDdpInstanceId()), filters.get(source));
                     participantIdsToFetch = new ArrayList<>(participantData.keySet());
-
-                    //if study is AT TODO
-                    if ("atcp".equals(ddpInstance.getName())) {
-                        DefaultValues defaultValues =
-                                new DefaultValues(participantData, esData.getEsParticipants(), ddpInstance, filters.get(source));
-                        participantData = defaultValues.addDefaultValues();
-                    }
                 }
                 else if (DBConstants.DDP_ABSTRACTION_ALIAS.equals(source)) {
                     abstractionActivities = AbstractionActivity.getAllAbstractionActivityByRealm(ddpInstance.getName(), filters.get(source));
@@ -147,12 +135,6 @@ public class ParticipantWrapper {
         }
         if (participantData.isEmpty()) {
             participantData = new ParticipantDataDao().getParticipantDataByParticipantIds(participantIdsToFetch);
-
-            //if study is AT
-            if ("atcp".equals(ddpInstance.getName())) {
-                DefaultValues defaultValues = new DefaultValues(participantData, esData.getEsParticipants(), ddpInstance, null);
-                participantData = defaultValues.addDefaultValues();
-            }
         }
         if (abstractionActivities.isEmpty()) {
             abstractionActivities = AbstractionActivity.getAllAbstractionActivityByRealm(ddpInstance.getName());
@@ -171,19 +153,39 @@ public class ParticipantWrapper {
                 participantWrapperPayload.getFrom(),
                 participantWrapperPayload.getTo());
         List<String> participantIds = getParticipantIdsFromElasticList(esData.getEsParticipants());
-        participants = Participant.getParticipantsByIds(ddpInstance.getName(), participantIds);
-        if (ddpInstance.isHasRole()) {
-            medicalRecords = MedicalRecord.getMedicalRecordsByParticipantIds(ddpInstance.getName(), participantIds);
-            oncHistoryDetails = OncHistoryDetail.getOncHistoryDetailsByParticipantIds(ddpInstance.getName(), participantIds);
-        }
-        if (DDPInstanceDao.getRole(ddpInstance.getName(), DBConstants.KIT_REQUEST_ACTIVATED)) {
-            kitRequests = KitRequestShipping.getKitRequestsByParticipantIds(ddpInstance, participantIds);
-        }
-        abstractionActivities =
-                AbstractionActivity.getAllAbstractionActivityByParticipantIds(ddpInstance.getName(), participantIds);
-        abstractionSummary = AbstractionFinal.getAbstractionFinalByParticipantIds(ddpInstance.getName(), participantIds);
-        proxiesByParticipantIds = getProxiesWithParticipantIdsFromElasticList(ddpInstance.getUsersIndexES(), esData.getEsParticipants());
-        participantData = new ParticipantDataDao().getParticipantDataByParticipantIds(participantIds);
+
+        // all sources only depend on the participant ids of the page, so they are fetched concurrently
+        ConcurrentFetcher fetcher = new ConcurrentFetcher("participant list of " + ddpInstance.getName());
+        Supplier<List<Participant>> participantsFetch = fetcher.submit("participants",
+                () -> Participant.getParticipantsByIds(ddpInstance.getName(), participantIds));
+        Supplier<Map<String, List<MedicalRecord>>> medicalRecordsFetch = ddpInstance.isHasRole()
+                ? fetcher.submit("medicalRecords", () -> MedicalRecord.getMedicalRecordsByParticipantIds(ddpInstance.getName(), participantIds))
+                : () -> medicalRecords;
+        Supplier<Map<String, List<OncHistoryDetail>>> oncHistoryDetailsFetch = ddpInstance.isHasRole()
+                ? fetcher.submit("oncHistoryDetails", () -> OncHistoryDetail.getOncHistoryDetailsByParticipantIds(ddpInstance.getName(), participantIds))
+                : () -> oncHistoryDetails;
+        Supplier<Map<String, List<KitRequestShipping>>> kitRequestsFetch = fetcher.submit("kitRequests",
+                () -> DDPInstanceDao.getRole(ddpInstance.getName(), DBConstants.KIT_REQUEST_ACTIVATED)
+                        ? KitRequestShipping.getKitRequestsByParticipantIds(ddpInstance, participantIds)
+                        : kitRequests);
+        Supplier<Map<String, List<AbstractionActivity>>> abstractionActivitiesFetch = fetcher.submit("abstractionActivities",
+                () -> AbstractionActivity.getAllAbstractionActivityByParticipantIds(ddpInstance.getName(), participantIds));
+        Supplier<Map<String, List<AbstractionGroup>>> abstractionSummaryFetch = fetcher.submit("abstractionSummary",
+                () -> AbstractionFinal.getAbstractionFinalByParticipantIds(ddpInstance.getName(), participantIds));
+        Supplier<Map<String, List<ElasticSearchParticipantDto>>> proxiesFetch = fetcher.submit("proxies",
+                () -> getProxiesWithParticipantIdsFromElasticList(ddpInstance.getUsersIndexES(), esData.getEsParticipants()));
+        Supplier<Map<String, List<ParticipantDataDto>>> participantDataFetch = fetcher.submit("participantData",
+                () -> new ParticipantDataDao().getParticipantDataByParticipantIds(participantIds));
+
+        participants = participantsFetch.get();
+        medicalRecords = medicalRecordsFetch.get();
+        oncHistoryDetails = oncHistoryDetailsFetch.get();
+        kitRequests = kitRequestsFetch.get();
+        abstractionActivities = abstractionActivitiesFetch.get();
+        abstractionSummary = abstractionSummaryFetch.get();
+        proxiesByParticipantIds = proxiesFetch.get();
+        participantData = participantDataFetch.get();
+        fetcher.logTimings();
     }
 
     Map<String, List<ElasticSearchParticipantDto>> getProxiesWithParticipantIdsFromElasticList(String esUsersIndex, List<ElasticSearchParticipantDto> elasticSearchParticipantDtos) {
@@ -193,28 +195,49 @@ public class ParticipantWrapper {
 
     private List<ParticipantWrapperDto> collectData() {
         logger.info("Collecting participant data...");
-        List<ParticipantWrapperDto> result = new ArrayList<>();
+        Map<String, Participant> participantsById = participants.stream()
+                .filter(participant -> StringUtils.isNotBlank(participant.getDdpParticipantId()))
+                .collect(Collectors.toMap(Participant::getDdpParticipantId, Function.identity(), (first, second) -> first));
+        List<ParticipantWrapperDto> result = new ArrayList<>(esData.getEsParticipants().size());
         for (ElasticSearchParticipantDto elasticSearchParticipantDto: esData.getEsParticipants()) {
-            String participantId = elasticSearchParticipantDto.getParticipantId();
-            if (StringUtils.isBlank(participantId)) continue;
-            Participant participant = participants.stream()
-                    .filter(ppt -> participantId.equals(ppt.getDdpParticipantId()))
-                    .findFirst()
-                    .orElse(null);
+            if (StringUtils.isBlank(elasticSearchParticipantDto.getParticipantId())) continue;
+            List<String> ids = getGuidAndLegacyAltPid(elasticSearchParticipantDto);
             result.add(new ParticipantWrapperDto(
-                    elasticSearchParticipantDto, participant, medicalRecords.get(participantId),
-                    oncHistoryDetails.get(participantId), kitRequests.get(participantId), abstractionActivities.get(participantId),
-                    abstractionSummary.get(participantId), proxiesByParticipantIds.get(participantId), participantData.get(participantId)));
+                    elasticSearchParticipantDto, getByIds(participantsById, ids), getByIds(medicalRecords, ids),
+                    getByIds(oncHistoryDetails, ids), getByIds(kitRequests, ids), getByIds(abstractionActivities, ids),
+                    getByIds(abstractionSummary, ids), getByIds(proxiesByParticipantIds, ids), getByIds(participantData, ids)));
         }
         return result;
     }
 
+    /**
+     * DSM tables can store a participant either by guid or, for migrated participants, by legacy altpid
+     */
+    private static List<String> getGuidAndLegacyAltPid(ElasticSearchParticipantDto elasticSearchParticipantDto) {
+        List<String> ids = new ArrayList<>(2);
+        elasticSearchParticipantDto.getProfile().ifPresent(profile -> {
+            if (StringUtils.isNotBlank(profile.getParticipantGuid())) ids.add(profile.getParticipantGuid());
+            if (StringUtils.isNotBlank(profile.getParticipantLegacyAltPid())) ids.add(profile.getParticipantLegacyAltPid());
+        });
+        return ids;
+    }
+
+    private static <T> T getByIds(Map<String, T> dataByParticipantId, List<String> ids) {
+        for (String id: ids) {
+            T data = dataByParticipantId.get(id);
+            if (data != null) return data;
+        }
+        return null;
+    }
+
     void sortBySelfElseById(Collection<List<ParticipantDataDto>> participantDatas) {
-        participantDatas.forEach(pDataList -> pDataList.sort((o1, o2) -> {
-            Map<String, String> pData = new Gson().fromJson(o1.getData().orElse(""), new TypeToken<Map<String, String>>() {}.getType());
-            if (Objects.nonNull(pData) && FamilyMemberConstants.MEMBER_TYPE_SELF.equals(pData.get(FamilyMemberConstants.MEMBER_TYPE))) return -1;
-            return o1.getParticipantDataId() - o2.getParticipantDataId();
-        }));
+        Comparator<ParticipantDataDto> selfFirst = Comparator.comparing(pData -> !isSelf(pData));
+        participantDatas.forEach(pDataList -> pDataList.sort(selfFirst.thenComparingInt(ParticipantDataDto::getParticipantDataId)));
+    }
+
+    private static boolean isSelf(ParticipantDataDto participantData) {
+        Map<String, String> pData = participantData.getDataMap();
+        return Objects.nonNull(pData) && FamilyMemberConstants.MEMBER_TYPE_SELF.equals(pData.get(FamilyMemberConstants.MEMBER_TYPE));
     }
 
     List<String> getParticipantIdsFromElasticList(List<ElasticSearchParticipantDto> elasticSearchParticipantDtos) {
@@ -237,21 +260,15 @@ public class ParticipantWrapper {
     Map<String, List<ElasticSearchParticipantDto>> getProxiesWithParticipantIdsByProxiesIds(String esUsersIndex,
                                                                                      Map<String, List<String>> proxiesIdsByParticipantIds) {
         Map<String, List<ElasticSearchParticipantDto>> proxiesByParticipantIds = new HashMap<>();
-        List<String> proxiesIds = proxiesIdsByParticipantIds.values().stream().flatMap(Collection::stream).collect(Collectors.toList());
+        Map<String, List<String>> participantIdsByProxyId = new HashMap<>();
+        proxiesIdsByParticipantIds.forEach((participantId, proxiesIds) -> proxiesIds.forEach(proxyId ->
+                participantIdsByProxyId.computeIfAbsent(proxyId, id -> new ArrayList<>()).add(participantId)));
+        List<String> proxiesIds = new ArrayList<>(participantIdsByProxyId.keySet());
         List<ElasticSearchParticipantDto> participantsByIds = elasticSearchable.getParticipantsByIds(esUsersIndex, proxiesIds).getEsParticipants();
         participantsByIds.forEach(elasticSearchParticipantDto -> {
-            String proxyId = elasticSearchParticipantDto.getParticipantId();
-            for (Map.Entry<String, List<String>> entry: proxiesIdsByParticipantIds.entrySet()) {
-                String participantId = entry.getKey();
-                List<String> proxies = entry.getValue();
-                if (proxies.contains(proxyId)) {
-                    proxiesByParticipantIds.merge(participantId, new ArrayList<>(List.of(elasticSearchParticipantDto)), (prev, curr) -> {
-                        prev.addAll(curr);
-                        return prev;
-                    });
-                    break;
-                }
-
+            List<String> participantIds = participantIdsByProxyId.getOrDefault(elasticSearchParticipantDto.getParticipantId(), Collections.emptyList());
+            for (String participantId: participantIds) {
+                proxiesByParticipantIds.computeIfAbsent(participantId, id -> new ArrayList<>()).add(elasticSearchParticipantDto);
             }
         });
         return proxiesByParticipantIds;
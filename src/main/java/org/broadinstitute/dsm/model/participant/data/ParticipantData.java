@@ -157,8 +157,8 @@ public class ParticipantData {
     public Optional<ParticipantDataDto> findProband(List<ParticipantDataDto> participantDataDtoList) {
         return Objects.requireNonNull(participantDataDtoList).stream()
                 .filter(participantDataDto -> {
-                    Map<String, String> pDataMap = GSON.fromJson(participantDataDto.getData().orElse(""), Map.class);
-                    return FamilyMemberConstants.MEMBER_TYPE_SELF.equals(pDataMap.get(FamilyMemberConstants.MEMBER_TYPE));
+                    Map<String, String> pDataMap = participantDataDto.getDataMap();
+                    return pDataMap != null && FamilyMemberConstants.MEMBER_TYPE_SELF.equals(pDataMap.get(FamilyMemberConstants.MEMBER_TYPE));
                 })
                 .findFirst();
     }
@@ -1,25 +1,21 @@
 package org.broadinstitute.dsm.pubsub;
 
-import com.google.api.gax.core.ExecutorProvider;
-import com.google.api.gax.core.InstantiatingExecutorProvider;
 import com.google.cloud.pubsub.v1.AckReplyConsumer;
 import com.google.cloud.pubsub.v1.MessageReceiver;
-import com.google.cloud.pubsub.v1.Subscriber;
-import com.google.pubsub.v1.ProjectSubscriptionName;
 import com.google.pubsub.v1.PubsubMessage;
 import org.apache.commons.lang3.StringUtils;
 import org.broadinstitute.dsm.export.ExportToES;
 import org.broadinstitute.dsm.model.Study;
 import org.broadinstitute.dsm.model.defaultvalues.Defaultable;
 import org.broadinstitute.dsm.model.defaultvalues.DefaultableMaker;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
+import org.broadinstitute.dsm.util.ConfigUtil;
 import org.broadinstitute.dsm.util.ParticipantUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 public class DSMtasksSubscription {
 
@@ -30,59 +26,109 @@ public class DSMtasksSubscription {
     public static final String ELASTIC_EXPORT = "ELASTIC_EXPORT";
     public static final String PARTICIPANT_REGISTERED = "PARTICIPANT_REGISTERED";
 
-    public static void subscribeDSMtasks(String projectId, String subscriptionId) {
+    private static final String SETTINGS_NAME = "dsmTasks";
+    private static final String EXPORT_SETTINGS_NAME = "dsmExports";
+    private static final int DEFAULT_EXECUTOR_THREADS = 1;
+    private static final long DEFAULT_MAX_ACK_EXTENSION_SECONDS = 120;
+    private static final int DEFAULT_EXPORT_EXECUTOR_THREADS = 1;
+    //ack deadline of long tasks gets extended until they are finished
+    private static final long DEFAULT_LONG_TASK_MAX_ACK_EXTENSION_SECONDS = 6 * 60 * 60;
+    private static final int DEFAULT_LONG_TASK_THREADS = 1;
+    private static final int DEFAULT_LONG_TASK_QUEUE_SIZE = 10;
+
+    /**
+     * The ack deadline of a message can only be extended per subscription, so exports get their own subscription
+     * to the dsm tasks topic with the long extension, and the other tasks keep a short one.
+     * Without an export subscription the dsm tasks subscription runs the exports as well and needs the long extension
+     *
+     * @param exportSubscriptionId second subscription to the topic of the dsm tasks, handling only the exports, can be null
+     */
+    public static void subscribeDSMtasks(String projectId, String subscriptionId, String exportSubscriptionId) {
+        LongTaskQueue longTaskQueue = new LongTaskQueue("dsm-long-tasks",
+                ConfigUtil.getInt(ApplicationConfigConstants.PUBSUB_LONG_TASK_THREADS, DEFAULT_LONG_TASK_THREADS),
+                ConfigUtil.getInt(ApplicationConfigConstants.PUBSUB_LONG_TASK_QUEUE_SIZE, DEFAULT_LONG_TASK_QUEUE_SIZE));
+        PubSubSubscriber.addMetrics(longTaskQueue.getMetrics());
+
+        if (StringUtils.isBlank(exportSubscriptionId)) {
+            logger.warn("No subscription for exports configured, extending ack deadline of all dsm tasks for the exports");
+            PubSubSubscriber.subscribe(projectId, subscriptionId, SETTINGS_NAME, DEFAULT_EXECUTOR_THREADS,
+                    DEFAULT_LONG_TASK_MAX_ACK_EXTENSION_SECONDS, createTaskReceiver(longTaskQueue));
+        }
+        else {
+            PubSubSubscriber.subscribe(projectId, subscriptionId, SETTINGS_NAME, DEFAULT_EXECUTOR_THREADS,
+                    DEFAULT_MAX_ACK_EXTENSION_SECONDS, createTaskReceiver(null));
+            PubSubSubscriber.subscribe(projectId, exportSubscriptionId, EXPORT_SETTINGS_NAME, DEFAULT_EXPORT_EXECUTOR_THREADS,
+                    DEFAULT_LONG_TASK_MAX_ACK_EXTENSION_SECONDS, createExportReceiver(longTaskQueue));
+        }
+    }
+
+    /**
+     * @param longTaskQueue queue running the exports, if null exports are left to the export subscription
+     */
+    private static MessageReceiver createTaskReceiver(LongTaskQueue longTaskQueue) {
         // Instantiate an asynchronous message receiver.
-        MessageReceiver receiver =
-                (PubsubMessage message, AckReplyConsumer consumer) -> {
-                    // Handle incoming message, then ack the received message.
-                    logger.info("Got message with Id: " + message.getMessageId());
-                    Map<String, String> attributesMap = message.getAttributesMap();
-                    String taskType = attributesMap.get(TASK_TYPE);
-                    String data = message.getData() != null ? message.getData().toStringUtf8() : null;
+        return (PubsubMessage message, AckReplyConsumer consumer) -> {
+            // Handle incoming message, then ack the received message.
+            logger.info("Got message with Id: " + message.getMessageId());
+            Map<String, String> attributesMap = message.getAttributesMap();
+            String taskType = attributesMap.get(TASK_TYPE);
+            String data = message.getData() != null ? message.getData().toStringUtf8() : null;
 
-                    logger.info("Task type is: " + taskType);
+            logger.info("Task type is: " + taskType);
 
-                    if (StringUtils.isBlank(taskType)) {
-                        logger.warn("task type from pubsub was missing");
+            if (StringUtils.isBlank(taskType)) {
+                logger.warn("task type from pubsub was missing");
+                consumer.ack();
+            }
+            else {
+                switch (taskType) {
+                    case UPDATE_CUSTOM_WORKFLOW:
                         consumer.ack();
-                    }
-                    else {
-                        switch (taskType) {
-                            case UPDATE_CUSTOM_WORKFLOW:
-                                consumer.ack();
-                                WorkflowStatusUpdate.updateCustomWorkflow(attributesMap, data);
-                                break;
-                            case ELASTIC_EXPORT:
-                                consumer.ack();
-                                boolean clearBeforeUpdate = attributesMap.containsKey(CLEAR_BEFORE_UPDATE)
-                                        && Boolean.parseBoolean(attributesMap.get(CLEAR_BEFORE_UPDATE));
-                                new ExportToES().exportObjectsToES(data, clearBeforeUpdate);
-                                break;
-                            case PARTICIPANT_REGISTERED:
-                                generateStudyDefaultValues(consumer, attributesMap);
-                                break;
-                            default:
-                                logger.warn("Wrong task type for a message from pubsub");
-                                consumer.ack();
-                                break;
+                        WorkflowStatusUpdate.updateCustomWorkflow(attributesMap, data);
+                        break;
+                    case ELASTIC_EXPORT:
+                        if (longTaskQueue != null) {
+                            submitExport(longTaskQueue, message, consumer, attributesMap, data);
+                        }
+                        else {
+                            consumer.ack();
                         }
-                    }
-                };
+                        break;
+                    case PARTICIPANT_REGISTERED:
+                        generateStudyDefaultValues(consumer, attributesMap);
+                        break;
+                    default:
+                        logger.warn("Wrong task type for a message from pubsub");
+                        consumer.ack();
+                        break;
+                }
+            }
+        };
+    }
 
-        Subscriber subscriber = null;
-        ProjectSubscriptionName resultSubName = ProjectSubscriptionName.of(projectId, subscriptionId);
-        ExecutorProvider resultsSubExecProvider = InstantiatingExecutorProvider.newBuilder().setExecutorThreadCount(1).build();
-        subscriber = Subscriber.newBuilder(resultSubName, receiver)
-                .setParallelPullCount(1)
-                .setExecutorProvider(resultsSubExecProvider)
-                .setMaxAckExtensionPeriod(org.threeten.bp.Duration.ofSeconds(120))
-                .build();
-        try {
-            subscriber.startAsync().awaitRunning(1L, TimeUnit.MINUTES);
-            logger.info("Started pubsub subscription receiver DSM tasks subscription");
-        } catch (TimeoutException e) {
-            throw new RuntimeException("Timed out while starting pubsub subscription for DSM tasks", e);
-        }
+    /**
+     * Receives all dsm tasks as well, but only runs the exports
+     */
+    private static MessageReceiver createExportReceiver(LongTaskQueue longTaskQueue) {
+        return (PubsubMessage message, AckReplyConsumer consumer) -> {
+            Map<String, String> attributesMap = message.getAttributesMap();
+            if (ELASTIC_EXPORT.equals(attributesMap.get(TASK_TYPE))) {
+                logger.info("Got export message with Id: " + message.getMessageId());
+                String data = message.getData() != null ? message.getData().toStringUtf8() : null;
+                submitExport(longTaskQueue, message, consumer, attributesMap, data);
+            }
+            else {
+                consumer.ack();
+            }
+        };
+    }
+
+    private static void submitExport(LongTaskQueue longTaskQueue, PubsubMessage message, AckReplyConsumer consumer,
+                                     Map<String, String> attributesMap, String data) {
+        boolean clearBeforeUpdate = attributesMap.containsKey(CLEAR_BEFORE_UPDATE)
+                && Boolean.parseBoolean(attributesMap.get(CLEAR_BEFORE_UPDATE));
+        //runs for hours, so it must not block the other tasks
+        longTaskQueue.submit(message, consumer, () -> new ExportToES().exportObjectsToES(data, clearBeforeUpdate));
     }
 
     private static void generateStudyDefaultValues(AckReplyConsumer consumer, Map<String, String> attributesMap) {
@@ -0,0 +1,87 @@
+package org.broadinstitute.dsm.pubsub;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.pubsub.v1.PubsubMessage;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded work queue for pubsub tasks which take too long to run on the threads of the subscriber, like an export to ES.
+ * A message is only acked after its task finished, until then the subscriber keeps extending its ack deadline,
+ * so a task lost by a restart of DSM gets delivered again.
+ * If the queue is full the message is nacked, so pubsub delivers it again later
+ */
+public class LongTaskQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(LongTaskQueue.class);
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> queuedMessageIds = ConcurrentHashMap.newKeySet();
+    private final SubscriptionMetrics metrics;
+
+    public LongTaskQueue(@NonNull String name, int threads, int queueSize) {
+        this.name = name;
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.metrics = new SubscriptionMetrics(name, () -> executor.getQueue().size());
+    }
+
+    public void submit(@NonNull PubsubMessage message, @NonNull AckReplyConsumer consumer, @NonNull Runnable task) {
+        String messageId = message.getMessageId();
+        if (!queuedMessageIds.add(messageId)) {
+            //ack deadline couldn't be extended any longer, the task is still queued or running
+            logger.info("Message " + messageId + " is already in " + name + ", acking the redelivery");
+            consumer.ack();
+            return;
+        }
+        long queuedAt = System.currentTimeMillis();
+        try {
+            executor.execute(() -> run(messageId, consumer, task, queuedAt));
+        }
+        catch (RejectedExecutionException e) {
+            queuedMessageIds.remove(messageId);
+            metrics.messageRejected();
+            logger.warn(name + " is full, nacking message " + messageId);
+            consumer.nack();
+        }
+    }
+
+    private void run(String messageId, AckReplyConsumer consumer, Runnable task, long queuedAt) {
+        long start = System.currentTimeMillis();
+        metrics.messageStarted(start - queuedAt);
+        boolean failed = true;
+        try {
+            task.run();
+            failed = false;
+        }
+        catch (Exception e) {
+            logger.error("Task of message " + messageId + " in " + name + " failed", e);
+        }
+        finally {
+            //failed tasks are acked as well, they were never retried before and might fail again for hours
+            consumer.ack();
+            queuedMessageIds.remove(messageId);
+            metrics.messageFinished(System.currentTimeMillis() - start, failed);
+            logger.info("Finished task of message " + messageId + ", " + metrics);
+        }
+    }
+
+    public SubscriptionMetrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,130 @@
+package org.broadinstitute.dsm.pubsub;
+
+import com.google.api.gax.batching.FlowControlSettings;
+import com.google.api.gax.core.InstantiatingExecutorProvider;
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.cloud.pubsub.v1.MessageReceiver;
+import com.google.cloud.pubsub.v1.Subscriber;
+import com.google.protobuf.Timestamp;
+import com.google.pubsub.v1.ProjectSubscriptionName;
+import com.google.pubsub.v1.PubsubMessage;
+import lombok.NonNull;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
+import org.broadinstitute.dsm.util.ConfigUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Starts the pubsub subscribers of DSM with thread counts and flow control from the config.
+ * Settings are per subscription under pubsub.subscribers.[settingsName], e.g. pubsub.subscribers.dsmTasks.executorThreads
+ */
+public class PubSubSubscriber {
+
+    private static final Logger logger = LoggerFactory.getLogger(PubSubSubscriber.class);
+
+    public static final String EXECUTOR_THREADS = "executorThreads";
+    public static final String PARALLEL_PULLS = "parallelPulls";
+    public static final String MAX_OUTSTANDING_MESSAGES = "maxOutstandingMessages";
+    public static final String MAX_OUTSTANDING_BYTES = "maxOutstandingBytes";
+    public static final String MAX_ACK_EXTENSION_SECONDS = "maxAckExtensionSeconds";
+
+    private static final int DEFAULT_PARALLEL_PULLS = 1;
+    private static final long DEFAULT_MAX_OUTSTANDING_MESSAGES = 1000L;
+    private static final long DEFAULT_MAX_OUTSTANDING_BYTES = 100L * 1024L * 1024L;
+    private static final long DEFAULT_METRICS_LOG_INTERVAL_SECONDS = 300L;
+
+    private static final List<SubscriptionMetrics> metrics = new CopyOnWriteArrayList<>();
+    private static ScheduledExecutorService metricsLogger;
+
+    /**
+     * @param settingsName                  name of the settings of the subscription in the config
+     * @param defaultExecutorThreads        threads handling the messages if not configured
+     * @param defaultMaxAckExtensionSeconds how long the ack deadline of a message gets extended at most if not configured,
+     *                                      needs to be longer than processing a message takes
+     */
+    public static Subscriber subscribe(@NonNull String projectId, @NonNull String subscriptionId, @NonNull String settingsName,
+                                       int defaultExecutorThreads, long defaultMaxAckExtensionSeconds, @NonNull MessageReceiver receiver) {
+        int executorThreads = (int) getConfig(settingsName, EXECUTOR_THREADS, defaultExecutorThreads);
+        int parallelPulls = (int) getConfig(settingsName, PARALLEL_PULLS, DEFAULT_PARALLEL_PULLS);
+        long maxAckExtensionSeconds = getConfig(settingsName, MAX_ACK_EXTENSION_SECONDS, defaultMaxAckExtensionSeconds);
+
+        // The subscriber will pause the message stream and stop receiving more messages from the
+        // server if any one of the conditions is met.
+        FlowControlSettings flowControlSettings =
+                FlowControlSettings.newBuilder()
+                        .setMaxOutstandingElementCount(getConfig(settingsName, MAX_OUTSTANDING_MESSAGES, DEFAULT_MAX_OUTSTANDING_MESSAGES))
+                        .setMaxOutstandingRequestBytes(getConfig(settingsName, MAX_OUTSTANDING_BYTES, DEFAULT_MAX_OUTSTANDING_BYTES))
+                        .build();
+
+        SubscriptionMetrics subscriptionMetrics = new SubscriptionMetrics(subscriptionId, null);
+        addMetrics(subscriptionMetrics);
+        MessageReceiver measuredReceiver = (PubsubMessage message, AckReplyConsumer consumer) -> {
+            long start = System.currentTimeMillis();
+            subscriptionMetrics.messageStarted(getWaitMillis(message, start));
+            boolean failed = true;
+            try {
+                receiver.receiveMessage(message, consumer);
+                failed = false;
+            }
+            finally {
+                subscriptionMetrics.messageFinished(System.currentTimeMillis() - start, failed);
+            }
+        };
+
+        Subscriber subscriber = Subscriber.newBuilder(ProjectSubscriptionName.of(projectId, subscriptionId), measuredReceiver)
+                .setParallelPullCount(parallelPulls)
+                .setExecutorProvider(InstantiatingExecutorProvider.newBuilder().setExecutorThreadCount(executorThreads).build())
+                .setMaxAckExtensionPeriod(org.threeten.bp.Duration.ofSeconds(maxAckExtensionSeconds))
+                .setFlowControlSettings(flowControlSettings)
+                .build();
+        try {
+            subscriber.startAsync().awaitRunning(1L, TimeUnit.MINUTES);
+            logger.info("Started pubsub subscription receiver for " + subscriptionId + " with " + executorThreads + " threads and "
+                    + parallelPulls + " parallel pulls");
+        }
+        catch (TimeoutException e) {
+            throw new RuntimeException("Timed out while starting pubsub subscription " + subscriptionId, e);
+        }
+        return subscriber;
+    }
+
+    /**
+     * Registers metrics which get logged regularly together with the ones of the subscriptions
+     */
+    public static synchronized void addMetrics(@NonNull SubscriptionMetrics subscriptionMetrics) {
+        metrics.add(subscriptionMetrics);
+        if (metricsLogger == null) {
+            long interval = ConfigUtil.getLong(ApplicationConfigConstants.PUBSUB_METRICS_LOG_INTERVAL_SECONDS, DEFAULT_METRICS_LOG_INTERVAL_SECONDS);
+            metricsLogger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "pubsub-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            metricsLogger.scheduleAtFixedRate(() -> metrics.forEach(m -> logger.info("Pubsub metrics " + m)), interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    public static List<SubscriptionMetrics> getMetrics() {
+        return new ArrayList<>(metrics);
+    }
+
+    private static long getWaitMillis(PubsubMessage message, long now) {
+        if (!message.hasPublishTime()) {
+            return 0L;
+        }
+        Timestamp publishTime = message.getPublishTime();
+        return Math.max(0L, now - (publishTime.getSeconds() * 1000 + publishTime.getNanos() / 1000000));
+    }
+
+    private static long getConfig(String settingsName, String setting, long defaultValue) {
+        return ConfigUtil.getLong(ApplicationConfigConstants.PUBSUB_SUBSCRIBERS + "." + settingsName + "." + setting, defaultValue);
+    }
+}
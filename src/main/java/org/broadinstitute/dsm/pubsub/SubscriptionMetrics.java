@@ -0,0 +1,106 @@
+package org.broadinstitute.dsm.pubsub;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Numbers of a pubsub subscription or work queue since DSM started.
+ * Messages get recorded by several threads at the same time, therefore everything is thread safe
+ */
+public class SubscriptionMetrics {
+
+    private final String name;
+    private final IntSupplier queueDepth;
+    private final AtomicLong startedMessages = new AtomicLong();
+    private final AtomicLong finishedMessages = new AtomicLong();
+    private final AtomicLong failedMessages = new AtomicLong();
+    private final AtomicLong rejectedMessages = new AtomicLong();
+    private final AtomicInteger messagesInProgress = new AtomicInteger();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    private final AtomicLong totalProcessingMillis = new AtomicLong();
+    private final AtomicLong maxProcessingMillis = new AtomicLong();
+
+    /**
+     * @param queueDepth number of messages waiting to be processed, null if not known
+     */
+    public SubscriptionMetrics(String name, IntSupplier queueDepth) {
+        this.name = name;
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * @param waitMillis time the message waited before it got processed
+     */
+    public void messageStarted(long waitMillis) {
+        startedMessages.incrementAndGet();
+        messagesInProgress.incrementAndGet();
+        totalWaitMillis.addAndGet(waitMillis);
+        maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+    }
+
+    public void messageFinished(long processingMillis, boolean failed) {
+        messagesInProgress.decrementAndGet();
+        finishedMessages.incrementAndGet();
+        if (failed) {
+            failedMessages.incrementAndGet();
+        }
+        totalProcessingMillis.addAndGet(processingMillis);
+        maxProcessingMillis.accumulateAndGet(processingMillis, Math::max);
+    }
+
+    public void messageRejected() {
+        rejectedMessages.incrementAndGet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth != null ? queueDepth.getAsInt() : 0;
+    }
+
+    public int getMessagesInProgress() {
+        return messagesInProgress.get();
+    }
+
+    public long getFinishedMessages() {
+        return finishedMessages.get();
+    }
+
+    public long getFailedMessages() {
+        return failedMessages.get();
+    }
+
+    public long getRejectedMessages() {
+        return rejectedMessages.get();
+    }
+
+    public long getAverageWaitMillis() {
+        long started = startedMessages.get();
+        return started > 0 ? totalWaitMillis.get() / started : 0L;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis.get();
+    }
+
+    public long getAverageProcessingMillis() {
+        long finished = finishedMessages.get();
+        return finished > 0 ? totalProcessingMillis.get() / finished : 0L;
+    }
+
+    public long getMaxProcessingMillis() {
+        return maxProcessingMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": queued " + getQueueDepth() + ", in progress " + getMessagesInProgress() + ", finished " + getFinishedMessages()
+                + ", failed " + getFailedMessages() + ", rejected " + getRejectedMessages()
+                + ", wait avg=" + getAverageWaitMillis() + "ms max=" + getMaxWaitMillis()
+                + "ms, processing avg=" + getAverageProcessingMillis() + "ms max=" + getMaxProcessingMillis() + "ms";
+    }
+}
@@ -81,6 +81,8 @@ public class AuthenticationRoute implements Route {
                     claims.put(userSettings, gson.toJson(UserSettings.getUserSettings(email), UserSettings.class));
                 }
                 claims.put(authUserId, String.valueOf(userDto.getId()));
+                //roles might have been changed since the last login
+                UserUtil.invalidateAccessCache(String.valueOf(userDto.getId()));
                 claims.put(authUserName, userDto.getName().orElse(""));
                 claims.put(authUserEmail, email);
 
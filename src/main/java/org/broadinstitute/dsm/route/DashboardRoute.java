@@ -1,6 +1,7 @@
 package org.broadinstitute.dsm.route;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
 import org.broadinstitute.ddp.db.SimpleResult;
@@ -9,12 +10,9 @@ import org.broadinstitute.ddp.handlers.util.Result;
 import org.broadinstitute.dsm.db.KitType;
 import org.broadinstitute.dsm.db.*;
 import org.broadinstitute.dsm.model.*;
-import org.broadinstitute.dsm.model.elasticsearch.ElasticSearchParticipantDto;
-import org.broadinstitute.dsm.model.participant.ParticipantWrapperDto;
+import org.broadinstitute.dsm.model.dashboard.MedicalRecordDashboard;
 import org.broadinstitute.dsm.security.RequestHandler;
 import org.broadinstitute.dsm.statics.*;
-import org.broadinstitute.dsm.util.AbstractionUtil;
-import org.broadinstitute.dsm.util.ElasticSearchUtil;
 import org.broadinstitute.dsm.util.KitUtil;
 import org.broadinstitute.dsm.util.SystemUtil;
 import org.broadinstitute.dsm.util.UserUtil;
@@ -24,6 +22,10 @@ import spark.QueryParamsMap;
 import spark.Request;
 import spark.Response;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -50,34 +52,6 @@ public class DashboardRoute extends RequestHandler {
         this.kitUtil = kitUtil;
     }
 
-    public static List<ParticipantWrapperDto> addAllData(List<String> baseList, Map<String, Map<String, Object>> esDataMap,
-                                                         Map<String, Participant> participantMap, Map<String, List<MedicalRecord>> medicalRecordMap,
-                                                         Map<String, List<OncHistoryDetail>> oncHistoryMap, Map<String, List<KitRequestShipping>> kitRequestMap,
-                                                         Map<String, List<AbstractionActivity>> abstractionActivityMap, Map<String, List<AbstractionGroup>> abstractionSummary,
-                                                         Map<String, Map<String, Object>> proxyData, Map<String, List<ParticipantData>> participantData) {
-        Gson gson = new Gson();
-        List<ParticipantWrapperDto> participantList = new ArrayList<>();
-        for (String ddpParticipantId : baseList) {
-            Participant participant = participantMap != null ? participantMap.get(ddpParticipantId) : null;
-            Map<String, Object> participantESData = esDataMap.get(ddpParticipantId);
-            if (participantESData != null) {
-                String participantEsDataAsJson = gson.toJson(participantESData);
-                ElasticSearchParticipantDto elasticSearchParticipantDto =
-                        gson.fromJson(participantEsDataAsJson, ElasticSearchParticipantDto.class);
-                participantList.add(new ParticipantWrapperDto(elasticSearchParticipantDto, participant,
-                        medicalRecordMap != null ? medicalRecordMap.get(ddpParticipantId) : null,
-                        oncHistoryMap != null ? oncHistoryMap.get(ddpParticipantId) : null,
-                        kitRequestMap != null ? kitRequestMap.get(ddpParticipantId) : null,
-                        abstractionActivityMap != null ? abstractionActivityMap.get(ddpParticipantId) : null,
-                        abstractionSummary != null ? abstractionSummary.get(ddpParticipantId) : null,
-                        null,
-                null));
-            }
-        }
-        logger.info("Returning list w/ " + participantList.size() + " pts now");
-        return participantList;
-    }
-
     @Override
     public Object processRequest(Request request, Response response, String userId) throws Exception {
         try {
@@ -94,10 +68,11 @@ public class DashboardRoute extends RequestHandler {
                         endDate = endDate + " 23:59:59";
                         final long end = SystemUtil.getLongFromDetailDateString(endDate);
                         if (request.url().contains(RoutePath.SAMPLE_REPORT_REQUEST)) {
-                            return getShippingReport(userIdRequest, start, end);
+                            return ShippingReport.getShippingReport(userIdRequest, UserUtil.getListOfAllowedRealms(userIdRequest), start, end);
                         }
                         else {
-                            return getMedicalRecordDashboard(start, end, RoutePath.getRealm(request));
+                            boolean rebuild = Boolean.parseBoolean(request.queryParams(RequestParameter.REBUILD));
+                            return MedicalRecordDashboard.getDashboardInformation(RoutePath.getRealm(request), start, end, rebuild);
                         }
                     }
                     else {
@@ -106,7 +81,8 @@ public class DashboardRoute extends RequestHandler {
                 }
                 else {
                     if (request.url().contains(RoutePath.SAMPLE_REPORT_REQUEST)) {
-                        return getShippingReportDownload(userIdRequest);
+                        writeShippingReportDownload(userIdRequest, response);
+                        return null;
                     }
                     else {
                         String realm = null;
@@ -230,482 +206,6 @@ public class DashboardRoute extends RequestHandler {
     }
 
 
-    /**
-     * Find all information needed for medical record dashboard
-     *
-     * @return DashboardInformation
-     */
-    public DashboardInformation getMedicalRecordDashboard(@NonNull long start, @NonNull long end, @NonNull String realm) {
-        DDPInstance ddpInstance = DDPInstance.getDDPInstanceWithRole(realm, DBConstants.MEDICAL_RECORD_ACTIVATED);
-
-        Map<String, Map<String, Object>> participantESData = ElasticSearchUtil.getESData(ddpInstance);
-        Map<String, Participant> participants = Participant.getParticipants(realm);
-        Map<String, List<MedicalRecord>> medicalRecords = MedicalRecord.getMedicalRecords(realm);
-        Map<String, List<OncHistoryDetail>> oncHistoryDetails = OncHistoryDetail.getOncHistoryDetails(realm);
-        Map<String, List<KitRequestShipping>> kitRequests = KitRequestShipping.getAllKitRequestsByRealm(realm, null, null, true);
-        Map<String, List<AbstractionActivity>> abstractionActivities = AbstractionActivity.getAllAbstractionActivityByRealm(realm);
-        Map<String, List<AbstractionGroup>> abstractionSummary = AbstractionFinal.getAbstractionFinal(realm);
-
-        List<ParticipantWrapperDto> participantWrapperList = addAllData(new ArrayList<>(participantESData.keySet()), participantESData,
-                participants, medicalRecords, oncHistoryDetails, kitRequests, abstractionActivities, abstractionSummary, null, null);
-
-        Map<String, Integer> dashboardValues = new HashMap(); //counts only pt
-        Map<String, Integer> dashboardValuesDetailed = new HashMap(); //counts number of institutions in total
-        Map<String, Integer> dashboardValuesPeriod = new HashMap(); //counts only pt per period
-        Map<String, Integer> dashboardValuesPeriodDetailed = new HashMap(); //counts number of institutions in total per period
-        //number of pts in ES
-        dashboardValues.put("all", participantWrapperList.size());
-        for (ParticipantWrapperDto wrapper : participantWrapperList) {
-            //es data information
-            Map<String, Object> esData = wrapper.getEsDataAsMap();
-            //count pt enrollment status
-            String enrollmentStatus = (String) esData.get("status");
-            countParameter(dashboardValues, "status." + enrollmentStatus, esData, "status", false);
-
-            if (esData.get("profile") != null) {
-                Map<String, Object> profileData = (Map<String, Object>) esData.get("profile");
-                //count pt creation in period
-                countParameterPeriod(dashboardValuesPeriod, "all", profileData, "createdAt", start, end);
-            }
-            if (esData.get("dsm") != null) {
-                Map<String, Object> dsmSpecificInformation = (Map<String, Object>) esData.get("dsm");
-                // count pt count consented to tissue
-                countBooleanParameter(dashboardValues, "tissueConsent", dsmSpecificInformation, "hasConsentedToTissueSample");
-                countBooleanParameter(dashboardValues, "bloodConsent", dsmSpecificInformation, "hasConsentedToBloodDraw");
-            }
-            if (esData.get("activities") != null) {
-                List<Object> surveyList = (ArrayList<Object>) esData.get("activities");
-                for (Object survey : surveyList) {
-                    Map<String, Object> surveyMap = (Map<String, Object>) survey;
-                    String version = (String) surveyMap.get("activityVersion");
-                    String code = (String) surveyMap.get("activityCode");
-
-                    if (surveyMap.get("lastUpdatedAt") != null) {
-                        //get number of pt for survey x (which started to fill out survey)
-                        countParameter(dashboardValues, "activity." + code + "." + version, surveyMap, "activityCode", false);
-                        countParameter(dashboardValues, "activity." + code, surveyMap, "activityCode", false);
-                    }
-
-                    //get number of pt who completed survey x with version z
-                    countParameter(dashboardValues, "activity." + code + "." + version + ".completed", surveyMap,
-                            "completedAt", true);
-                    countParameterPeriod(dashboardValuesPeriod, "activity." + code + "." + version + ".completed", surveyMap,
-                            "completedAt", start, end);
-
-                    //get number of pt who completed survey x ignoring version
-                    countParameter(dashboardValues, "activity." + code + ".completed", surveyMap,
-                            "completedAt", true);
-                    countParameterPeriod(dashboardValuesPeriod, "activity." + code + ".completed", surveyMap,
-                            "completedAt", start, end);
-                }
-            }
-
-            if (wrapper.getParticipant() != null) {
-                if (wrapper.getParticipant().isMinimalMR()) {
-                    incrementCounter(dashboardValues, "minimalMR");
-                }
-            }
-
-            Set<String> foundAtPt = new HashSet<>();
-            Set<String> foundAtPtPeriod = new HashSet<>();
-            if (wrapper.getMedicalRecords() != null && !wrapper.getMedicalRecords().isEmpty()) {
-                countMedicalRecordData(wrapper.getMedicalRecords(), foundAtPt, foundAtPtPeriod, dashboardValuesDetailed, dashboardValuesPeriodDetailed, start, end,
-                        kitRequests);
-            }
-            if (wrapper.getOncHistoryDetails() != null && !wrapper.getOncHistoryDetails().isEmpty()) {
-                countOncHistoryData(wrapper.getOncHistoryDetails(), foundAtPt, foundAtPtPeriod, dashboardValuesDetailed, dashboardValuesPeriodDetailed, start, end);
-            }
-            if (wrapper.getKits() != null && !wrapper.getKits().isEmpty()) {
-                countKits(wrapper.getKits(), foundAtPt, foundAtPtPeriod, dashboardValuesDetailed, dashboardValuesPeriodDetailed, start, end);
-            }
-
-            if (wrapper.getAbstractionActivities() != null && !wrapper.getAbstractionActivities().isEmpty()) {
-                for (AbstractionActivity activity : wrapper.getAbstractionActivities()) {
-                    if (AbstractionUtil.ACTIVITY_FINAL.equals(activity.getActivity()) && AbstractionUtil.STATUS_DONE.equals(activity.getAStatus())) {
-                        incrementCounter(dashboardValues, "abstraction.done");
-                        incrementCounterPeriod(dashboardValuesPeriod, "abstraction.done", activity.getLastChanged(), start, end);
-                    }
-                }
-            }
-
-            for (String found : foundAtPt) {
-                incrementCounter(dashboardValues, found);
-            }
-            for (String found : foundAtPtPeriod) {
-                incrementCounter(dashboardValuesPeriod, found);
-            }
-        }
-        logger.info("Done calculating dashboard. Returning map now");
-        return new DashboardInformation(dashboardValues, dashboardValuesDetailed, dashboardValuesPeriod, dashboardValuesPeriodDetailed);
-    }
-
-    private void countMedicalRecordData(@NonNull List<MedicalRecord> medicalRecordList, @NonNull Set<String> foundAtPT, @NonNull Set<String> foundAtPtPeriod,
-                                        @NonNull Map<String, Integer> dashboardValuesDetailed, @NonNull Map<String, Integer> dashboardValuesPeriodDetailed,
-                                        long start, long end, Map<String, List<KitRequestShipping>> kitRequests) {
-        for (MedicalRecord medicalRecord : medicalRecordList) {
-            if (medicalRecord.isDuplicate()) {
-                incrementCounter(dashboardValuesDetailed, "duplicateMedicalRecord");
-                foundAtPT.add("duplicateMedicalRecord");
-            }
-            if (medicalRecord.isInternational()) {
-                incrementCounter(dashboardValuesDetailed, "internationalMedicalRecord");
-                foundAtPT.add("internationalMedicalRecord");
-            }
-            if (medicalRecord.isMrProblem()) {
-                incrementCounter(dashboardValuesDetailed, "medicalRecordWithProblem");
-                foundAtPT.add("medicalRecordWithProblem");
-            }
-            if (medicalRecord.isUnableObtain()) {
-                incrementCounter(dashboardValuesDetailed, "unableToObtainMedicalRecord");
-                foundAtPT.add("unableToObtainMedicalRecord");
-            }
-            if (medicalRecord.isFollowUpRequired()) {
-                incrementCounter(dashboardValuesDetailed, "followupRequiredMedicalRecord");
-                foundAtPT.add("followupRequiredMedicalRecord");
-                if (medicalRecord.getFollowUps() == null || medicalRecord.getFollowUps().length == 0) {
-                    incrementCounter(dashboardValuesDetailed, "followupNotRequested");
-                    foundAtPT.add("followupNotRequested");
-                }
-            }
-            if (medicalRecord.isCrRequired()) {
-                incrementCounter(dashboardValuesDetailed, "paperCRRequired");
-                foundAtPT.add("paperCRRequired");
-            }
-            if (medicalRecord.isReviewMedicalRecord()) {
-                incrementCounter(dashboardValuesDetailed, "reviewMedicalRecord");
-                foundAtPT.add("reviewMedicalRecord");
-            }
-
-            countRequestsReceive(dashboardValuesDetailed, dashboardValuesPeriodDetailed, foundAtPT, foundAtPtPeriod, medicalRecord.getFaxSent3(),
-                    medicalRecord.getFaxSent2(), medicalRecord.getFaxSent(), medicalRecord.getMrReceived(), start, end,
-                    "notRequested", "faxSent", "mrReceived", medicalRecord.isDuplicate());
-
-            // MR ready to request (at least saliva or blood received and mr not flagged as "duplicate" or "problem" or "unable to obtain" and fax sent date is not entered)
-            if (!medicalRecord.isDuplicate() && !medicalRecord.isMrProblem() && !medicalRecord.isUnableObtain() && StringUtils.isBlank(medicalRecord.getFaxSent())) {
-                List<KitRequestShipping> kits = kitRequests.get(medicalRecord.getDdpParticipantId());
-                if (kits != null) {
-                    for (KitRequestShipping kit : kits) {
-                        if (kit.getReceiveDate() != 0) {
-                            // one kit was received
-                            incrementCounter(dashboardValuesDetailed, "readyToRequest");
-                            foundAtPT.add("readyToRequest");
-                            break;
-                        }
-                    }
-                }
-            }
-
-            if (medicalRecord.getFollowUps() != null) {
-                int index = 1;
-                for (FollowUp followUp : medicalRecord.getFollowUps()) {
-                    countRequestsReceive(dashboardValuesDetailed, dashboardValuesPeriodDetailed, foundAtPT, foundAtPtPeriod, followUp.getFRequest3(),
-                            followUp.getFRequest2(), followUp.getFRequest1(), followUp.getFReceived(), start, end,
-                            null, "followUpSent." + index + ".", "followUpReceived" + index, false);
-                    index++;
-                }
-            }
-        }
-    }
-
-    private void countOncHistoryData(@NonNull List<OncHistoryDetail> oncHistoryDetailList, @NonNull Set<String> foundAtPT, @NonNull Set<String> foundAtPtPeriod,
-                                     @NonNull Map<String, Integer> dashboardValuesDetailed, @NonNull Map<String, Integer> dashboardValuesPeriodDetailed,
-                                     long start, long end) {
-
-        for (OncHistoryDetail oncHistoryDetail : oncHistoryDetailList) {
-            if (oncHistoryDetail.isUnableToObtain()) {
-                incrementCounter(dashboardValuesDetailed, "unableToObtainTissue");
-                foundAtPT.add("unableToObtainTissue");
-            }
-            if (StringUtils.isNotBlank(oncHistoryDetail.getRequest())) {
-                if (OncHistoryDetail.STATUS_REVIEW.equals(oncHistoryDetail.getRequest())) {
-                    incrementCounter(dashboardValuesDetailed, "request.review");
-                    foundAtPT.add("request.review");
-                }
-                else if (OncHistoryDetail.STATUS_SENT.equals(oncHistoryDetail.getRequest())) {
-                    incrementCounter(dashboardValuesDetailed, "request.sent");
-                    foundAtPT.add("request.sent");
-                }
-                else if (OncHistoryDetail.STATUS_RECEIVED.equals(oncHistoryDetail.getRequest())) {
-                    incrementCounter(dashboardValuesDetailed, "request.received");
-                    foundAtPT.add("request.received");
-                }
-                else if (OncHistoryDetail.STATUS_HOLD.equals(oncHistoryDetail.getRequest())) {
-                    incrementCounter(dashboardValuesDetailed, "request.hold");
-                    foundAtPT.add("request.hold");
-                }
-                else if (OncHistoryDetail.STATUS_DO_NOT_REQUEST.equals(oncHistoryDetail.getRequest())) {
-                    incrementCounter(dashboardValuesDetailed, "request.no");
-                    foundAtPT.add("request.no");
-                }
-                else if (OncHistoryDetail.STATUS_RETURNED.equals(oncHistoryDetail.getRequest())) {
-                    incrementCounter(dashboardValuesDetailed, "request.returned");
-                    foundAtPT.add("request.returned");
-                }
-                else if (OncHistoryDetail.STATUS_REQUEST.equals(oncHistoryDetail.getRequest())) {
-                    incrementCounter(dashboardValuesDetailed, "request.request");
-                    foundAtPT.add("request.request");
-                    //count where tissue request is set to request but fax is not sent out yet
-                    if (StringUtils.isBlank(oncHistoryDetail.getTFaxSent())) {
-                        incrementCounter(dashboardValuesDetailed, "tFaxNotSent");
-                        foundAtPT.add("tFaxNotSent");
-                    }
-                }
-                else if (OncHistoryDetail.STATUS_UNABLE_TO_OBTAIN.equals(oncHistoryDetail.getRequest())) {
-                    incrementCounter(dashboardValuesDetailed, "request.unable");
-                    foundAtPT.add("request.unable");
-                }
-            }
-            if (StringUtils.isNotBlank(oncHistoryDetail.getTissueProblemOption())) {
-                incrementCounter(dashboardValuesDetailed, "tissueProblemOption");
-                foundAtPT.add("tissueProblemOption");
-                if (OncHistoryDetail.PROBLEM_INSUFFICIENT_PATH.equals(oncHistoryDetail.getTissueProblemOption())) {
-                    incrementCounter(dashboardValuesDetailed, "tissueProblemOption.insufficientPath");
-                    foundAtPT.add("tissueProblemOption.insufficientPath");
-                }
-                else if (OncHistoryDetail.PROBLEM_INSUFFICIENT_SHL.equals(oncHistoryDetail.getTissueProblemOption())) {
-                    incrementCounter(dashboardValuesDetailed, "tissueProblemOption.insufficientSHL");
-                    foundAtPT.add("tissueProblemOption.insufficientSHL");
-                }
-                else if (OncHistoryDetail.PROBLEM_NO_E_SIGN.equals(oncHistoryDetail.getTissueProblemOption())) {
-                    incrementCounter(dashboardValuesDetailed, "tissueProblemOption.noESign");
-                    foundAtPT.add("tissueProblemOption.noESign");
-                }
-                else if (OncHistoryDetail.PROBLEM_PATH_POLICY.equals(oncHistoryDetail.getTissueProblemOption())) {
-                    incrementCounter(dashboardValuesDetailed, "tissueProblemOption.pathPolicy");
-                    foundAtPT.add("tissueProblemOption.pathPolicy");
-                }
-                else if (OncHistoryDetail.PROBLEM_PATH_NO_LOCATE.equals(oncHistoryDetail.getTissueProblemOption())) {
-                    incrementCounter(dashboardValuesDetailed, "tissueProblemOption.pathNoLocate");
-                    foundAtPT.add("tissueProblemOption.pathNoLocate");
-                }
-                else if (OncHistoryDetail.PROBLEM_DESTROYED.equals(oncHistoryDetail.getTissueProblemOption())) {
-                    incrementCounter(dashboardValuesDetailed, "tissueProblemOption.destroyed");
-                    foundAtPT.add("tissueProblemOption.destroyed");
-                }
-                else if (OncHistoryDetail.PROBLEM_OTHER.equals(oncHistoryDetail.getTissueProblemOption())
-                        || OncHistoryDetail.PROBLEM_OTHER_OLD.equals(oncHistoryDetail.getTissueProblemOption())) {
-                    incrementCounter(dashboardValuesDetailed, "tissueProblemOption.other");
-                    foundAtPT.add("tissueProblemOption.other");
-                }
-            }
-            countRequestsReceive(dashboardValuesDetailed, dashboardValuesPeriodDetailed, foundAtPT, foundAtPtPeriod, oncHistoryDetail.getTFaxSent3(),
-                    oncHistoryDetail.getTFaxSent2(), oncHistoryDetail.getTFaxSent(), oncHistoryDetail.getTissueReceived(),
-                    start, end, null, "tFaxSent", "tissueReceived", false);
-        }
-    }
-
-    private void countKits(@NonNull List<KitRequestShipping> kits, @NonNull Set<String> foundAtPT, @NonNull Set<String> foundAtPtPeriod,
-                           @NonNull Map<String, Integer> dashboardValuesDetailed, @NonNull Map<String, Integer> dashboardValuesPeriodDetailed,
-                           long start, long end) {
-        for (KitRequestShipping kit : kits) {
-            if (kit.getScanDate() != 0) {
-                incrementCounter(dashboardValuesDetailed, "kit." + kit.getKitType() + ".sent", foundAtPT);
-                incrementCounterPeriod(dashboardValuesPeriodDetailed, "kit." + kit.getKitType() + ".sent", kit.getScanDate(), start, end, foundAtPtPeriod);
-            }
-            else if (kit.getDeactivatedDate() == 0) {
-                incrementCounter(dashboardValuesDetailed, "kit." + kit.getKitType() + ".waiting", foundAtPT);
-            }
-            if (kit.getReceiveDate() != 0) {
-                incrementCounter(dashboardValuesDetailed, "kit." + kit.getKitType() + ".received", foundAtPT);
-                incrementCounterPeriod(dashboardValuesPeriodDetailed, "kit." + kit.getKitType() + ".received", kit.getReceiveDate(), start, end, foundAtPtPeriod);
-            }
-            if (kit.getDeactivatedDate() != 0) {
-                incrementCounter(dashboardValuesDetailed, "kit." + kit.getKitType() + ".deactivated", foundAtPT);
-                incrementCounterPeriod(dashboardValuesPeriodDetailed, "kit." + kit.getKitType() + ".deactivated", kit.getDeactivatedDate(), start, end, foundAtPtPeriod);
-            }
-            if (StringUtils.isNotBlank(kit.getEasypostShipmentStatus())) {
-                incrementCounter(dashboardValuesDetailed, "kit." + kit.getKitType() + "." + kit.getEasypostShipmentStatus(), foundAtPT);
-            }
-        }
-    }
-
-    private void countRequestsReceive(@NonNull Map<String, Integer> dashboardValuesDetailed, @NonNull Map<String, Integer> dashboardValuesPeriodDetailed,
-                                      @NonNull Set<String> foundAtPT, @NonNull Set<String> foundAtPtPeriod, String faxSent3, String faxSent2, String faxSent, String received,
-                                      long start, long end, String dashboardValueNameWaiting, @NonNull String dashboardValueNameSent, @NonNull String dashboardValueNameReceived,
-                                      boolean isDuplicate) {
-        //count fax sent
-        if (StringUtils.isNotBlank(faxSent3)) {
-            //was requested 3 times
-            incrementCounter(dashboardValuesDetailed, dashboardValueNameSent + "3", foundAtPT);
-            incrementCounter(dashboardValuesDetailed, dashboardValueNameSent + "2", foundAtPT);
-            incrementCounter(dashboardValuesDetailed, dashboardValueNameSent, foundAtPT);
-
-            incrementCounterPeriod(dashboardValuesPeriodDetailed, dashboardValueNameSent + "3",
-                    SystemUtil.getLongFromDateString(faxSent3), start, end, foundAtPtPeriod);
-            incrementCounterPeriod(dashboardValuesPeriodDetailed, dashboardValueNameSent + "2",
-                    SystemUtil.getLongFromDateString(faxSent2), start, end, foundAtPtPeriod);
-            incrementCounterPeriod(dashboardValuesPeriodDetailed, dashboardValueNameSent,
-                    SystemUtil.getLongFromDateString(faxSent), start, end, foundAtPtPeriod);
-        }
-        else if (StringUtils.isNotBlank(faxSent2)) {
-            //was requested 2 times
-            incrementCounter(dashboardValuesDetailed, dashboardValueNameSent + "2", foundAtPT);
-            incrementCounter(dashboardValuesDetailed, dashboardValueNameSent, foundAtPT);
-
-            incrementCounterPeriod(dashboardValuesPeriodDetailed, dashboardValueNameSent + "2",
-                    SystemUtil.getLongFromDateString(faxSent2), start, end, foundAtPtPeriod);
-            incrementCounterPeriod(dashboardValuesPeriodDetailed, dashboardValueNameSent,
-                    SystemUtil.getLongFromDateString(faxSent), start, end, foundAtPtPeriod);
-        }
-        else if (StringUtils.isNotBlank(faxSent)) {
-            //was requested 1 time
-            incrementCounter(dashboardValuesDetailed, dashboardValueNameSent, foundAtPT);
-
-            incrementCounterPeriod(dashboardValuesPeriodDetailed, dashboardValueNameSent,
-                    SystemUtil.getLongFromDateString(faxSent), start, end, foundAtPtPeriod);
-        }
-        else {
-            //Total requestable MR - only if they are not flagged as duplicate
-            if (!isDuplicate) {
-                if (dashboardValueNameWaiting != null) {
-                    incrementCounter(dashboardValuesDetailed, dashboardValueNameWaiting, foundAtPT);
-                }
-            }
-        }
-        if (StringUtils.isNotBlank(received)) {
-            //was received
-            incrementCounter(dashboardValuesDetailed, dashboardValueNameReceived, foundAtPT);
-            incrementCounterPeriod(dashboardValuesPeriodDetailed, dashboardValueNameReceived,
-                    SystemUtil.getLongFromDateString(received), start, end, foundAtPtPeriod);
-        }
-
-    }
-
-    private void countParameter(@NonNull Map<String, Integer> dashboardValues, @NonNull String dashboardValueName,
-                                @NonNull Map<String, Object> map, @NonNull String key, boolean date) {
-        if (map.get(key) != null) {
-            if (date) {
-                long epochMillis = getEpochMillis(map, key);
-                if (epochMillis == 0) {
-                    return;
-                }
-            }
-            incrementCounter(dashboardValues, dashboardValueName);
-        }
-    }
-
-    private long getEpochMillis(Map<String, Object> map, String key) {
-        Object val = map.get(key);
-        long epochMillis = 0;
-        if (val instanceof Integer) {
-            epochMillis = (int) val;
-        } else if (val instanceof Long) {
-            epochMillis = (long) val;
-        }
-        return epochMillis;
-    }
-
-    private void countBooleanParameter(@NonNull Map<String, Integer> dashboardValues, @NonNull String dashboardValueName,
-                                       @NonNull Map<String, Object> map, @NonNull String key) {
-        if (map.get(key) != null) {
-            Boolean value = (Boolean) map.get(key);
-            if (value) {
-                incrementCounter(dashboardValues, dashboardValueName);
-            }
-        }
-    }
-
-    private void countParameterPeriod(@NonNull Map<String, Integer> dashboardValues, @NonNull String dashboardValueName,
-                                      @NonNull Map<String, Object> map, @NonNull String key, long start, long end) {
-        if (map.get(key) != null) {
-            long date = getEpochMillis(map, key);
-            if (date != 0) {
-                incrementCounterPeriod(dashboardValues, dashboardValueName, date, start, end);
-            }
-        }
-    }
-
-    private void incrementCounter(@NonNull Map<String, Integer> dashboardValues, @NonNull String dashboardValueName) {
-        incrementCounter(dashboardValues, dashboardValueName, null);
-    }
-
-    private void incrementCounter(@NonNull Map<String, Integer> dashboardValues, @NonNull String dashboardValueName,
-                                  Set<String> foundAtPt) {
-        int counter = 0;
-        if (dashboardValues.containsKey(dashboardValueName)) {
-            counter = dashboardValues.get(dashboardValueName);
-        }
-        counter = counter + 1;
-        if (foundAtPt != null) {
-            foundAtPt.add(dashboardValueName);
-        }
-        dashboardValues.put(dashboardValueName, counter);
-    }
-
-    private void incrementCounterPeriod(@NonNull Map<String, Integer> dashboardValues, @NonNull String dashboardValueName,
-                                        long date, long start, long end) {
-        incrementCounterPeriod(dashboardValues, dashboardValueName, date, start, end, null);
-    }
-
-    private void incrementCounterPeriod(@NonNull Map<String, Integer> dashboardValues, @NonNull String dashboardValueName,
-                                        long date, long start, long end, Set<String> foundAtPtPeriod) {
-        int counter = 0;
-        if (dashboardValues.containsKey(dashboardValueName)) {
-            counter = dashboardValues.get(dashboardValueName);
-        }
-        if (date != 0 && date >= start && date <= end) {
-            counter = counter + 1;
-            if (foundAtPtPeriod != null) {
-                foundAtPtPeriod.add(dashboardValueName);
-            }
-            dashboardValues.put(dashboardValueName, counter);
-        }
-    }
-
-    public SummaryKitType getKitRequestInformation(@NonNull long start, @NonNull long end, @NonNull String realm,
-                                                   @NonNull int  kitTypeId, @NonNull String kitTypeName) {
-        SimpleResult results = inTransaction((conn) -> {
-            SimpleResult dbVals = new SimpleResult();
-            try (PreparedStatement stmt = conn.prepareStatement(TransactionWrapper.getSqlFromConfig(ApplicationConfigConstants.GET_DASHBOARD_INFORMATION_OF_KIT_REQUESTS),
-                    ResultSet.TYPE_SCROLL_SENSITIVE,ResultSet.CONCUR_READ_ONLY)) {
-                stmt.setString(1, realm);
-                stmt.setInt(2, kitTypeId);
-                stmt.setString(3, realm);
-                stmt.setInt(4, kitTypeId);
-                stmt.setLong(5, start);
-                stmt.setLong(6, end);
-                stmt.setString(7, realm);
-                stmt.setInt(8, kitTypeId);
-                stmt.setString(9, realm);
-                stmt.setInt(10, kitTypeId);
-                stmt.setLong(11, start);
-                stmt.setLong(12, end);
-                stmt.setString(13, realm);
-                stmt.setInt(14, kitTypeId);
-                stmt.setString(15, realm);
-                stmt.setInt(16, kitTypeId);
-                stmt.setLong(17, start);
-                stmt.setLong(18, end);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    rs.last();
-                    int count = rs.getRow();
-                    rs.beforeFirst();
-                    if (count < 2) { // 0 rows are ok, more than 1 row is not good!
-                        if (rs.next()) {
-                            SummaryKitType summaryKitType = new SummaryKitType(kitTypeName, rs.getInt(DBConstants.KIT_NEW),
-                                    rs.getInt(DBConstants.KIT_SENT), rs.getInt(DBConstants.KIT_RECEIVED),
-                                    rs.getInt(DBConstants.KIT_NEW_PERIOD), rs.getInt(DBConstants.KIT_SENT_PERIOD),
-                                    rs.getInt(DBConstants.KIT_RECEIVED_PERIOD));
-                            dbVals.resultValue = summaryKitType;
-                        }
-                    }
-                    else {
-                        throw new RuntimeException("Got more than 1 row back. Row count: " + count);
-                    }
-                }
-            }
-            catch (SQLException ex) {
-                dbVals.resultException = ex;
-            }
-            return dbVals;
-        });
-
-        if (results.resultException != null) {
-            throw new RuntimeException("Error getting kit request information ", results.resultException);
-        }
-        return (SummaryKitType) results.resultValue;
-    }
-
     public ArrayList<NameValue> getNameValueList(KitRequestsPerDate map) {
         ArrayList<NameValue> nameValueList = new ArrayList<>();
         for (String date : map.keySet()) {
@@ -742,88 +242,24 @@ public class DashboardRoute extends RequestHandler {
         return nameValueList;
     }
 
-    public Collection<KitReport> getShippingReport(@NonNull String userId, @NonNull long start, @NonNull long end) {
-        logger.info("Shipping report");
-        Collection<String> allowedRealms = UserUtil.getListOfAllowedRealms(userId);
-        Collection<KitReport> kitTypesPerDDP = new ArrayList<>();
-
-        for (String ddp : allowedRealms) {
-            List<SummaryKitType> kitReports = new ArrayList<>();
-            List<KitType> kitTypes = KitType.getKitTypes(ddp, userId);
-            for (KitType kitType : kitTypes) {
-                int kitTypeId = getKitTypeId(ddp, kitType);
-                kitReports.add(getKitRequestInformation(start, end, ddp, kitTypeId, kitType.getName()));
-            }
-            KitReport kitreport = new KitReport(ddp, kitReports);
-            kitTypesPerDDP.add(kitreport);
-        }
-        return kitTypesPerDDP;
-    }
-
-    public Collection<KitReport> getShippingReportDownload(@NonNull String userId) {
-        logger.info("Shipping report for download");
-        Collection<String> allowedRealms = UserUtil.getListOfAllowedRealms(userId);
-        Collection<KitReport> kitTypesPerDDP = new ArrayList<>();
-        for (String ddp : allowedRealms) {
-            ArrayList<SummaryKitType> kitReports = new ArrayList<>();
-            List<KitType> kitTypes = KitType.getKitTypes(ddp, userId);
-            for (KitType kitType : kitTypes) {
-                HashMap<String, SummaryKitType> summaryKitTypeMonth = new HashMap<>();
-                getKitRequestInformationPerMonth(ddp, kitType,
-                        ApplicationConfigConstants.GET_DASHBOARD_INFORMATION_OF_KIT_REQUESTS_SENT_REPORT, summaryKitTypeMonth);
-                getKitRequestInformationPerMonth(ddp, kitType,
-                        ApplicationConfigConstants.GET_DASHBOARD_INFORMATION_OF_KIT_REQUESTS_RECEIVED_REPORT, summaryKitTypeMonth);
-                kitReports.addAll(new ArrayList<>(summaryKitTypeMonth.values()));
-            }
-            KitReport kitreport = new KitReport(ddp, kitReports);
-            kitTypesPerDDP.add(kitreport);
-
+    /**
+     * Writes the report straight into the response instead of keeping the whole json of all realms in memory
+     */
+    private void writeShippingReportDownload(@NonNull String userId, @NonNull Response response) {
+        List<KitReport> kitReports = ShippingReport.getShippingReportDownload(userId, UserUtil.getListOfAllowedRealms(userId));
+        HttpServletResponse rawResponse = response.raw();
+        rawResponse.setStatus(200);
+        rawResponse.setContentType("application/json");
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(rawResponse.getOutputStream(), StandardCharsets.UTF_8))) {
+            Gson gson = new Gson();
+            writer.beginArray();
+            for (KitReport kitReport : kitReports) {
+                gson.toJson(kitReport, KitReport.class, writer);
+            }
+            writer.endArray();
         }
-        return kitTypesPerDDP;
-    }
-
-    public void getKitRequestInformationPerMonth(@NonNull String realm, @NonNull KitType kitType,
-                                                 @NonNull String query, HashMap<String, SummaryKitType> summaryKitTypeMonth) {
-        SimpleResult results = inTransaction((conn) -> {
-            SimpleResult dbVals = new SimpleResult();
-            try (PreparedStatement stmt = conn.prepareStatement(TransactionWrapper.getSqlFromConfig(query))) {
-                stmt.setString(1, realm);
-                stmt.setInt(2, kitType.getKitId());
-                try (ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        String month = rs.getString(DBConstants.MONTH);
-                        if (summaryKitTypeMonth.containsKey(month)) {
-                            //sent number is already for that month
-                            SummaryKitType summaryKitType = summaryKitTypeMonth.get(month);
-                            summaryKitType.received = rs.getInt(DBConstants.KIT_RECEIVED);
-                        }
-                        else {
-                            if (ApplicationConfigConstants.GET_DASHBOARD_INFORMATION_OF_KIT_REQUESTS_RECEIVED_REPORT.equals(query)) {
-                                //only receive number for that month
-                                SummaryKitType summaryKitType = new SummaryKitType(kitType.getName(),
-                                        0, rs.getInt(DBConstants.KIT_RECEIVED),
-                                        month);
-                                summaryKitTypeMonth.put(month, summaryKitType);
-                            }
-                            else {
-                                //month not there yet and it is not receive query
-                                SummaryKitType summaryKitType = new SummaryKitType(kitType.getName(),
-                                        rs.getInt(DBConstants.KIT_SENT), 0,
-                                        month);
-                                summaryKitTypeMonth.put(month, summaryKitType);
-                            }
-                        }
-                    }
-                }
-            }
-            catch (SQLException ex) {
-                dbVals.resultException = ex;
-            }
-            return dbVals;
-        });
-
-        if (results.resultException != null) {
-            throw new RuntimeException("Error getting kit request information for download ", results.resultException);
+        catch (IOException e) {
+            throw new RuntimeException("Couldn't write shipping report", e);
         }
     }
 
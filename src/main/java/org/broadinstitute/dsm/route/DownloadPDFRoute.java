@@ -17,7 +17,7 @@ import spark.Response;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Optional;
+import java.io.OutputStream;
 
 public class DownloadPDFRoute extends RequestHandler {
 
@@ -50,19 +50,15 @@ public class DownloadPDFRoute extends RequestHandler {
                 }
                 Long userIdRequest = Long.parseLong((String) new JSONObject(requestBody).get(RequestParameter.USER_ID));
                 DownloadPDF downloadPDFRequest = new DownloadPDF(requestBody);
-                Optional<byte[]> pdfBytes = downloadPDFRequest.getPDFs(userIdRequest, realm, requestBody);
-                pdfBytes.ifPresent(pdfBytesArray -> {
-                    try {
-                        HttpServletResponse rawResponse = response.raw();
-                        rawResponse.getOutputStream().write(pdfBytesArray);
-                        rawResponse.setStatus(200);
-                        rawResponse.getOutputStream().flush();
-                        rawResponse.getOutputStream().close();
-                    }
-                    catch (IOException e) {
-                        throw new RuntimeException("Couldn't make pdf of ddpInstance " + queryParams.get(RoutePath.REALM).value(), e);
-                    }
-                });
+                try {
+                    //status is only set with the first bytes of the pdf, until then an error still returns an error response
+                    ResponseOutputStream outputStream = new ResponseOutputStream(response.raw());
+                    downloadPDFRequest.writePDFs(userIdRequest, realm, requestBody, outputStream);
+                    outputStream.close();
+                }
+                catch (IOException e) {
+                    throw new RuntimeException("Couldn't make pdf of ddpInstance " + queryParams.get(RoutePath.REALM).value(), e);
+                }
                 return null;
             }
             else {
@@ -77,4 +73,47 @@ public class DownloadPDFRoute extends RequestHandler {
         return UserErrorMessages.NO_RIGHTS;
     }
 
+    /**
+     * Opens the stream of the response and sets the status to 200 only when the first bytes are written or the stream gets closed
+     */
+    private static class ResponseOutputStream extends OutputStream {
+
+        private final HttpServletResponse response;
+        private OutputStream outputStream;
+
+        ResponseOutputStream(HttpServletResponse response) {
+            this.response = response;
+        }
+
+        private OutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                response.setStatus(200);
+                outputStream = response.getOutputStream();
+            }
+            return outputStream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            getOutputStream().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            getOutputStream().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (outputStream != null) {
+                outputStream.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            getOutputStream().flush();
+            outputStream.close();
+        }
+    }
 }
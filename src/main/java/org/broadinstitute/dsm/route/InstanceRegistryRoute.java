@@ -0,0 +1,32 @@
+package org.broadinstitute.dsm.route;
+
+import org.broadinstitute.ddp.handlers.util.Result;
+import org.broadinstitute.dsm.db.DDPInstanceRegistry;
+import org.broadinstitute.dsm.security.RequestHandler;
+import org.broadinstitute.dsm.statics.DBConstants;
+import org.broadinstitute.dsm.statics.UserErrorMessages;
+import org.broadinstitute.dsm.util.UserUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+
+public class InstanceRegistryRoute extends RequestHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstanceRegistryRoute.class);
+
+    @Override
+    public Object processRequest(Request request, Response response, String userId) throws Exception {
+        String userIdRequest = UserUtil.getUserId(request);
+        //reloading affects every realm, therefore it isn't allowed with the rights of a study
+        if (UserUtil.checkUserAccess(null, userId, DBConstants.INSTANCE_ADMIN, userIdRequest)) {
+            logger.info("User " + userId + " requested to reload the ddp instances");
+            DDPInstanceRegistry.reload();
+            return new Result(200);
+        }
+        else {
+            response.status(500);
+            return new Result(500, UserErrorMessages.NO_RIGHTS);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package org.broadinstitute.dsm.route;
 
-import com.easypost.exception.EasyPostException;
-import com.easypost.model.Address;
+import com.google.common.util.concurrent.RateLimiter;
 import com.google.gson.Gson;
 import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
@@ -22,6 +21,7 @@ import org.broadinstitute.dsm.model.elasticsearch.ESProfile;
 import org.broadinstitute.dsm.model.elasticsearch.ElasticSearch;
 import org.broadinstitute.dsm.model.elasticsearch.ElasticSearchParticipantDto;
 import org.broadinstitute.dsm.security.RequestHandler;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
 import org.broadinstitute.dsm.statics.DBConstants;
 import org.broadinstitute.dsm.statics.RoutePath;
 import org.broadinstitute.dsm.statics.UserErrorMessages;
@@ -34,14 +34,21 @@ import spark.Request;
 import spark.Response;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.StringReader;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 public class KitUploadRoute extends RequestHandler {
 
@@ -55,9 +62,16 @@ public class KitUploadRoute extends RequestHandler {
         this.elasticSearch = new ElasticSearch();
     }
 
-    private static final String SQL_SELECT_CHECK_KIT_ALREADY_EXISTS = "SELECT count(*) as found FROM ddp_kit_request request LEFT JOIN ddp_kit kit on (request.dsm_kit_request_id = kit.dsm_kit_request_id) " +
+    private static final String SQL_SELECT_EXISTING_KIT_TYPES = "SELECT DISTINCT request.ddp_participant_id, request.kit_type_id FROM ddp_kit_request request " +
+            "LEFT JOIN ddp_kit kit on (request.dsm_kit_request_id = kit.dsm_kit_request_id) " +
             "LEFT JOIN ddp_participant_exit ex on (ex.ddp_instance_id = request.ddp_instance_id AND ex.ddp_participant_id = request.ddp_participant_id) WHERE ex.ddp_participant_exit_id is null " +
-            "AND kit.deactivated_date is null AND request.ddp_instance_id = ? AND request.kit_type_id = ? AND request.ddp_participant_id = ?";
+            "AND kit.deactivated_date is null AND request.ddp_instance_id = ? AND request.ddp_participant_id IN (%1)";
+
+    private static final int EXISTING_KITS_QUERY_SIZE = 500;
+    private static final int KIT_INSERT_BATCH_SIZE = 500;
+    private static final int DEFAULT_ADDRESS_VALIDATION_THREADS = 8;
+    private static final double DEFAULT_ADDRESS_VALIDATION_REQUESTS_PER_SECOND = 10.0;
+    private static final int PROGRESS_LOG_INTERVAL = 100;
 
     private static final String PARTICIPANT_ID = "participantId";
     private static final String SHORT_ID = "shortId";
@@ -107,15 +121,15 @@ public class KitUploadRoute extends RequestHandler {
             }
 
             HttpServletRequest rawRequest = request.raw();
-            String content = SystemUtil.getBody(rawRequest);
             try {
                 List<KitRequest> kitUploadContent = null;
                 if (uploadAnyway.get()) { //already participants and no file
+                    String content = SystemUtil.getBody(rawRequest);
                     kitUploadContent = Arrays.asList(new Gson().fromJson(content, KitUploadObject[].class));
                 }
                 else {
-                    try {
-                        kitUploadContent = isFileValid(content, realm);
+                    try (DelimitedFileReader fileReader = DelimitedFileReader.tabSeparated(rawRequest.getInputStream())) {
+                        kitUploadContent = isFileValid(fileReader, realm);
                     }
                     catch (Exception e) {
                         return new Result(500, e.getMessage());
@@ -162,7 +176,7 @@ public class KitUploadRoute extends RequestHandler {
                 ArrayList<KitRequest> orderKits = new ArrayList<>();
 
                 TransactionWrapper.inTransaction(conn -> {
-                    uploadKit(ddpInstance, kitType, kitUploadObjects, kitHasSubKits, kitRequestSettings, easyPostUtil, userIdRequest, kitTypeName,
+                    uploadKit(ddpInstance, kitType, kitUploadObjects, kitHasSubKits, kitRequestSettings, userIdRequest, kitTypeName,
                             uploadAnyway.get(), invalidAddressList, duplicateKitList, orderKits, specialKitList, upload, kitUploadReason.get(), shippingCarrier.get(), conn);
 
                     //only order if external shipper name is set for that kit request
@@ -203,95 +217,102 @@ public class KitUploadRoute extends RequestHandler {
     }
 
     private void uploadKit(@NonNull DDPInstance ddpInstance, @NonNull KitType kitType, List<KitRequest> kitUploadObjects, boolean kitHasSubKits,
-                           @NonNull KitRequestSettings kitRequestSettings, @NonNull EasyPostUtil easyPostUtil, @NonNull String userIdRequest,
+                           @NonNull KitRequestSettings kitRequestSettings, @NonNull String userIdRequest,
                            @NonNull String kitTypeName, boolean uploadAnyway, Map<String, KitRequest> invalidAddressList,
                            List<KitRequest> duplicateKitList, ArrayList<KitRequest> orderKits, List<KitRequest> specialKitList, Value behavior, String uploadReason, String carrier, Connection conn) {
-
-        for (KitRequest kit : kitUploadObjects) {
+        List<KitRequest> validKits = kitUploadObjects.stream()
+                .filter(kit -> invalidAddressList.get(kit.getShortId()) == null) //kit is not in the noValid list, so enter into db
+                .collect(Collectors.toList());
+        UploadBatch uploadBatch = new UploadBatch(conn, ddpInstance);
+        uploadBatch.prepare(validKits, behavior != null && StringUtils.isNotBlank(ddpInstance.getParticipantIndexES()) && !uploadAnyway);
+
+        int kitCount = 0;
+        for (KitRequest kit : validKits) {
             String externalOrderNumber = DDPKitRequest.generateExternalOrderNumber();
-            if (invalidAddressList.get(kit.getShortId()) == null) { //kit is not in the noValid list, so enter into db
-                String errorMessage = "";
-                String participantGuid = "";
-                String participantLegacyAltPid = "";
-                //if kit has ddpParticipantId use that (RGP!)
-                if (StringUtils.isBlank(kit.getParticipantId())) {
-                    ElasticSearchParticipantDto participantByShortId =
-                            elasticSearch.getParticipantByShortId(ddpInstance.getParticipantIndexES(), kit.getShortId());
-                    participantGuid = participantByShortId.getProfile().map(ESProfile::getParticipantGuid).orElse("");
-                    participantLegacyAltPid = participantByShortId.getProfile().map(ESProfile::getParticipantLegacyAltPid).orElse("");
-                    kit.setParticipantId(!participantGuid.isEmpty() ? participantGuid : participantLegacyAltPid);
-                }
-                else {
-                    participantGuid = kit.getParticipantId();
-                }
-                String collaboratorParticipantId = KitRequestShipping.getCollaboratorParticipantId(ddpInstance.getBaseUrl(), ddpInstance.getDdpInstanceId(), ddpInstance.isMigratedDDP(),
-                        ddpInstance.getCollaboratorIdPrefix(), kit.getParticipantId(), kit.getShortId(),
-                        kitRequestSettings.getCollaboratorParticipantLengthOverwrite());
-                //subkits is currently only used by test boston
-                if (kitHasSubKits) {
-                    List<KitSubKits> subKits = kitRequestSettings.getSubKits();
-                    boolean alreadyExists = false;
-                    String shippingId = DDPKitRequest.UPLOADED_KIT_REQUEST + KitRequestShipping.createRandom(20);
-                    for (int j = 0; j < subKits.size(); j++) {
-                        KitSubKits subKit = subKits.get(j);
-                        if (j > 0) {
-                            shippingId += "_" + j;
-                        }
-                        //check with ddp_participant_id if participant already has a kit in DSM db
-                        boolean isKitExsist = checkAndSetParticipantIdIfKitExists(ddpInstance, conn, kit, participantGuid, participantLegacyAltPid, subKit.getKitTypeId());
-
-                        if (isKitExsist && !uploadAnyway) {
-                            alreadyExists = true;
-                        }
-                        else {
-                            for (int i = 0; i < subKit.getKitCount(); i++) {
-                                if (i > 0) {
-                                    shippingId += "_" + i;
-                                }
-                                addKitRequest(conn, subKit.getKitName(), kitRequestSettings, ddpInstance, subKit.getKitTypeId(),
-                                        collaboratorParticipantId, errorMessage, userIdRequest, easyPostUtil, kit, externalOrderNumber, shippingId, uploadReason, carrier);
-                            }
-                        }
+            String errorMessage = "";
+            String participantGuid = "";
+            String participantLegacyAltPid = "";
+            //if kit has ddpParticipantId use that (RGP!)
+            if (StringUtils.isBlank(kit.getParticipantId())) {
+                ElasticSearchParticipantDto participantByShortId = uploadBatch.getParticipant(kit.getShortId());
+                participantGuid = participantByShortId.getProfile().map(ESProfile::getParticipantGuid).orElse("");
+                participantLegacyAltPid = participantByShortId.getProfile().map(ESProfile::getParticipantLegacyAltPid).orElse("");
+                kit.setParticipantId(!participantGuid.isEmpty() ? participantGuid : participantLegacyAltPid);
+            }
+            else {
+                participantGuid = kit.getParticipantId();
+            }
+            String collaboratorParticipantId = KitRequestShipping.getCollaboratorParticipantId(ddpInstance.getBaseUrl(), ddpInstance.getDdpInstanceId(), ddpInstance.isMigratedDDP(),
+                    ddpInstance.getCollaboratorIdPrefix(), kit.getParticipantId(), kit.getShortId(),
+                    kitRequestSettings.getCollaboratorParticipantLengthOverwrite());
+            //subkits is currently only used by test boston
+            if (kitHasSubKits) {
+                List<KitSubKits> subKits = kitRequestSettings.getSubKits();
+                boolean alreadyExists = false;
+                String shippingId = DDPKitRequest.UPLOADED_KIT_REQUEST + KitRequestShipping.createRandom(20);
+                for (int j = 0; j < subKits.size(); j++) {
+                    KitSubKits subKit = subKits.get(j);
+                    if (j > 0) {
+                        shippingId += "_" + j;
                     }
-                    if (alreadyExists) {
-                        duplicateKitList.add(kit);
+                    //check with ddp_participant_id if participant already has a kit in DSM db
+                    boolean isKitExsist = checkAndSetParticipantIdIfKitExists(uploadBatch, kit, participantGuid, participantLegacyAltPid, subKit.getKitTypeId());
+
+                    if (isKitExsist && !uploadAnyway) {
+                        alreadyExists = true;
                     }
                     else {
-                        orderKits.add(kit);
+                        for (int i = 0; i < subKit.getKitCount(); i++) {
+                            if (i > 0) {
+                                shippingId += "_" + i;
+                            }
+                            addKitRequest(uploadBatch, subKit.getKitName(), kitRequestSettings, ddpInstance, subKit.getKitTypeId(),
+                                    collaboratorParticipantId, errorMessage, userIdRequest, kit, externalOrderNumber, shippingId, uploadReason, carrier);
+                        }
                     }
                 }
+                if (alreadyExists) {
+                    duplicateKitList.add(kit);
+                }
                 else {
-                    //all cmi ddps are currently using this!
-                    handleNormalKit(conn, ddpInstance, kitType, kit, kitRequestSettings, easyPostUtil, userIdRequest, kitTypeName,
-                            collaboratorParticipantId, errorMessage, uploadAnyway, duplicateKitList, orderKits, specialKitList, behavior, externalOrderNumber, uploadReason, carrier);
+                    orderKits.add(kit);
                 }
             }
+            else {
+                //all cmi ddps are currently using this!
+                handleNormalKit(uploadBatch, ddpInstance, kitType, kit, kitRequestSettings, userIdRequest, kitTypeName,
+                        collaboratorParticipantId, errorMessage, uploadAnyway, duplicateKitList, orderKits, specialKitList, behavior, externalOrderNumber, uploadReason, carrier);
+            }
+            kitCount++;
+            if (uploadBatch.isFull()) {
+                uploadBatch.write();
+                logger.info("Uploaded " + kitCount + " of " + validKits.size() + " kits");
+            }
         }
+        uploadBatch.write();
     }
 
-    private boolean checkAndSetParticipantIdIfKitExists(DDPInstance ddpInstance, Connection conn, KitRequest kit, String participantGuid,
+    private boolean checkAndSetParticipantIdIfKitExists(UploadBatch uploadBatch, KitRequest kit, String participantGuid,
                                                         String participantLegacyAltPid, int kitTypeId) {
         boolean isKitExsist = false;
-        if (checkIfKitAlreadyExists(conn, participantGuid, ddpInstance.getDdpInstanceId(), kitTypeId)) {
+        if (uploadBatch.kitExists(participantGuid, kitTypeId)) {
             isKitExsist = true;
             kit.setParticipantId(participantGuid);
         }
-        else if (checkIfKitAlreadyExists(conn, participantLegacyAltPid, ddpInstance.getDdpInstanceId(), kitTypeId)) {
+        else if (uploadBatch.kitExists(participantLegacyAltPid, kitTypeId)) {
             isKitExsist = true;
             kit.setParticipantId(participantLegacyAltPid);
         }
         return isKitExsist;
     }
 
-    private void handleNormalKit(@NonNull Connection conn, @NonNull DDPInstance ddpInstance, @NonNull KitType kitType, @NonNull KitRequest kit,
-                                 @NonNull KitRequestSettings kitRequestSettings, @NonNull EasyPostUtil easyPostUtil, @NonNull String userIdRequest,
+    private void handleNormalKit(@NonNull UploadBatch uploadBatch, @NonNull DDPInstance ddpInstance, @NonNull KitType kitType, @NonNull KitRequest kit,
+                                 @NonNull KitRequestSettings kitRequestSettings, @NonNull String userIdRequest,
                                  @NonNull String kitTypeName, String collaboratorParticipantId, String errorMessage, boolean uploadAnyway,
                                  List<KitRequest> duplicateKitList, ArrayList<KitRequest> orderKits, List<KitRequest> specialKitList, Value behavior, String externalOrderNumber,
                                  String uploadReason, String carrier) {
         if (behavior != null && StringUtils.isNotBlank(ddpInstance.getParticipantIndexES()) && !uploadAnyway) {
-            Map<String, Map<String, Object>> participants = ElasticSearchUtil.getFilteredDDPParticipantsFromES(ddpInstance,
-                    ElasticSearchUtil.BY_GUID + kit.getParticipantId());
-            Map<String, Object> participant = participants.get(kit.getParticipantId());
+            Map<String, Object> participant = uploadBatch.getParticipantESData(kit.getParticipantId());
             boolean specialKit = InstanceSettings.shouldKitBehaveDifferently(participant, behavior);
             if (specialKit) {
                 if (InstanceSettings.TYPE_ALERT.equals(behavior.getType())) {
@@ -308,68 +329,61 @@ public class KitUploadRoute extends RequestHandler {
             }
             else {
                 //check with ddp_participant_id if participant already has a kit in DSM db
-                handleKit(conn, ddpInstance, kitType, kit, kitRequestSettings, easyPostUtil, userIdRequest, kitTypeName,
+                handleKit(uploadBatch, ddpInstance, kitType, kit, kitRequestSettings, userIdRequest, kitTypeName,
                         collaboratorParticipantId, errorMessage, uploadAnyway, duplicateKitList, orderKits, externalOrderNumber, uploadReason, carrier);
             }
         }
         else {
-            handleKit(conn, ddpInstance, kitType, kit, kitRequestSettings, easyPostUtil, userIdRequest, kitTypeName,
+            handleKit(uploadBatch, ddpInstance, kitType, kit, kitRequestSettings, userIdRequest, kitTypeName,
                     collaboratorParticipantId, KitUtil.IGNORE_AUTO_DEACTIVATION, uploadAnyway, duplicateKitList, orderKits, externalOrderNumber, uploadReason, carrier);
         }
     }
 
-    private void handleKit(@NonNull Connection conn, @NonNull DDPInstance ddpInstance, @NonNull KitType kitType, @NonNull KitRequest kit,
-                           @NonNull KitRequestSettings kitRequestSettings, @NonNull EasyPostUtil easyPostUtil, @NonNull String userIdRequest,
+    private void handleKit(@NonNull UploadBatch uploadBatch, @NonNull DDPInstance ddpInstance, @NonNull KitType kitType, @NonNull KitRequest kit,
+                           @NonNull KitRequestSettings kitRequestSettings, @NonNull String userIdRequest,
                            @NonNull String kitTypeName, String collaboratorParticipantId, String errorMessage, boolean uploadAnyway,
                            List<KitRequest> duplicateKitList, ArrayList<KitRequest> orderKits, String externalOrderNumber, String uploadReason, String carrier) {
         if (StringUtils.isBlank(ddpInstance.getParticipantIndexES())) {//bringing old code back for RGP (can be removed after migration is finished)
-            if (checkIfKitAlreadyExists(conn, kit.getParticipantId(), ddpInstance.getDdpInstanceId(), kitType.getKitTypeId()) && !uploadAnyway) {
+            if (uploadBatch.kitExists(kit.getParticipantId(), kitType.getKitTypeId()) && !uploadAnyway) {
                 duplicateKitList.add(kit);
             }
             else {
                 String shippingId = DDPKitRequest.UPLOADED_KIT_REQUEST + KitRequestShipping.createRandom(20);
-                addKitRequest(conn, kitTypeName, kitRequestSettings, ddpInstance, kitType.getKitTypeId(),
-                        collaboratorParticipantId, errorMessage, userIdRequest, easyPostUtil, kit, externalOrderNumber, shippingId, uploadReason, carrier);
+                addKitRequest(uploadBatch, kitTypeName, kitRequestSettings, ddpInstance, kitType.getKitTypeId(),
+                        collaboratorParticipantId, errorMessage, userIdRequest, kit, externalOrderNumber, shippingId, uploadReason, carrier);
                 orderKits.add(kit);
             }
         }
         else {
-            String participantGuid = elasticSearch.getParticipantByShortId(ddpInstance.getParticipantIndexES(), kit.getShortId()).getProfile().map(ESProfile::getParticipantGuid).orElse("");
-            String participantLegacyAltPid = elasticSearch.getParticipantByShortId(ddpInstance.getParticipantIndexES(), kit.getShortId()).getProfile().map(ESProfile::getParticipantLegacyAltPid).orElse("");
-            if (checkAndSetParticipantIdIfKitExists(ddpInstance, conn, kit, participantGuid, participantLegacyAltPid, kitType.getKitTypeId()) && !uploadAnyway) {
+            ElasticSearchParticipantDto participantByShortId = uploadBatch.getParticipant(kit.getShortId());
+            String participantGuid = participantByShortId.getProfile().map(ESProfile::getParticipantGuid).orElse("");
+            String participantLegacyAltPid = participantByShortId.getProfile().map(ESProfile::getParticipantLegacyAltPid).orElse("");
+            if (checkAndSetParticipantIdIfKitExists(uploadBatch, kit, participantGuid, participantLegacyAltPid, kitType.getKitTypeId()) && !uploadAnyway) {
                 duplicateKitList.add(kit);
             }
             else {
                 String shippingId = DDPKitRequest.UPLOADED_KIT_REQUEST + KitRequestShipping.createRandom(20);
-                addKitRequest(conn, kitTypeName, kitRequestSettings, ddpInstance, kitType.getKitTypeId(),
-                        collaboratorParticipantId, errorMessage, userIdRequest, easyPostUtil, kit, externalOrderNumber, shippingId, uploadReason, carrier);
+                addKitRequest(uploadBatch, kitTypeName, kitRequestSettings, ddpInstance, kitType.getKitTypeId(),
+                        collaboratorParticipantId, errorMessage, userIdRequest, kit, externalOrderNumber, shippingId, uploadReason, carrier);
                 orderKits.add(kit);
             }
         }
     }
 
-    private void addKitRequest(Connection conn, String kitTypeName, KitRequestSettings kitRequestSettings, DDPInstance ddpInstance,
-                               int kitTypeId, String collaboratorParticipantId, String errorMessage, String userId, EasyPostUtil easyPostUtil,
+    private void addKitRequest(UploadBatch uploadBatch, String kitTypeName, KitRequestSettings kitRequestSettings, DDPInstance ddpInstance,
+                               int kitTypeId, String collaboratorParticipantId, String errorMessage, String userId,
                                KitRequest kit, String externalOrderNumber, String shippingId, String uploadReason, String carrier) {
         String collaboratorSampleId = null;
         String bspCollaboratorSampleType = kitTypeName;
-        String addressId = null;
-        try {
-            Address address = easyPostUtil.getAddress(((KitUploadObject) kit).getEasyPostAddressId());
-            if (address != null) {
-                addressId = address.getId();
-            }
-        }
-        catch (EasyPostException e) {
-            throw new RuntimeException("EasyPost addressId could not be received ", e);
-        }
+        //address was verified by EasyPost in checkAddress
+        String addressId = StringUtils.defaultIfBlank(((KitUploadObject) kit).getEasyPostAddressId(), null);
 
         if (StringUtils.isNotBlank(kitRequestSettings.getExternalShipper())) {
-            collaboratorSampleId = KitRequestShipping.generateBspSampleID(conn, collaboratorParticipantId, bspCollaboratorSampleType, kitTypeId);
-            KitRequestShipping.writeRequest(ddpInstance.getDdpInstanceId(), shippingId,
+            collaboratorSampleId = uploadBatch.generateBspSampleID(collaboratorParticipantId, bspCollaboratorSampleType, kitTypeId);
+            uploadBatch.add(new KitRequestShipping.NewKitRequest(ddpInstance.getDdpInstanceId(), shippingId,
                     kitTypeId, kit.getParticipantId().trim(), collaboratorParticipantId,
                     collaboratorSampleId, userId, addressId,
-                    errorMessage, externalOrderNumber, false, uploadReason);
+                    errorMessage, externalOrderNumber, false, uploadReason));
             kit.setShippingId(shippingId);
             kit.setExternalOrderNumber(externalOrderNumber);
         }
@@ -379,7 +393,7 @@ public class KitUploadRoute extends RequestHandler {
                 bspCollaboratorSampleType = kitRequestSettings.getCollaboratorSampleTypeOverwrite();
             }
             if (StringUtils.isNotBlank(collaboratorParticipantId)) {
-                collaboratorSampleId = KitRequestShipping.generateBspSampleID(conn, collaboratorParticipantId, bspCollaboratorSampleType, kitTypeId);
+                collaboratorSampleId = uploadBatch.generateBspSampleID(collaboratorParticipantId, bspCollaboratorSampleType, kitTypeId);
                 if (collaboratorParticipantId == null) {
                     errorMessage += "collaboratorParticipantId was too long ";
                 }
@@ -387,53 +401,182 @@ public class KitUploadRoute extends RequestHandler {
                     errorMessage += "collaboratorSampleId was too long ";
                 }
             }
-            KitRequestShipping.writeRequest(ddpInstance.getDdpInstanceId(), shippingId,
+            uploadBatch.add(new KitRequestShipping.NewKitRequest(ddpInstance.getDdpInstanceId(), shippingId,
                     kitTypeId, kit.getParticipantId().trim(), collaboratorParticipantId,
                     collaboratorSampleId, userId, addressId,
-                    errorMessage, kit.getExternalOrderNumber(), false, uploadReason);
+                    errorMessage, kit.getExternalOrderNumber(), false, uploadReason));
             kit.setShippingId(shippingId);
         }
     }
 
-    public List<KitRequest> isFileValid(String fileContent, String realm) {
-        if (fileContent == null) {
-            throw new RuntimeException("File is empty");
+    /**
+     * Everything one upload needs from ES and the DB is looked up once for all kits of the file,
+     * new kit requests are collected and written in batches with the connection of the upload
+     */
+    private class UploadBatch {
+
+        private final Connection conn;
+        private final DDPInstance ddpInstance;
+        private final Map<String, ElasticSearchParticipantDto> participantsByShortId = new HashMap<>();
+        private final Map<String, Map<String, Object>> participantsESData = new HashMap<>();
+        private final Map<String, Set<Integer>> kitTypeIdsByParticipantId = new HashMap<>();
+        private final Map<String, Integer> notWrittenKitCounter = new HashMap<>();
+        private List<KitRequestShipping.NewKitRequest> newKitRequests = new ArrayList<>();
+
+        UploadBatch(@NonNull Connection conn, @NonNull DDPInstance ddpInstance) {
+            this.conn = conn;
+            this.ddpInstance = ddpInstance;
+        }
+
+        /**
+         * Looks up the participants of the kits and which kit types they already have
+         */
+        void prepare(@NonNull List<KitRequest> kits, boolean needsParticipantsESData) {
+            Set<String> participantIds = new HashSet<>();
+            for (KitRequest kit : kits) {
+                if (StringUtils.isNotBlank(kit.getParticipantId())) {
+                    participantIds.add(kit.getParticipantId().trim());
+                }
+                if (StringUtils.isBlank(kit.getParticipantId()) || StringUtils.isNotBlank(ddpInstance.getParticipantIndexES())) {
+                    try {
+                        getParticipant(kit.getShortId()).getProfile().ifPresent(profile -> {
+                            if (StringUtils.isNotBlank(profile.getParticipantGuid())) {
+                                participantIds.add(profile.getParticipantGuid());
+                            }
+                            if (StringUtils.isNotBlank(profile.getParticipantLegacyAltPid())) {
+                                participantIds.add(profile.getParticipantLegacyAltPid());
+                            }
+                        });
+                    }
+                    catch (Exception e) {
+                        //participant gets looked up again and the error reported when the kit is uploaded
+                        logger.warn("Couldn't find participant with shortId " + kit.getShortId() + " in ES");
+                    }
+                }
+            }
+            loadExistingKits(participantIds);
+            if (needsParticipantsESData && !participantIds.isEmpty()) {
+                try {
+                    participantsESData.putAll(ElasticSearchUtil.getParticipantSourcesByIds(ElasticSearchUtil.getClientInstance(),
+                            ddpInstance.getParticipantIndexES(), participantIds, null));
+                }
+                catch (IOException e) {
+                    throw new RuntimeException("Couldn't get participants of the upload from ES", e);
+                }
+            }
         }
 
-        String[] rows = fileContent.split(System.lineSeparator());
-        if (rows.length < 2) {
-            throw new RuntimeException("Text file does not contain enough information");
+        private void loadExistingKits(Set<String> participantIds) {
+            List<String> ids = new ArrayList<>(participantIds);
+            for (int from = 0; from < ids.size(); from += EXISTING_KITS_QUERY_SIZE) {
+                List<String> chunk = ids.subList(from, Math.min(from + EXISTING_KITS_QUERY_SIZE, ids.size()));
+                String query = SQL_SELECT_EXISTING_KIT_TYPES.replace("%1", String.join(",", Collections.nCopies(chunk.size(), "?")));
+                try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                    stmt.setString(1, ddpInstance.getDdpInstanceId());
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setString(i + 2, chunk.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            kitTypeIdsByParticipantId.computeIfAbsent(rs.getString(DBConstants.DDP_PARTICIPANT_ID).trim(), k -> new HashSet<>())
+                                    .add(rs.getInt(DBConstants.KIT_TYPE_ID));
+                        }
+                    }
+                }
+                catch (SQLException e) {
+                    throw new RuntimeException("Error getting existing kits of uploaded participants ", e);
+                }
+            }
+            logger.info("Found existing kits for " + kitTypeIdsByParticipantId.size() + " of " + participantIds.size() + " uploaded participants");
+        }
+
+        ElasticSearchParticipantDto getParticipant(String shortId) {
+            return participantsByShortId.computeIfAbsent(shortId,
+                    id -> elasticSearch.getParticipantByShortId(ddpInstance.getParticipantIndexES(), id));
+        }
+
+        Map<String, Object> getParticipantESData(String participantId) {
+            return participantsESData.get(participantId);
         }
 
-        String firstRow = rows[0];
-        if (!firstRow.contains(SystemUtil.SEPARATOR)) {
-            throw new FileWrongSeparator("Please use tab as separator in the text file");
+        /**
+         * @return true if participant has an active kit of that type in DSM or got one earlier in this upload
+         */
+        boolean kitExists(String participantId, int kitTypeId) {
+            if (StringUtils.isBlank(participantId)) {
+                return false;
+            }
+            return kitTypeIdsByParticipantId.getOrDefault(participantId.trim(), Collections.emptySet()).contains(kitTypeId);
         }
 
-        List<String> fieldNamesFromFileHeader = Arrays.asList(firstRow.trim().split(SystemUtil.SEPARATOR));
-        String missingHeader = getMissingHeader(fieldNamesFromFileHeader);
-        if (missingHeader != null) {
-            throw new FileColumnMissing("File is missing column " + missingHeader);
+        String generateBspSampleID(String collaboratorParticipantId, String type, int kitTypeId) {
+            return KitRequestShipping.generateBspSampleID(conn, collaboratorParticipantId, type, kitTypeId, notWrittenKitCounter);
         }
 
-        List<KitRequest> kitRequestsToUpload = new ArrayList<>();
-        parseParticipantDataToUpload(realm, rows, fieldNamesFromFileHeader, kitRequestsToUpload);
-        logger.info(kitRequestsToUpload.size() + " participants were uploaded for manual kits ");
+        void add(@NonNull KitRequestShipping.NewKitRequest newKitRequest) {
+            newKitRequests.add(newKitRequest);
+            kitTypeIdsByParticipantId.computeIfAbsent(newKitRequest.getDdpParticipantId(), k -> new HashSet<>()).add(newKitRequest.getKitTypeId());
+        }
+
+        boolean isFull() {
+            return newKitRequests.size() >= KIT_INSERT_BATCH_SIZE;
+        }
 
-        return kitRequestsToUpload;
+        void write() {
+            KitRequestShipping.writeRequests(conn, newKitRequests);
+            newKitRequests = new ArrayList<>();
+            //written kits are counted by the db now
+            notWrittenKitCounter.clear();
+        }
     }
 
-    private void parseParticipantDataToUpload(String realm, String[] rows, List<String> fieldNamesFromHeader,
-                                              List<KitRequest> kitRequestsToUpload) {
+    public List<KitRequest> isFileValid(String fileContent, String realm) {
+        if (fileContent == null) {
+            throw new RuntimeException("File is empty");
+        }
+        return isFileValid(new DelimitedFileReader(new StringReader(fileContent)), realm);
+    }
 
-        boolean nameInOneColumn = fieldNamesFromHeader.contains(SIGNATURE);
-        DDPInstance ddpInstanceByRealm = DDPInstance.getDDPInstanceWithRole(realm, DBConstants.HAS_KIT_REQUEST_ENDPOINTS);
+    /**
+     * Reads and validates the uploaded file row by row
+     */
+    public List<KitRequest> isFileValid(@NonNull DelimitedFileReader fileReader, String realm) {
+        try {
+            List<String> fieldNamesFromFileHeader = fileReader.readHeader();
+            if (fieldNamesFromFileHeader == null) {
+                throw new RuntimeException("File is empty");
+            }
+            if (fieldNamesFromFileHeader.size() < 2) {
+                throw new FileWrongSeparator("Please use tab as separator in the text file");
+            }
+
+            String missingHeader = getMissingHeader(fieldNamesFromFileHeader);
+            if (missingHeader != null) {
+                throw new FileColumnMissing("File is missing column " + missingHeader);
+            }
+
+            List<KitRequest> kitRequestsToUpload = new ArrayList<>();
+            parseParticipantDataToUpload(realm, fileReader, fieldNamesFromFileHeader, kitRequestsToUpload);
+            if (kitRequestsToUpload.isEmpty()) {
+                throw new RuntimeException("Text file does not contain enough information");
+            }
+            logger.info(kitRequestsToUpload.size() + " participants were uploaded for manual kits ");
 
-        int lastNonEmptyRowIndex = getLastNonEmptyRowIndex(rows);
+            return kitRequestsToUpload;
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Couldn't read uploaded file", e);
+        }
+    }
 
-        for (int rowIndex = 1; rowIndex <= lastNonEmptyRowIndex; rowIndex++) {
+    private void parseParticipantDataToUpload(String realm, DelimitedFileReader fileReader, List<String> fieldNamesFromHeader,
+                                              List<KitRequest> kitRequestsToUpload) throws IOException {
+
+        boolean nameInOneColumn = fieldNamesFromHeader.contains(SIGNATURE);
+        DDPInstance ddpInstanceByRealm = DDPInstance.getDDPInstanceWithRole(realm, DBConstants.HAS_KIT_REQUEST_ENDPOINTS);
 
-            Map<String, String> participantDataByFieldName = getParticipantDataAsMap(rows[rowIndex], fieldNamesFromHeader, rowIndex);
+        Map<String, String> participantDataByFieldName;
+        while ((participantDataByFieldName = fileReader.readRow(fieldNamesFromHeader)) != null) {
 
             String shortId = participantDataByFieldName.get(SHORT_ID);
 
@@ -446,7 +589,7 @@ public class KitUploadRoute extends RequestHandler {
                     message = "Participant does not belong to this study";
                 }
                 if (StringUtils.isNotBlank(message)) {
-                    throw new RuntimeException("user with shortId: " + shortId + " had a problem: \n" + message);
+                    throw new RuntimeException("user with shortId: " + shortId + " in line " + fileReader.getLineNumber() + " had a problem: \n" + message);
                 }
             }
 
@@ -468,34 +611,6 @@ public class KitUploadRoute extends RequestHandler {
         }
     }
 
-    Map<String, String> getParticipantDataAsMap(String row, List<String> fieldNamesFromHeader, int rowIndex) {
-        Map<String, String> participantDataByFieldName = new LinkedHashMap<>();
-        String[] rowItems = row.trim().split(SystemUtil.SEPARATOR);
-        if (rowItems.length != fieldNamesFromHeader.size()) {
-            throw new UploadLineException("Error in line " + (rowIndex + 1));
-        }
-
-        for (int columnIndex = 0; columnIndex < fieldNamesFromHeader.size(); columnIndex++) {
-            participantDataByFieldName.put(fieldNamesFromHeader.get(columnIndex), rowItems[columnIndex]);
-        }
-        return participantDataByFieldName;
-    }
-
-    private int getLastNonEmptyRowIndex(String[] rows) {
-
-        int lastNonEmptyRowIndex = rows.length - 1;
-
-        for (int i = rows.length - 1; i > 0; i--) {
-            String[] row = rows[i].trim().split(SystemUtil.SEPARATOR);
-            if (!"".equals(String.join("", row))) {
-                lastNonEmptyRowIndex = i;
-                break;
-            }
-        }
-
-        return lastNonEmptyRowIndex;
-    }
-
     private String userExistsInRealm(DDPInstance ddpInstanceByRealm,
                                      Map<String, String> participantDataByFieldName) throws Exception {
         String participantIdFromDoc = participantDataByFieldName.get(SHORT_ID).trim();
@@ -538,39 +653,78 @@ public class KitUploadRoute extends RequestHandler {
         return message;
     }
 
+    /**
+     * Validates the addresses of the uploaded kits with EasyPost.
+     * Addresses are validated by a pool of workers, throttled to not run into the EasyPost rate limit
+     *
+     * @return kits with invalid address by shortId
+     */
     public Map<String, KitRequest> checkAddress(List<KitRequest> kitUploadObjects, String phone) {
+        long start = System.currentTimeMillis();
         Map<String, KitRequest> noValidAddress = new HashMap<>();
-        for (KitRequest o : kitUploadObjects) {
-            KitUploadObject object = (KitUploadObject) o;
-            //only if participant has shortId, first- and lastName
-            if ((StringUtils.isNotBlank(object.getShortId()) || StringUtils.isNotBlank(object.getExternalOrderNumber())) && StringUtils.isNotBlank(object.getLastName())) {
-                //let's validate the participant's address
-                String name = "";
-                if (StringUtils.isNotBlank(object.getFirstName())) {
-                    name += object.getFirstName() + " ";
+        ExecutorService executor = Executors.newFixedThreadPool(ConfigUtil.getInt(ApplicationConfigConstants.ADDRESS_VALIDATION_THREADS,
+                DEFAULT_ADDRESS_VALIDATION_THREADS));
+        RateLimiter rateLimiter = RateLimiter.create(ConfigUtil.getDouble(ApplicationConfigConstants.ADDRESS_VALIDATION_REQUESTS_PER_SECOND,
+                DEFAULT_ADDRESS_VALIDATION_REQUESTS_PER_SECOND));
+        try {
+            List<Future<Boolean>> validations = new ArrayList<>();
+            for (KitRequest o : kitUploadObjects) {
+                KitUploadObject object = (KitUploadObject) o;
+                validations.add(executor.submit(() -> isAddressValid(object, phone, rateLimiter)));
+            }
+            for (int i = 0; i < validations.size(); i++) {
+                KitRequest kit = kitUploadObjects.get(i);
+                boolean valid;
+                try {
+                    valid = validations.get(i).get();
                 }
-                name += object.getLastName();
-                DeliveryAddress deliveryAddress = new DeliveryAddress(object.getStreet1(), object.getStreet2(),
-                        object.getCity(), object.getState(), object.getPostalCode(), object.getCountry(),
-                        name, phone);
-                deliveryAddress.validate();
-
-                if (deliveryAddress.isValid()) {
-                    //store the address back
-                    object.setEasyPostAddressId(deliveryAddress.getId());
+                catch (ExecutionException e) {
+                    throw new RuntimeException("Couldn't validate address of " + kit.getShortId(), e.getCause());
                 }
-                else {
-                    logger.info("Address is not valid " + object.getShortId());
-                    noValidAddress.put(object.getShortId(), object);
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while validating addresses", e);
+                }
+                if (!valid) {
+                    noValidAddress.put(kit.getShortId(), kit);
+                }
+                if ((i + 1) % PROGRESS_LOG_INTERVAL == 0) {
+                    logger.info("Validated " + (i + 1) + " of " + kitUploadObjects.size() + " addresses");
                 }
             }
-            else {
-                noValidAddress.put(object.getShortId(), object);
-            }
         }
+        finally {
+            executor.shutdownNow();
+        }
+        logger.info("Validated " + kitUploadObjects.size() + " addresses in " + (System.currentTimeMillis() - start) + "ms");
         return noValidAddress;
     }
 
+    private boolean isAddressValid(KitUploadObject object, String phone, RateLimiter rateLimiter) {
+        //only if participant has shortId, first- and lastName
+        if ((StringUtils.isNotBlank(object.getShortId()) || StringUtils.isNotBlank(object.getExternalOrderNumber())) && StringUtils.isNotBlank(object.getLastName())) {
+            //let's validate the participant's address
+            String name = "";
+            if (StringUtils.isNotBlank(object.getFirstName())) {
+                name += object.getFirstName() + " ";
+            }
+            name += object.getLastName();
+            DeliveryAddress deliveryAddress = new DeliveryAddress(object.getStreet1(), object.getStreet2(),
+                    object.getCity(), object.getState(), object.getPostalCode(), object.getCountry(),
+                    name, phone);
+            rateLimiter.acquire();
+            deliveryAddress.validate();
+
+            if (deliveryAddress.isValid()) {
+                //store the address back
+                object.setEasyPostAddressId(deliveryAddress.getId());
+                return true;
+            }
+            logger.info("Address is not valid " + object.getShortId());
+        }
+        return false;
+    }
+
     public String getMissingHeader(List<String> fieldName) {
         if (!fieldName.contains(SIGNATURE)) {
             if (!fieldName.contains(SHORT_ID)) {
@@ -600,30 +754,4 @@ public class KitUploadRoute extends RequestHandler {
         }
         return null;
     }
-
-    public boolean checkIfKitAlreadyExists(@NonNull Connection conn, @NonNull String ddpParticipantId,
-                                           @NonNull String instanceId, @NonNull int kitTypeId) {
-        SimpleResult dbVals = new SimpleResult(0);
-        try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_CHECK_KIT_ALREADY_EXISTS)) {
-            stmt.setString(1, instanceId);
-            stmt.setInt(2, kitTypeId);
-            stmt.setString(3, ddpParticipantId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    dbVals.resultValue = rs.getInt(DBConstants.FOUND);
-                }
-            }
-        }
-        catch (SQLException ex) {
-            dbVals.resultException = ex;
-        }
-        if (dbVals.resultException != null) {
-            throw new RuntimeException("Error getting id of new kit request ", dbVals.resultException);
-        }
-        if (dbVals.resultValue == null) {
-            throw new RuntimeException("Error getting id of new kit request ");
-        }
-        logger.info("Found " + dbVals.resultValue + " kit requests for ddp_participant_id " + ddpParticipantId);
-        return (int) dbVals.resultValue > 0;
-    }
 }
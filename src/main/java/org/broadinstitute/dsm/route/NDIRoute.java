@@ -5,11 +5,10 @@ import org.broadinstitute.dsm.db.NationalDeathIndex;
 import org.broadinstitute.dsm.exception.FileColumnMissing;
 import org.broadinstitute.dsm.exception.FileWrongFormat;
 import org.broadinstitute.dsm.exception.FileWrongSeparator;
-import org.broadinstitute.dsm.exception.UploadLineException;
 import org.broadinstitute.dsm.model.NDIUploadObject;
 import org.broadinstitute.dsm.security.RequestHandler;
 import org.broadinstitute.dsm.statics.UserErrorMessages;
-import org.broadinstitute.dsm.util.SystemUtil;
+import org.broadinstitute.dsm.util.DelimitedFileReader;
 import org.broadinstitute.dsm.util.UserUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,6 +16,8 @@ import spark.Request;
 import spark.Response;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.*;
 
 public class NDIRoute extends RequestHandler {
@@ -36,9 +37,8 @@ public class NDIRoute extends RequestHandler {
         String userIdRequest = UserUtil.getUserId(request);
         if (UserUtil.checkUserAccess(null, userId, "ndi_download", userIdRequest)) {
             HttpServletRequest rawRequest = request.raw();
-            String content = SystemUtil.getBody(rawRequest);
-            try {
-                List<NDIUploadObject> requests = isFileValid(content);
+            try (DelimitedFileReader fileReader = DelimitedFileReader.tabSeparated(rawRequest.getInputStream())) {
+                List<NDIUploadObject> requests = isFileValid(fileReader);
                 if (requests != null) {
                     response.header("Content-Type", "text/plain; charset=utf-8");
                     String s = NationalDeathIndex.createOutputTxtFile(requests, userIdRequest);
@@ -68,69 +68,70 @@ public class NDIRoute extends RequestHandler {
 
     public static List<NDIUploadObject> isFileValid(String fileContent) throws FileWrongFormat, FileColumnMissing {
         if (fileContent != null) {
-            String linebreak = SystemUtil.lineBreak(fileContent);
-            String[] rows = fileContent.split(linebreak);
-            if (rows.length > 1) {
-                String firstRow = rows[0];
-                if (firstRow.contains(SystemUtil.SEPARATOR)) {
-                    List<String> fieldNames = new ArrayList<>(Arrays.asList(firstRow.trim().split(SystemUtil.SEPARATOR)));
-                    String missingFieldName = fieldNameMissing(fieldNames);
-                    if (missingFieldName == null) {
-                        List<NDIUploadObject> uploadObjects = new ArrayList<>();
-                        for (int rowIndex = 1; rowIndex < rows.length; rowIndex++) {
-                            Map<String, String> obj = new LinkedHashMap<>();
-                            String[] row = rows[rowIndex].trim().split(SystemUtil.SEPARATOR);
-                            if (row.length == fieldNames.size()) {
-                                for (int columnIndex = 0; columnIndex < fieldNames.size(); columnIndex++) {
-                                    obj.put(fieldNames.get(columnIndex), row[columnIndex]);
-                                }
-
-                                try {
-                                    NDIUploadObject object;
-                                    if (obj.get(YEAR).length() != 4 || obj.get(MONTH).length() != 2 || obj.get(DAY).length() != 2) {
-                                        if (obj.get(DAY).length() == 1) {
-                                            obj.put(DAY, "0" + obj.get(DAY));
-                                        }
-                                        if (obj.get(MONTH).length() == 1) {
-                                            obj.put(MONTH, "0" + obj.get(MONTH));
-                                        }
-                                        else if (obj.get(YEAR).length() != 4) {
-                                            throw new FileWrongFormat("Please use the YYYY format for year");
-                                        }
-                                    }
-                                    if (obj.get(FIRST_NAME).length() == 0 || obj.get(LAST_NAME).length() == 0 || obj.get(YEAR).length() == 0
-                                            || obj.get(MONTH).length() == 0 || obj.get(DAY).length() == 0 || obj.get(PARTICIPANT_ID).length() == 0) {
-                                        throw new FileWrongFormat("A mandatory column was empty! Error in line " + (rowIndex + 1));
-                                    }
-                                    if (obj.get(MIDDLE).length() > 1) {
-                                        obj.put(MIDDLE, obj.get(MIDDLE).charAt(0) + "");
-                                    }
-                                    object = new NDIUploadObject(obj.get(FIRST_NAME), obj.get(LAST_NAME), obj.get(MIDDLE), obj.get(YEAR), obj.get(MONTH),
-                                            obj.get(DAY), obj.get(PARTICIPANT_ID));
-                                    uploadObjects.add(object);
-                                }
-                                catch (Exception e) {
-                                    throw new RuntimeException("Text file is not valid. Couldn't be parsed to upload object ", e);
-                                }
-                            }
-                            else {
-                                throw new UploadLineException("Error in line " + (rowIndex + 1));
-                            }
-                        }
-                        logger.info(uploadObjects.size() + " NDI requests were uploaded. ");
+            try {
+                return isFileValid(new DelimitedFileReader(new StringReader(fileContent)));
+            }
+            catch (IOException e) {
+                throw new RuntimeException("Couldn't read uploaded file", e);
+            }
+        }
+        return null;
+    }
 
-                        return uploadObjects;
+    /**
+     * Reads and validates the uploaded file row by row
+     *
+     * @return the upload objects, or null if the file doesn't contain any row
+     */
+    public static List<NDIUploadObject> isFileValid(DelimitedFileReader fileReader) throws FileWrongFormat, FileColumnMissing, IOException {
+        List<String> fieldNames = fileReader.readHeader();
+        if (fieldNames == null) {
+            return null;
+        }
+        if (fieldNames.size() < 2) {
+            throw new FileWrongSeparator("Please use tab as separator in the text file");
+        }
+        String missingFieldName = fieldNameMissing(fieldNames);
+        if (missingFieldName != null) {
+            throw new FileColumnMissing("File is missing column " + missingFieldName);
+        }
+        List<NDIUploadObject> uploadObjects = new ArrayList<>();
+        Map<String, String> obj;
+        while ((obj = fileReader.readRow(fieldNames)) != null) {
+            try {
+                NDIUploadObject object;
+                if (obj.get(YEAR).length() != 4 || obj.get(MONTH).length() != 2 || obj.get(DAY).length() != 2) {
+                    if (obj.get(DAY).length() == 1) {
+                        obj.put(DAY, "0" + obj.get(DAY));
                     }
-                    else {
-                        throw new FileColumnMissing("File is missing column " + missingFieldName);
+                    if (obj.get(MONTH).length() == 1) {
+                        obj.put(MONTH, "0" + obj.get(MONTH));
                     }
+                    else if (obj.get(YEAR).length() != 4) {
+                        throw new FileWrongFormat("Please use the YYYY format for year");
+                    }
+                }
+                if (obj.get(FIRST_NAME).length() == 0 || obj.get(LAST_NAME).length() == 0 || obj.get(YEAR).length() == 0
+                        || obj.get(MONTH).length() == 0 || obj.get(DAY).length() == 0 || obj.get(PARTICIPANT_ID).length() == 0) {
+                    throw new FileWrongFormat("A mandatory column was empty! Error in line " + fileReader.getLineNumber());
                 }
-                else {
-                    throw new FileWrongSeparator("Please use tab as separator in the text file");
+                if (obj.get(MIDDLE).length() > 1) {
+                    obj.put(MIDDLE, obj.get(MIDDLE).charAt(0) + "");
                 }
+                object = new NDIUploadObject(obj.get(FIRST_NAME), obj.get(LAST_NAME), obj.get(MIDDLE), obj.get(YEAR), obj.get(MONTH),
+                        obj.get(DAY), obj.get(PARTICIPANT_ID));
+                uploadObjects.add(object);
+            }
+            catch (Exception e) {
+                throw new RuntimeException("Text file is not valid. Couldn't be parsed to upload object ", e);
             }
         }
-        return null;
+        if (uploadObjects.isEmpty()) {
+            return null;
+        }
+        logger.info(uploadObjects.size() + " NDI requests were uploaded. ");
+
+        return uploadObjects;
     }
 
     public static String fieldNameMissing(List<String> fieldName) {
@@ -19,7 +19,7 @@ import org.broadinstitute.dsm.model.ParticipantSurveyUploadResponse;
 import org.broadinstitute.dsm.security.RequestHandler;
 import org.broadinstitute.dsm.statics.*;
 import org.broadinstitute.dsm.util.DDPRequestUtil;
-import org.broadinstitute.dsm.util.SystemUtil;
+import org.broadinstitute.dsm.util.DelimitedFileReader;
 import org.broadinstitute.dsm.util.UserUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -165,8 +165,9 @@ public class TriggerSurveyRoute extends RequestHandler {
                         else {
                             if (isFileUpload) {
                                 HttpServletRequest rawRequest = request.raw();
-                                String content = SystemUtil.getBody(rawRequest);
-                                participantList = ParticipantSurveyStatusResponse.isFileValid(instance, content);
+                                try (DelimitedFileReader fileReader = DelimitedFileReader.tabSeparated(rawRequest.getInputStream())) {
+                                    participantList = ParticipantSurveyStatusResponse.isFileValid(instance, fileReader);
+                                }
                             }
                         }
                         logger.info(participantList.size() + " Participants were uploaded to trigger surveys");
@@ -1,5 +1,8 @@
 package org.broadinstitute.dsm.shipping;
 
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.fluent.Executor;
+import org.apache.http.impl.client.HttpClients;
 import org.broadinstitute.dsm.model.ups.UPSTrackingResponse;
 import org.broadinstitute.dsm.util.DDPRequestUtil;
 import org.broadinstitute.dsm.util.NanoIdUtil;
@@ -8,11 +11,31 @@ import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class UPSTracker {
 
     private static final Logger logger = LoggerFactory.getLogger(UPSTracker.class);
 
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long FIRST_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 16 * 1000;
+    private static final long DEFAULT_LOOKUP_TIMEOUT_MILLIS = 2 * 60 * 1000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10 * 1000;
+    private static final int SOCKET_TIMEOUT_MILLIS = 30 * 1000;
+    private static final int MAX_CONNECTIONS = 32;
+
+    //one pooled client for all lookups, so connections to UPS are kept alive and shared by concurrent lookups
+    private static final Executor httpExecutor = Executor.newInstance(HttpClients.custom()
+            .setMaxConnTotal(MAX_CONNECTIONS)
+            .setMaxConnPerRoute(MAX_CONNECTIONS)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                    .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+                    .setConnectionRequestTimeout(CONNECT_TIMEOUT_MILLIS)
+                    .setSocketTimeout(SOCKET_TIMEOUT_MILLIS)
+                    .build())
+            .build());
+
     private final String baseEndpoint;
     private final String username;
     private final String password;
@@ -30,6 +53,16 @@ public class UPSTracker {
     }
 
     public UPSTrackingResponse lookupTrackingInfo(String trackingId) throws Exception {
+        return lookupTrackingInfo(trackingId, System.currentTimeMillis() + DEFAULT_LOOKUP_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Looks up the tracking info, failed calls are retried with exponential backoff until
+     * the max attempts are used up or the next try would be after the deadline
+     *
+     * @param deadline time in ms after which no call is started anymore
+     */
+    public UPSTrackingResponse lookupTrackingInfo(String trackingId, long deadline) throws Exception {
         String transId = NanoIdUtil.getNanoId("1234567890QWERTYUIOPASDFGHJKLZXCVBNM", 32);
         String inquiryNumber = trackingId.trim();
         String transSrc = "Tracking";
@@ -43,26 +76,44 @@ public class UPSTracker {
         headers.put("Content-Type", "application/json");
         headers.put("Accept", "application/json");
 
+        if (System.currentTimeMillis() >= deadline) {
+            throw new RuntimeException("No time left to look up ups tracking of package " + trackingId);
+        }
         RuntimeException error = null;
-        for (int i = 0; i < 5; i++) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
             try {
-                UPSTrackingResponse response = DDPRequestUtil.getResponseObjectWithCustomHeader(UPSTrackingResponse.class, sendRequest, "UPS Tracking Test " + inquiryNumber, headers);
-                return response;
+                return DDPRequestUtil.getResponseObjectWithCustomHeader(httpExecutor, UPSTrackingResponse.class, sendRequest,
+                        "UPS Tracking Test " + inquiryNumber, headers);
             }
             catch (Exception e) {
                 error = new RuntimeException("couldn't get response from ups tracking of package " + trackingId, e);
                 logger.error(e.getMessage());
+                long delay = getRetryDelayMillis(attempt, ThreadLocalRandom.current().nextDouble());
+                if (attempt == MAX_ATTEMPTS - 1 || System.currentTimeMillis() + delay >= deadline) {
+                    break;
+                }
                 try {
-                    Thread.sleep(5 * 1000);
+                    Thread.sleep(delay);
                 }
                 catch (InterruptedException interrupted) {
-                    logger.warn("Error while waiting for UPS retry", interrupted);
+                    logger.warn("Interrupted while waiting for UPS retry of package " + trackingId);
+                    Thread.currentThread().interrupt();
+                    break;
                 }
             }
         }
-        if (error != null) {
-            throw error;
-        }
-        return null;
+        throw error;
+    }
+
+    /**
+     * Exponential backoff with jitter, so lookups failing at the same time don't all retry at the same time again
+     *
+     * @param attempt number of the failed attempt, starting with 0
+     * @param random  between 0 and 1
+     * @return between half and the full exponential delay of the attempt
+     */
+    static long getRetryDelayMillis(int attempt, double random) {
+        long delay = Math.min(MAX_RETRY_DELAY_MILLIS, FIRST_RETRY_DELAY_MILLIS << Math.min(attempt, 30));
+        return delay / 2 + (long) (random * (delay / 2));
     }
 }
@@ -7,6 +7,12 @@ public class ApplicationConfigConstants {
     public static final String INSTANCE_NAME = "instanceName";
     public static final String TOKEN_SECRET = "tokenSecret";
     public static final String EASYPOST_API_KEY = "easyPostApiKey";
+    public static final String LABEL_CREATION_THREADS = "easyPost.labelCreation.threads";
+    public static final String LABEL_CREATION_KITS_PER_SECOND = "easyPost.labelCreation.kitsPerSecond";
+    public static final String TRACKER_SYNC_THREADS = "easyPost.trackerSync.threads";
+    public static final String TRACKER_SYNC_REQUESTS_PER_SECOND = "easyPost.trackerSync.requestsPerSecond";
+    public static final String ADDRESS_VALIDATION_THREADS = "easyPost.addressValidation.threads";
+    public static final String ADDRESS_VALIDATION_REQUESTS_PER_SECOND = "easyPost.addressValidation.requestsPerSecond";
 
     //external shipper configuration
     public static final String EXTERNAL_SHIPPER = "externalShipper";
@@ -19,19 +25,41 @@ public class ApplicationConfigConstants {
     //db connection information
     public static final String DSM_DB_MAX_CONNECTIONS = "portal.maxConnections";
     public static final String DSM_DB_URL = "portal.dbUrl";
+    public static final String CONCURRENT_FETCH_THREADS = "portal.concurrentFetch.threads";
+    public static final String CONCURRENT_FETCH_TIMEOUT_SECONDS = "portal.concurrentFetch.timeoutSeconds";
+    public static final String MEDICAL_RECORD_SYNC_THREADS = "portal.medicalRecordSync.threads";
+    public static final String MEDICAL_RECORD_SYNC_BATCH_SIZE = "portal.medicalRecordSync.batchSize";
+    public static final String KIT_REQUEST_SYNC_THREADS = "portal.kitRequestSync.threads";
     public static final String CF_DSM_DB_URL = "dsmDBUrl";
+    public static final String AUTH_CACHE_MAX_ENTRIES = "portal.authCache.maxEntries";
+    public static final String AUTH_CACHE_MAX_AGE_SECONDS = "portal.authCache.maxAgeSeconds";
+    public static final String USER_ACCESS_CACHE_MAX_ENTRIES = "portal.userAccessCache.maxEntries";
+    public static final String USER_ACCESS_CACHE_TTL_SECONDS = "portal.userAccessCache.ttlSeconds";
+    public static final String DASHBOARD_REBUILD_INTERVAL_HOURS = "portal.dashboard.rebuildIntervalHours";
+    public static final String INSTANCE_REGISTRY_REFRESH_SECONDS = "portal.instanceRegistry.refreshSeconds";
+    public static final String SHIPPING_REPORT_CACHE_MAX_ENTRIES = "portal.shippingReportCache.maxEntries";
+    public static final String SHIPPING_REPORT_CACHE_TTL_SECONDS = "portal.shippingReportCache.ttlSeconds";
+    public static final String FILTER_PLAN_CACHE_MAX_ENTRIES = "portal.filterPlanCache.maxEntries";
 
     //google buckets
     public static final String GOOGLE_PROJECT_NAME = "portal.googleProjectName";
     public static final String GOOGLE_DISCARD_BUCKET = "portal.discardSampleBucket";
     public static final String GOOGLE_CONFIG_BUCKET = "portal.configBucket";
     public static final String GOOGLE_CREDENTIALS = "portal.googleProjectCredentials";
+    public static final String PDF_TEMPLATE_CACHE_TTL_SECONDS = "portal.pdfTemplateCache.ttlSeconds";
+    public static final String PDF_TEMPLATE_CACHE_MAX_BYTES = "portal.pdfTemplateCache.maxBytes";
+    public static final String PDF_BUNDLE_THREADS = "portal.pdfBundle.threads";
 
     //ES
     public static final String ES_URL = "elasticSearch.url";
     public static final String ES_USERNAME = "elasticSearch.username";
     public static final String ES_PASSWORD = "elasticSearch.password";
     public static final String ES_PROXY = "elasticSearch.proxy";
+    public static final String ES_MAPPING_REFRESH_SECONDS = "elasticSearch.mappingRefreshSeconds";
+    public static final String ES_BULK_ACTIONS = "elasticSearch.bulk.actions";
+    public static final String ES_BULK_SIZE_MB = "elasticSearch.bulk.sizeMb";
+    public static final String ES_BULK_CONCURRENT_REQUESTS = "elasticSearch.bulk.concurrentRequests";
+    public static final String ES_BULK_MAX_RETRIES = "elasticSearch.bulk.maxRetries";
 
     //security information
     public static final String BSP_SECRET = "bsp.secret";
@@ -62,6 +90,8 @@ public class ApplicationConfigConstants {
     public static final String QUARTZ_CRON_EXPRESSION_FOR_EXTERNAL_SHIPPER_ADDITIONAL = "quartz.externalShipper_cron_expression_additional";
     public static final String QUARTZ_CRON_STATUS_SHIPMENT = "quartz.shipmentStatusJob_cron_expression";
     public static final String QUARTZ_UPS_LOOKUP_JOB = "quartz.ups_lookup_cron_expression";
+    public static final String QUARTZ_DASHBOARD_REFRESH_JOB_INTERVAL_SEC = "quartz.dashboardRefreshJob_jobIntervalInSeconds";
+    public static final String QUARTZ_AT_DEFAULT_VALUES_JOB_INTERVAL_SEC = "quartz.atDefaultValuesJob_jobIntervalInSeconds";
 
     //email
     public static final String EMAIL_CRON_EXPRESSION_FOR_GP_NOTIFICATION = "email.cron_expression_GP_notification";
@@ -85,10 +115,7 @@ public class ApplicationConfigConstants {
     public static final String INSERT_KIT_TRACKING = "portal.insertKitTrackingRequest";
     public static final String UPDATE_KIT_ERROR = "portal.updateKitRequestError";
     public static final String GET_DDP_PARTICIPANT_ID = "portal.getDDPParticipantId";
-    public static final String GET_DASHBOARD_INFORMATION_OF_KIT_REQUESTS = "portal.dashboardKitRequests";
     public static final String GET_DASHBOARD_INFORMATION_OF_KIT_REQUESTS_DEACTIVATED = "portal.dashboardKitDeactivated";
-    public static final String GET_DASHBOARD_INFORMATION_OF_KIT_REQUESTS_SENT_REPORT = "portal.dashboardReportKitSent";
-    public static final String GET_DASHBOARD_INFORMATION_OF_KIT_REQUESTS_RECEIVED_REPORT = "portal.dashboardReportKitReceived";
     public static final String GET_FOUND_IF_KIT_WITH_DDP_LABEL_ALREADY_EXISTS = "portal.checkDdpLabelIdQuery";
     public static final String GET_FOUND_IF_KIT_LABEL_ALREADY_EXISTS_IN_TRACKING_TABLE = "portal.checkTrackingQuery";
     public static final String GET_KIT_TYPE_NEED_TRACKING_BY_DDP_LABEL = "portal.checkKitTypeNeedsTrackingQuery";
@@ -133,4 +160,10 @@ public class ApplicationConfigConstants {
     //pubsub for cf
     public static final String PUBSUB_PROJECT_ID = "pubsub.projectId";
     public static final String PUBSUB_TOPIC_ID = "pubsub.topicId";
+
+    //pubsub subscribers
+    public static final String PUBSUB_SUBSCRIBERS = "pubsub.subscribers";
+    public static final String PUBSUB_LONG_TASK_THREADS = "pubsub.longTasks.threads";
+    public static final String PUBSUB_LONG_TASK_QUEUE_SIZE = "pubsub.longTasks.queueSize";
+    public static final String PUBSUB_METRICS_LOG_INTERVAL_SECONDS = "pubsub.metricsLogIntervalSeconds";
 }
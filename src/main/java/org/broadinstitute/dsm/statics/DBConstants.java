@@ -306,6 +306,7 @@ public class DBConstants {
     public static final String MR_ABSTRACTER = "mr_abstracter";
     public static final String MR_QC = "mr_qc";
     public static final String PT_LIST_VIEW = "pt_list_view";
+    public static final String INSTANCE_ADMIN = "instance_admin";
 
     //miscellaneous
     public static final String EXIT_DATE = "exit_date";
@@ -467,6 +468,11 @@ public class DBConstants {
     public static final String UPS_PACKAGE_TABLE_ABBR = "pack.";
     public static final String UPS_PACKAGE_ID = "ups_package_id";
     public static final String UPS_TRACKING_NUMBER = "tracking_number";
+    public static final String UPS_LAST_ACTIVITY_ID = "last_ups_activity_id";
+    public static final String UPS_LAST_STATUS_TYPE = "last_ups_status_type";
+    public static final String UPS_LAST_STATUS_DESCRIPTION = "last_ups_status_description";
+    public static final String UPS_LAST_STATUS_CODE = "last_ups_status_code";
+    public static final String UPS_LAST_ACTIVITY_DATE_TIME = "last_ups_activity_date_time";
 
 
     //ups_activity table
@@ -28,6 +28,7 @@ public class RequestParameter {
     public static final String FILTER_NAME = "filterName";
     public static final String KIT_REQUEST_ID = "kitRequestId";
     public static final String ACTIVATE = "activate";
+    public static final String REBUILD = "rebuild";
 
     public static final String POLICY = "policy";
     public static final String FACILITY = "facility";
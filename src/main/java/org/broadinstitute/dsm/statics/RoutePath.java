@@ -106,6 +106,7 @@ public class RoutePath {
     public static final String EDIT_PARTICIPANT_MESSAGE = "editParticipantMessageStatus";
     public static final String ADD_FAMILY_MEMBER = "familyMember";
     public static final String GET_PARTICIPANTS_SIZE = "getParticipantsSize";
+    public static final String RELOAD_INSTANCES = "reloadInstances";
 
     public static String getRealm(Request request) {
         QueryParamsMap queryParams = request.queryMap();
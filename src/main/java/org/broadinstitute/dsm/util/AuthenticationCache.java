@@ -0,0 +1,101 @@
+package org.broadinstitute.dsm.util;
+
+import com.auth0.jwt.interfaces.Claim;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import lombok.Data;
+import lombok.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the verified claims of DSM tokens by hash of the token, so every request of a user doesn't verify the same token again.
+ * An entry is only used until the token expires, tokens without expiration are verified again after the max age.
+ * If there are more tokens than the max entries, the least recently used ones are dropped
+ */
+public class AuthenticationCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuthenticationCache.class);
+
+    public static final String CLAIM_EXPIRATION = "exp";
+
+    private final Function<String, Map<String, Claim>> verifier;
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    /**
+     * @param verifier returns the claims of a valid token, throws or returns null if the token is not valid
+     */
+    public AuthenticationCache(@NonNull Function<String, Map<String, Claim>> verifier, long maxEntries, long maxAgeMillis,
+                               @NonNull LongSupplier clock) {
+        this.verifier = verifier;
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+        this.verifiedTokens = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(maxAgeMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * @return claims of the token, null if the token is not valid
+     */
+    public Map<String, Claim> getClaims(@NonNull String token) {
+        String tokenHash = Hashing.sha256().hashString(token, StandardCharsets.UTF_8).toString();
+        long now = clock.getAsLong();
+        VerifiedToken verifiedToken = verifiedTokens.getIfPresent(tokenHash);
+        if (verifiedToken != null) {
+            if (verifiedToken.getExpiresAt() > now) {
+                return verifiedToken.getClaims();
+            }
+            verifiedTokens.invalidate(tokenHash);
+        }
+
+        Map<String, Claim> claims;
+        try {
+            claims = verifier.apply(token);
+        }
+        catch (Exception e) {
+            logger.warn("Invalid token " + e.getMessage());
+            return null;
+        }
+        if (claims == null || claims.isEmpty()) {
+            return null;
+        }
+        claims = Collections.unmodifiableMap(claims);
+        verifiedTokens.put(tokenHash, new VerifiedToken(claims, getExpiresAt(claims, now)));
+        return claims;
+    }
+
+    public void clear() {
+        verifiedTokens.invalidateAll();
+    }
+
+    private long getExpiresAt(Map<String, Claim> claims, long now) {
+        long maxExpiresAt = now + maxAgeMillis;
+        Claim expiration = claims.get(CLAIM_EXPIRATION);
+        if (expiration != null) {
+            Date expiresAt = expiration.asDate();
+            if (expiresAt != null) {
+                return Math.min(expiresAt.getTime(), maxExpiresAt);
+            }
+        }
+        return maxExpiresAt;
+    }
+
+    @Data
+    private static class VerifiedToken {
+        private final Map<String, Claim> claims;
+        private final long expiresAt;
+    }
+}
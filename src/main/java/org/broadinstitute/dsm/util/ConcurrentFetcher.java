@@ -0,0 +1,143 @@
+package org.broadinstitute.dsm.util;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import lombok.NonNull;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs independent fetches (MySQL and ES) of one request concurrently, so the latency of the request is close to the
+ * slowest fetch instead of the sum of all of them.
+ * All fetchers share one fixed size pool, which is sized to a part of the DB connection pool. That way concurrent requests
+ * can't take more connections with their fetches than the pool has, no matter how many requests come in at the same time.
+ */
+public class ConcurrentFetcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrentFetcher.class);
+
+    private static final int DEFAULT_TIMEOUT_SECONDS = 120;
+    private static ExecutorService executor;
+
+    private final String name;
+    private final long timeoutSeconds;
+    private final Supplier<ExecutorService> fetchExecutor;
+    private final long start = System.currentTimeMillis();
+    private final Map<String, Long> timings = new ConcurrentHashMap<>();
+
+    public ConcurrentFetcher(@NonNull String name) {
+        this(name, ConfigUtil.getInt(ApplicationConfigConstants.CONCURRENT_FETCH_TIMEOUT_SECONDS, DEFAULT_TIMEOUT_SECONDS));
+    }
+
+    public ConcurrentFetcher(@NonNull String name, long timeoutSeconds) {
+        this(name, timeoutSeconds, ConcurrentFetcher::getExecutor);
+    }
+
+    ConcurrentFetcher(@NonNull String name, long timeoutSeconds, @NonNull Supplier<ExecutorService> fetchExecutor) {
+        this.name = name;
+        this.timeoutSeconds = timeoutSeconds;
+        this.fetchExecutor = fetchExecutor;
+    }
+
+    /**
+     * Starts the fetch of one source
+     *
+     * @return supplier which blocks until the fetch is done and returns its result.
+     * Throws a RuntimeException if the fetch failed, didn't get a thread within the timeout or ran longer than the timeout.
+     * A fetch which took too long gets interrupted, which stops a request to ES. JDBC ignores the interrupt though,
+     * so a running MySQL query keeps its thread and DB connection until it is finished
+     */
+    public <T> Supplier<T> submit(@NonNull String source, @NonNull Supplier<T> fetch) {
+        CompletableFuture<Long> started = new CompletableFuture<>();
+        Future<T> future = fetchExecutor.get().submit(() -> {
+            long fetchStart = System.currentTimeMillis();
+            started.complete(fetchStart);
+            try {
+                return fetch.get();
+            }
+            finally {
+                timings.put(source, System.currentTimeMillis() - fetchStart);
+            }
+        });
+        return () -> get(source, future, started);
+    }
+
+    private <T> T get(String source, Future<T> future, CompletableFuture<Long> started) {
+        try {
+            long fetchStart;
+            try {
+                //time waiting for a free thread of the pool doesn't count into the timeout of the fetch
+                fetchStart = started.get(timeoutSeconds, TimeUnit.SECONDS);
+            }
+            catch (TimeoutException e) {
+                future.cancel(false);
+                throw new RuntimeException("Fetching " + source + " for " + name + " didn't start within " + timeoutSeconds + " secs");
+            }
+            long deadline = fetchStart + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+            return future.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            future.cancel(true);
+            throw new RuntimeException("Fetching " + source + " for " + name + " took longer than " + timeoutSeconds + " secs");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Couldn't fetch " + source + " for " + name, e.getCause());
+        }
+        catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while fetching " + source + " for " + name, e);
+        }
+    }
+
+    public void logTimings() {
+        String sourceTimings = timings.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .map(entry -> entry.getKey() + "=" + entry.getValue() + "ms")
+                .collect(Collectors.joining(", "));
+        logger.info("Fetched data for " + name + " in " + (System.currentTimeMillis() - start) + "ms (" + sourceTimings + ")");
+    }
+
+    public Map<String, Long> getTimings() {
+        return Map.copyOf(timings);
+    }
+
+    //created with the first fetch, so the pool is sized with the loaded config
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(getThreadCount(), new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "concurrent-fetcher-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private static int getThreadCount() {
+        // leave half of the connections for everything else
+        return ConfigUtil.getInt(ApplicationConfigConstants.CONCURRENT_FETCH_THREADS,
+                Math.max(2, ConfigUtil.getInt(ApplicationConfigConstants.DSM_DB_MAX_CONNECTIONS, 8) / 2));
+    }
+}
@@ -0,0 +1,31 @@
+package org.broadinstitute.dsm.util;
+
+import lombok.NonNull;
+import org.broadinstitute.ddp.db.TransactionWrapper;
+
+/**
+ * Optional settings of the application config, the default value is used if the config doesn't have the path
+ */
+public class ConfigUtil {
+
+    public static int getInt(@NonNull String configPath, int defaultValue) {
+        if (TransactionWrapper.hasConfigPath(configPath)) {
+            return Integer.parseInt(TransactionWrapper.getSqlFromConfig(configPath));
+        }
+        return defaultValue;
+    }
+
+    public static long getLong(@NonNull String configPath, long defaultValue) {
+        if (TransactionWrapper.hasConfigPath(configPath)) {
+            return Long.parseLong(TransactionWrapper.getSqlFromConfig(configPath));
+        }
+        return defaultValue;
+    }
+
+    public static double getDouble(@NonNull String configPath, double defaultValue) {
+        if (TransactionWrapper.hasConfigPath(configPath)) {
+            return Double.parseDouble(TransactionWrapper.getSqlFromConfig(configPath));
+        }
+        return defaultValue;
+    }
+}
@@ -1,20 +1,29 @@
 package org.broadinstitute.dsm.util;
 
+import lombok.Data;
 import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
-import org.broadinstitute.dsm.db.DDPInstance;
+import org.broadinstitute.ddp.db.SimpleResult;
+import org.broadinstitute.ddp.db.TransactionWrapper;
 import org.broadinstitute.dsm.db.KitRequestShipping;
 import org.broadinstitute.dsm.db.LatestKitRequest;
-import org.broadinstitute.dsm.model.KitRequest;
 import org.broadinstitute.dsm.model.KitRequestSettings;
 import org.broadinstitute.dsm.model.KitSubKits;
 import org.broadinstitute.dsm.model.KitType;
 import org.broadinstitute.dsm.model.ddp.KitDetail;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
 import org.broadinstitute.dsm.statics.RoutePath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.sql.Connection;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 public class DDPKitRequest {
 
@@ -23,104 +32,174 @@ public class DDPKitRequest {
     public static final String UPLOADED_KIT_REQUEST = "UPLOADED_";
     public static final String MIGRATED_KIT_REQUEST = "MIGRATED_";
 
+    private static final int DEFAULT_SYNC_THREADS = 4;
+    private static final int KIT_INSERT_BATCH_SIZE = 500;
+
     /**
-     * Requesting 'new' DDPKitRequests and write them into ddp_kit_request
+     * Requesting 'new' DDPKitRequests and write them into ddp_kit_request.
+     * The DDPs are requested concurrently by a small pool, the participants of one response are looked up with one ES query
+     * and the kit requests are written in batches. Timings per DDP are logged, slowest first.
      *
      * @param latestKitRequests List<LatestKitRequest>
-     * @throws Exception
      */
     public void requestAndWriteKitRequests(List<LatestKitRequest> latestKitRequests) {
         logger.info("Request kits from the DDPs");
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(ConfigUtil.getInt(ApplicationConfigConstants.KIT_REQUEST_SYNC_THREADS, DEFAULT_SYNC_THREADS));
+        List<PortalMetrics> portalMetrics = new ArrayList<>();
         try {
+            List<Future<PortalMetrics>> syncs = new ArrayList<>();
             for (LatestKitRequest latestKit : latestKitRequests) {
+                syncs.add(executor.submit(() -> requestAndWriteKitRequests(latestKit)));
+            }
+            for (Future<PortalMetrics> sync : syncs) {
                 try {
-                    String dsmRequest = latestKit.getBaseURL() + RoutePath.DDP_KIT_REQUEST;
-                    if (latestKit.getLatestDDPKitRequestID() != null) {
-                        dsmRequest += "/" + latestKit.getLatestDDPKitRequestID();
-                    }
-                    KitDetail[] kitDetails = DDPRequestUtil.getResponseObject(KitDetail[].class, dsmRequest, latestKit.getInstanceName(), latestKit.isHasAuth0Token());
-                    if (kitDetails != null) {
-                        logger.info("Got " + kitDetails.length + " 'new' KitRequests from " + latestKit.getInstanceName());
-                        if (kitDetails.length > 0) {
-                            Map<String, KitType> kitTypes = KitType.getKitLookup();
-                            Map<Integer, KitRequestSettings> kitRequestSettingsMap = KitRequestSettings.getKitRequestSettings(latestKit.getInstanceID());
-
-                            Map<KitRequestSettings, ArrayList<KitRequest>> kitsToOrder = new HashMap<>();
-                            for (KitDetail kitDetail : kitDetails) {
-                                if (kitDetail != null && kitDetail.getParticipantId() != null && kitDetail.getKitRequestId() != null
-                                        && kitDetail.getKitType() != null) {
-                                    //ignore kits from the ddp which starts with internal upload prefix (mainly for mbc migration)
-                                    if (StringUtils.isNotBlank(kitDetail.getKitRequestId()) && !kitDetail.getKitRequestId().startsWith(UPLOADED_KIT_REQUEST)
-                                            && !kitDetail.getKitRequestId().startsWith(MIGRATED_KIT_REQUEST)) {
-                                        String key = kitDetail.getKitType() + "_" + latestKit.getInstanceID();
-                                        KitType kitType = kitTypes.get(key);
-                                        if (kitType != null) {
-                                            KitRequestSettings kitRequestSettings = kitRequestSettingsMap.get(kitType.getKitTypeId());
-
-                                            boolean kitHasSubKits = kitRequestSettings.getHasSubKits() != 0;
-
-                                            //kit requests from study-server
-                                            if (StringUtils.isNotBlank(latestKit.getParticipantIndexES())) {
-                                                //without order list, that was only added for promise and currently is not used!
-                                                DDPInstance ddpInstance = DDPInstance.getDDPInstance(latestKit.getInstanceName());
-                                                Map<String, Map<String, Object>> participantsESData = ElasticSearchUtil.getFilteredDDPParticipantsFromES(ddpInstance, ElasticSearchUtil.BY_GUID + kitDetail.getParticipantId());
-                                                if (participantsESData != null && !participantsESData.isEmpty()) {
-                                                    Map<String, Object> participantESData = participantsESData.get(kitDetail.getParticipantId());
-                                                    if (participantESData != null && !participantESData.isEmpty()) {
-                                                        Map<String, Object> profile = (Map<String, Object>) participantESData.get("profile");
-                                                        if (profile != null && !profile.isEmpty()) {
-                                                            String collaboratorParticipantId = KitRequestShipping.getCollaboratorParticipantId(latestKit.getBaseURL(), latestKit.getInstanceID(), latestKit.isMigrated(),
-                                                                    latestKit.getCollaboratorIdPrefix(), (String) profile.get("guid"), (String) profile.get("hruid"), kitRequestSettings.getCollaboratorParticipantLengthOverwrite());
-
-                                                            if (kitHasSubKits) {
-                                                                List<KitSubKits> subKits = kitRequestSettings.getSubKits();
-                                                                addSubKits(subKits, kitDetail, collaboratorParticipantId, kitRequestSettings, latestKit.getInstanceID(), null);
-                                                            } else {
-                                                                KitRequestShipping.addKitRequests(latestKit.getInstanceID(), kitDetail, kitType.getKitTypeId(),
-                                                                        kitRequestSettings, collaboratorParticipantId, null, null);
-                                                            }
-                                                        } else {
-                                                            logger.error("ES profile data was empty for participant with ddp_kit_request_id " + kitDetail.getKitRequestId());
-                                                        }
-                                                    } else {
-                                                        logger.error("Participant of ddp_kit_request_id " + kitDetail.getKitRequestId() + " not found in ES ");
-                                                    }
-                                                }
-                                            } else {
-                                                logger.error("Cannot process gen2 kit request for {}", latestKit.getInstanceName());
-                                            }
-                                        }
-                                        else {
-                                            throw new RuntimeException("KitTypeId is not in kit_type table. KitTypeId " + kitDetail.getKitType());
-                                        }
-                                    }
-                                }
-                                else {
-                                    logger.error("Important information for DDPKitRequest is missing. " +
-                                                         kitDetail == null ? " DDPKitRequest is null " : " participantId " + kitDetail.getParticipantId() +
-                                                         " kitRequest.getKitRequestId() " + kitDetail.getKitRequestId() +
-                                                         " kitRequest.getKitType() " + kitDetail.getKitType());
-                                    throw new RuntimeException("Important information for kitRequest is missing");
+                    portalMetrics.add(sync.get());
+                }
+                catch (ExecutionException e) {
+                    logger.error("Error requesting KitRequests ", e.getCause());
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while getting KitRequests ", e);
+        }
+        finally {
+            executor.shutdown();
+        }
+        portalMetrics.sort(Comparator.comparingLong(PortalMetrics::getTotalMillis).reversed());
+        logger.info("Requested kits from " + latestKitRequests.size() + " DDPs in " + (System.currentTimeMillis() - start) + "ms: "
+                + portalMetrics.stream().map(PortalMetrics::toString).collect(Collectors.joining("; ")));
+    }
+
+    private PortalMetrics requestAndWriteKitRequests(@NonNull LatestKitRequest latestKit) {
+        PortalMetrics metrics = new PortalMetrics(latestKit.getInstanceName());
+        long start = System.currentTimeMillis();
+        try {
+            String dsmRequest = latestKit.getBaseURL() + RoutePath.DDP_KIT_REQUEST;
+            if (latestKit.getLatestDDPKitRequestID() != null) {
+                dsmRequest += "/" + latestKit.getLatestDDPKitRequestID();
+            }
+            KitDetail[] kitDetails = DDPRequestUtil.getResponseObject(KitDetail[].class, dsmRequest, latestKit.getInstanceName(), latestKit.isHasAuth0Token());
+            metrics.setFetchMillis(System.currentTimeMillis() - start);
+            if (kitDetails != null) {
+                logger.info("Got " + kitDetails.length + " 'new' KitRequests from " + latestKit.getInstanceName());
+                metrics.setReceivedKits(kitDetails.length);
+                if (kitDetails.length > 0) {
+                    writeKitRequests(latestKit, kitDetails, metrics);
+                }
+            }
+            else {
+                logger.info("Didn't receive any kit requests from " + latestKit.getInstanceName());
+            }
+        }
+        catch (Exception ex) {
+            metrics.setFailed(true);
+            logger.error("Error requesting KitRequests from " + latestKit.getInstanceName(), ex);
+        }
+        metrics.setTotalMillis(System.currentTimeMillis() - start);
+        return metrics;
+    }
+
+    private void writeKitRequests(@NonNull LatestKitRequest latestKit, @NonNull KitDetail[] kitDetails, @NonNull PortalMetrics metrics) throws IOException {
+        Map<String, KitType> kitTypes = KitType.getKitLookup();
+        Map<Integer, KitRequestSettings> kitRequestSettingsMap = KitRequestSettings.getKitRequestSettings(latestKit.getInstanceID());
+
+        //kit requests from study-server
+        Map<String, Map<String, Object>> participantsESData = new HashMap<>();
+        if (StringUtils.isNotBlank(latestKit.getParticipantIndexES())) {
+            long esStart = System.currentTimeMillis();
+            Set<String> participantIds = Arrays.stream(kitDetails)
+                    .filter(kitDetail -> kitDetail != null && kitDetail.getParticipantId() != null)
+                    .map(KitDetail::getParticipantId)
+                    .collect(Collectors.toSet());
+            participantsESData.putAll(ElasticSearchUtil.getParticipantSourcesByIds(ElasticSearchUtil.getClientInstance(),
+                    latestKit.getParticipantIndexES(), participantIds, new String[] {ElasticSearchUtil.PROFILE}));
+            metrics.setEsMillis(System.currentTimeMillis() - esStart);
+        }
+
+        long writeStart = System.currentTimeMillis();
+        SimpleResult results = TransactionWrapper.inTransaction(conn -> {
+            SimpleResult dbVals = new SimpleResult();
+            KitRequestBatch batch = new KitRequestBatch(conn, metrics);
+            try {
+                for (KitDetail kitDetail : kitDetails) {
+                    addKitRequest(batch, latestKit, kitDetail, kitTypes, kitRequestSettingsMap, participantsESData);
+                }
+            }
+            catch (Exception e) {
+                //kit requests before the broken one still get written, the next run starts after them
+                dbVals.resultException = e;
+            }
+            batch.write();
+            return dbVals;
+        });
+        metrics.setWriteMillis(System.currentTimeMillis() - writeStart);
+        if (results.resultException != null) {
+            throw new RuntimeException("Error adding KitRequests of " + latestKit.getInstanceName(), results.resultException);
+        }
+    }
+
+    private void addKitRequest(@NonNull KitRequestBatch batch, @NonNull LatestKitRequest latestKit, KitDetail kitDetail,
+                               @NonNull Map<String, KitType> kitTypes, @NonNull Map<Integer, KitRequestSettings> kitRequestSettingsMap,
+                               @NonNull Map<String, Map<String, Object>> participantsESData) {
+        if (kitDetail != null && kitDetail.getParticipantId() != null && kitDetail.getKitRequestId() != null
+                && kitDetail.getKitType() != null) {
+            //ignore kits from the ddp which starts with internal upload prefix (mainly for mbc migration)
+            if (StringUtils.isNotBlank(kitDetail.getKitRequestId()) && !kitDetail.getKitRequestId().startsWith(UPLOADED_KIT_REQUEST)
+                    && !kitDetail.getKitRequestId().startsWith(MIGRATED_KIT_REQUEST)) {
+                String key = kitDetail.getKitType() + "_" + latestKit.getInstanceID();
+                KitType kitType = kitTypes.get(key);
+                if (kitType != null) {
+                    KitRequestSettings kitRequestSettings = kitRequestSettingsMap.get(kitType.getKitTypeId());
+
+                    boolean kitHasSubKits = kitRequestSettings.getHasSubKits() != 0;
+
+                    //kit requests from study-server
+                    if (StringUtils.isNotBlank(latestKit.getParticipantIndexES())) {
+                        //without order list, that was only added for promise and currently is not used!
+                        Map<String, Object> participantESData = participantsESData.get(kitDetail.getParticipantId());
+                        if (participantESData != null && !participantESData.isEmpty()) {
+                            Map<String, Object> profile = (Map<String, Object>) participantESData.get("profile");
+                            if (profile != null && !profile.isEmpty()) {
+                                String collaboratorParticipantId = KitRequestShipping.getCollaboratorParticipantId(latestKit.getBaseURL(), latestKit.getInstanceID(), latestKit.isMigrated(),
+                                        latestKit.getCollaboratorIdPrefix(), (String) profile.get("guid"), (String) profile.get("hruid"), kitRequestSettings.getCollaboratorParticipantLengthOverwrite());
+
+                                if (kitHasSubKits) {
+                                    List<KitSubKits> subKits = kitRequestSettings.getSubKits();
+                                    addSubKits(batch, subKits, kitDetail, collaboratorParticipantId, kitRequestSettings, latestKit.getInstanceID(), null);
+                                } else {
+                                    batch.add(kitDetail.getKitType(), latestKit.getInstanceID(), kitDetail.getParticipantId(), kitDetail.getKitRequestId(),
+                                            kitType.getKitTypeId(), kitRequestSettings, collaboratorParticipantId, kitDetail.isNeedsApproval(), null, null);
                                 }
+                            } else {
+                                logger.error("ES profile data was empty for participant with ddp_kit_request_id " + kitDetail.getKitRequestId());
                             }
+                        } else {
+                            logger.error("Participant of ddp_kit_request_id " + kitDetail.getKitRequestId() + " not found in ES ");
                         }
-                    }
-                    else {
-                        logger.info("Didn't receive any kit requests from " + latestKit.getInstanceName());
+                    } else {
+                        logger.error("Cannot process gen2 kit request for {}", latestKit.getInstanceName());
                     }
                 }
-                catch (Exception ex) {
-                    logger.error("Error requesting KitRequests from " + latestKit.getInstanceName(), ex);
+                else {
+                    throw new RuntimeException("KitTypeId is not in kit_type table. KitTypeId " + kitDetail.getKitType());
                 }
             }
         }
-        catch (Exception e) {
-            throw new RuntimeException("Error getting KitRequests ", e);
+        else {
+            logger.error("Important information for DDPKitRequest is missing. " +
+                                 kitDetail == null ? " DDPKitRequest is null " : " participantId " + kitDetail.getParticipantId() +
+                                 " kitRequest.getKitRequestId() " + kitDetail.getKitRequestId() +
+                                 " kitRequest.getKitType() " + kitDetail.getKitType());
+            throw new RuntimeException("Important information for kitRequest is missing");
         }
     }
 
-    private String addSubKits(@NonNull List<KitSubKits> subKits, @NonNull KitDetail kitDetail, @NonNull String collaboratorParticipantId,
-                              @NonNull KitRequestSettings kitRequestSettings, @NonNull String instanceId, String uploadReason) {
+    private String addSubKits(@NonNull KitRequestBatch batch, @NonNull List<KitSubKits> subKits, @NonNull KitDetail kitDetail,
+                              @NonNull String collaboratorParticipantId, @NonNull KitRequestSettings kitRequestSettings,
+                              @NonNull String instanceId, String uploadReason) {
         int subCounter = 0;
         String externalOrderNumber = null;
         if (StringUtils.isNotBlank(kitRequestSettings.getExternalShipper())) {
@@ -129,9 +208,9 @@ public class DDPKitRequest {
         for (KitSubKits subKit : subKits) {
             for (int i = 0; i < subKit.getKitCount(); i++) {
                 //kitRequestId needs to stay unique -> add `_[SUB_COUNTER]` to it
-                KitRequestShipping.addKitRequests(instanceId, subKit.getKitName(), kitDetail.getParticipantId(),
+                batch.add(subKit.getKitName(), instanceId, kitDetail.getParticipantId(),
                         subCounter == 0 ? kitDetail.getKitRequestId() : kitDetail.getKitRequestId() + "_" + subCounter, subKit.getKitTypeId(), kitRequestSettings,
-                        collaboratorParticipantId, kitDetail.isNeedsApproval(), externalOrderNumber,  uploadReason);
+                        collaboratorParticipantId, kitDetail.isNeedsApproval(), externalOrderNumber, uploadReason);
                 subCounter = subCounter + 1;
             }
         }
@@ -147,4 +226,63 @@ public class DDPKitRequest {
         return externalOrderNumber;
     }
 
+    /**
+     * Kit requests of one DDP, written in batches with the connection of its transaction
+     */
+    private static class KitRequestBatch {
+
+        private final Connection conn;
+        private final PortalMetrics metrics;
+        private final Map<String, Integer> notWrittenKitCounter = new HashMap<>();
+        private List<KitRequestShipping.NewKitRequest> newKitRequests = new ArrayList<>();
+
+        KitRequestBatch(@NonNull Connection conn, @NonNull PortalMetrics metrics) {
+            this.conn = conn;
+            this.metrics = metrics;
+        }
+
+        void add(String kitType, String instanceId, String participantId, String kitRequestId, int kitTypeId,
+                 KitRequestSettings kitRequestSettings, String collaboratorParticipantId, boolean needsApproval, String externalOrderNumber,
+                 String uploadReason) {
+            newKitRequests.add(KitRequestShipping.createNewKitRequest(conn, notWrittenKitCounter, instanceId, kitType, participantId, kitRequestId,
+                    kitTypeId, kitRequestSettings, collaboratorParticipantId, needsApproval, externalOrderNumber, uploadReason));
+            if (newKitRequests.size() >= KIT_INSERT_BATCH_SIZE) {
+                write();
+            }
+        }
+
+        void write() {
+            KitRequestShipping.writeRequests(conn, newKitRequests);
+            metrics.addWrittenKits(newKitRequests.size());
+            newKitRequests = new ArrayList<>();
+            //written kits are counted by the db now
+            notWrittenKitCounter.clear();
+        }
+    }
+
+    /**
+     * Timings of one DDP, to see which DDP slows down the job.
+     * Received kits are the kit requests the DDP had which DSM didn't have yet, so the lag of DSM behind that DDP
+     */
+    @Data
+    private static class PortalMetrics {
+        private final String instanceName;
+        private long fetchMillis;
+        private long esMillis;
+        private long writeMillis;
+        private long totalMillis;
+        private int receivedKits;
+        private int writtenKits;
+        private boolean failed;
+
+        void addWrittenKits(int kits) {
+            writtenKits += kits;
+        }
+
+        @Override
+        public String toString() {
+            return instanceName + (failed ? " (failed)" : "") + " received " + receivedKits + " kits, wrote " + writtenKits
+                    + " kit requests, fetch=" + fetchMillis + "ms es=" + esMillis + "ms write=" + writeMillis + "ms total=" + totalMillis + "ms";
+        }
+    }
 }
@@ -2,12 +2,14 @@ package org.broadinstitute.dsm.util;
 
 import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
+import org.broadinstitute.ddp.db.SimpleResult;
 import org.broadinstitute.ddp.handlers.util.Institution;
 import org.broadinstitute.ddp.handlers.util.InstitutionRequest;
 import org.broadinstitute.dsm.db.DDPInstance;
 import org.broadinstitute.dsm.db.MedicalRecordLog;
 import org.broadinstitute.dsm.db.dao.ddp.participant.ParticipantDao;
 import org.broadinstitute.dsm.db.dto.ddp.participant.ParticipantDto;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
 import org.broadinstitute.dsm.statics.DBConstants;
 import org.broadinstitute.dsm.statics.RoutePath;
 import org.slf4j.Logger;
@@ -15,6 +17,10 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.broadinstitute.ddp.db.TransactionWrapper.inTransaction;
 
@@ -35,6 +41,9 @@ public class DDPMedicalRecordDataRequest {
             "LEFT JOIN ddp_medical_record_log log on (log.medical_record_id = rec.medical_record_id) WHERE rec.medical_record_id = ? AND rec.fax_sent is not null " +
             "AND (log.type is null OR log.type = ?) ORDER BY medical_record_log_id desc";
 
+    private static final int DEFAULT_SYNC_THREADS = 4;
+    private static final int DEFAULT_SYNC_BATCH_SIZE = 100;
+
     private long lastTimeChecked = System.currentTimeMillis();
 
     /**
@@ -46,56 +55,134 @@ public class DDPMedicalRecordDataRequest {
         requestFromDDPs();
     }
 
+    /**
+     * Requests new participants and institutions from all ddps with medical record endpoints.
+     * The ddps are synced concurrently by a small pool, so one slow ddp doesn't hold back the others.
+     * Responses are requested outside of any transaction and written in short transactions per batch,
+     * each batch moves the bookmark of its ddp forward together with its data.
+     */
     public void requestFromDDPs() {
+        List<DDPInstance> ddpInstances;
         try {
-            List<DDPInstance> ddpInstances = DDPInstance.getDDPInstanceListWithRole(DBConstants.HAS_MEDICAL_RECORD_ENDPOINTS);
-            if (ddpInstances != null) {
-                inTransaction((conn) -> {
-                    for (DDPInstance ddpInstance : ddpInstances) {
-                        if (ddpInstance.isHasRole()) {
-                            Long value = DBUtil.getBookmark(conn, ddpInstance.getDdpInstanceId());
-                            if (value != null && value != -1) {
-                                String dsmRequest = ddpInstance.getBaseUrl() + RoutePath.DDP_PARTICIPANT_INSTITUTIONS + "/" + value;
-                                try {
-                                    InstitutionRequest[] institutionRequests = DDPRequestUtil.getResponseObject(InstitutionRequest[].class, dsmRequest, ddpInstance.getName(), ddpInstance.isHasAuth0Token());
-                                    if (institutionRequests != null && institutionRequests.length > 0) {
-                                        logger.info("Got " + institutionRequests.length + " InstitutionRequests");
-                                        for (InstitutionRequest institutionRequest : institutionRequests) {
-                                            try {
-                                                writeParticipantIntoDb(conn, ddpInstance.getDdpInstanceId(), institutionRequest);
-                                                value = Math.max(value, institutionRequest.getId());
-                                            }
-                                            catch (Exception e) {
-                                                logger.error("Failed to insert participant for mr into db ", e);
-                                            }
-                                        }
-                                        DBUtil.updateBookmark(conn, value, ddpInstance.getDdpInstanceId());
-                                    }
-                                }
-                                catch (Exception e) {
-                                    logger.error("Couldn't get participants and institutions for ddpInstance " + ddpInstance.getName(), e);
-                                }
-                            }
-                            else {
-                                logger.error("Couldn't get maxParticipantId for ddpInstance " + ddpInstance.getName());
-                            }
-                        }
-                    }
-                    return null;
-                });
-            }
+            ddpInstances = DDPInstance.getDDPInstanceListWithRole(DBConstants.HAS_MEDICAL_RECORD_ENDPOINTS);
         }
         catch (Exception e) {
             throw new RuntimeException("Error getting participant information ", e);
         }
+        if (ddpInstances == null) {
+            return;
+        }
+        int batchSize = ConfigUtil.getInt(ApplicationConfigConstants.MEDICAL_RECORD_SYNC_BATCH_SIZE, DEFAULT_SYNC_BATCH_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(ConfigUtil.getInt(ApplicationConfigConstants.MEDICAL_RECORD_SYNC_THREADS,
+                DEFAULT_SYNC_THREADS));
+        try {
+            List<Future<?>> syncs = new ArrayList<>();
+            for (DDPInstance ddpInstance : ddpInstances) {
+                if (ddpInstance.isHasRole()) {
+                    syncs.add(executor.submit(() -> requestFromDDP(ddpInstance, batchSize)));
+                }
+            }
+            for (Future<?> sync : syncs) {
+                try {
+                    sync.get();
+                }
+                catch (ExecutionException e) {
+                    logger.error("Couldn't sync participants and institutions ", e.getCause());
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while getting participant information ", e);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private void requestFromDDP(@NonNull DDPInstance ddpInstance, int batchSize) {
+        long start = System.currentTimeMillis();
+        long bookmark;
+        InstitutionRequest[] institutionRequests;
+        try {
+            bookmark = DBUtil.getBookmark(ddpInstance.getDdpInstanceId());
+            if (bookmark == -1) {
+                logger.error("Couldn't get maxParticipantId for ddpInstance " + ddpInstance.getName());
+                return;
+            }
+            String dsmRequest = ddpInstance.getBaseUrl() + RoutePath.DDP_PARTICIPANT_INSTITUTIONS + "/" + bookmark;
+            institutionRequests = DDPRequestUtil.getResponseObject(InstitutionRequest[].class, dsmRequest, ddpInstance.getName(), ddpInstance.isHasAuth0Token());
+        }
+        catch (Exception e) {
+            logger.error("Couldn't get participants and institutions for ddpInstance " + ddpInstance.getName(), e);
+            return;
+        }
+        if (institutionRequests == null || institutionRequests.length == 0) {
+            return;
+        }
+        logger.info("Got " + institutionRequests.length + " InstitutionRequests for ddpInstance " + ddpInstance.getName());
+        List<InstitutionRequest> requests = Arrays.asList(institutionRequests);
+        for (int from = 0; from < requests.size(); from += batchSize) {
+            List<InstitutionRequest> batch = requests.subList(from, Math.min(from + batchSize, requests.size()));
+            try {
+                bookmark = writeBatchIntoDb(ddpInstance.getDdpInstanceId(), batch, bookmark);
+            }
+            catch (Exception e) {
+                //bookmark stays at the last written batch, so the rest gets requested again with the next run
+                logger.error("Couldn't write participants and institutions for ddpInstance " + ddpInstance.getName(), e);
+                return;
+            }
+        }
+        logger.info("Wrote " + institutionRequests.length + " InstitutionRequests for ddpInstance " + ddpInstance.getName()
+                + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Writes the batch and the new bookmark in one transaction
+     *
+     * @return the new bookmark
+     */
+    private long writeBatchIntoDb(@NonNull String instanceId, @NonNull List<InstitutionRequest> institutionRequests, long bookmark) {
+        SimpleResult results = inTransaction((conn) -> {
+            SimpleResult dbVals = new SimpleResult(bookmark);
+            long value = bookmark;
+            List<String> participantsWithInstitutions = new ArrayList<>();
+            for (InstitutionRequest institutionRequest : institutionRequests) {
+                try {
+                    writeParticipantIntoDb(conn, instanceId, institutionRequest, participantsWithInstitutions);
+                    value = Math.max(value, institutionRequest.getId());
+                }
+                catch (Exception e) {
+                    logger.error("Failed to insert participant for mr into db ", e);
+                }
+            }
+            MedicalRecordUtil.writeNewRecordsIntoDb(conn, SQL_INSERT_ONC_HISTORY, participantsWithInstitutions, instanceId);
+            MedicalRecordUtil.writeNewRecordsIntoDb(conn, SQL_INSERT_PARTICIPANT_RECORD, participantsWithInstitutions, instanceId);
+            DBUtil.updateBookmark(conn, value, instanceId);
+            dbVals.resultValue = value;
+            return dbVals;
+        });
+        if (results.resultException != null) {
+            throw new RuntimeException("Error writing " + institutionRequests.size() + " InstitutionRequests ", results.resultException);
+        }
+        return (long) results.resultValue;
     }
 
     public void writeParticipantIntoDb(@NonNull Connection conn, @NonNull String instanceId, InstitutionRequest institutionRequest) {
+        writeParticipantIntoDb(conn, instanceId, institutionRequest, null);
+    }
+
+    /**
+     * @param participantsWithInstitutions collects the participants which need onc history and participant record,
+     *                                     if they get written by the caller for a whole batch. Null to write them right away
+     */
+    private void writeParticipantIntoDb(@NonNull Connection conn, @NonNull String instanceId, InstitutionRequest institutionRequest,
+                                        List<String> participantsWithInstitutions) {
         if (MedicalRecordUtil.isParticipantInDB(conn, institutionRequest.getParticipantId(), instanceId)) {
             //participant already exists
             if (MedicalRecordUtil.updateParticipant(conn, institutionRequest.getParticipantId(), instanceId,
                     institutionRequest.getId(), institutionRequest.getLastUpdated(), MedicalRecordUtil.SYSTEM)) {
-                writeInstitutionInfo(conn, institutionRequest, instanceId);
+                writeInstitutionInfo(conn, institutionRequest, instanceId, participantsWithInstitutions);
                 //participant lastVersion changed
                 Collection<Number> medicalRecordIds = getMedicalRecordIds(conn, institutionRequest.getParticipantId(), instanceId);
                 if (medicalRecordIds != null && !medicalRecordIds.isEmpty()) {
@@ -114,7 +201,7 @@ public class DDPMedicalRecordDataRequest {
                     .withChangedBy(MedicalRecordUtil.SYSTEM)
                     .build();
             new ParticipantDao().create(participantDto);
-            writeInstitutionInfo(conn, institutionRequest, instanceId);
+            writeInstitutionInfo(conn, institutionRequest, instanceId, participantsWithInstitutions);
         }
     }
 
@@ -153,12 +240,18 @@ public class DDPMedicalRecordDataRequest {
         }
     }
 
-    private void writeInstitutionInfo(Connection conn, InstitutionRequest institutionRequest, String instanceId) {
+    private void writeInstitutionInfo(Connection conn, InstitutionRequest institutionRequest, String instanceId,
+                                      List<String> participantsWithInstitutions) {
         Collection<Institution> institutions = institutionRequest.getInstitutions();
         if (!institutions.isEmpty()) {
             logger.info("Participant w/ id " + institutionRequest.getParticipantId() + " has " + institutions.size() + " institutions");
-            MedicalRecordUtil.writeNewRecordIntoDb(conn, SQL_INSERT_ONC_HISTORY, institutionRequest.getParticipantId(), instanceId);
-            MedicalRecordUtil.writeNewRecordIntoDb(conn, SQL_INSERT_PARTICIPANT_RECORD, institutionRequest.getParticipantId(), instanceId);
+            if (participantsWithInstitutions != null) {
+                participantsWithInstitutions.add(institutionRequest.getParticipantId());
+            }
+            else {
+                MedicalRecordUtil.writeNewRecordIntoDb(conn, SQL_INSERT_ONC_HISTORY, institutionRequest.getParticipantId(), instanceId);
+                MedicalRecordUtil.writeNewRecordIntoDb(conn, SQL_INSERT_PARTICIPANT_RECORD, institutionRequest.getParticipantId(), instanceId);
+            }
             for (Institution institution : institutions) {
                 MedicalRecordUtil.writeInstitutionIntoDb(conn, institutionRequest.getParticipantId(), instanceId,
                         institution.getId(), institution.getType());
@@ -85,6 +85,14 @@ public class DDPRequestUtil {
 
     // make a get request with custom header
     public static <T> T getResponseObjectWithCustomHeader(Class<T> responseClass, String sendRequest, String name, Map<String, String> header) throws IOException {
+        return getResponseObjectWithCustomHeader(blindTrustEverythingExecutor, responseClass, sendRequest, name, header);
+    }
+
+    /**
+     * @param executor executor to send the request with, if null the request is sent with the default client
+     */
+    public static <T> T getResponseObjectWithCustomHeader(Executor executor, Class<T> responseClass, String sendRequest, String name,
+                                                          Map<String, String> header) throws IOException {
         logger.info("Requesting data from " + name + " w/ " + sendRequest);
         org.apache.http.client.fluent.Request request = Get(sendRequest);
 
@@ -94,8 +102,8 @@ public class DDPRequestUtil {
             }
         }
         T objects;
-        if (blindTrustEverythingExecutor != null) {
-            objects = blindTrustEverythingExecutor.execute(request).handleResponse(res -> getResponse(res, responseClass, sendRequest));
+        if (executor != null) {
+            objects = executor.execute(request).handleResponse(res -> getResponse(res, responseClass, sendRequest));
         }
         else {
             objects = request.execute().handleResponse(res -> getResponse(res, responseClass, sendRequest));
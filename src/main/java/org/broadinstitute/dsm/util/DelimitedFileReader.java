@@ -0,0 +1,206 @@
+package org.broadinstitute.dsm.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.NonNull;
+import org.apache.commons.lang3.StringUtils;
+import org.broadinstitute.dsm.exception.UploadLineException;
+
+/**
+ * Reads uploaded text files (tab separated by default) record by record, so uploads don't need to be in memory as a whole.
+ * Quoting follows RFC-4180: a field in double quotes can contain separators, line breaks and escaped ("") quotes.
+ * Lines can end with \n, \r\n or \r, also mixed in one file.
+ */
+public class DelimitedFileReader implements Closeable {
+
+    private static final int EOF = -1;
+    private static final char QUOTE = '"';
+    private static final char BOM = '\uFEFF';
+
+    private final PushbackReader reader;
+    private final char separator;
+    private int nextLineNumber = 1;
+    private int lineNumber = 0;
+    private boolean started = false;
+
+    public DelimitedFileReader(@NonNull Reader reader) {
+        this(reader, SystemUtil.SEPARATOR.charAt(0));
+    }
+
+    public DelimitedFileReader(@NonNull Reader reader, char separator) {
+        this.reader = new PushbackReader(new BufferedReader(reader), 1);
+        this.separator = separator;
+    }
+
+    public static DelimitedFileReader tabSeparated(@NonNull InputStream inputStream) {
+        return new DelimitedFileReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return line number (starting with 1) of the line the last returned record started on
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return fields of the next record, or null at the end of the file
+     */
+    public List<String> readRecord() throws IOException {
+        int c = read();
+        if (c == EOF) {
+            return null;
+        }
+        lineNumber = nextLineNumber;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == EOF) {
+                    throw new UploadLineException("Error in line " + lineNumber + ", quote was not closed");
+                }
+                if (c == QUOTE) {
+                    int next = read();
+                    if (next == QUOTE) {
+                        field.append(QUOTE);
+                    }
+                    else {
+                        quoted = false;
+                        unread(next);
+                    }
+                }
+                else {
+                    if (c == '\n') {
+                        nextLineNumber++;
+                    }
+                    else if (c == '\r') {
+                        int next = read();
+                        unread(next);
+                        if (next != '\n') {
+                            nextLineNumber++;
+                        }
+                    }
+                    field.append((char) c);
+                }
+            }
+            else if (c == EOF) {
+                fields.add(field.toString());
+                return fields;
+            }
+            else if (c == separator) {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else if (isLineBreak(c)) {
+                nextLineNumber++;
+                if (c == '\r') {
+                    int next = read();
+                    if (next != '\n') {
+                        unread(next);
+                    }
+                }
+                fields.add(field.toString());
+                return fields;
+            }
+            else if (c == QUOTE && field.length() == 0) {
+                quoted = true;
+            }
+            else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * Reads the header of the file. Field names are trimmed and empty field names at the end of the line are ignored
+     *
+     * @return field names, or null if the file is empty
+     */
+    public List<String> readHeader() throws IOException {
+        List<String> header;
+        do {
+            header = readRecord();
+        }
+        while (header != null && isBlank(header));
+        if (header == null) {
+            return null;
+        }
+        header.replaceAll(String::trim);
+        while (header.size() > 1 && header.get(header.size() - 1).isEmpty()) {
+            header.remove(header.size() - 1);
+        }
+        return header;
+    }
+
+    /**
+     * Reads the next non blank record as map of field name to trimmed value.
+     * Empty fields after the last column are ignored, every other difference to the number of columns in the header is an error.
+     *
+     * @return the values of the record, or null at the end of the file
+     * @throws UploadLineException if the record doesn't have the same number of fields as the header
+     */
+    public Map<String, String> readRow(@NonNull List<String> fieldNamesFromHeader) throws IOException {
+        List<String> record;
+        do {
+            record = readRecord();
+        }
+        while (record != null && isBlank(record));
+        if (record == null) {
+            return null;
+        }
+        while (record.size() > fieldNamesFromHeader.size() && StringUtils.isBlank(record.get(record.size() - 1))) {
+            record.remove(record.size() - 1);
+        }
+        if (record.size() != fieldNamesFromHeader.size()) {
+            throw new UploadLineException("Error in line " + lineNumber);
+        }
+        Map<String, String> row = new LinkedHashMap<>();
+        for (int columnIndex = 0; columnIndex < fieldNamesFromHeader.size(); columnIndex++) {
+            row.put(fieldNamesFromHeader.get(columnIndex), record.get(columnIndex).trim());
+        }
+        return row;
+    }
+
+    private static boolean isBlank(List<String> record) {
+        return record.stream().allMatch(StringUtils::isBlank);
+    }
+
+    private static boolean isLineBreak(int c) {
+        return c == '\n' || c == '\r';
+    }
+
+    private int read() throws IOException {
+        int c = reader.read();
+        if (!started) {
+            started = true;
+            if (c == BOM) {
+                c = reader.read();
+            }
+        }
+        return c;
+    }
+
+    private void unread(int c) throws IOException {
+        if (c != EOF) {
+            reader.unread(c);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,112 @@
+package org.broadinstitute.dsm.util;
+
+import lombok.Data;
+import lombok.NonNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Types of the fields of one participants_structured index, by their full path (e.g. profile.hruid),
+ * built once from the index mapping so building a query doesn't need to look at the mapping again
+ */
+public class ESFieldTypes {
+
+    public static final String OBJECT = "object";
+    public static final String NESTED = "nested";
+    private static final String FIELDS = "fields";
+    private static final String KEYWORD = "keyword";
+
+    private final Map<String, FieldType> fieldTypes;
+
+    private ESFieldTypes(@NonNull Map<String, FieldType> fieldTypes) {
+        this.fieldTypes = Collections.unmodifiableMap(fieldTypes);
+    }
+
+    public static ESFieldTypes fromMapping(@NonNull Map<String, Object> mapping) {
+        Map<String, Object> root = mapping;
+        if (!root.containsKey(ElasticSearchUtil.PROPERTIES) && root.size() == 1 && root.values().iterator().next() instanceof Map) {
+            //mapping still wrapped into its type
+            root = (Map<String, Object>) root.values().iterator().next();
+        }
+        Map<String, FieldType> fieldTypes = new HashMap<>();
+        Object properties = root.get(ElasticSearchUtil.PROPERTIES);
+        if (properties instanceof Map) {
+            addFields(fieldTypes, "", (Map<String, Object>) properties, null);
+        }
+        return new ESFieldTypes(fieldTypes);
+    }
+
+    /**
+     * Field types of several indices, if a field is in more than one index the type of the first one is used
+     */
+    public static ESFieldTypes merge(@NonNull Collection<ESFieldTypes> indices) {
+        Map<String, FieldType> fieldTypes = new HashMap<>();
+        for (ESFieldTypes index : indices) {
+            index.fieldTypes.forEach(fieldTypes::putIfAbsent);
+        }
+        return new ESFieldTypes(fieldTypes);
+    }
+
+    private static void addFields(Map<String, FieldType> fieldTypes, String prefix, Map<String, Object> properties, String nestedPath) {
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            if (!(property.getValue() instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> definition = (Map<String, Object>) property.getValue();
+            String path = prefix + property.getKey();
+            String type = definition.get(ElasticSearchUtil.TYPE) != null ? String.valueOf(definition.get(ElasticSearchUtil.TYPE)) : OBJECT;
+            String fieldNestedPath = NESTED.equals(type) ? path : nestedPath;
+            fieldTypes.put(path, new FieldType(type, fieldNestedPath, getKeywordField(path, definition)));
+            Object children = definition.get(ElasticSearchUtil.PROPERTIES);
+            if (children instanceof Map) {
+                addFields(fieldTypes, path + ".", (Map<String, Object>) children, fieldNestedPath);
+            }
+        }
+    }
+
+    private static String getKeywordField(String path, Map<String, Object> definition) {
+        Object fields = definition.get(FIELDS);
+        if (fields instanceof Map) {
+            for (Map.Entry<String, Object> field : ((Map<String, Object>) fields).entrySet()) {
+                if (field.getValue() instanceof Map && KEYWORD.equals(((Map<String, Object>) field.getValue()).get(ElasticSearchUtil.TYPE))) {
+                    return path + "." + field.getKey();
+                }
+            }
+        }
+        return null;
+    }
+
+    public FieldType getFieldType(@NonNull String path) {
+        return fieldTypes.get(path);
+    }
+
+    public String getType(@NonNull String path) {
+        FieldType fieldType = fieldTypes.get(path);
+        return fieldType != null ? fieldType.getType() : null;
+    }
+
+    /**
+     * Name to use for an exact match on the field, the keyword sub field of text fields
+     */
+    public String getExactMatchFieldName(@NonNull String path) {
+        FieldType fieldType = fieldTypes.get(path);
+        if (fieldType != null && ElasticSearchUtil.TEXT.equals(fieldType.getType())) {
+            return fieldType.getKeywordField() != null ? fieldType.getKeywordField() : path + ElasticSearchUtil.KEYWORD;
+        }
+        return path;
+    }
+
+    public int size() {
+        return fieldTypes.size();
+    }
+
+    @Data
+    public static class FieldType {
+        private final String type;
+        private final String nestedPath;
+        private final String keywordField;
+    }
+}
@@ -23,14 +23,17 @@ import org.broadinstitute.dsm.model.elasticsearch.ESAddress;
 import org.broadinstitute.dsm.model.elasticsearch.ESProfile;
 import org.broadinstitute.dsm.model.elasticsearch.ElasticSearch;
 import org.broadinstitute.dsm.model.elasticsearch.ElasticSearchParticipantDto;
+import org.broadinstitute.dsm.model.filter.FilterPlanCache;
 import org.broadinstitute.dsm.model.gbf.Address;
 import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
 import org.broadinstitute.dsm.statics.DBConstants;
 import org.broadinstitute.dsm.statics.ESObjectConstants;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.search.ClearScrollRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.RequestOptions;
@@ -40,10 +43,13 @@ import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.client.indices.GetMappingsRequest;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.*;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +59,10 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class ElasticSearchUtil {
 
@@ -106,18 +116,24 @@ public class ElasticSearchUtil {
     public static final String TEXT = "text";
     public static final String KEYWORD = ".keyword";
     public static final String PROPERTIES = "properties";
-    public static final byte OUTER_FIELD_INDEX = 0;
-    public static final byte INNER_FIELD_INDEX = 1;
+    public static final int SCROLL_SIZE = 1000;
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1L);
 
 
     // These clients are expensive. They internally have thread pools and other resources. Let's
     // create one instance and reuse it as much as possible. Client is thread-safe per the docs.
     private static RestHighLevelClient client;
-    private static Map<String, MappingMetaData> fieldMappings;
+    private static final long DEFAULT_MAPPING_REFRESH_SECONDS = 10 * 60;
+    //field types per participants_structured index, replaced as a whole when a mapping changed
+    private static volatile Map<String, ESFieldTypes> fieldTypesByIndex = Collections.emptyMap();
+    private static volatile ESFieldTypes fieldTypesOfAnyIndex = ESFieldTypes.merge(Collections.emptyList());
+    private static Map<String, String> mappingSources = new HashMap<>();
+    private static ScheduledExecutorService mappingRefresher;
 
     static {
         initClient();
         fetchFieldMappings();
+        startFieldMappingsRefresh();
     }
 
     public static synchronized void initClient() {
@@ -133,9 +149,10 @@ public class ElasticSearchUtil {
         }
     }
 
-    private static void fetchFieldMappings() {
+    private static synchronized void fetchFieldMappings() {
         GetMappingsRequest request = new GetMappingsRequest();
         request.indices(PARTICIPANTS_STRUCTURED_ANY);
+        Map<String, MappingMetaData> fieldMappings;
         try {
             logger.info("Getting ES data field mapping");
             fieldMappings = getClientInstance().indices()
@@ -144,6 +161,56 @@ public class ElasticSearchUtil {
         } catch (IOException e) {
             throw new RuntimeException("Error while fetching field mappings from ES", e);
         }
+        Map<String, String> sources = new HashMap<>();
+        Map<String, ESFieldTypes> fieldTypes = new HashMap<>();
+        boolean changed = fieldMappings.size() != mappingSources.size();
+        for (Map.Entry<String, MappingMetaData> mapping : fieldMappings.entrySet()) {
+            String source = mapping.getValue().source().string();
+            sources.put(mapping.getKey(), source);
+            ESFieldTypes indexFieldTypes = fieldTypesByIndex.get(mapping.getKey());
+            if (indexFieldTypes == null || !source.equals(mappingSources.get(mapping.getKey()))) {
+                indexFieldTypes = ESFieldTypes.fromMapping(mapping.getValue().sourceAsMap());
+                logger.info("Indexed " + indexFieldTypes.size() + " field types of " + mapping.getKey());
+                changed = true;
+            }
+            fieldTypes.put(mapping.getKey(), indexFieldTypes);
+        }
+        if (changed) {
+            mappingSources = sources;
+            fieldTypesByIndex = Collections.unmodifiableMap(fieldTypes);
+            fieldTypesOfAnyIndex = ESFieldTypes.merge(fieldTypes.values());
+        }
+    }
+
+    private static synchronized void startFieldMappingsRefresh() {
+        if (mappingRefresher == null) {
+            long refreshSeconds = ConfigUtil.getLong(ApplicationConfigConstants.ES_MAPPING_REFRESH_SECONDS, DEFAULT_MAPPING_REFRESH_SECONDS);
+            mappingRefresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "es-mapping-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            mappingRefresher.scheduleWithFixedDelay(() -> {
+                try {
+                    fetchFieldMappings();
+                } catch (Exception e) {
+                    logger.error("Couldn't refresh ES field mappings, keeping the known ones", e);
+                }
+            }, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Field types of the given participants_structured index, or of all of them if the index is unknown (e.g. an alias)
+     */
+    public static ESFieldTypes getFieldTypes(String index) {
+        if (index != null) {
+            ESFieldTypes fieldTypes = fieldTypesByIndex.get(index);
+            if (fieldTypes != null) {
+                return fieldTypes;
+            }
+        }
+        return fieldTypesOfAnyIndex;
     }
 
     public static RestHighLevelClient getClientInstance() {
@@ -209,21 +276,7 @@ public class ElasticSearchUtil {
         if (StringUtils.isNotBlank(index)) {
             logger.info("Collecting ES data");
             try {
-                int scrollSize = 1000;
-                SearchRequest searchRequest = new SearchRequest(index);
-                SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-                SearchResponse response = null;
-                int i = 0;
-                searchSourceBuilder.query(QueryBuilders.matchQuery("profile.hruid", participantHruid)).sort(PROFILE_CREATED_AT, SortOrder.ASC);
-                while (response == null || response.getHits().getHits().length != 0) {
-                    searchSourceBuilder.size(scrollSize);
-                    searchSourceBuilder.from(i * scrollSize);
-                    searchRequest.source(searchSourceBuilder);
-
-                    response = client.search(searchRequest, RequestOptions.DEFAULT);
-                    addingParticipantStructuredHits(response, esData, realm, index);
-                    i++;
-                }
+                forEachParticipantsPage(client, realm, index, QueryBuilders.matchQuery("profile.hruid", participantHruid), esData::putAll);
             } catch (Exception e) {
                 throw new RuntimeException("Couldn't get participants from ES for instance " + realm, e);
             }
@@ -240,21 +293,7 @@ public class ElasticSearchUtil {
         if (StringUtils.isNotBlank(index)) {
             logger.info("Collecting ES data");
             try {
-                int scrollSize = 1000;
-                SearchRequest searchRequest = new SearchRequest(index);
-                SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-                SearchResponse response = null;
-                int i = 0;
-                searchSourceBuilder.query(QueryBuilders.matchAllQuery()).sort(PROFILE_CREATED_AT, SortOrder.ASC);
-                while (response == null || response.getHits().getHits().length != 0) {
-                    searchSourceBuilder.size(scrollSize);
-                    searchSourceBuilder.from(i * scrollSize);
-                    searchRequest.source(searchSourceBuilder);
-
-                    response = client.search(searchRequest, RequestOptions.DEFAULT);
-                    addingParticipantStructuredHits(response, esData, realm, index);
-                    i++;
-                }
+                forEachParticipantsPage(client, realm, index, QueryBuilders.matchAllQuery(), esData::putAll);
             } catch (Exception e) {
                 throw new RuntimeException("Couldn't get participants from ES for instance " + realm, e);
             }
@@ -263,6 +302,138 @@ public class ElasticSearchUtil {
         return esData;
     }
 
+    /**
+     * Streams all participants of the index matching the query, one page at a time.
+     * Every page is handed to the consumer keyed the same way as {@link #getDDPParticipantsFromES(String, String)},
+     * so callers only hold one page of ES data in memory
+     */
+    public static void forEachParticipantsPage(@NonNull String realm, String index, @NonNull QueryBuilder query,
+                                               @NonNull Consumer<Map<String, Map<String, Object>>> pageConsumer) {
+        if (StringUtils.isNotBlank(index)) {
+            try {
+                forEachParticipantsPage(client, realm, index, query, pageConsumer);
+            } catch (IOException e) {
+                throw new RuntimeException("Couldn't get participants from ES for instance " + realm, e);
+            }
+        }
+    }
+
+    public static void forEachParticipantsPage(@NonNull RestHighLevelClient client, @NonNull String realm, @NonNull String index,
+                                               @NonNull QueryBuilder query,
+                                               @NonNull Consumer<Map<String, Map<String, Object>>> pageConsumer) throws IOException {
+        scroll(client, index, query, null, hits -> {
+            Map<String, Map<String, Object>> page = new HashMap<>();
+            addingParticipantStructuredHits(hits, page, realm, index);
+            pageConsumer.accept(page);
+        });
+    }
+
+    /**
+     * Reads all hits of the query with the scroll api, sorted by _doc.
+     * In contrast to from/size paging every page costs the same, independent of how deep into the index it is,
+     * and the max_result_window of the index doesn't apply
+     *
+     * @return number of hits handed to the consumer
+     */
+    public static long scroll(@NonNull RestHighLevelClient client, @NonNull String index, @NonNull QueryBuilder query,
+                              FetchSourceContext fetchSourceContext, @NonNull Consumer<SearchHits> pageConsumer) throws IOException {
+        SearchRequest searchRequest = new SearchRequest(index);
+        SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        searchSourceBuilder.query(query).sort(FieldSortBuilder.DOC_FIELD_NAME, SortOrder.ASC).size(SCROLL_SIZE);
+        if (fetchSourceContext != null) {
+            searchSourceBuilder.fetchSource(fetchSourceContext);
+        }
+        searchRequest.source(searchSourceBuilder);
+        searchRequest.scroll(SCROLL_KEEP_ALIVE);
+
+        SearchResponse response = client.search(searchRequest, RequestOptions.DEFAULT);
+        String scrollId = response.getScrollId();
+        long hitCount = 0;
+        try {
+            while (response.getHits().getHits().length != 0) {
+                pageConsumer.accept(response.getHits());
+                hitCount += response.getHits().getHits().length;
+
+                SearchScrollRequest scrollRequest = new SearchScrollRequest(scrollId);
+                scrollRequest.scroll(SCROLL_KEEP_ALIVE);
+                response = client.scroll(scrollRequest, RequestOptions.DEFAULT);
+                scrollId = response.getScrollId();
+            }
+        }
+        finally {
+            clearScroll(client, scrollId);
+        }
+        return hitCount;
+    }
+
+    /**
+     * Fetches the documents of the given participants in chunks of {@link #SCROLL_SIZE} ids, instead of one search per participant.
+     * Ids can be guids or legacy altpids, the result is keyed by guid and by legacy altpid of every participant found
+     *
+     * @param includes source fields to fetch, null for the whole document. Needs to include the profile guid and legacyAltPid
+     */
+    public static Map<String, Map<String, Object>> getParticipantSourcesByIds(@NonNull RestHighLevelClient client, @NonNull String index,
+                                                                              @NonNull Collection<String> participantIds,
+                                                                              String[] includes) throws IOException {
+        return getParticipantSourcesByIds(client, index, participantIds, null, includes);
+    }
+
+    /**
+     * Same as {@link #getParticipantSourcesByIds(RestHighLevelClient, String, Collection, String[])}, but only participants
+     * which also match the filter query are returned
+     *
+     * @param filterQuery query the participants need to match, null for all of the given participants
+     */
+    public static Map<String, Map<String, Object>> getParticipantSourcesByIds(@NonNull RestHighLevelClient client, @NonNull String index,
+                                                                              @NonNull Collection<String> participantIds,
+                                                                              QueryBuilder filterQuery,
+                                                                              String[] includes) throws IOException {
+        Map<String, Map<String, Object>> sourcesById = new HashMap<>();
+        FetchSourceContext fetchSourceContext = includes != null ? new FetchSourceContext(true, includes, null) : null;
+        List<String> ids = new ArrayList<>(new HashSet<>(participantIds));
+        for (int i = 0; i < ids.size(); i += SCROLL_SIZE) {
+            List<String> chunk = ids.subList(i, Math.min(i + SCROLL_SIZE, ids.size()));
+            BoolQueryBuilder idQuery = QueryBuilders.boolQuery()
+                    .should(QueryBuilders.termsQuery(PROFILE_GUID, chunk))
+                    .should(QueryBuilders.termsQuery(PROFILE_LEGACYALTPID, chunk));
+            QueryBuilder query = filterQuery != null ? QueryBuilders.boolQuery().must(filterQuery).filter(idQuery) : idQuery;
+            scroll(client, index, query, fetchSourceContext, hits -> {
+                for (SearchHit hit : hits) {
+                    Map<String, Object> source = hit.getSourceAsMap();
+                    Map<String, Object> profile = (Map<String, Object>) source.get(PROFILE);
+                    if (profile == null) {
+                        logger.warn("Participant {} doesn't have profile information", hit.getId());
+                        continue;
+                    }
+                    String guid = (String) profile.get(GUID);
+                    String legacyAltPid = (String) profile.get(LEGACY_ALT_PID);
+                    if (StringUtils.isNotBlank(guid)) {
+                        sourcesById.put(guid, source);
+                    }
+                    if (StringUtils.isNotBlank(legacyAltPid)) {
+                        sourcesById.put(legacyAltPid, source);
+                    }
+                }
+            });
+        }
+        return sourcesById;
+    }
+
+    private static void clearScroll(RestHighLevelClient client, String scrollId) {
+        if (StringUtils.isBlank(scrollId)) {
+            return;
+        }
+        ClearScrollRequest clearScrollRequest = new ClearScrollRequest();
+        clearScrollRequest.addScrollId(scrollId);
+        try {
+            client.clearScroll(clearScrollRequest, RequestOptions.DEFAULT);
+        }
+        catch (Exception e) {
+            // scroll context will time out by itself after the keep alive
+            logger.warn("Couldn't clear ES scroll context", e);
+        }
+    }
+
     public static Optional<ElasticSearchParticipantDto> getParticipantESDataByParticipantId(@NonNull String index, @NonNull String participantId) {
         Optional<ElasticSearchParticipantDto> elasticSearch = Optional.empty();
         logger.info("Getting ES data for participant: " + participantId);
@@ -308,7 +479,7 @@ public class ElasticSearchUtil {
 
         response = client.search(searchRequest, RequestOptions.DEFAULT);
         response.getHits();
-        return ElasticSearch.parseSourceMap(response.getHits().getTotalHits() > 0 ? response.getHits().getAt(0).getSourceAsMap() : null).get();
+        return ElasticSearch.parseSearchHit(response.getHits().getTotalHits() > 0 ? response.getHits().getAt(0) : null).get();
     }
 
     public static Map<String, Map<String, Object>> getDDPParticipantsFromES(@NonNull String realm, @NonNull String index) {
@@ -331,25 +502,11 @@ public class ElasticSearchUtil {
             Map<String, Map<String, Object>> esData = new HashMap<>();
             logger.info("Collecting ES data");
             try {
-                int scrollSize = 1000;
-                SearchRequest searchRequest = new SearchRequest(index);
-                SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-                SearchResponse response = null;
-                int i = 0;
-                AbstractQueryBuilder query = createESQuery(filter);
+                AbstractQueryBuilder query = createESQuery(filter, index);
                 if (query == null) {
                     throw new RuntimeException("Couldn't create query from filter " + filter);
                 }
-                searchSourceBuilder.query(query).sort(PROFILE_CREATED_AT, SortOrder.ASC);
-                while (response == null || response.getHits().getHits().length != 0) {
-                    searchSourceBuilder.size(scrollSize);
-                    searchSourceBuilder.from(i * scrollSize);
-                    searchRequest.source(searchSourceBuilder);
-
-                    response = client.search(searchRequest, RequestOptions.DEFAULT);
-                    addingParticipantStructuredHits(response, esData, instance.getName(), index);
-                    i++;
-                }
+                forEachParticipantsPage(client, instance.getName(), index, query, esData::putAll);
             } catch (Exception e) {
                 logger.error("Couldn't get participants from ES for instance " + instance.getName(), e);
             }
@@ -744,8 +901,7 @@ public class ElasticSearchUtil {
 
             ESProfile profile = null;
             if (response.getHits().getTotalHits() > 0) {
-                Map<String, Object> source = response.getHits().getAt(0).getSourceAsMap();
-                profile = ElasticSearch.parseSourceMap(source).flatMap(ElasticSearchParticipantDto::getProfile).orElse(null);
+                profile = ElasticSearch.parseSearchHit(response.getHits().getAt(0)).flatMap(ElasticSearchParticipantDto::getProfile).orElse(null);
                 if (profile != null) {
                     logger.info("Found ES profile for participant, guid: {} altpid: {}", profile.getParticipantGuid(), profile.getParticipantLegacyAltPid());
                 }
@@ -838,6 +994,20 @@ public class ElasticSearchUtil {
     }
 
     public static AbstractQueryBuilder<? extends AbstractQueryBuilder<?>> createESQuery(@NonNull String filter) {
+        return createESQuery(filter, null);
+    }
+
+    /**
+     * Query of the filter for the index, built once per filter and field types of the index.
+     * Lookups of participants by their ids are built every time, see FilterPlanCache.isParticipantLookup.
+     * The returned query is shared, callers are not allowed to change it
+     */
+    public static AbstractQueryBuilder<? extends AbstractQueryBuilder<?>> createESQuery(@NonNull String filter, String index) {
+        ESFieldTypes fieldTypes = getFieldTypes(index);
+        return FilterPlanCache.getESQuery(index, filter, fieldTypes, () -> buildESQuery(filter, fieldTypes));
+    }
+
+    private static AbstractQueryBuilder<? extends AbstractQueryBuilder<?>> buildESQuery(@NonNull String filter, ESFieldTypes fieldTypes) {
         String[] filters = filter.split(Filter.AND);
         BoolQueryBuilder finalQuery = new BoolQueryBuilder();
 
@@ -857,11 +1027,11 @@ public class ElasticSearchUtil {
                     if (f.contains(Filter.OR)) {
                         String[] orValues = f.split(Filter.OR);
                         for (String or : orValues) {
-                            createQuery(innerQuery, or, false);
+                            createQuery(innerQuery, or, false, fieldTypes);
                         }
                         finalQuery.must(innerQuery);
                     } else {
-                        createQuery(finalQuery, f, true);
+                        createQuery(finalQuery, f, true, fieldTypes);
                     }
                 } else if (f.contains(Filter.LARGER_EQUALS)) {
                     String[] nameValue = f.split(Filter.LARGER_EQUALS);
@@ -1236,7 +1406,12 @@ public class ElasticSearchUtil {
 
     public static void addingParticipantStructuredHits(@NonNull SearchResponse response, Map<String, Map<String, Object>> esData,
                                                        String ddp, String index) {
-        for (SearchHit hit : response.getHits()) {
+        addingParticipantStructuredHits(response.getHits(), esData, ddp, index);
+    }
+
+    public static void addingParticipantStructuredHits(@NonNull SearchHits hits, Map<String, Map<String, Object>> esData,
+                                                       String ddp, String index) {
+        for (SearchHit hit : hits) {
             Map<String, Object> sourceMap = hit.getSourceAsMap();
             sourceMap.put("ddp", ddp);
             if (sourceMap.containsKey(PROFILE)) {
@@ -1262,22 +1437,7 @@ public class ElasticSearchUtil {
         if (StringUtils.isNotBlank(index)) {
             logger.info("Collecting activity definitions from ES");
             try {
-                int scrollSize = 1000;
-
-                SearchRequest searchRequest = new SearchRequest(index);
-                SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
-                SearchResponse response = null;
-                int i = 0;
-                while (response == null || response.getHits().getHits().length != 0) {
-                    searchSourceBuilder.query(QueryBuilders.matchAllQuery());
-                    searchSourceBuilder.size(scrollSize);
-                    searchSourceBuilder.from(i * scrollSize);
-                    searchRequest.source(searchSourceBuilder);
-
-                    response = client.search(searchRequest, RequestOptions.DEFAULT);
-                    addingActivityDefinitionHits(response, esData);
-                    i++;
-                }
+                scroll(client, index, QueryBuilders.matchAllQuery(), null, hits -> addingActivityDefinitionHits(hits, esData));
             } catch (Exception e) {
                 throw new RuntimeException("Couldn't get activity definition from ES for instance " + instance.getName(), e);
             }
@@ -1287,7 +1447,11 @@ public class ElasticSearchUtil {
     }
 
     public static void addingActivityDefinitionHits(@NonNull SearchResponse response, Map<String, Map<String, Object>> esData) {
-        for (SearchHit hit : response.getHits()) {
+        addingActivityDefinitionHits(response.getHits(), esData);
+    }
+
+    public static void addingActivityDefinitionHits(@NonNull SearchHits hits, Map<String, Map<String, Object>> esData) {
+        for (SearchHit hit : hits) {
             Map<String, Object> sourceMap = hit.getSourceAsMap();
             String activityCode = (String) sourceMap.get(ACTIVITY_CODE);
             String activityVersion = (String) sourceMap.get(ACTIVITY_VERSION);
@@ -1299,7 +1463,7 @@ public class ElasticSearchUtil {
         }
     }
 
-    private static void createQuery(@NonNull BoolQueryBuilder finalQuery, @NonNull String filterPart, boolean must) {
+    private static void createQuery(@NonNull BoolQueryBuilder finalQuery, @NonNull String filterPart, boolean must, @NonNull ESFieldTypes fieldTypes) {
         boolean wildCard = false;
         String[] nameValue = filterPart.split(Filter.EQUALS);
         if (nameValue.length == 1) { //didn't contain EQUALS -> split LIKE
@@ -1314,7 +1478,7 @@ public class ElasticSearchUtil {
             if (nameValue[0].strip().startsWith(PROFILE)) {
                 if (nameValue[0].trim().endsWith(ESObjectConstants.HRUID) || nameValue[0].trim().endsWith("legacyShortId") ||
                         nameValue[0].trim().endsWith(GUID) || nameValue[0].trim().endsWith(LEGACY_ALT_PID)) {
-                    valueQueryBuilder(finalQuery, nameValue[0].trim(), userEntered, wildCard, must);
+                    valueQueryBuilder(finalQuery, nameValue[0].trim(), userEntered, wildCard, must, fieldTypes);
                 } else {
                     try {
                         long start = SystemUtil.getLongFromString(userEntered);
@@ -1323,11 +1487,11 @@ public class ElasticSearchUtil {
                         long end = SystemUtil.getLongFromDetailDateString(endDate);
                         rangeQueryBuilder(finalQuery, nameValue[0], start, end, must);
                     } catch (ParseException e) {
-                        valueQueryBuilder(finalQuery, nameValue[0].trim(), userEntered, wildCard, must);
+                        valueQueryBuilder(finalQuery, nameValue[0].trim(), userEntered, wildCard, must, fieldTypes);
                     }
                 }
             } else if (nameValue[0].startsWith(DSM)) {
-                valueQueryBuilder(finalQuery, nameValue[0].trim(), userEntered, wildCard, must);
+                valueQueryBuilder(finalQuery, nameValue[0].trim(), userEntered, wildCard, must, fieldTypes);
             } else if (nameValue[0].startsWith(DATA)) {
                 String[] dataParam = nameValue[0].split("\\.");
                 try {
@@ -1338,10 +1502,10 @@ public class ElasticSearchUtil {
                     rangeQueryBuilder(finalQuery, dataParam[1], start, end, must);
                 } catch (ParseException e) {
                     //was no date string so go for normal text
-                    mustOrSearch(finalQuery, dataParam[1].trim(), userEntered, wildCard, must);
+                    mustOrSearch(finalQuery, dataParam[1].trim(), userEntered, wildCard, must, fieldTypes);
                 }
             } else if (nameValue[0].startsWith(ADDRESS)) {
-                mustOrSearch(finalQuery, nameValue[0].trim(), userEntered, wildCard, must);
+                mustOrSearch(finalQuery, nameValue[0].trim(), userEntered, wildCard, must, fieldTypes);
             } else if (nameValue[0].startsWith(INVITATIONS)) {
                 String[] invitationParam = nameValue[0].split("\\.");
                 BoolQueryBuilder queryBuilder = new BoolQueryBuilder();
@@ -1388,7 +1552,7 @@ public class ElasticSearchUtil {
                         rangeQueryBuilder(queryBuilder, ACTIVITIES + DBConstants.ALIAS_DELIMITER + surveyParam[1], start, end, must);
                     } catch (ParseException e) {
                         //activity status
-                        valueQueryBuilder(queryBuilder, ACTIVITIES + DBConstants.ALIAS_DELIMITER + surveyParam[1].trim(), userEntered, wildCard, must);
+                        valueQueryBuilder(queryBuilder, ACTIVITIES + DBConstants.ALIAS_DELIMITER + surveyParam[1].trim(), userEntered, wildCard, must, fieldTypes);
                     }
                 } else if (STATUS.equals(surveyParam[1])) {
                     if (wildCard) {
@@ -1465,9 +1629,10 @@ public class ElasticSearchUtil {
         return false;
     }
 
-    private static void mustOrSearch(@NonNull BoolQueryBuilder finalQuery, @NonNull String name, @NonNull String value, boolean wildCard, boolean must) {
+    private static void mustOrSearch(@NonNull BoolQueryBuilder finalQuery, @NonNull String name, @NonNull String value, boolean wildCard, boolean must,
+                                     @NonNull ESFieldTypes fieldTypes) {
         if (must) {
-            valueQueryBuilder(finalQuery, name, value, wildCard, must);
+            valueQueryBuilder(finalQuery, name, value, wildCard, must, fieldTypes);
         } else {
             QueryBuilder tmpBuilder = findQueryBuilderForFieldName(finalQuery, name);
             if (tmpBuilder != null) {
@@ -1480,7 +1645,8 @@ public class ElasticSearchUtil {
         }
     }
 
-    private static void valueQueryBuilder(@NonNull BoolQueryBuilder finalQuery, @NonNull String name, @NonNull String query, boolean wildCard, boolean must) {
+    private static void valueQueryBuilder(@NonNull BoolQueryBuilder finalQuery, @NonNull String name, @NonNull String query, boolean wildCard, boolean must,
+                                          @NonNull ESFieldTypes fieldTypes) {
         if (wildCard) {
             if (must) {
                 finalQuery.must(QueryBuilders.wildcardQuery(name, "*" + query.toLowerCase() + "*"));
@@ -1489,43 +1655,13 @@ public class ElasticSearchUtil {
             }
         } else {
             if (must) {
-                String fieldType = getFieldTypeByFieldName(name);
-                String finalFieldName = getFinalFieldName(name, fieldType);
-                finalQuery.must(QueryBuilders.termQuery(finalFieldName, query));
+                finalQuery.must(QueryBuilders.termQuery(fieldTypes.getExactMatchFieldName(name), query));
             } else {
                 finalQuery.should(QueryBuilders.matchQuery(name, query));
             }
         }
     }
 
-    private static String getFinalFieldName(String fieldName, String fieldType) {
-        return fieldType.equals(TEXT) ? new StringBuilder(fieldName).append(KEYWORD).toString() : fieldName;
-    }
-
-    private static String getFieldsAsString(String anyStudy) {
-        return fieldMappings.get(anyStudy).source().string();
-    }
-
-    private static String getAnyStudy() {
-        return fieldMappings.keySet().stream().findAny().orElseThrow(() -> new RuntimeException("Error while getting study mapping from ES"));
-    }
-
-
-    private static String getFieldTypeByFieldName(String name) {
-        String anyStudy = getAnyStudy();
-        String fields = getFieldsAsString(anyStudy);
-        String[] fieldsArray = name.split(DOT_SEPARATOR);
-        String outerField = fieldsArray[OUTER_FIELD_INDEX];
-        String innerField = fieldsArray[INNER_FIELD_INDEX];
-        Gson gson = new Gson();
-        HashMap fieldsMap = gson.fromJson(fields, HashMap.class);
-        HashMap propertiesMap = gson.fromJson(String.valueOf(fieldsMap.get(PROPERTIES)), HashMap.class);
-        HashMap outerFieldsMap = gson.fromJson(String.valueOf(propertiesMap.get(outerField)), HashMap.class);
-        HashMap outerFieldPropertiesMap = gson.fromJson(String.valueOf(outerFieldsMap.get(PROPERTIES)), HashMap.class);
-        HashMap innerFieldMap = gson.fromJson(String.valueOf(outerFieldPropertiesMap.get(innerField)), HashMap.class);
-        return (String) innerFieldMap.get(TYPE);
-    }
-
     private static void rangeQueryBuilder(@NonNull BoolQueryBuilder finalQuery, @NonNull String name, long start, long end, boolean must) {
         if (must) {
             finalQuery.must(QueryBuilders.rangeQuery(name).gte(start).lte(end));
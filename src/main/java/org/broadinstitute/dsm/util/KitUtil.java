@@ -5,6 +5,9 @@ import com.easypost.model.Address;
 import com.easypost.model.Shipment;
 import com.easypost.model.Tracker;
 import com.easypost.model.TrackingDetail;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.Uninterruptibles;
+import lombok.Data;
 import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
 import org.broadinstitute.ddp.db.SimpleResult;
@@ -17,13 +20,24 @@ import org.broadinstitute.dsm.model.KitRequestSettings;
 import org.broadinstitute.dsm.model.KitType;
 import org.broadinstitute.dsm.model.Value;
 import org.broadinstitute.dsm.model.ddp.DDPParticipant;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
 import org.broadinstitute.dsm.statics.DBConstants;
 import org.broadinstitute.dsm.statics.QueryExtension;
+import org.elasticsearch.index.query.QueryBuilders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.broadinstitute.ddp.db.TransactionWrapper.inTransaction;
 
@@ -78,6 +92,15 @@ public class KitUtil {
     private static final String EASYPOST_FAILURE_STATUS = "failure";
     private static final String EASYPOST_RETURN_SENDER_STATUS = "return_to_sender";
     private static final String EASYPOST_ERROR_STATUS = "error";
+    private static final Set<String> EASYPOST_END_STATUSES = Set.of(EASYPOST_DELIVERED_STATUS, EASYPOST_FAILURE_STATUS,
+            EASYPOST_RETURN_SENDER_STATUS, EASYPOST_ERROR_STATUS);
+
+    private static final int DEFAULT_LABEL_CREATION_THREADS = 4;
+    private static final double DEFAULT_LABEL_CREATION_KITS_PER_SECOND = 2.0;
+    private static final int LABEL_UPDATE_BATCH_SIZE = 25;
+    private static final int DEFAULT_TRACKER_SYNC_THREADS = 8;
+    private static final double DEFAULT_TRACKER_SYNC_REQUESTS_PER_SECOND = 10.0;
+    private static final int KIT_STATUS_UPDATE_BATCH_SIZE = 100;
 
     /**
      * Query for not shipped express kit requests
@@ -120,80 +143,199 @@ public class KitUtil {
         return notShippedKits;
     }
 
+    /**
+     * Creates the labels of all triggered kits.
+     * The participants of each study are looked up in ES with one query, the shipments get bought by a small pool of workers
+     * (throttled to not run into the EasyPost rate limit) and the label information is written to the DB in batches.
+     * EasyPost uses one static api key, therefore the studies are done one after the other.
+     */
     public static void createLabel(List<KitRequestCreateLabel> kitsLabelTriggered) {
         DBUtil.updateBookmark(System.currentTimeMillis(), BOOKMARK_LABEL_CREATION_RUNNING);
 
-        for (KitRequestCreateLabel kitLabelTriggered : kitsLabelTriggered) {
-            EasyPostUtil easyPostUtil = new EasyPostUtil(kitLabelTriggered.getInstanceName());
-            Address toAddress = null;
+        Map<String, List<KitRequestCreateLabel>> kitsByInstance = kitsLabelTriggered.stream()
+                .collect(Collectors.groupingBy(KitRequestCreateLabel::getInstanceName, LinkedHashMap::new, Collectors.toList()));
+        ExecutorService executor = Executors.newFixedThreadPool(ConfigUtil.getInt(ApplicationConfigConstants.LABEL_CREATION_THREADS,
+                DEFAULT_LABEL_CREATION_THREADS));
+        RateLimiter rateLimiter = RateLimiter.create(ConfigUtil.getDouble(ApplicationConfigConstants.LABEL_CREATION_KITS_PER_SECOND,
+                DEFAULT_LABEL_CREATION_KITS_PER_SECOND));
+        List<KitRequestShipping.ShipmentLabel> notSavedLabels = new ArrayList<>();
+        try {
+            kitsByInstance.forEach((instanceName, kits) -> notSavedLabels.addAll(createLabels(executor, rateLimiter, instanceName, kits)));
+        }
+        finally {
+            executor.shutdown();
+            DBUtil.updateBookmark(0, BOOKMARK_LABEL_CREATION_RUNNING);
+        }
+        if (!notSavedLabels.isEmpty()) {
+            throw new RuntimeException("Couldn't save " + notSavedLabels.size() + " bought labels, kits "
+                    + notSavedLabels.stream().map(KitRequestShipping.ShipmentLabel::getDsmKitId).collect(Collectors.joining(", "))
+                    + " are still label triggered and need to get the logged label information instead of a new label");
+        }
+    }
+
+    /**
+     * @return labels which were bought but couldn't be saved
+     */
+    private static List<KitRequestShipping.ShipmentLabel> createLabels(@NonNull ExecutorService executor, @NonNull RateLimiter rateLimiter,
+                                                                       @NonNull String instanceName, @NonNull List<KitRequestCreateLabel> kits) {
+        long start = System.currentTimeMillis();
+        EasyPostUtil easyPostUtil;
+        Map<String, Map<String, Object>> participantsESData;
+        try {
+            easyPostUtil = new EasyPostUtil(instanceName);
+            participantsESData = getParticipantsESData(kits);
+        }
+        catch (Exception e) {
+            logger.error("Couldn't create labels for " + kits.size() + " kits of study " + instanceName, e);
+            return Collections.emptyList();
+        }
+
+        CompletionService<KitRequestShipping.ShipmentLabel> completionService = new ExecutorCompletionService<>(executor);
+        Set<Future<KitRequestShipping.ShipmentLabel>> pending = new HashSet<>();
+        for (KitRequestCreateLabel kitLabelTriggered : kits) {
+            pending.add(completionService.submit(() -> createShipmentLabel(easyPostUtil, rateLimiter, kitLabelTriggered, participantsESData)));
+        }
+        List<KitRequestShipping.ShipmentLabel> shipmentLabels = new ArrayList<>();
+        List<KitRequestShipping.ShipmentLabel> notSavedLabels = new ArrayList<>();
+        int labelCount = 0;
+        while (!pending.isEmpty()) {
+            Future<KitRequestShipping.ShipmentLabel> future;
             try {
-                if (StringUtils.isBlank(kitLabelTriggered.getAddressIdTo())) {
-                    DDPInstance ddpInstance = DDPInstance.getDDPInstance(kitLabelTriggered.getInstanceName());
+                future = completionService.take();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while creating labels for study " + instanceName + ", waiting for the labels which are already bought");
+                //kits which didn't start yet don't get a label, the running ones are paid for and need to be saved
+                pending.forEach(runningFuture -> runningFuture.cancel(false));
+                for (Future<KitRequestShipping.ShipmentLabel> runningFuture : pending) {
+                    addShipmentLabel(shipmentLabels, runningFuture);
+                }
+                break;
+            }
+            pending.remove(future);
+            addShipmentLabel(shipmentLabels, future);
+            //write labels as soon as a batch is full, so bought labels don't get lost if the job stops
+            if (shipmentLabels.size() >= LABEL_UPDATE_BATCH_SIZE) {
+                notSavedLabels.addAll(KitRequestShipping.updateKits(shipmentLabels));
+                labelCount += shipmentLabels.size();
+                shipmentLabels = new ArrayList<>();
+            }
+        }
+        notSavedLabels.addAll(KitRequestShipping.updateKits(shipmentLabels));
+        labelCount += shipmentLabels.size();
+        for (KitRequestShipping.ShipmentLabel notSavedLabel : notSavedLabels) {
+            logger.error("Label of kit " + notSavedLabel.getDsmKitId() + " of study " + instanceName + " was bought but couldn't be saved "
+                    + notSavedLabel.getLabelInformation());
+        }
+        logger.info("Created " + (labelCount - notSavedLabels.size()) + " labels for " + kits.size() + " kits of study " + instanceName + " in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return notSavedLabels;
+    }
 
-                    Map<String, Map<String, Object>> participantESData = ElasticSearchUtil.getFilteredDDPParticipantsFromES(ddpInstance,
-                            ElasticSearchUtil.BY_GUID + kitLabelTriggered.getDdpParticipantId());
-                    if (participantESData == null || participantESData.isEmpty()) {
-                        participantESData = ElasticSearchUtil.getFilteredDDPParticipantsFromES(ddpInstance, ElasticSearchUtil.BY_LEGACY_ALTPID + kitLabelTriggered.getDdpParticipantId());
-                    }
-                    DDPParticipant ddpParticipant = ElasticSearchUtil.getParticipantAsDDPParticipant(participantESData, kitLabelTriggered.getDdpParticipantId());
-                    if (ddpParticipant != null) {
-                        toAddress = KitRequestShipping.getToAddressId(easyPostUtil, kitLabelTriggered.getKitRequestSettings(), null, ddpParticipant);
-                        KitRequestShipping.updateRequest(kitLabelTriggered, ddpParticipant, kitLabelTriggered.getKitTyp(), kitLabelTriggered.getKitRequestSettings());
-                    }
-                    else {
-                        KitRequestShipping.deactivateKitRequest(kitLabelTriggered.getDsmKitRequestId(), "Participant not found", null, "System");
-                        logger.error("Didn't find participant " + kitLabelTriggered.getDdpParticipantId());
-                    }
+    private static void addShipmentLabel(List<KitRequestShipping.ShipmentLabel> shipmentLabels, Future<KitRequestShipping.ShipmentLabel> future) {
+        if (future.isCancelled()) {
+            return;
+        }
+        try {
+            KitRequestShipping.ShipmentLabel shipmentLabel = Uninterruptibles.getUninterruptibly(future);
+            if (shipmentLabel != null) {
+                shipmentLabels.add(shipmentLabel);
+            }
+        }
+        catch (ExecutionException e) {
+            logger.error("Couldn't create label", e.getCause());
+        }
+        catch (CancellationException e) {
+            //kit didn't start before the job was interrupted
+        }
+    }
+
+    /**
+     * Looks up all participants which are needed for the label creation of the given kits with one query per ES index
+     *
+     * @return participant ES data by guid and legacy altpid
+     */
+    private static Map<String, Map<String, Object>> getParticipantsESData(@NonNull List<KitRequestCreateLabel> kits) throws IOException {
+        Map<String, List<String>> participantIdsByIndex = new HashMap<>();
+        for (KitRequestCreateLabel kit : kits) {
+            boolean needsParticipant = StringUtils.isBlank(kit.getAddressIdTo())
+                    || (kit.getParticipantCollaboratorId() == null && StringUtils.isNotBlank(kit.getBaseURL()));
+            if (needsParticipant && StringUtils.isNotBlank(kit.getParticipantIndexES())) {
+                participantIdsByIndex.computeIfAbsent(kit.getParticipantIndexES(), k -> new ArrayList<>()).add(kit.getDdpParticipantId());
+            }
+        }
+        Map<String, Map<String, Object>> participantsESData = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : participantIdsByIndex.entrySet()) {
+            participantsESData.putAll(ElasticSearchUtil.getParticipantSourcesByIds(ElasticSearchUtil.getClientInstance(), entry.getKey(),
+                    entry.getValue(), null));
+        }
+        return participantsESData;
+    }
+
+    private static KitRequestShipping.ShipmentLabel createShipmentLabel(@NonNull EasyPostUtil easyPostUtil, @NonNull RateLimiter rateLimiter,
+                                                                        @NonNull KitRequestCreateLabel kitLabelTriggered,
+                                                                        @NonNull Map<String, Map<String, Object>> participantsESData) {
+        rateLimiter.acquire();
+        Address toAddress = null;
+        try {
+            if (StringUtils.isBlank(kitLabelTriggered.getAddressIdTo())) {
+                DDPParticipant ddpParticipant = ElasticSearchUtil.getParticipantAsDDPParticipant(participantsESData, kitLabelTriggered.getDdpParticipantId());
+                if (ddpParticipant != null) {
+                    toAddress = KitRequestShipping.getToAddressId(easyPostUtil, kitLabelTriggered.getKitRequestSettings(), null, ddpParticipant);
+                    KitRequestShipping.updateRequest(kitLabelTriggered, ddpParticipant, kitLabelTriggered.getKitTyp(), kitLabelTriggered.getKitRequestSettings());
                 }
                 else {
-                    //uploaded pt
-                    toAddress = KitRequestShipping.getToAddressId(easyPostUtil, kitLabelTriggered.getKitRequestSettings(), kitLabelTriggered.getAddressIdTo(), null);
-                    //uploaded pt is missing collaborator ids -> due to migration and upload with wrong shortId
-                    if (kitLabelTriggered.getParticipantCollaboratorId() == null) {
-                        if (StringUtils.isNotBlank(kitLabelTriggered.getBaseURL())) {
+                    KitRequestShipping.deactivateKitRequest(kitLabelTriggered.getDsmKitRequestId(), "Participant not found", null, "System");
+                    logger.error("Didn't find participant " + kitLabelTriggered.getDdpParticipantId());
+                }
+            }
+            else {
+                //uploaded pt
+                toAddress = KitRequestShipping.getToAddressId(easyPostUtil, kitLabelTriggered.getKitRequestSettings(), kitLabelTriggered.getAddressIdTo(), null);
+                //uploaded pt is missing collaborator ids -> due to migration and upload with wrong shortId
+                if (kitLabelTriggered.getParticipantCollaboratorId() == null) {
+                    if (StringUtils.isNotBlank(kitLabelTriggered.getBaseURL())) {
+                        //DDP requested pt
+                        DDPParticipant ddpParticipant = null;
+                        if (StringUtils.isNotBlank(kitLabelTriggered.getParticipantIndexES())) {
+                            ddpParticipant = ElasticSearchUtil.getParticipantAsDDPParticipant(participantsESData, kitLabelTriggered.getDdpParticipantId());
+                        }
+                        else {
                             //DDP requested pt
-                            DDPParticipant ddpParticipant = null;
-                            if (StringUtils.isNotBlank(kitLabelTriggered.getParticipantIndexES())) {
-                                Map<String, Map<String, Object>> participantsESData = ElasticSearchUtil.getDDPParticipantsFromES(kitLabelTriggered.getInstanceName(), kitLabelTriggered.getParticipantIndexES());
-                                ddpParticipant = ElasticSearchUtil.getParticipantAsDDPParticipant(participantsESData, kitLabelTriggered.getDdpParticipantId());
-                            }
-                            else {
-                                //DDP requested pt
-                                ddpParticipant = DDPParticipant.getDDPParticipant(kitLabelTriggered.getBaseURL(), kitLabelTriggered.getInstanceName(),
-                                        kitLabelTriggered.getDdpParticipantId(), kitLabelTriggered.isHasAuth0Token());
+                            ddpParticipant = DDPParticipant.getDDPParticipant(kitLabelTriggered.getBaseURL(), kitLabelTriggered.getInstanceName(),
+                                    kitLabelTriggered.getDdpParticipantId(), kitLabelTriggered.isHasAuth0Token());
 
+                        }
+                        if (ddpParticipant != null) {
+                            String collaboratorParticipantId = KitRequestShipping.generateBspParticipantID(kitLabelTriggered.getCollaboratorIdPrefix(),
+                                    kitLabelTriggered.getKitRequestSettings().getCollaboratorParticipantLengthOverwrite(), ddpParticipant.getShortId());
+                            String bspCollaboratorSampleType = kitLabelTriggered.getKitTyp().getKitTypeName();
+                            if (kitLabelTriggered.getKitRequestSettings().getCollaboratorSampleTypeOverwrite() != null) {
+                                bspCollaboratorSampleType = kitLabelTriggered.getKitRequestSettings().getCollaboratorSampleTypeOverwrite();
                             }
-                            if (ddpParticipant != null) {
-                                String collaboratorParticipantId = KitRequestShipping.generateBspParticipantID(kitLabelTriggered.getCollaboratorIdPrefix(),
-                                        kitLabelTriggered.getKitRequestSettings().getCollaboratorParticipantLengthOverwrite(), ddpParticipant.getShortId());
-                                String bspCollaboratorSampleType = kitLabelTriggered.getKitTyp().getKitTypeName();
-                                if (kitLabelTriggered.getKitRequestSettings().getCollaboratorSampleTypeOverwrite() != null) {
-                                    bspCollaboratorSampleType = kitLabelTriggered.getKitRequestSettings().getCollaboratorSampleTypeOverwrite();
-                                }
-                                if (collaboratorParticipantId == null) {
-                                    logger.warn("CollaboratorParticipantId was too long " + ddpParticipant.getParticipantId());
-                                }
-                                else {
-                                    updateCollaboratorIds(kitLabelTriggered, collaboratorParticipantId, bspCollaboratorSampleType);
-                                }
+                            if (collaboratorParticipantId == null) {
+                                logger.warn("CollaboratorParticipantId was too long " + ddpParticipant.getParticipantId());
+                            }
+                            else {
+                                updateCollaboratorIds(kitLabelTriggered, collaboratorParticipantId, bspCollaboratorSampleType);
                             }
                         }
-                        else {
-                            logger.error("Kit of pt  " + kitLabelTriggered.getDdpParticipantId() + " w/ kit id " + kitLabelTriggered.getDsmKitId() + " is missing collaborator id");
-                        }
+                    }
+                    else {
+                        logger.error("Kit of pt  " + kitLabelTriggered.getDdpParticipantId() + " w/ kit id " + kitLabelTriggered.getDsmKitId() + " is missing collaborator id");
                     }
                 }
             }
-            catch (Exception e) {
-                throw new RuntimeException("Couldn't get address for participant " + kitLabelTriggered.getDdpParticipantId() + " in study " + kitLabelTriggered.getInstanceName() + " w/ kit id " + kitLabelTriggered.getDsmKitId(), e);
-            }
-            if (toAddress != null) {
-                buyShipmentForKit(easyPostUtil, kitLabelTriggered.getDsmKitId(), kitLabelTriggered.getKitRequestSettings(),
-                        kitLabelTriggered.getKitTyp(), toAddress.getId(), kitLabelTriggered.getBillingReference());
-            }
         }
-
-        DBUtil.updateBookmark(0, BOOKMARK_LABEL_CREATION_RUNNING);
+        catch (Exception e) {
+            throw new RuntimeException("Couldn't get address for participant " + kitLabelTriggered.getDdpParticipantId() + " in study " + kitLabelTriggered.getInstanceName() + " w/ kit id " + kitLabelTriggered.getDsmKitId(), e);
+        }
+        if (toAddress != null) {
+            return buyShipmentForKit(easyPostUtil, kitLabelTriggered.getDsmKitId(), kitLabelTriggered.getKitRequestSettings(),
+                    kitLabelTriggered.getKitTyp(), toAddress, kitLabelTriggered.getBillingReference());
+        }
+        return null;
     }
 
     public static List<KitRequestCreateLabel> getListOfKitsLabelTriggered() {
@@ -249,14 +391,13 @@ public class KitUtil {
         return kitsLabelTriggered;
     }
 
-    private static void buyShipmentForKit(@NonNull EasyPostUtil easyPostUtil, @NonNull String dsmKitId, @NonNull KitRequestSettings kitRequestSettings,
-                                          @NonNull KitType kitType, @NonNull String addressIdTo, String billingReference) {
+    private static KitRequestShipping.ShipmentLabel buyShipmentForKit(@NonNull EasyPostUtil easyPostUtil, @NonNull String dsmKitId,
+                                                                      @NonNull KitRequestSettings kitRequestSettings, @NonNull KitType kitType,
+                                                                      @NonNull Address toAddress, String billingReference) {
         String errorMessage = "";
         Shipment participantShipment = null;
         Shipment returnShipment = null;
-        Address toAddress = null;
         try {
-            toAddress = KitRequestShipping.getToAddressId(easyPostUtil, kitRequestSettings, addressIdTo, null);
             participantShipment = KitRequestShipping.getShipment(easyPostUtil, billingReference, kitType, kitRequestSettings, false, toAddress);
         }
         catch (Exception e) {
@@ -269,7 +410,7 @@ public class KitUtil {
         catch (Exception e) {
             errorMessage += "Return: " + e.getMessage();
         }
-        KitRequestShipping.updateKit(dsmKitId, participantShipment, returnShipment, errorMessage, toAddress, false);
+        return new KitRequestShipping.ShipmentLabel(dsmKitId, participantShipment, returnShipment, errorMessage, toAddress, false);
     }
 
     public static String getKitCollaboratorId(@NonNull String ddpParticipantId, @NonNull String realmId) {
@@ -368,74 +509,134 @@ public class KitUtil {
         return resultBoolean;
     }
 
-    public static void getKitStatus() {
+    /**
+     * Checks the EasyPost trackers of all kits which are not in an end status yet and writes the new end statuses to the DB.
+     * Kits which already have an end status are not selected by the query anymore.
+     * The shipments are fetched by a pool of workers (throttled to not run into the EasyPost rate limit) and the changes
+     * are written in batches with one short transaction per batch
+     */
+    public static TrackerSyncMetrics getKitStatus() {
+        TrackerSyncMetrics metrics = new TrackerSyncMetrics();
         //get list of ddps which have participant_status_endpoint
         List<DDPInstance> ddpInstanceList = DDPInstance.getDDPInstanceListWithRole(DBConstants.PARTICIPANT_STATUS_ENDPOINT);
-        for (DDPInstance ddpInstance : ddpInstanceList) {
-            if (ddpInstance.isHasRole()) {
-                //get list of kits for given ddp
-                List<KitRequestShipping> kitRequestShippingList = getKitRequestsToCheckStatus(ddpInstance.getName());
-                EasyPostUtil easyPostUtil = new EasyPostUtil(ddpInstance.getName());
-                SimpleResult results = inTransaction((conn) -> {
-
-                    for (KitRequestShipping kitRequest : kitRequestShippingList) {
-                        if (StringUtils.isNotBlank(kitRequest.getEasypostToId()) && kitRequest.getEasypostToId().startsWith("shp_")) {
-                            try {
-                                Shipment shipment = easyPostUtil.getShipment(kitRequest.getEasypostToId());
-                                Tracker tracker = shipment.getTracker();
-                                if (tracker != null) {
-                                    String status = tracker.getStatus();
-                                    if (StringUtils.isNotBlank(status)) {
-                                        if (EASYPOST_DELIVERED_STATUS.equals(status) || EASYPOST_FAILURE_STATUS.equals(status) ||
-                                                EASYPOST_ERROR_STATUS.equals(status) || EASYPOST_RETURN_SENDER_STATUS.equals(status)) {
-                                            String message = null;
-                                            Long deliveredDate = null;
-                                            List<TrackingDetail> details = tracker.getTrackingDetails();
-                                            for (int i = details.size() - 1; i >= 0; i--) {
-                                                TrackingDetail detail = details.get(i);
-                                                //only check for time, if kit was delivered
-                                                if (EASYPOST_DELIVERED_STATUS.equals(detail.getStatus())) {
-                                                    //get time of delivery
-                                                    deliveredDate = detail.getDatetime().getTime();
-                                                    break;
-                                                }
-                                                else if (status.equals(detail.getStatus())) {
-                                                    //get message of the other end statuses
-                                                    deliveredDate = detail.getDatetime().getTime();
-                                                    message = detail.getMessage();
-                                                    break;
-                                                }
-                                            }
-                                            //write info in db
-                                            String kitMessage = kitRequest.getMessage();
-                                            if (StringUtils.isNotBlank(message)) {
-                                                if (StringUtils.isNotBlank(kitMessage)) {
-                                                    kitMessage = kitMessage.concat(" " + message);
-                                                }
-                                                else {
-                                                    kitMessage = message;
-                                                }
-                                            }
-                                            SimpleResult result = updateKit(conn, status, deliveredDate, kitMessage, kitRequest.getDsmKitId());
-                                            if (result.resultException != null) {
-                                                logger.error("Error updating kit for kit request " + kitRequest.getDsmKitRequestId() + " of realm " + ddpInstance.getName(), result.resultException);
-                                            }
-
-                                        }
-                                    }
-                                }
-                            }
-                            catch (EasyPostException epe) {
-                                logger.error("Couldn't get shipment information from Easypost ", epe);
-                            }
+        ExecutorService executor = Executors.newFixedThreadPool(ConfigUtil.getInt(ApplicationConfigConstants.TRACKER_SYNC_THREADS,
+                DEFAULT_TRACKER_SYNC_THREADS));
+        RateLimiter rateLimiter = RateLimiter.create(ConfigUtil.getDouble(ApplicationConfigConstants.TRACKER_SYNC_REQUESTS_PER_SECOND,
+                DEFAULT_TRACKER_SYNC_REQUESTS_PER_SECOND));
+        try {
+            for (DDPInstance ddpInstance : ddpInstanceList) {
+                if (ddpInstance.isHasRole() && !getKitStatus(executor, rateLimiter, ddpInstance.getName(), metrics)) {
+                    //workers of the interrupted realm might still be running, so the EasyPost api key must not change anymore
+                    logger.warn("Stopped syncing EasyPost trackers after realm " + ddpInstance.getName());
+                    break;
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        logger.info("Synced EasyPost trackers: " + metrics);
+        return metrics;
+    }
 
-                        }
+    /**
+     * @return false if the sync got interrupted, the workers are stopped then and no other realm may be checked
+     */
+    private static boolean getKitStatus(@NonNull ExecutorService executor, @NonNull RateLimiter rateLimiter, @NonNull String realm,
+                                     @NonNull TrackerSyncMetrics metrics) {
+        //get list of kits for given ddp
+        List<KitRequestShipping> kitRequestShippingList = getKitRequestsToCheckStatus(realm);
+        //easypost api key is static, therefore one realm after the other
+        EasyPostUtil easyPostUtil = new EasyPostUtil(realm);
+        CompletionService<KitStatusUpdate> completionService = new ExecutorCompletionService<>(executor);
+        int submitted = 0;
+        for (KitRequestShipping kitRequest : kitRequestShippingList) {
+            if (StringUtils.isNotBlank(kitRequest.getEasypostToId()) && kitRequest.getEasypostToId().startsWith("shp_")) {
+                completionService.submit(() -> {
+                    rateLimiter.acquire();
+                    long start = System.currentTimeMillis();
+                    Shipment shipment;
+                    try {
+                        shipment = easyPostUtil.getShipment(kitRequest.getEasypostToId());
                     }
-                    return null;
+                    catch (EasyPostException epe) {
+                        metrics.recordApiCall(System.currentTimeMillis() - start, true);
+                        logger.error("Couldn't get shipment information from Easypost ", epe);
+                        return null;
+                    }
+                    metrics.recordApiCall(System.currentTimeMillis() - start, false);
+                    return getKitStatusUpdate(kitRequest, shipment.getTracker());
                 });
+                submitted++;
+            }
+        }
+
+        List<KitStatusUpdate> kitStatusUpdates = new ArrayList<>();
+        for (int i = 0; i < submitted; i++) {
+            try {
+                KitStatusUpdate kitStatusUpdate = completionService.take().get();
+                if (kitStatusUpdate != null) {
+                    kitStatusUpdates.add(kitStatusUpdate);
+                }
+            }
+            catch (ExecutionException e) {
+                logger.error("Couldn't check shipment status of kit of realm " + realm, e.getCause());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while checking shipment status of kits of realm " + realm);
+                executor.shutdownNow();
+                metrics.addChangedKits(updateKits(kitStatusUpdates, realm));
+                return false;
+            }
+            if (kitStatusUpdates.size() >= KIT_STATUS_UPDATE_BATCH_SIZE) {
+                metrics.addChangedKits(updateKits(kitStatusUpdates, realm));
+                kitStatusUpdates = new ArrayList<>();
+            }
+        }
+        metrics.addChangedKits(updateKits(kitStatusUpdates, realm));
+        return true;
+    }
+
+    /**
+     * @return the end status of the shipment, or null if the shipment isn't in an end status yet
+     */
+    private static KitStatusUpdate getKitStatusUpdate(@NonNull KitRequestShipping kitRequest, Tracker tracker) {
+        if (tracker == null) {
+            return null;
+        }
+        String status = tracker.getStatus();
+        if (StringUtils.isBlank(status) || !EASYPOST_END_STATUSES.contains(status)) {
+            return null;
+        }
+        String message = null;
+        Long deliveredDate = null;
+        List<TrackingDetail> details = tracker.getTrackingDetails();
+        for (int i = details.size() - 1; i >= 0; i--) {
+            TrackingDetail detail = details.get(i);
+            //only check for time, if kit was delivered
+            if (EASYPOST_DELIVERED_STATUS.equals(detail.getStatus())) {
+                //get time of delivery
+                deliveredDate = detail.getDatetime().getTime();
+                break;
+            }
+            else if (status.equals(detail.getStatus())) {
+                //get message of the other end statuses
+                deliveredDate = detail.getDatetime().getTime();
+                message = detail.getMessage();
+                break;
+            }
+        }
+        String kitMessage = kitRequest.getMessage();
+        if (StringUtils.isNotBlank(message)) {
+            if (StringUtils.isNotBlank(kitMessage)) {
+                kitMessage = kitMessage.concat(" " + message);
+            }
+            else {
+                kitMessage = message;
             }
         }
-        //update status of kit
+        return new KitStatusUpdate(kitRequest.getDsmKitId(), kitRequest.getDsmKitRequestId(), status, deliveredDate, kitMessage);
     }
 
     private static List<KitRequestShipping> getKitRequestsToCheckStatus(@NonNull String realm) {
@@ -470,24 +671,59 @@ public class KitUtil {
         return kits;
     }
 
-    // update kit with label trigger user and date
-    private static SimpleResult updateKit(@NonNull Connection conn, String status, Long date, String message, String dsmKitId) {
-        SimpleResult dbVals = new SimpleResult();
-        try (PreparedStatement stmt = conn.prepareStatement(SQL_UPDATE_KIT)) {
-            stmt.setString(1, status);
-            stmt.setLong(2, date);
-            stmt.setString(3, message);
-            stmt.setString(4, dsmKitId);
-
-            int result = stmt.executeUpdate();
-            if (result != 1) {
-                throw new RuntimeException("Error updating kit " + dsmKitId + " it was updating " + result + " rows");
-            }
+    // update kits with end status of their shipment, all in one batch
+    private static int updateKits(@NonNull List<KitStatusUpdate> kitStatusUpdates, @NonNull String realm) {
+        if (kitStatusUpdates.isEmpty()) {
+            return 0;
         }
-        catch (Exception e) {
-            dbVals.resultException = e;
+        SimpleResult results = inTransaction((conn) -> {
+            SimpleResult dbVals = new SimpleResult();
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_UPDATE_KIT)) {
+                for (KitStatusUpdate kitStatusUpdate : kitStatusUpdates) {
+                    stmt.setString(1, kitStatusUpdate.getStatus());
+                    if (kitStatusUpdate.getDate() != null) {
+                        stmt.setLong(2, kitStatusUpdate.getDate());
+                    }
+                    else {
+                        stmt.setNull(2, Types.BIGINT);
+                    }
+                    stmt.setString(3, kitStatusUpdate.getMessage());
+                    stmt.setString(4, kitStatusUpdate.getDsmKitId());
+                    stmt.addBatch();
+                }
+                int[] result = stmt.executeBatch();
+                int updated = 0;
+                for (int i = 0; i < result.length; i++) {
+                    if (result[i] == 1 || result[i] == Statement.SUCCESS_NO_INFO) {
+                        updated++;
+                    }
+                    else {
+                        logger.error("Error updating kit for kit request " + kitStatusUpdates.get(i).getDsmKitRequestId() + " of realm " + realm
+                                + " it was updating " + result[i] + " rows");
+                    }
+                }
+                dbVals.resultValue = updated;
+            }
+            catch (SQLException e) {
+                dbVals.resultException = e;
+            }
+            return dbVals;
+        });
+
+        if (results.resultException != null) {
+            logger.error("Error updating " + kitStatusUpdates.size() + " kits of realm " + realm, results.resultException);
+            return 0;
         }
-        return dbVals;
+        return (int) results.resultValue;
+    }
+
+    @Data
+    private static class KitStatusUpdate {
+        private final String dsmKitId;
+        private final String dsmKitRequestId;
+        private final String status;
+        private final Long date;
+        private final String message;
     }
 
     public static List<KitRequestShipping> findSpecialBehaviorKits(@NonNull NotificationUtil notificationUtil) {
@@ -508,38 +744,54 @@ public class KitUtil {
                 // only look up kits if instance has special kit behavior for uploaded and has data in ES
                 if (uploaded != null && StringUtils.isNotBlank(ddpInstance.getParticipantIndexES())) {
                     List<org.broadinstitute.dsm.db.KitType> kitTypes = org.broadinstitute.dsm.db.KitType.getKitTypes(ddpInstance.getName(), null);
-                    Map<String, Map<String, Object>> participants = ElasticSearchUtil.getDDPParticipantsFromES(ddpInstance.getName(), ddpInstance.getParticipantIndexES());
-                    if (participants != null) {
-                        for (org.broadinstitute.dsm.db.KitType kitType : kitTypes) {
-                            List<KitRequestShipping> kitRequestList = KitRequestShipping.getKitRequestsByRealm(ddpInstance.getName(),
-                                    InstanceSettings.INSTANCE_SETTING_UPLOADED, kitType.getName());
-                            for (KitRequestShipping kit : kitRequestList) {
-                                //ignore if kit was reactivated with special behavior alert
-                                if (!IGNORE_AUTO_DEACTIVATION.equals(kit.getMessage())) {
-                                    Map<String, Object> participant = participants.get(kit.getParticipantId());
-                                    if (participant != null) {
-                                        logger.info("Checking pt " + kit.getParticipantId() + " for special behavior");
-                                        boolean specialBehavior = InstanceSettings.shouldKitBehaveDifferently(participant, uploaded);
-                                        if (specialBehavior) {
-                                            KitRequestShipping.deactivateKitRequest(kit.getDsmKitRequestId(), SYSTEM_AUTOMATICALLY_DEACTIVATED + ": " + uploaded.getValue(),
-                                                    DSMServer.getDDPEasypostApiKey(ddpInstance.getName()), "System");
-                                            if (InstanceSettings.TYPE_NOTIFICATION.equals(uploaded.getType())) {
-                                                String message = kitType.getName() + " kit for participant " + kit.getParticipantId() + " (<b>" + kit.getCollaboratorParticipantId()
-                                                        + "</b>) was deactivated per background job <br>. " + uploaded.getValue();
-                                                notificationUtil.sentNotification(ddpInstance.getNotificationRecipient(), message, NotificationUtil.UNIVERSAL_NOTIFICATION_TEMPLATE, NotificationUtil.DSM_SUBJECT);
-                                            }
-                                            else {
-                                                logger.error("Instance settings behavior for kit was not known " + uploaded.getType());
-                                            }
-                                        }
-                                    }
-                                }
+                    //only kits which weren't reactivated with special behavior alert need to be checked
+                    Map<String, List<KitRequestShipping>> kitsToCheck = new HashMap<>();
+                    Map<String, String> kitTypeNames = new HashMap<>();
+                    for (org.broadinstitute.dsm.db.KitType kitType : kitTypes) {
+                        List<KitRequestShipping> kitRequestList = KitRequestShipping.getKitRequestsByRealm(ddpInstance.getName(),
+                                InstanceSettings.INSTANCE_SETTING_UPLOADED, kitType.getName());
+                        for (KitRequestShipping kit : kitRequestList) {
+                            if (!IGNORE_AUTO_DEACTIVATION.equals(kit.getMessage())) {
+                                kitsToCheck.computeIfAbsent(kit.getParticipantId(), k -> new ArrayList<>()).add(kit);
+                                kitTypeNames.put(kit.getDsmKitRequestId(), kitType.getName());
                             }
                         }
                     }
+                    if (!kitsToCheck.isEmpty()) {
+                        final Value behavior = uploaded;
+                        //ES data is streamed page by page instead of loading all participants of the study at once
+                        ElasticSearchUtil.forEachParticipantsPage(ddpInstance.getName(), ddpInstance.getParticipantIndexES(), QueryBuilders.matchAllQuery(),
+                                participants -> participants.forEach((participantId, participant) -> {
+                                    List<KitRequestShipping> kits = kitsToCheck.get(participantId);
+                                    if (kits != null) {
+                                        for (KitRequestShipping kit : kits) {
+                                            checkSpecialBehaviorKit(notificationUtil, ddpInstance, behavior, kit, participant,
+                                                    kitTypeNames.get(kit.getDsmKitRequestId()));
+                                        }
+                                    }
+                                }));
+                    }
                 }
             }
         }
         return null;
     }
+
+    private static void checkSpecialBehaviorKit(@NonNull NotificationUtil notificationUtil, @NonNull DDPInstance ddpInstance, @NonNull Value uploaded,
+                                                @NonNull KitRequestShipping kit, @NonNull Map<String, Object> participant, String kitTypeName) {
+        logger.info("Checking pt " + kit.getParticipantId() + " for special behavior");
+        boolean specialBehavior = InstanceSettings.shouldKitBehaveDifferently(participant, uploaded);
+        if (specialBehavior) {
+            KitRequestShipping.deactivateKitRequest(kit.getDsmKitRequestId(), SYSTEM_AUTOMATICALLY_DEACTIVATED + ": " + uploaded.getValue(),
+                    DSMServer.getDDPEasypostApiKey(ddpInstance.getName()), "System");
+            if (InstanceSettings.TYPE_NOTIFICATION.equals(uploaded.getType())) {
+                String message = kitTypeName + " kit for participant " + kit.getParticipantId() + " (<b>" + kit.getCollaboratorParticipantId()
+                        + "</b>) was deactivated per background job <br>. " + uploaded.getValue();
+                notificationUtil.sentNotification(ddpInstance.getNotificationRecipient(), message, NotificationUtil.UNIVERSAL_NOTIFICATION_TEMPLATE, NotificationUtil.DSM_SUBJECT);
+            }
+            else {
+                logger.error("Instance settings behavior for kit was not known " + uploaded.getType());
+            }
+        }
+    }
 }
@@ -8,6 +8,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
+import java.util.Collection;
 
 import static org.broadinstitute.ddp.db.TransactionWrapper.inTransaction;
 
@@ -85,6 +86,38 @@ public class MedicalRecordUtil {
         }
     }
 
+    /**
+     * Same as {@link #writeNewRecordIntoDb(Connection, String, String, String)} for a whole batch of participants
+     */
+    public static void writeNewRecordsIntoDb(@NonNull Connection conn, @NonNull String query, @NonNull Collection<String> ids, @NonNull String instanceId) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        long currentMilli = System.currentTimeMillis();
+        try (PreparedStatement insertNewRecord = conn.prepareStatement(query)) {
+            for (String id : ids) {
+                insertNewRecord.setString(1, id);
+                insertNewRecord.setString(2, instanceId);
+                insertNewRecord.setLong(3, currentMilli);
+                insertNewRecord.setString(4, SYSTEM);
+                insertNewRecord.setLong(5, currentMilli);
+                insertNewRecord.setString(6, SYSTEM);
+                insertNewRecord.addBatch();
+            }
+            int[] results = insertNewRecord.executeBatch();
+            for (int result : results) {
+                // 1 (inserted) or 2 (updated) is good
+                if (result == 0 || result == Statement.EXECUTE_FAILED) {
+                    throw new RuntimeException("Error updating row");
+                }
+            }
+            logger.info("Inserted/updated records for " + ids.size() + " participants");
+        }
+        catch (SQLException e) {
+            throw new RuntimeException("Error inserting new records ", e);
+        }
+    }
+
     public static Number isInstitutionInDB(@NonNull Connection conn, @NonNull String participantId, @NonNull String institutionId,
                                            @NonNull String instanceId, @NonNull String type) {
         try (PreparedStatement checkParticipant = conn.prepareStatement(SQL_SELECT_MEDICAL_RECORD_ID_FOR_PARTICIPANT)) {
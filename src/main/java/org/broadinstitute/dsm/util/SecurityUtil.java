@@ -13,6 +13,7 @@ import org.apache.http.ssl.TrustStrategy;
 import org.broadinstitute.ddp.security.Auth0Util;
 import org.broadinstitute.ddp.security.SecurityHelper;
 import org.broadinstitute.dsm.DSMServer;
+import org.broadinstitute.dsm.statics.ApplicationConfigConstants;
 import spark.Request;
 
 import java.security.cert.X509Certificate;
@@ -27,10 +28,18 @@ public class SecurityUtil {
     public static final String CLAIM_ISSUER = "iss";
     public static final String SIGNER = "org.broadinstitute.kdux";
 
+    private static final long DEFAULT_AUTH_CACHE_MAX_ENTRIES = 10000;
+    private static final long DEFAULT_AUTH_CACHE_MAX_AGE_SECONDS = 60 * 60;
+
     private static String secret;
+    private static AuthenticationCache authenticationCache;
 
     public SecurityUtil(@NonNull String secret){
         this.secret = secret;
+        authenticationCache = new AuthenticationCache(token -> SecurityHelper.verifyAndGetClaims(secret, token),
+                ConfigUtil.getLong(ApplicationConfigConstants.AUTH_CACHE_MAX_ENTRIES, DEFAULT_AUTH_CACHE_MAX_ENTRIES),
+                ConfigUtil.getLong(ApplicationConfigConstants.AUTH_CACHE_MAX_AGE_SECONDS, DEFAULT_AUTH_CACHE_MAX_AGE_SECONDS) * 1000,
+                System::currentTimeMillis);
     }
 
     public enum ResultType {
@@ -174,13 +183,21 @@ public class SecurityUtil {
         return userId;
     }
 
+    /**
+     * @return true if the request has a valid DSM token, checked against the cache of verified tokens first
+     */
+    public static boolean isTokenValid(@NonNull Request request) {
+        Map<String, Claim> claims = getClaims(request);
+        return claims != null && !claims.isEmpty();
+    }
+
     private static Map<String, Claim> getClaims(@NonNull Request request) {
         String header = request.headers(JWTRouteFilter.AUTHORIZATION);
         if (StringUtils.isNotBlank(header)) {
             if (header.contains("Bearer ")) {
-                String token = header.replaceFirst("Bearer ", "");
+                String token = header.replaceFirst("Bearer ", "").trim();
                 if (StringUtils.isNotBlank(token)) {
-                    return SecurityHelper.verifyAndGetClaims(secret, token);
+                    return authenticationCache.getClaims(token);
                 }
             }
         }
@@ -0,0 +1,69 @@
+package org.broadinstitute.dsm.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Numbers of one run of the EasyPost tracker sync.
+ * Calls get recorded by several workers at the same time, therefore everything is thread safe
+ */
+public class TrackerSyncMetrics {
+
+    private final long start = System.currentTimeMillis();
+    private final AtomicInteger checkedKits = new AtomicInteger();
+    private final AtomicInteger changedKits = new AtomicInteger();
+    private final AtomicInteger failedCalls = new AtomicInteger();
+    private final List<Long> apiLatencies = Collections.synchronizedList(new ArrayList<>());
+
+    public void recordApiCall(long latencyMillis, boolean failed) {
+        apiLatencies.add(latencyMillis);
+        if (failed) {
+            failedCalls.incrementAndGet();
+        }
+        else {
+            checkedKits.incrementAndGet();
+        }
+    }
+
+    public void addChangedKits(int kits) {
+        changedKits.addAndGet(kits);
+    }
+
+    public int getCheckedKits() {
+        return checkedKits.get();
+    }
+
+    public int getChangedKits() {
+        return changedKits.get();
+    }
+
+    public int getFailedCalls() {
+        return failedCalls.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return api latency in ms of the given percentile (nearest rank), 0 if there was no call
+     */
+    public long getApiLatencyPercentile(double percentile) {
+        List<Long> latencies;
+        synchronized (apiLatencies) {
+            latencies = new ArrayList<>(apiLatencies);
+        }
+        if (latencies.isEmpty()) {
+            return 0L;
+        }
+        Collections.sort(latencies);
+        int rank = (int) Math.ceil(percentile / 100.0 * latencies.size());
+        return latencies.get(Math.min(Math.max(rank, 1), latencies.size()) - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "checked " + getCheckedKits() + " kits, changed " + getChangedKits() + ", failed calls " + getFailedCalls()
+                + ", api latency p50=" + getApiLatencyPercentile(50) + "ms p95=" + getApiLatencyPercentile(95)
+                + "ms p99=" + getApiLatencyPercentile(99) + "ms, took " + (System.currentTimeMillis() - start) + "ms";
+    }
+}
@@ -1,5 +1,8 @@
 package org.broadinstitute.dsm.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
 import org.broadinstitute.ddp.db.SimpleResult;
@@ -16,6 +19,9 @@ import spark.Request;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.broadinstitute.ddp.db.TransactionWrapper.inTransaction;
 
@@ -49,6 +55,7 @@ public class UserUtil {
     public static final String USER_ID = "userId";
 
     private static final String NO_USER_ROLE = "NO_USER_ROLE";
+    private static final String CACHE_KEY_SEPARATOR = "/";
 
     private static final String MAILINGLIST_MENU = "mailingList";
     private static final String MEDICALRECORD_MENU = "medicalRecord";
@@ -133,7 +140,7 @@ public class UserUtil {
         if (results.resultException != null) {
             throw new RuntimeException("Error getting list of realms ", results.resultException);
         }
-
+        invalidateAccessCache();
         return (int) results.resultValue;
     }
 
@@ -151,6 +158,10 @@ public class UserUtil {
     }
 
     public static Collection<String> getListOfAllowedRealms(@NonNull String userId) {
+        return new ArrayList<>(getCached(AccessCache.ALLOWED_REALMS, userId + CACHE_KEY_SEPARATOR, () -> queryListOfAllowedRealms(userId)));
+    }
+
+    private static List<String> queryListOfAllowedRealms(@NonNull String userId) {
         List<String> listOfRealms = new ArrayList<>();
         SimpleResult results = inTransaction((conn) -> {
             SimpleResult dbVals = new SimpleResult();
@@ -204,6 +215,11 @@ public class UserUtil {
     }
 
     public static Collection<String> getListOfAllowedRealms(@NonNull String userId, @NonNull String menu) {
+        return new ArrayList<>(getCached(AccessCache.ALLOWED_REALMS, userId + CACHE_KEY_SEPARATOR + menu,
+                () -> queryListOfAllowedRealms(userId, menu)));
+    }
+
+    private static List<String> queryListOfAllowedRealms(@NonNull String userId, @NonNull String menu) {
         List<String> listOfRealms = new ArrayList<>();
         SimpleResult results = inTransaction((conn) -> {
             SimpleResult dbVals = new SimpleResult();
@@ -319,10 +335,12 @@ public class UserUtil {
         }
         List<String> roles;
         if (StringUtils.isBlank(realm)) {
-            roles = getUserRolesPerRealm(SQL_USER_ROLES, userId, null);
+            roles = getCached(AccessCache.USER_ROLES, userId + CACHE_KEY_SEPARATOR,
+                    () -> getUserRolesPerRealm(SQL_USER_ROLES, userId, null));
         }
         else {
-            roles = getUserRolesPerRealm(SQL_USER_ROLES_PER_REALM, userId, realm);
+            roles = getCached(AccessCache.USER_ROLES, userId + CACHE_KEY_SEPARATOR + realm,
+                    () -> getUserRolesPerRealm(SQL_USER_ROLES_PER_REALM, userId, realm));
         }
         if (roles != null && !roles.isEmpty()) {
             return roles.contains(role);
@@ -356,4 +374,49 @@ public class UserUtil {
         }
         return roles;
     }
+
+    /**
+     * Removes the cached roles and realms of all users, needs to be called if access tables change
+     */
+    public static void invalidateAccessCache() {
+        AccessCache.USER_ROLES.invalidateAll();
+        AccessCache.ALLOWED_REALMS.invalidateAll();
+    }
+
+    /**
+     * Removes the cached roles and realms of the given user
+     */
+    public static void invalidateAccessCache(@NonNull String userId) {
+        String keyPrefix = userId + CACHE_KEY_SEPARATOR;
+        AccessCache.USER_ROLES.asMap().keySet().removeIf(key -> key.startsWith(keyPrefix));
+        AccessCache.ALLOWED_REALMS.asMap().keySet().removeIf(key -> key.startsWith(keyPrefix));
+    }
+
+    private static <T> T getCached(Cache<String, T> cache, String key, Callable<T> loader) {
+        try {
+            return cache.get(key, loader);
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            throw new RuntimeException("Couldn't get user access " + key, e.getCause());
+        }
+    }
+
+    /**
+     * Roles and allowed realms per user, so checking the access of a request doesn't query the db every time.
+     * Changes made directly in the db are picked up after the ttl
+     */
+    private static class AccessCache {
+        private static final long DEFAULT_MAX_ENTRIES = 10000;
+        private static final long DEFAULT_TTL_SECONDS = 5 * 60;
+
+        static final Cache<String, List<String>> USER_ROLES = buildCache();
+        static final Cache<String, List<String>> ALLOWED_REALMS = buildCache();
+
+        private static Cache<String, List<String>> buildCache() {
+            return CacheBuilder.newBuilder()
+                    .maximumSize(ConfigUtil.getLong(ApplicationConfigConstants.USER_ACCESS_CACHE_MAX_ENTRIES, DEFAULT_MAX_ENTRIES))
+                    .expireAfterWrite(ConfigUtil.getLong(ApplicationConfigConstants.USER_ACCESS_CACHE_TTL_SECONDS, DEFAULT_TTL_SECONDS), TimeUnit.SECONDS)
+                    .build();
+        }
+    }
 }
@@ -3,6 +3,7 @@ package org.broadinstitute.dsm;
 import org.apache.commons.lang3.StringUtils;
 import org.broadinstitute.ddp.db.SimpleResult;
 import org.broadinstitute.ddp.util.BasicTriggerListener;
+import org.broadinstitute.dsm.db.DDPInstanceRegistry;
 import org.broadinstitute.dsm.db.DDPInstance;
 import org.broadinstitute.dsm.db.LatestKitRequest;
 import org.broadinstitute.dsm.jobs.DDPRequestJob;
@@ -89,6 +90,7 @@ public class QuartzDDPRequestTest extends TestHelper {
         try {
             DBTestUtil.executeQuery("INSERT INTO ddp_instance_role SET ddp_instance_id = " + INSTANCE_ID + ", instance_role_id = " + roleId);
             DBTestUtil.executeQuery("INSERT INTO ddp_instance_role SET ddp_instance_id = " + INSTANCE_ID + ", instance_role_id = " + secondRoleId);
+            DDPInstanceRegistry.invalidate();
             settingUpMock();
 
             JobDetail job = JobBuilder.newJob(DDPRequestJob.class)
@@ -134,6 +136,7 @@ public class QuartzDDPRequestTest extends TestHelper {
         finally {
             DBTestUtil.executeQuery("DELETE FROM ddp_instance_role WHERE ddp_instance_id = " + INSTANCE_ID + " and instance_role_id = " + roleId);
             DBTestUtil.executeQuery("DELETE FROM ddp_instance_role WHERE ddp_instance_id = " + INSTANCE_ID + " and instance_role_id = " + secondRoleId);
+            DDPInstanceRegistry.invalidate();
         }
     }
 
@@ -980,6 +980,7 @@ public class RouteTest extends TestHelper {
         String roleId = DBTestUtil.getQueryDetail("SELECT * from instance_role where name = ?", "survey_status_endpoints", "instance_role_id");
         try {
             DBTestUtil.executeQuery("INSERT INTO ddp_instance_role SET ddp_instance_id = " + INSTANCE_ID + ", instance_role_id = " + roleId);
+            DDPInstanceRegistry.invalidate();
             DBTestUtil.createTestData(TEST_DDP, "SURVEY_PARTICIPANT_STATUS", "TEST_INSTITUTION_STATUS");
             HttpResponse response = TestUtil.performGet(DSM_BASE_URL, "/ui/" + "triggerSurvey/" + TEST_DDP + "?surveyName=test-consent", testUtil.buildAuthHeaders()).returnResponse();
             Assert.assertEquals(200, response.getStatusLine().getStatusCode());
@@ -994,6 +995,7 @@ public class RouteTest extends TestHelper {
         }
         finally {
             DBTestUtil.executeQuery("DELETE FROM ddp_instance_role WHERE ddp_instance_id = " + INSTANCE_ID + " and instance_role_id = " + roleId);
+            DDPInstanceRegistry.invalidate();
         }
     }
 
@@ -1437,6 +1437,7 @@ public class RouteTestSample extends TestHelper {
         try {
             DBTestUtil.executeQuery("INSERT INTO ddp_instance_role SET ddp_instance_id = " + INSTANCE_ID + ", instance_role_id = " + roleId);
             DBTestUtil.executeQuery("INSERT INTO ddp_instance_role SET ddp_instance_id = " + INSTANCE_ID + ", instance_role_id = " + secondRoleId);
+            DDPInstanceRegistry.invalidate();
             String kitType = "TEST";
             //upload kits for one type
             String csvContent = TestUtil.readFile("KitUploadTestDDP.txt");
@@ -1461,6 +1462,7 @@ public class RouteTestSample extends TestHelper {
         finally {
             DBTestUtil.executeQuery("DELETE FROM ddp_instance_role WHERE ddp_instance_id = " + INSTANCE_ID + " and instance_role_id = " + roleId);
             DBTestUtil.executeQuery("DELETE FROM ddp_instance_role WHERE ddp_instance_id = " + INSTANCE_ID + " and instance_role_id = " + secondRoleId);
+            DDPInstanceRegistry.invalidate();
         }
     }
 
@@ -0,0 +1,94 @@
+package org.broadinstitute.dsm.db;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.broadinstitute.dsm.db.dto.settings.InstanceSettingsDto;
+import org.broadinstitute.dsm.model.Value;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DDPInstanceRegistryTest {
+
+    private DDPInstanceRegistry.Instances instances;
+
+    @Before
+    public void setUp() {
+        DDPInstance angio = new DDPInstance("1", "Angio", "https://angio", "ANGIO", false, 7, 14, true,
+                null, false, null, "participants_structured.cmi.angio", null, null);
+        DDPInstance brain = new DDPInstance("2", "brain", "https://brain", "BRAIN", false, 7, 14, true,
+                null, false, null, "participants_structured.cmi.brain", null, null);
+
+        Map<String, String> studyGuids = new HashMap<>();
+        studyGuids.put("angio", "1");
+        Map<String, Set<String>> roles = new HashMap<>();
+        roles.put("1", new HashSet<>(Arrays.asList("kit_request_activated", "pdf_download_consent")));
+        Map<String, String> groups = new HashMap<>();
+        groups.put("angio", "5");
+        Map<String, InstanceSettings> settings = new HashMap<>();
+        settings.put("2", new InstanceSettings(null, Collections.singletonList(new Value("upload")), null, null, null, null, true, false));
+        Map<String, InstanceSettingsDto> settingsDtos = new HashMap<>();
+        settingsDtos.put("2", new InstanceSettingsDto.Builder().withDdpInstanceId(2).withHasAddressTab(true).build());
+
+        instances = new DDPInstanceRegistry.Instances(Arrays.asList(angio, brain), studyGuids, roles, groups, settings, settingsDtos,
+                System.currentTimeMillis());
+    }
+
+    @Test
+    public void lookupIgnoresCase() {
+        Assert.assertEquals("1", instances.getDDPInstance("angio", null).getDdpInstanceId());
+        Assert.assertEquals("1", instances.getDDPInstance("ANGIO", null).getDdpInstanceId());
+        Assert.assertEquals("1", instances.getDDPInstanceByGuid("ANGIO").getDdpInstanceId());
+        Assert.assertEquals("5", instances.getDDPGroupId("Angio"));
+        Assert.assertNull(instances.getDDPInstance("unknown", null));
+        Assert.assertNull(instances.getDDPGroupId("brain"));
+    }
+
+    @Test
+    public void instancesHaveRole() {
+        Assert.assertTrue(instances.getDDPInstance("angio", "kit_request_activated").isHasRole());
+        Assert.assertFalse(instances.getDDPInstance("angio", "survey_status_endpoints").isHasRole());
+        Assert.assertFalse(instances.getDDPInstance("angio", null).isHasRole());
+        Assert.assertTrue(instances.hasRole("angio", "pdf_download_consent"));
+        Assert.assertFalse(instances.hasRole("brain", "pdf_download_consent"));
+        Assert.assertFalse(instances.hasRole("unknown", "pdf_download_consent"));
+
+        List<DDPInstance> withRole = instances.getDDPInstanceListWithRole("kit_request_activated");
+        Assert.assertEquals(2, withRole.size());
+        Assert.assertTrue(withRole.get(0).isHasRole());
+        Assert.assertFalse(withRole.get(1).isHasRole());
+    }
+
+    @Test
+    public void callersGetCopies() {
+        DDPInstance ddpInstance = instances.getDDPInstanceById(2);
+        ddpInstance.setInstanceSettings(new InstanceSettings());
+        Assert.assertNotSame(ddpInstance, instances.getDDPInstanceById(2));
+        Assert.assertNull(instances.getDDPInstanceById(2).getInstanceSettings());
+
+        InstanceSettings instanceSettings = instances.getInstanceSettings(2);
+        instanceSettings.setHasInvitations(false);
+        Assert.assertTrue(instances.getInstanceSettings(2).isHasInvitations());
+    }
+
+    @Test
+    public void instanceSettingsByName() {
+        Assert.assertTrue(instances.getInstanceSettingsDto("Brain").hasAddressTab().get());
+        Assert.assertFalse(instances.getInstanceSettingsDto("angio").hasAddressTab().get());
+        Assert.assertNull(instances.getInstanceSettingsDto("unknown"));
+    }
+
+    @Test
+    public void onlyInstancesWithKitBehavior() {
+        List<DDPInstance> withKitBehavior = instances.getDDPInstanceListWithKitBehavior();
+        Assert.assertEquals(1, withKitBehavior.size());
+        Assert.assertEquals("brain", withKitBehavior.get(0).getName());
+        Assert.assertEquals(1, withKitBehavior.get(0).getInstanceSettings().getKitBehaviorChange().size());
+    }
+}
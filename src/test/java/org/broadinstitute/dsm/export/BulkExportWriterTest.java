@@ -0,0 +1,35 @@
+package org.broadinstitute.dsm.export;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.broadinstitute.dsm.statics.ESObjectConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BulkExportWriterTest {
+
+    @Test
+    public void mergeDocumentsOfSameParticipant() {
+        Map<String, Object> byGuid = new HashMap<>();
+        Map<String, Object> dsmByGuid = new HashMap<>();
+        dsmByGuid.put(ESObjectConstants.FAMILY_ID, "1000");
+        dsmByGuid.put(ESObjectConstants.MEDICAL_RECORDS, new ArrayList<>(List.of(Map.of(ESObjectConstants.MEDICAL_RECORDS_ID, 1))));
+        byGuid.put(ESObjectConstants.DSM, dsmByGuid);
+
+        Map<String, Object> byAltPid = new HashMap<>();
+        Map<String, Object> dsmByAltPid = new HashMap<>();
+        dsmByAltPid.put(ESObjectConstants.MEDICAL_RECORDS, new ArrayList<>(List.of(Map.of(ESObjectConstants.MEDICAL_RECORDS_ID, 2))));
+        byAltPid.put(ESObjectConstants.DSM, dsmByAltPid);
+        byAltPid.put(ESObjectConstants.SAMPLES, new ArrayList<>(List.of(Map.of(ESObjectConstants.KIT_REQUEST_ID, "3"))));
+
+        BulkExportWriter.mergeDocuments(byGuid, byAltPid);
+
+        Map<String, Object> dsm = (Map<String, Object>) byGuid.get(ESObjectConstants.DSM);
+        Assert.assertEquals("1000", dsm.get(ESObjectConstants.FAMILY_ID));
+        Assert.assertEquals(2, ((List) dsm.get(ESObjectConstants.MEDICAL_RECORDS)).size());
+        Assert.assertEquals(1, ((List) byGuid.get(ESObjectConstants.SAMPLES)).size());
+    }
+}
@@ -0,0 +1,92 @@
+package org.broadinstitute.dsm.files;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PDFTemplateCacheTest {
+
+    private static final String BUCKET = "config-bucket";
+
+    private final Map<String, PDFTemplateCache.StoredTemplate> bucket = new HashMap<>();
+    private final AtomicLong now = new AtomicLong(0);
+    private int downloads;
+    private int generationChecks;
+    private PDFTemplateCache cache;
+
+    @Before
+    public void setUp() {
+        downloads = 0;
+        generationChecks = 0;
+        cache = new PDFTemplateCache(new PDFTemplateCache.TemplateStore() {
+            @Override
+            public Long getGeneration(String bucketName, String fileName) {
+                generationChecks++;
+                PDFTemplateCache.StoredTemplate template = bucket.get(fileName);
+                return template != null ? template.getGeneration() : null;
+            }
+
+            @Override
+            public PDFTemplateCache.StoredTemplate download(String bucketName, String fileName) {
+                downloads++;
+                return bucket.get(fileName);
+            }
+        }, 1000, 10, now::get);
+    }
+
+    @Test
+    public void templateIsDownloadedOnlyOnceWithinTtl() {
+        bucket.put("cover.pdf", new PDFTemplateCache.StoredTemplate(new byte[] {1, 2}, 1));
+        cache.getTemplate(BUCKET, "cover.pdf");
+        now.set(999);
+        Assert.assertArrayEquals(new byte[] {1, 2}, cache.getTemplate(BUCKET, "cover.pdf"));
+        Assert.assertEquals(1, downloads);
+        Assert.assertEquals(0, generationChecks);
+    }
+
+    @Test
+    public void unchangedTemplateIsRevalidatedAfterTtl() {
+        bucket.put("cover.pdf", new PDFTemplateCache.StoredTemplate(new byte[] {1, 2}, 1));
+        cache.getTemplate(BUCKET, "cover.pdf");
+        now.set(1000);
+        cache.getTemplate(BUCKET, "cover.pdf");
+        cache.getTemplate(BUCKET, "cover.pdf");
+        Assert.assertEquals(1, downloads);
+        Assert.assertEquals(1, generationChecks);
+    }
+
+    @Test
+    public void changedTemplateIsDownloadedAgain() {
+        bucket.put("cover.pdf", new PDFTemplateCache.StoredTemplate(new byte[] {1, 2}, 1));
+        cache.getTemplate(BUCKET, "cover.pdf");
+        bucket.put("cover.pdf", new PDFTemplateCache.StoredTemplate(new byte[] {3}, 2));
+        now.set(1000);
+        Assert.assertArrayEquals(new byte[] {3}, cache.getTemplate(BUCKET, "cover.pdf"));
+        Assert.assertEquals(2, downloads);
+    }
+
+    @Test
+    public void leastRecentlyUsedTemplateIsEvicted() {
+        bucket.put("a.pdf", new PDFTemplateCache.StoredTemplate(new byte[4], 1));
+        bucket.put("b.pdf", new PDFTemplateCache.StoredTemplate(new byte[4], 1));
+        bucket.put("c.pdf", new PDFTemplateCache.StoredTemplate(new byte[4], 1));
+        cache.getTemplate(BUCKET, "a.pdf");
+        cache.getTemplate(BUCKET, "b.pdf");
+        cache.getTemplate(BUCKET, "a.pdf");
+        cache.getTemplate(BUCKET, "c.pdf");
+        Assert.assertEquals(3, downloads);
+        cache.getTemplate(BUCKET, "a.pdf");
+        Assert.assertEquals(3, downloads);
+        cache.getTemplate(BUCKET, "b.pdf");
+        Assert.assertEquals(4, downloads);
+    }
+
+    @Test
+    public void missingTemplate() {
+        Assert.assertNull(cache.getTemplate(BUCKET, "missing.pdf"));
+    }
+}
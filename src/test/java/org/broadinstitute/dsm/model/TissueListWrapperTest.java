@@ -0,0 +1,30 @@
+package org.broadinstitute.dsm.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TissueListWrapperTest {
+
+    private static final List<Integer> RESULTS = Arrays.asList(0, 1, 2, 3, 4);
+
+    @Test
+    public void pageWithinResults() {
+        Assert.assertEquals(Arrays.asList(1, 2), TissueListWrapper.getPage(RESULTS, 1, 3));
+    }
+
+    @Test
+    public void pageReachingOverEnd() {
+        Assert.assertEquals(Arrays.asList(3, 4), TissueListWrapper.getPage(RESULTS, 3, 50));
+        Assert.assertEquals(Collections.emptyList(), TissueListWrapper.getPage(RESULTS, 10, 50));
+    }
+
+    @Test
+    public void noRangeReturnsAll() {
+        Assert.assertEquals(RESULTS, TissueListWrapper.getPage(RESULTS, 0, 0));
+        Assert.assertEquals(RESULTS, TissueListWrapper.getPage(RESULTS, 0, 5));
+    }
+}
@@ -0,0 +1,60 @@
+package org.broadinstitute.dsm.model.at;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.broadinstitute.dsm.db.dto.ddp.participant.ParticipantDataDto;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DefaultValuesTest {
+
+    @Test
+    public void onlySelfOrDependentParticipants() {
+        Assert.assertTrue(DefaultValues.isSelfOrDependentParticipant(List.of(data("AT_GROUP_REGISTRATION", "{\"REGISTRATION_TYPE\":\"Self\"}"))));
+        Assert.assertTrue(DefaultValues.isSelfOrDependentParticipant(List.of(data("AT_GROUP_REGISTRATION", "{\"REGISTRATION_TYPE\":\"dependent\"}"))));
+        Assert.assertFalse(DefaultValues.isSelfOrDependentParticipant(List.of(data("AT_GROUP_REGISTRATION", "{\"REGISTRATION_TYPE\":\"other\"}"))));
+        Assert.assertFalse(DefaultValues.isSelfOrDependentParticipant(List.of(data("AT_GROUP_REGISTRATION", null))));
+        Assert.assertFalse(DefaultValues.isSelfOrDependentParticipant(Collections.emptyList()));
+    }
+
+    @Test
+    public void existingDefaultValues() {
+        List<ParticipantDataDto> participantData = Arrays.asList(
+                data("AT_GROUP_GENOME_STUDY", "{\"GENOME_STUDY_CPT_ID\":\"DDP_ATCP_17\"}"),
+                data("AT_PARTICIPANT_EXIT", "{\"EXITSTATUS\":\"0\"}"));
+        Assert.assertTrue(DefaultValues.hasParticipantDataGenomicId(participantData));
+        Assert.assertTrue(DefaultValues.hasExitedStatusDefaultValue(participantData));
+    }
+
+    @Test
+    public void missingDefaultValues() {
+        List<ParticipantDataDto> participantData = Arrays.asList(
+                data("AT_GROUP_GENOME_STUDY", "{\"GENOME_STUDY_CPT_ID\":\"\"}"),
+                data("AT_GROUP_MISCELLANEOUS", "{\"EXITSTATUS\":\"0\"}"),
+                data("AT_PARTICIPANT_EXIT", null));
+        Assert.assertFalse(DefaultValues.hasParticipantDataGenomicId(participantData));
+        Assert.assertFalse(DefaultValues.hasExitedStatusDefaultValue(participantData));
+    }
+
+    @Test
+    public void onlyIncompleteParticipantsNeedDefaultValues() {
+        ParticipantDataDto registration = data("AT_GROUP_REGISTRATION", "{\"REGISTRATION_TYPE\":\"self\"}");
+        ParticipantDataDto genomicId = data("AT_GROUP_GENOME_STUDY", "{\"GENOME_STUDY_CPT_ID\":\"DDP_ATCP_17\"}");
+        ParticipantDataDto exitStatus = data("AT_PARTICIPANT_EXIT", "{\"EXITSTATUS\":\"0\"}");
+        Assert.assertFalse(DefaultValues.needsDefaultValues(Arrays.asList(registration, genomicId, exitStatus)));
+        Assert.assertTrue(DefaultValues.needsDefaultValues(Arrays.asList(registration, genomicId)));
+        Assert.assertTrue(DefaultValues.needsDefaultValues(Arrays.asList(registration, exitStatus)));
+        Assert.assertFalse(DefaultValues.needsDefaultValues(Arrays.asList(genomicId)));
+    }
+
+    private static ParticipantDataDto data(String fieldTypeId, String data) {
+        return new ParticipantDataDto.Builder()
+                .withDdpParticipantId("PARTICIPANT_GUID")
+                .withDdpInstanceId(1)
+                .withFieldTypeId(fieldTypeId)
+                .withData(data)
+                .build();
+    }
+}
@@ -0,0 +1,101 @@
+package org.broadinstitute.dsm.model.dashboard;
+
+import java.util.Map;
+
+import org.broadinstitute.dsm.model.DashboardInformation;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RealmDashboardTest {
+
+    private RealmDashboard dashboard;
+
+    @Before
+    public void setUp() {
+        dashboard = new RealmDashboard(0);
+    }
+
+    @Test
+    public void detailedValuesCountParticipantOnce() {
+        ParticipantCounts counts = new ParticipantCounts();
+        counts.count("tissueConsent");
+        counts.countDetailed("faxSent");
+        counts.countDetailed("faxSent");
+        dashboard.putParticipant("pt1", counts);
+
+        DashboardInformation information = dashboard.getDashboardInformation(0, 100);
+        Assert.assertEquals(Integer.valueOf(1), information.getDashboardValues().get("all"));
+        Assert.assertEquals(Integer.valueOf(1), information.getDashboardValues().get("tissueConsent"));
+        Assert.assertEquals(Integer.valueOf(1), information.getDashboardValues().get("faxSent"));
+        Assert.assertEquals(Integer.valueOf(2), information.getDashboardValuesDetailed().get("faxSent"));
+    }
+
+    @Test
+    public void periodOnlyCountsValuesInPeriod() {
+        ParticipantCounts counts = new ParticipantCounts();
+        counts.countPeriod("all", 50);
+        counts.countDetailedPeriod("faxSent", 10);
+        counts.countDetailedPeriod("faxSent", 20);
+        counts.countDetailedPeriod("faxSent", 200);
+        dashboard.putParticipant("pt1", counts);
+
+        DashboardInformation information = dashboard.getDashboardInformation(20, 100);
+        Assert.assertEquals(Integer.valueOf(1), information.getDashboardValuesPeriod().get("all"));
+        Assert.assertEquals(Integer.valueOf(1), information.getDashboardValuesPeriod().get("faxSent"));
+        Assert.assertEquals(Integer.valueOf(1), information.getDashboardValuesPeriodDetailed().get("faxSent"));
+
+        information = dashboard.getDashboardInformation(0, 100);
+        Assert.assertEquals(Integer.valueOf(1), information.getDashboardValuesPeriod().get("faxSent"));
+        Assert.assertEquals(Integer.valueOf(2), information.getDashboardValuesPeriodDetailed().get("faxSent"));
+
+        information = dashboard.getDashboardInformation(300, 400);
+        Assert.assertTrue(information.getDashboardValuesPeriod().isEmpty());
+        Assert.assertTrue(information.getDashboardValuesPeriodDetailed().isEmpty());
+    }
+
+    @Test
+    public void replacedParticipantIsOnlyCountedWithNewValues() {
+        ParticipantCounts counts = new ParticipantCounts();
+        counts.countDetailed("faxSent");
+        dashboard.putParticipant("pt1", counts);
+        ParticipantCounts other = new ParticipantCounts();
+        other.countDetailed("faxSent");
+        dashboard.putParticipant("pt2", other);
+
+        ParticipantCounts changed = new ParticipantCounts();
+        changed.countDetailed("mrReceived");
+        dashboard.putParticipant("pt1", changed);
+
+        Map<String, Integer> values = dashboard.getDashboardInformation(0, 100).getDashboardValues();
+        Assert.assertEquals(Integer.valueOf(2), values.get("all"));
+        Assert.assertEquals(Integer.valueOf(1), values.get("faxSent"));
+        Assert.assertEquals(Integer.valueOf(1), values.get("mrReceived"));
+    }
+
+    @Test
+    public void removedParticipantIsNotCounted() {
+        ParticipantCounts counts = new ParticipantCounts();
+        counts.count("minimalMR");
+        dashboard.putParticipant("pt1", counts);
+        dashboard.removeParticipant("pt1");
+
+        Map<String, Integer> values = dashboard.getDashboardInformation(0, 100).getDashboardValues();
+        Assert.assertEquals(Integer.valueOf(0), values.get("all"));
+        Assert.assertFalse(values.containsKey("minimalMR"));
+    }
+
+    @Test
+    public void differencesOfRebuiltDashboard() {
+        ParticipantCounts counts = new ParticipantCounts();
+        counts.countDetailed("faxSent");
+        dashboard.putParticipant("pt1", counts);
+
+        RealmDashboard rebuilt = new RealmDashboard(0);
+        rebuilt.putParticipant("pt1", counts);
+        Assert.assertTrue(dashboard.getDifferences(rebuilt).isEmpty());
+
+        rebuilt.putParticipant("pt2", counts);
+        Assert.assertEquals(3, dashboard.getDifferences(rebuilt).size());
+    }
+}
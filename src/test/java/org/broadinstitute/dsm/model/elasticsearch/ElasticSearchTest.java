@@ -1,6 +1,7 @@
 package org.broadinstitute.dsm.model.elasticsearch;
 
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
 
@@ -8,6 +9,9 @@ import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import org.broadinstitute.dsm.model.participant.ParticipantWrapperDto;
 import org.broadinstitute.dsm.model.participant.ParticipantWrapperTest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.SearchHit;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -86,6 +90,37 @@ public class ElasticSearchTest {
         }
     }
 
+    @Test
+    public void parseSearchHit() {
+        ESProfile esProfile = new ESProfile();
+        esProfile.setFirstName("Tommy");
+        esProfile.setParticipantGuid(ParticipantWrapperTest.randomGuidGenerator());
+        ESAddress esAddress = new ESAddress();
+        esAddress.setCountry("Barsum");
+        ElasticSearchParticipantDto elasticSearchParticipantDto = new ElasticSearchParticipantDto.Builder()
+                .withStatusTimeStamp(1_000_000L)
+                .withProfile(esProfile)
+                .withStatus("TESTING")
+                .withAddress(esAddress)
+                .build();
+        String source = GSON.toJson(elasticSearchParticipantDto);
+        SearchHit searchHit = new SearchHit(1, esProfile.getParticipantGuid(), new Text("_doc"), Collections.emptyMap());
+        searchHit.sourceRef(new BytesArray(source));
+
+        ElasticSearchParticipantDto fromHit = ElasticSearch.parseSearchHit(searchHit).orElseThrow();
+        ElasticSearchParticipantDto fromMap = ElasticSearch.parseSourceMap(searchHit.getSourceAsMap()).orElseThrow();
+        Assert.assertEquals(GSON.toJson(fromMap), GSON.toJson(fromHit));
+        Assert.assertEquals("Tommy", fromHit.getProfile().map(ESProfile::getFirstName).orElse(""));
+        Assert.assertEquals("Barsum", fromHit.getAddress().map(ESAddress::getCountry).orElse(""));
+        Assert.assertEquals(Long.valueOf(1_000_000L), fromHit.getStatusTimestamp().orElse(0L));
+    }
+
+    @Test
+    public void parseSearchHitWithoutSource() {
+        ElasticSearchParticipantDto fromHit = ElasticSearch.parseSearchHit(null).orElseThrow();
+        Assert.assertEquals("", fromHit.getParticipantId());
+    }
+
     private static ESProfile esProfileGeneratorWithGuid() {
         ESProfile esProfile = new ESProfile();
         esProfile.setParticipantGuid(ParticipantWrapperTest.randomGuidGenerator());
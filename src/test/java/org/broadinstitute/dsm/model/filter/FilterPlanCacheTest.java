@@ -0,0 +1,71 @@
+package org.broadinstitute.dsm.model.filter;
+
+import org.broadinstitute.dsm.model.Filter;
+import org.broadinstitute.dsm.model.NameValue;
+import org.broadinstitute.dsm.model.ParticipantColumn;
+import org.broadinstitute.dsm.util.ElasticSearchUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FilterPlanCacheTest {
+
+    @Test
+    public void changingCopiesDoesNotChangePlan() {
+        Filter filter = new Filter(true, false, false, false, Filter.DATE, "participantList",
+                new NameValue("oD.datePx", "2020"), null, new String[] {"sent"}, new ParticipantColumn("datePx", "oD"));
+        FilterPlanCache.FilterPlan plan = new FilterPlanCache.FilterPlan(new Filter[] {filter}, "oD.datePx >= '2020'");
+
+        Filter[] copies = plan.copyFilters();
+        copies[0].getFilter1().setValue("2020-01-01");
+        copies[0].getSelectedOptions()[0] = "received";
+        copies[0].setRange(false);
+
+        Filter[] again = plan.copyFilters();
+        Assert.assertNotSame(copies[0], again[0]);
+        Assert.assertEquals("2020", again[0].getFilter1().getValue());
+        Assert.assertEquals("sent", again[0].getSelectedOptions()[0]);
+        Assert.assertTrue(again[0].isRange());
+        Assert.assertNull(again[0].getFilter2());
+        Assert.assertEquals("oD", again[0].getParticipantColumn().getTableAlias());
+    }
+
+    @Test
+    public void todayIsCompiledAgainOnTheNextDay() {
+        String query = "AND oD.datePx = today";
+        LocalDate day = LocalDate.of(2021, 3, 1);
+        Assert.assertEquals(FilterPlanCache.getFilterPlanKey("participantList", query, day),
+                FilterPlanCache.getFilterPlanKey("participantList", query, day));
+        Assert.assertNotEquals(FilterPlanCache.getFilterPlanKey("participantList", query, day),
+                FilterPlanCache.getFilterPlanKey("participantList", query, day.plusDays(1)));
+    }
+
+    @Test
+    public void queryWithoutTodayIsKeptAcrossDays() {
+        String query = "AND oD.datePx = '2021-03-01'";
+        LocalDate day = LocalDate.of(2021, 3, 1);
+        Assert.assertEquals(FilterPlanCache.getFilterPlanKey("participantList", query, day),
+                FilterPlanCache.getFilterPlanKey("participantList", query, day.plusDays(1)));
+    }
+
+    @Test
+    public void participantLookupIsNotCached() {
+        String lookup = ElasticSearchUtil.BY_GUID + "ABCDEFGHIJKLMNOPQRST";
+        Assert.assertTrue(FilterPlanCache.isParticipantLookup(lookup));
+        Assert.assertTrue(FilterPlanCache.isParticipantLookup(ElasticSearchUtil.BY_LEGACY_ALTPID + "a1b2c3"));
+        Assert.assertFalse(FilterPlanCache.isParticipantLookup("AND oD.datePx = '2021-03-01'"));
+
+        AtomicInteger built = new AtomicInteger();
+        FilterPlanCache.getESQuery("participants_structured.test", lookup, null, () -> {
+            built.incrementAndGet();
+            return null;
+        });
+        FilterPlanCache.getESQuery("participants_structured.test", lookup, null, () -> {
+            built.incrementAndGet();
+            return null;
+        });
+        Assert.assertEquals(2, built.get());
+    }
+}
@@ -1,6 +1,7 @@
 package org.broadinstitute.dsm.model.participant;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -67,18 +68,35 @@ public class ParticipantWrapperTest {
         Assert.assertEquals(proxiesByParticipantIds.get(parentId).get(0).getParticipantId(), proxyId);
     }
 
+    @Test
+    public void getProxiesWithParticipantIdsByProxiesIdsSharedProxy() {
+        ParticipantWrapper participantWrapper = new ParticipantWrapper(new ParticipantWrapperPayload.Builder().build(), elasticSearchable);
+        String proxyId = randomGuidGenerator();
+        String firstParticipantId = randomGuidGenerator();
+        String secondParticipantId = randomGuidGenerator();
+        Map<String, List<String>> proxiesIdsByParticipantIds = Map.of(
+                firstParticipantId, List.of(proxyId),
+                secondParticipantId, List.of(proxyId, randomGuidGenerator()));
+        Map<String, List<ElasticSearchParticipantDto>> proxiesByParticipantIds = participantWrapper.getProxiesWithParticipantIdsByProxiesIds(
+                "", proxiesIdsByParticipantIds);
+        Assert.assertEquals(1, proxiesByParticipantIds.get(firstParticipantId).size());
+        Assert.assertEquals(proxyId, proxiesByParticipantIds.get(firstParticipantId).get(0).getParticipantId());
+        Assert.assertEquals(2, proxiesByParticipantIds.get(secondParticipantId).size());
+    }
+
     @Test
     public void sortBySelfElseById() {
-        Random random = new Random();
         String[] memberTypes = new String[] {"SISTER", "COUSIN", "SELF", "BROTHER"};
+        int[] participantDataIds = new int[] {7, 3, 9, 5};
         AtomicInteger i = new AtomicInteger(0);
         List<ParticipantDataDto> pDatas = Stream.generate(() -> new ParticipantDataDto.Builder()
-                .withData(String.format("{\"MEMTER_TYPE\":\"%s\"}", memberTypes[i.getAndIncrement()]))
-                .withParticipantDataId(random.nextInt(100))
+                .withData(String.format("{\"%s\":\"%s\"}", FamilyMemberConstants.MEMBER_TYPE, memberTypes[i.get()]))
+                .withParticipantDataId(participantDataIds[i.getAndIncrement()])
                 .build()).limit(4).collect(Collectors.toList());
         ParticipantWrapper participantWrapper = new ParticipantWrapper(new ParticipantWrapperPayload.Builder().build(), elasticSearchable);
         participantWrapper.sortBySelfElseById(Collections.singleton(pDatas));
         Assert.assertTrue(pDatas.get(0).getData().orElse("").contains(FamilyMemberConstants.MEMBER_TYPE_SELF));
+        Assert.assertEquals(Arrays.asList(9, 3, 5, 7), pDatas.stream().map(ParticipantDataDto::getParticipantDataId).collect(Collectors.toList()));
     }
 
     private static class ElasticSearchTest implements ElasticSearchable {
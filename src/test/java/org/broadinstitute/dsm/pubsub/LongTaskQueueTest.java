@@ -0,0 +1,137 @@
+package org.broadinstitute.dsm.pubsub;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.cloud.pubsub.v1.AckReplyConsumer;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LongTaskQueueTest {
+
+    @Test
+    public void ackAfterTaskFinished() throws Exception {
+        LongTaskQueue queue = new LongTaskQueue("test-ack", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        TestConsumer consumer = new TestConsumer();
+
+        queue.submit(message("1"), consumer, () -> await(release));
+        Thread.sleep(100);
+        Assert.assertEquals(0, consumer.acks.get());
+
+        release.countDown();
+        Assert.assertTrue(consumer.acked.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, consumer.nacks.get());
+    }
+
+    @Test
+    public void ackFailedTask() throws Exception {
+        LongTaskQueue queue = new LongTaskQueue("test-failed", 1, 1);
+        TestConsumer consumer = new TestConsumer();
+
+        queue.submit(message("1"), consumer, () -> {
+            throw new RuntimeException("export failed");
+        });
+        Assert.assertTrue(consumer.acked.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, consumer.nacks.get());
+    }
+
+    @Test
+    public void nackIfQueueIsFull() throws Exception {
+        LongTaskQueue queue = new LongTaskQueue("test-full", 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TestConsumer running = new TestConsumer();
+        TestConsumer queued = new TestConsumer();
+        TestConsumer rejected = new TestConsumer();
+
+        queue.submit(message("1"), running, () -> {
+            started.countDown();
+            await(release);
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        queue.submit(message("2"), queued, () -> {
+        });
+        queue.submit(message("3"), rejected, () -> {
+        });
+
+        Assert.assertEquals(1, rejected.nacks.get());
+        Assert.assertEquals(0, rejected.acks.get());
+        Assert.assertEquals(1L, queue.getMetrics().getRejectedMessages());
+
+        release.countDown();
+        Assert.assertTrue(running.acked.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(queued.acked.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void ackRedeliveryOfQueuedMessage() throws Exception {
+        LongTaskQueue queue = new LongTaskQueue("test-redelivery", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        TestConsumer first = new TestConsumer();
+        TestConsumer redelivery = new TestConsumer();
+        Runnable task = () -> {
+            runs.incrementAndGet();
+            await(release);
+        };
+
+        queue.submit(message("1"), first, task);
+        queue.submit(message("1"), redelivery, task);
+        Assert.assertEquals(1, redelivery.acks.get());
+        Assert.assertEquals(0, first.acks.get());
+
+        release.countDown();
+        Assert.assertTrue(first.acked.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void runMessageAgainAfterItFinished() throws Exception {
+        LongTaskQueue queue = new LongTaskQueue("test-again", 1, 1);
+        AtomicInteger runs = new AtomicInteger();
+        TestConsumer first = new TestConsumer();
+        TestConsumer second = new TestConsumer();
+
+        queue.submit(message("1"), first, runs::incrementAndGet);
+        Assert.assertTrue(first.acked.await(5, TimeUnit.SECONDS));
+        //the message id is released after the ack
+        Thread.sleep(100);
+        queue.submit(message("1"), second, runs::incrementAndGet);
+        Assert.assertTrue(second.acked.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(2, runs.get());
+    }
+
+    private static PubsubMessage message(String messageId) {
+        return PubsubMessage.newBuilder().setMessageId(messageId).build();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class TestConsumer implements AckReplyConsumer {
+
+        private final AtomicInteger acks = new AtomicInteger();
+        private final AtomicInteger nacks = new AtomicInteger();
+        private final CountDownLatch acked = new CountDownLatch(1);
+
+        @Override
+        public void ack() {
+            acks.incrementAndGet();
+            acked.countDown();
+        }
+
+        @Override
+        public void nack() {
+            nacks.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.broadinstitute.dsm.pubsub;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SubscriptionMetricsTest {
+
+    @Test
+    public void waitAndProcessingTimes() {
+        SubscriptionMetrics metrics = new SubscriptionMetrics("tasks", () -> 3);
+        metrics.messageStarted(10);
+        metrics.messageStarted(30);
+        Assert.assertEquals(2, metrics.getMessagesInProgress());
+        metrics.messageFinished(100, false);
+        metrics.messageFinished(300, true);
+        metrics.messageRejected();
+
+        Assert.assertEquals(3, metrics.getQueueDepth());
+        Assert.assertEquals(0, metrics.getMessagesInProgress());
+        Assert.assertEquals(2L, metrics.getFinishedMessages());
+        Assert.assertEquals(1L, metrics.getFailedMessages());
+        Assert.assertEquals(1L, metrics.getRejectedMessages());
+        Assert.assertEquals(20L, metrics.getAverageWaitMillis());
+        Assert.assertEquals(30L, metrics.getMaxWaitMillis());
+        Assert.assertEquals(200L, metrics.getAverageProcessingMillis());
+        Assert.assertEquals(300L, metrics.getMaxProcessingMillis());
+    }
+
+    @Test
+    public void noMessages() {
+        SubscriptionMetrics metrics = new SubscriptionMetrics("subscription", null);
+        Assert.assertEquals(0, metrics.getQueueDepth());
+        Assert.assertEquals(0L, metrics.getAverageWaitMillis());
+        Assert.assertEquals(0L, metrics.getAverageProcessingMillis());
+    }
+}
@@ -8,13 +8,14 @@ import org.broadinstitute.dsm.model.elasticsearch.ESProfile;
 import org.broadinstitute.dsm.model.elasticsearch.ElasticSearch;
 import org.broadinstitute.dsm.model.elasticsearch.ElasticSearchParticipantDto;
 import org.broadinstitute.dsm.model.participant.ParticipantWrapperDto;
+import org.broadinstitute.dsm.util.DelimitedFileReader;
 import org.broadinstitute.dsm.util.NotificationUtil;
 import org.broadinstitute.dsm.util.ParticipantUtil;
-import org.broadinstitute.dsm.util.SystemUtil;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.StringReader;
 import java.util.*;
 
 public class KitUploadRouteTest {
@@ -70,14 +71,14 @@ public class KitUploadRouteTest {
     }
 
     @Test
-    public void fileUserNameDoesNotMatch() {
+    public void fileUserNameDoesNotMatch() throws Exception {
         String fileContent = "shortId\tfirstName\tlastName\tstreet1\tstreet2\tcity\tstate\tpostalCode\tcountry\n" +
                 "56\tNebula\tGalaxy\t415 Main St\t\tCambridge\tMA\t2142\tUS";
 
-        String[] rows = fileContent.split(System.lineSeparator());
-        List<String> fieldNamesFromFileHeader = Arrays.asList(rows[0].trim().split(SystemUtil.SEPARATOR));
+        DelimitedFileReader fileReader = new DelimitedFileReader(new StringReader(fileContent));
+        List<String> fieldNamesFromFileHeader = fileReader.readHeader();
 
-        Map<String, String> participantDataAsMap = route.getParticipantDataAsMap(rows[1], fieldNamesFromFileHeader, 1);
+        Map<String, String> participantDataAsMap = fileReader.readRow(fieldNamesFromFileHeader);
 
         String participantFirstNameFromDoc = participantDataAsMap.get("firstName");
         String participantLastNameFromDoc = participantDataAsMap.get("lastName");
@@ -93,14 +94,14 @@ public class KitUploadRouteTest {
     }
 
     @Test
-    public void fileUserDoesNotBelongToStudy() {
+    public void fileUserDoesNotBelongToStudy() throws Exception {
         String fileContent = "shortId\tfirstName\tlastName\tstreet1\tstreet2\tcity\tstate\tpostalCode\tcountry\n" +
                 "56\tNebula\tGalaxy\t415 Main St\t\tCambridge\tMA\t2142\tUS";
 
-        String[] rows = fileContent.split(System.lineSeparator());
-        List<String> fieldNamesFromFileHeader = Arrays.asList(rows[0].trim().split(SystemUtil.SEPARATOR));
+        DelimitedFileReader fileReader = new DelimitedFileReader(new StringReader(fileContent));
+        List<String> fieldNamesFromFileHeader = fileReader.readHeader();
 
-        Map<String, String> participantDataAsMap = route.getParticipantDataAsMap(rows[1], fieldNamesFromFileHeader, 1);
+        Map<String, String> participantDataAsMap = fileReader.readRow(fieldNamesFromFileHeader);
 
         String participantFirstNameFromDoc = participantDataAsMap.get("firstName");
         String participantLastNameFromDoc = participantDataAsMap.get("lastName");
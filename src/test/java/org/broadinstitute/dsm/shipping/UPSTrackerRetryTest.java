@@ -0,0 +1,23 @@
+package org.broadinstitute.dsm.shipping;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UPSTrackerRetryTest {
+
+    @Test
+    public void retryDelayGrowsExponentially() {
+        Assert.assertEquals(500, UPSTracker.getRetryDelayMillis(0, 0));
+        Assert.assertEquals(1000, UPSTracker.getRetryDelayMillis(0, 1));
+        Assert.assertEquals(1000, UPSTracker.getRetryDelayMillis(1, 0));
+        Assert.assertEquals(4000, UPSTracker.getRetryDelayMillis(2, 1));
+        Assert.assertEquals(6000, UPSTracker.getRetryDelayMillis(3, 0.5));
+    }
+
+    @Test
+    public void retryDelayIsCapped() {
+        Assert.assertEquals(16000, UPSTracker.getRetryDelayMillis(4, 1));
+        Assert.assertEquals(16000, UPSTracker.getRetryDelayMillis(10, 1));
+        Assert.assertEquals(8000, UPSTracker.getRetryDelayMillis(100, 0));
+    }
+}
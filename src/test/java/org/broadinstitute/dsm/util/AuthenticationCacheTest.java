@@ -0,0 +1,64 @@
+package org.broadinstitute.dsm.util;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.Claim;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AuthenticationCacheTest {
+
+    private static final String SECRET = "secret";
+    private static final long TEN_MINUTES = 10 * 60 * 1000;
+
+    private final AtomicLong now = new AtomicLong();
+    private int verifications;
+    private AuthenticationCache cache;
+
+    @Before
+    public void setUp() {
+        now.set(System.currentTimeMillis());
+        verifications = 0;
+        JWTVerifier verifier = JWT.require(Algorithm.HMAC256(SECRET)).build();
+        cache = new AuthenticationCache(token -> {
+            verifications++;
+            return verifier.verify(token).getClaims();
+        }, 100, 60 * 60 * 1000, now::get);
+    }
+
+    @Test
+    public void tokenIsVerifiedOnlyOnce() {
+        String token = createToken(SECRET, now.get() + TEN_MINUTES);
+        cache.getClaims(token);
+        Map<String, Claim> claims = cache.getClaims(token);
+        Assert.assertEquals("1", claims.get("USER_ID").asString());
+        Assert.assertEquals(1, verifications);
+    }
+
+    @Test
+    public void tokenIsVerifiedAgainAfterExpiration() {
+        String token = createToken(SECRET, now.get() + TEN_MINUTES);
+        cache.getClaims(token);
+        now.addAndGet(TEN_MINUTES + 1000);
+        cache.getClaims(token);
+        Assert.assertEquals(2, verifications);
+    }
+
+    @Test
+    public void invalidTokenIsNotCached() {
+        String token = createToken("otherSecret", now.get() + TEN_MINUTES);
+        Assert.assertNull(cache.getClaims(token));
+        Assert.assertNull(cache.getClaims(token));
+        Assert.assertEquals(2, verifications);
+    }
+
+    private String createToken(String secret, long expiresAt) {
+        return JWT.create().withClaim("USER_ID", "1").withExpiresAt(new Date(expiresAt)).sign(Algorithm.HMAC256(secret));
+    }
+}
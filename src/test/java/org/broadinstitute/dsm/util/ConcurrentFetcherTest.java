@@ -0,0 +1,99 @@
+package org.broadinstitute.dsm.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentFetcherTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void fetchResultAndTiming() {
+        ConcurrentFetcher fetcher = new ConcurrentFetcher("test", 5, () -> executor);
+        Supplier<String> fetch = fetcher.submit("source", () -> "result");
+
+        Assert.assertEquals("result", fetch.get());
+        Assert.assertTrue(fetcher.getTimings().containsKey("source"));
+    }
+
+    @Test
+    public void failedFetchThrowsItsException() {
+        ConcurrentFetcher fetcher = new ConcurrentFetcher("test", 5, () -> executor);
+        Supplier<String> fetch = fetcher.submit("source", () -> {
+            throw new IllegalStateException("db down");
+        });
+
+        try {
+            fetch.get();
+            Assert.fail("Exception of the fetch wasn't thrown");
+        }
+        catch (IllegalStateException e) {
+            Assert.assertEquals("db down", e.getMessage());
+        }
+    }
+
+    @Test
+    public void slowFetchGetsInterrupted() throws Exception {
+        ConcurrentFetcher fetcher = new ConcurrentFetcher("test", 1, () -> executor);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Supplier<String> fetch = fetcher.submit("source", () -> {
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+            }
+            catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            return "too late";
+        });
+
+        try {
+            fetch.get();
+            Assert.fail("Slow fetch didn't time out");
+        }
+        catch (RuntimeException e) {
+            Assert.assertTrue(e.getMessage().contains("took longer than 1 secs"));
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertTrue(interrupted.get());
+    }
+
+    @Test
+    public void timeoutStartsWithTheFetch() {
+        ConcurrentFetcher fetcher = new ConcurrentFetcher("test", 2, () -> executor);
+        //the pool has one thread, so the second fetch waits for the first one
+        Supplier<String> first = fetcher.submit("first", () -> sleepAndReturn(1500, "first"));
+        Supplier<String> second = fetcher.submit("second", () -> sleepAndReturn(1000, "second"));
+
+        Assert.assertEquals("first", first.get());
+        Assert.assertEquals("second", second.get());
+    }
+
+    private static String sleepAndReturn(long millis, String result) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,71 @@
+package org.broadinstitute.dsm.util;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.broadinstitute.dsm.exception.UploadLineException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DelimitedFileReaderTest {
+
+    @Test
+    public void quotedFieldsAndMixedLineBreaks() throws Exception {
+        String fileContent = "shortId\tstreet1\tcity\r\n" +
+                "P1\t\"415 Main St\tApt 2\"\tCambridge\n" +
+                "P2\t\"Line\r\nbreak\"\t\"Say \"\"hi\"\"\"\r" +
+                "P3\t1 Broad St\tBoston";
+        DelimitedFileReader fileReader = new DelimitedFileReader(new StringReader(fileContent));
+        List<String> header = fileReader.readHeader();
+        Assert.assertEquals(Arrays.asList("shortId", "street1", "city"), header);
+
+        Map<String, String> row = fileReader.readRow(header);
+        Assert.assertEquals("415 Main St\tApt 2", row.get("street1"));
+        Assert.assertEquals(2, fileReader.getLineNumber());
+
+        row = fileReader.readRow(header);
+        Assert.assertEquals("Line\r\nbreak", row.get("street1"));
+        Assert.assertEquals("Say \"hi\"", row.get("city"));
+        Assert.assertEquals(3, fileReader.getLineNumber());
+
+        row = fileReader.readRow(header);
+        Assert.assertEquals("P3", row.get("shortId"));
+        Assert.assertEquals(5, fileReader.getLineNumber());
+
+        Assert.assertNull(fileReader.readRow(header));
+    }
+
+    @Test
+    public void blankRowsAndTrailingEmptyFields() throws Exception {
+        String fileContent = "\uFEFFshortId\tphoneNumber\t\n" +
+                "P1\t\t\t\n" +
+                "\t\n" +
+                "P2\t555\n" +
+                "\n";
+        DelimitedFileReader fileReader = new DelimitedFileReader(new StringReader(fileContent));
+        List<String> header = fileReader.readHeader();
+        Assert.assertEquals(Arrays.asList("shortId", "phoneNumber"), header);
+        Assert.assertEquals("", fileReader.readRow(header).get("phoneNumber"));
+        Assert.assertEquals("555", fileReader.readRow(header).get("phoneNumber"));
+        Assert.assertNull(fileReader.readRow(header));
+    }
+
+    @Test
+    public void rowWithMissingFields() throws Exception {
+        String fileContent = "shortId\tfirstName\tlastName\n" +
+                "P1\tMickey\tMouse\n" +
+                "P2\tMinnie\n";
+        DelimitedFileReader fileReader = new DelimitedFileReader(new StringReader(fileContent));
+        List<String> header = fileReader.readHeader();
+        fileReader.readRow(header);
+        try {
+            fileReader.readRow(header);
+            Assert.fail("Row with missing field should not be valid");
+        }
+        catch (UploadLineException e) {
+            Assert.assertEquals("Error in line 3", e.getMessage());
+        }
+    }
+}
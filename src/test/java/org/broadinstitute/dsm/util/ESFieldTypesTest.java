@@ -0,0 +1,100 @@
+package org.broadinstitute.dsm.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ESFieldTypesTest {
+
+    private ESFieldTypes fieldTypes;
+
+    @Before
+    public void setUp() {
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("hruid", text("keyword"));
+        profile.put("firstName", text(null));
+        profile.put("createdAt", field("long"));
+
+        Map<String, Object> activities = new HashMap<>();
+        activities.put("activityCode", field("keyword"));
+        activities.put("status", text("raw"));
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("profile", object(profile, null));
+        properties.put("activities", object(activities, "nested"));
+
+        Map<String, Object> mapping = new HashMap<>();
+        mapping.put("properties", properties);
+        fieldTypes = ESFieldTypes.fromMapping(mapping);
+    }
+
+    @Test
+    public void typesByPath() {
+        Assert.assertEquals("text", fieldTypes.getType("profile.hruid"));
+        Assert.assertEquals("long", fieldTypes.getType("profile.createdAt"));
+        Assert.assertEquals("object", fieldTypes.getType("profile"));
+        Assert.assertEquals("nested", fieldTypes.getType("activities"));
+        Assert.assertNull(fieldTypes.getType("profile.unknown"));
+        Assert.assertNull(fieldTypes.getFieldType("profile.hruid").getNestedPath());
+        Assert.assertEquals("activities", fieldTypes.getFieldType("activities.status").getNestedPath());
+    }
+
+    @Test
+    public void exactMatchUsesKeywordSubField() {
+        Assert.assertEquals("profile.hruid.keyword", fieldTypes.getExactMatchFieldName("profile.hruid"));
+        Assert.assertEquals("activities.status.raw", fieldTypes.getExactMatchFieldName("activities.status"));
+        Assert.assertEquals("profile.firstName.keyword", fieldTypes.getExactMatchFieldName("profile.firstName"));
+        Assert.assertEquals("profile.createdAt", fieldTypes.getExactMatchFieldName("profile.createdAt"));
+        Assert.assertEquals("activities.activityCode", fieldTypes.getExactMatchFieldName("activities.activityCode"));
+        Assert.assertEquals("unknown", fieldTypes.getExactMatchFieldName("unknown"));
+    }
+
+    @Test
+    public void mappingWrappedInType() {
+        Map<String, Object> wrapped = new HashMap<>();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("status", field("keyword"));
+        Map<String, Object> type = new HashMap<>();
+        type.put("properties", properties);
+        wrapped.put("_doc", type);
+        Assert.assertEquals("keyword", ESFieldTypes.fromMapping(wrapped).getType("status"));
+    }
+
+    @Test
+    public void mergeKeepsFirstIndex() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("profile", object(new HashMap<>(Map.of("hruid", field("keyword"), "email", field("keyword"))), null));
+        Map<String, Object> mapping = new HashMap<>();
+        mapping.put("properties", properties);
+
+        ESFieldTypes merged = ESFieldTypes.merge(Arrays.asList(fieldTypes, ESFieldTypes.fromMapping(mapping)));
+        Assert.assertEquals("text", merged.getType("profile.hruid"));
+        Assert.assertEquals("keyword", merged.getType("profile.email"));
+    }
+
+    private static Map<String, Object> field(String type) {
+        Map<String, Object> field = new HashMap<>();
+        field.put("type", type);
+        return field;
+    }
+
+    private static Map<String, Object> text(String keywordField) {
+        Map<String, Object> field = field("text");
+        if (keywordField != null) {
+            Map<String, Object> fields = new HashMap<>();
+            fields.put(keywordField, field("keyword"));
+            field.put("fields", fields);
+        }
+        return field;
+    }
+
+    private static Map<String, Object> object(Map<String, Object> properties, String type) {
+        Map<String, Object> object = type != null ? field(type) : new HashMap<>();
+        object.put("properties", properties);
+        return object;
+    }
+}
@@ -0,0 +1,26 @@
+package org.broadinstitute.dsm.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TrackerSyncMetricsTest {
+
+    @Test
+    public void apiLatencyPercentiles() {
+        TrackerSyncMetrics metrics = new TrackerSyncMetrics();
+        for (long latency = 100; latency >= 1; latency--) {
+            metrics.recordApiCall(latency, latency == 100);
+        }
+        Assert.assertEquals(50L, metrics.getApiLatencyPercentile(50));
+        Assert.assertEquals(95L, metrics.getApiLatencyPercentile(95));
+        Assert.assertEquals(100L, metrics.getApiLatencyPercentile(100));
+        Assert.assertEquals(1L, metrics.getApiLatencyPercentile(0));
+        Assert.assertEquals(99, metrics.getCheckedKits());
+        Assert.assertEquals(1, metrics.getFailedCalls());
+    }
+
+    @Test
+    public void noApiCalls() {
+        Assert.assertEquals(0L, new TrackerSyncMetrics().getApiLatencyPercentile(95));
+    }
+}